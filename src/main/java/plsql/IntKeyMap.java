@@ -0,0 +1,277 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>
+ * Map with primitive <code>int</code> keys, Java counterpart of index-by table indexed by <code>pls_integer</code>
+ * or <code>binary_integer</code>. Selected by <code>java:type="plsql.IntKeyMap[...]"</code> in type graph.
+ * </p>
+ * <p>
+ * Entries are stored in parallel arrays sorted by key, hence iteration order is ascending order of keys,
+ * same as traversal of index-by table in PLSQL. Lookup is binary search,
+ * or direct offset if keys form contiguous range (dense table, see {@link #isDense()}).
+ * Appending key greater than all present keys is amortized constant, insertion elsewhere shifts arrays.
+ * Methods with <code>int</code> parameters do not box, methods inherited from {@link java.util.Map} box keys as usual.
+ * Null values are permitted, null keys are not.
+ * </p>
+ * @author Tomas Zalusky
+ */
+public final class IntKeyMap<V> extends AbstractMap<Integer,V> {
+
+	private int[] keys;
+
+	private Object[] values;
+
+	private int size;
+
+	public IntKeyMap() {
+		this(16);
+	}
+
+	public IntKeyMap(int initialCapacity) {
+		checkArgument(initialCapacity >= 0, "Illegal capacity %s.", initialCapacity);
+		this.keys = new int[initialCapacity];
+		this.values = new Object[initialCapacity];
+	}
+
+	/**
+	 * Creates map from keys and values at matching positions without boxing keys.
+	 * Keys which are already in ascending order (the usual case for keys received from database) are taken as they are,
+	 * otherwise they are sorted.
+	 * @param keys
+	 * @param values
+	 * @return new map
+	 * @throws IllegalArgumentException if lengths differ or keys contain duplicates
+	 */
+	public static <V> IntKeyMap<V> of(int[] keys, List<? extends V> values) {
+		checkArgument(keys.length == values.size(), "Number of keys %s differs from number of values %s.", keys.length, values.size());
+		IntKeyMap<V> result = new IntKeyMap<>(keys.length);
+		boolean ascending = true;
+		for (int i = 1; i < keys.length && ascending; i++) {
+			ascending = keys[i - 1] < keys[i];
+		}
+		if (ascending) {
+			System.arraycopy(keys, 0, result.keys, 0, keys.length);
+			values.toArray(result.values);
+		} else {
+			long[] order = new long[keys.length]; // key in upper half (signed), original position in lower half
+			for (int i = 0; i < keys.length; i++) {
+				order[i] = (long)keys[i] << 32 | i;
+			}
+			Arrays.sort(order);
+			for (int i = 0; i < order.length; i++) {
+				int key = (int)(order[i] >> 32);
+				checkArgument(i == 0 || result.keys[i - 1] != key, "Duplicate key %s.", key);
+				result.keys[i] = key;
+				result.values[i] = values.get((int)order[i]);
+			}
+		}
+		result.size = keys.length;
+		return result;
+	}
+
+	/**
+	 * @param key
+	 * @return position of key, or <code>(-(insertion point) - 1)</code> as in {@link Arrays#binarySearch(int[], int)}
+	 */
+	private int search(int key) {
+		if (size > 0 && isDense()) {
+			long offset = (long)key - keys[0];
+			return offset < 0 ? -1 : offset >= size ? -size - 1 : (int)offset;
+		}
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	/**
+	 * @return true if keys form contiguous range of integers (empty map is dense)
+	 */
+	public boolean isDense() {
+		return size == 0 || (long)keys[size - 1] - keys[0] == size - 1;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public boolean containsKey(int key) {
+		return search(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int i = search(key);
+		return i >= 0 ? (V)values[i] : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		int i = size == 0 || key > keys[size - 1] ? -size - 1 : search(key);
+		if (i >= 0) {
+			V result = (V)values[i];
+			values[i] = value;
+			return result;
+		}
+		i = -i - 1;
+		if (size == keys.length) {
+			int capacity = Math.max(16, size + (size >> 1));
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(values, i, values, i + 1, size - i);
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int i = search(key);
+		if (i < 0) {
+			return null;
+		}
+		V result = (V)values[i];
+		removeAt(i);
+		return result;
+	}
+
+	private void removeAt(int i) {
+		System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+		System.arraycopy(values, i + 1, values, i, size - i - 1);
+		values[--size] = null;
+	}
+
+	/**
+	 * @param i 0-based position in ascending order of keys
+	 * @return key at given position
+	 */
+	public int keyAt(int i) {
+		checkElementIndex(i, size);
+		return keys[i];
+	}
+
+	/**
+	 * @param i 0-based position in ascending order of keys
+	 * @return value at given position
+	 */
+	@SuppressWarnings("unchecked")
+	public V valueAt(int i) {
+		checkElementIndex(i, size);
+		return (V)values[i];
+	}
+
+	public int firstKey() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return keys[0];
+	}
+
+	public int lastKey() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return keys[size - 1];
+	}
+
+	/**
+	 * @return copy of keys in ascending order
+	 */
+	public int[] keys() {
+		return Arrays.copyOf(keys, size);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Integer && containsKey(((Integer)key).intValue());
+	}
+
+	@Override
+	public V get(Object key) {
+		return key instanceof Integer ? get(((Integer)key).intValue()) : null;
+	}
+
+	@Override
+	public V put(Integer key, V value) {
+		return put(checkNotNull(key).intValue(), value);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return key instanceof Integer ? remove(((Integer)key).intValue()) : null;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+	}
+
+	@Override
+	public Set<Entry<Integer,V>> entrySet() {
+		return new AbstractSet<Entry<Integer,V>>() {
+
+			@Override
+			public Iterator<Entry<Integer,V>> iterator() {
+				return new Iterator<Entry<Integer,V>>() {
+
+					private int next;
+
+					private boolean removable;
+
+					@Override
+					public boolean hasNext() {
+						return next < size;
+					}
+
+					@Override
+					public Entry<Integer,V> next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						final int i = next++;
+						removable = true;
+						return new SimpleEntry<Integer,V>(keys[i], valueAt(i)) {
+							private static final long serialVersionUID = 1L;
+							@Override
+							public V setValue(V value) {
+								values[i] = value;
+								return super.setValue(value);
+							}
+						};
+					}
+
+					@Override
+					public void remove() {
+						if (!removable) {
+							throw new IllegalStateException();
+						}
+						removeAt(--next);
+						removable = false;
+					}
+
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+		};
+	}
+
+}
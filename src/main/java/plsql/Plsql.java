@@ -22,6 +22,10 @@ import java.lang.annotation.Target;
  * additional underscore is added at the end.
  * </em>
  * </p>
+ * <p>
+ * Collection and primitive type annotations are also type annotations (JDK8), hence they can describe types nested in generic types,
+ * for example <code>&#64;IndexByTable("pkg.ibt") Map&lt;&#64;Varchar2(10) String,&#64;NestedTable("pkg.nst") List&lt;&#64;Integer_ Integer&gt;&gt;</code>.
+ * </p>
  * 
  * @author Tomas Zalusky
  */
@@ -103,6 +107,13 @@ public class Plsql {
 		 */
 		String value();
 
+		/**
+		 * Names of PLSQL fields in order of their declaration in PLSQL record, fields of class are matched to them by name.
+		 * Order of fields of class obtained by reflection is not specified, hence order must be given for record with more than one field.
+		 * @return names of fields, empty for record with single field
+		 */
+		String[] fields() default {};
+
 	}
 	
 	/**
@@ -112,7 +123,7 @@ public class Plsql {
 	 * they just map onto Java collections and maps.
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=NestedTableType.StringConverter.class)
 	public @interface NestedTable {
@@ -129,7 +140,7 @@ public class Plsql {
 	 * TODO
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=VarrayType.StringConverter.class)
 	public @interface Varray {
@@ -146,7 +157,7 @@ public class Plsql {
 	 * TODO
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=IndexByTableType.StringConverter.class)
 	public @interface IndexByTable {
@@ -165,7 +176,7 @@ public class Plsql {
 	 * Represents PLSQL BINARY_INTEGER type.
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=BinaryIntegerType.StringConverter.class)
 	public @interface BinaryInteger {
@@ -176,7 +187,7 @@ public class Plsql {
 	 * Represents PLSQL BLOB type.
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=BlobType.StringConverter.class)
 	public @interface Blob {
@@ -187,7 +198,7 @@ public class Plsql {
 	 * Represents PLSQL BOOLEAN type.
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=BooleanType.StringConverter.class)
 	public @interface Boolean_ {
@@ -199,7 +210,7 @@ public class Plsql {
 	 * TODO public enum LengthSemantics {DEFAULT,BYTE,CHAR}, LengthSemantics lengthSemantics() default LengthSemantics.DEFAULT;
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=CharType.StringConverter.class)
 	public @interface Char_ {
@@ -212,7 +223,7 @@ public class Plsql {
 	 * Represents PLSQL CLOB type.
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=ClobType.StringConverter.class)
 	public @interface Clob {
@@ -223,7 +234,7 @@ public class Plsql {
 	 * Represents PLSQL DATE type.
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=DateType.StringConverter.class)
 	public @interface Date {
@@ -234,7 +245,7 @@ public class Plsql {
 	 * Represents PLSQL INTEGER type.
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=IntegerType.StringConverter.class)
 	public @interface Integer_ {
@@ -245,7 +256,7 @@ public class Plsql {
 	 * Represents PLSQL LONG type.
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=LongType.StringConverter.class)
 	public @interface Long_ {
@@ -256,7 +267,7 @@ public class Plsql {
 	 * Represents PLSQL NUMBER type.
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=NumberType.StringConverter.class)
 	public @interface Number_ {
@@ -274,7 +285,7 @@ public class Plsql {
 	 * Represents PLSQL PLS_INTEGER type.
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=PlsIntegerType.StringConverter.class)
 	public @interface PlsInteger {
@@ -286,7 +297,7 @@ public class Plsql {
 	 * TODO public enum LengthSemantics {DEFAULT,BYTE,CHAR}, LengthSemantics lengthSemantics() default LengthSemantics.DEFAULT;
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=StringType.StringConverter.class)
 	public @interface String_ {
@@ -300,7 +311,7 @@ public class Plsql {
 	 * TODO public enum LengthSemantics {DEFAULT,BYTE,CHAR}, LengthSemantics lengthSemantics() default LengthSemantics.DEFAULT;
 	 * @author Tomas Zalusky
 	 */
-	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD})
+	@Target({ElementType.FIELD,ElementType.PARAMETER,ElementType.METHOD,ElementType.TYPE_USE})
 	@Retention(RetentionPolicy.RUNTIME)
 	@Type(nameConverter=Varchar2Type.StringConverter.class)
 	public @interface Varchar2 {
@@ -327,6 +338,19 @@ public class Plsql {
 	@Retention(RetentionPolicy.RUNTIME)
 	public @interface InOut {}
 	
+	/**
+	 * Gives PLSQL name to record field or procedure parameter whose Java name differs from PLSQL name
+	 * (or whose name is not available at runtime, which is the case of method parameters unless class is compiled with <code>-parameters</code>).
+	 * @author Tomas Zalusky
+	 */
+	@Target({ElementType.FIELD,ElementType.PARAMETER})
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface Name {
+		
+		String value();
+		
+	}
+	
 	
 }
 
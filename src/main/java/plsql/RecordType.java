@@ -37,6 +37,10 @@ class RecordType extends AbstractType {
 				public String value() {
 					return input;
 				}
+				@Override
+				public String[] fields() {
+					return new String[0];
+				}
 			};
 		}
 		
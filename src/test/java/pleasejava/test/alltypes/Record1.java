@@ -0,0 +1,36 @@
+package pleasejava.test.alltypes;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+
+import plsql.Plsql.BinaryInteger;
+import plsql.Plsql.IndexByTable;
+import plsql.Plsql.Name;
+import plsql.Plsql.NestedTable;
+import plsql.Plsql.Number_;
+import plsql.Plsql.Record;
+import plsql.Plsql.String_;
+import plsql.Plsql.Varchar2;
+import plsql.Plsql.Varray;
+
+/**
+ * Java counterpart of record <code>a_test_package.rec1</code> of <code>typegraph/alltypes.xml</code>.
+ * @author Tomas Zalusky
+ */
+@Record(value = "a_test_package.rec1", fields = {"f_nst4", "f_ibt4", "f_binary_integer", "f_ibt5"})
+public class Record1 {
+
+	@Name("f_nst4")
+	@NestedTable("a_test_package.nst4") List<Record3> nst4;
+
+	@Name("f_ibt4")
+	@IndexByTable("a_test_package.ibt4") Map<@Varchar2(10) String,@Number_(30) BigInteger> ibt4;
+
+	@Name("f_binary_integer")
+	@BinaryInteger Integer binary;
+
+	@Name("f_ibt5")
+	@IndexByTable("a_test_package.ibt5") Map<@String_(20) String,@Varchar2(100) String @Varray("a_test_package.var5") []> ibt5;
+
+}
@@ -0,0 +1,31 @@
+package pleasejava.test.alltypes;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import plsql.Plsql.Name;
+import plsql.Plsql.PlsInteger;
+import plsql.Plsql.Record;
+import plsql.Plsql.Varchar2;
+import plsql.Plsql.Varray;
+
+/**
+ * Java counterpart of record <code>a_test_package.rec2</code> of <code>typegraph/alltypes.xml</code>.
+ * @author Tomas Zalusky
+ */
+@Record(value = "a_test_package.rec2", fields = {"f_var5", "f1_rec3", "f_pls_integer", "f2_rec3"})
+public class Record2 {
+
+	@Name("f_var5")
+	@Varray("a_test_package.var5") List<@Varchar2(100) String> var5;
+
+	@Name("f1_rec3")
+	Record3 firstRec3;
+
+	@Name("f_pls_integer")
+	@PlsInteger BigInteger pls;
+
+	@Name("f2_rec3")
+	Record3 secondRec3;
+
+}
@@ -0,0 +1,21 @@
+package pleasejava.test.alltypes;
+
+import plsql.Plsql.Boolean_;
+import plsql.Plsql.Integer_;
+import plsql.Plsql.Name;
+import plsql.Plsql.Record;
+
+/**
+ * Java counterpart of record <code>a_test_package.rec3</code> of <code>typegraph/alltypes.xml</code>.
+ * @author Tomas Zalusky
+ */
+@Record(value = "a_test_package.rec3", fields = {"f_boolean", "f_integer"})
+public class Record3 {
+
+	@Name("f_boolean")
+	@Boolean_ boolean theBoolean;
+
+	@Name("f_integer")
+	@Integer_ int theInt;
+
+}
@@ -0,0 +1,53 @@
+package pleasejava.test.alltypes;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import plsql.Plsql.BinaryInteger;
+import plsql.Plsql.Clob;
+import plsql.Plsql.Function;
+import plsql.Plsql.IndexByTable;
+import plsql.Plsql.Integer_;
+import plsql.Plsql.Long_;
+import plsql.Plsql.Name;
+import plsql.Plsql.NestedTable;
+import plsql.Plsql.Out;
+import plsql.Plsql.PlsInteger;
+import plsql.Plsql.String_;
+import plsql.Plsql.Varchar2;
+import plsql.Plsql.Varray;
+
+/**
+ * Java counterpart of <code>typegraph/alltypes.xml</code>.
+ * @author Tomas Zalusky
+ */
+public interface TestInterface {
+
+	@Function("echo")
+	@Integer_ BigInteger echo(
+			@Name("pi_ibt1") @IndexByTable("a_test_package.ibt1") Map<@PlsInteger Integer,Record2> inputIbt1,
+			@Name("pi_var1") @Varray("a_test_package.var1") List<@Varray("a_test_package.var4") List<Record3>> inputVar1,
+			@Name("pi_nst2") @NestedTable("a_test_package.nst2") List<Record3 @Varray("a_test_package.var4") []> inputNst2,
+			@Name("pi_nst3") @NestedTable("a_test_package.nst3") Map<Integer,@NestedTable("a_test_package.nst4") List<Record3>> inputNst3,
+			@Name("pi_rec1") Record1 inputRec1,
+			@Name("pi_var3") @Varray("a_test_package.var3") List<@IndexByTable("a_test_package.ibt5") SortedMap<@String_(20) String,@Varray("a_test_package.var5") List<@Varchar2(100) String>>> inputVar3,
+			@Name("pi_ibt2") @IndexByTable("a_test_package.ibt2") Map<@BinaryInteger BigInteger,@IndexByTable("a_test_package.ibt5") Map<@String_(20) String,@Varray("a_test_package.var5") List<@Varchar2(100) String>>> inputIbt2,
+			@Name("pi_nst1") @NestedTable("a_test_package.nst1") List<@IndexByTable("a_test_package.ibt5") Map<@String_(20) String,@Varray("a_test_package.var5") List<@Varchar2(100) String>>> inputNst1,
+			@Name("pi_ibt3") @IndexByTable("a_test_package.ibt3") Map<@Long_ String,@Varchar2(200) String @NestedTable("a_test_package.nst5") []> inputIbt3,
+			@Name("pi_var2") @Varray("a_test_package.var2") List<@Varchar2(200) String @NestedTable("a_test_package.nst5") []> inputVar2,
+			@Name("pi_clob") @Clob String inputClob,
+			@Out @Name("po_ibt1") @IndexByTable("a_test_package.ibt1") Map<@PlsInteger Integer,Record2> outputIbt1,
+			@Out @Name("po_var1") @Varray("a_test_package.var1") List<@Varray("a_test_package.var4") List<Record3>> outputVar1,
+			@Out @Name("po_nst2") @NestedTable("a_test_package.nst2") List<Record3 @Varray("a_test_package.var4") []> outputNst2,
+			@Out @Name("po_nst3") @NestedTable("a_test_package.nst3") Map<Integer,@NestedTable("a_test_package.nst4") List<Record3>> outputNst3,
+			@Out @Name("po_rec1") Record1 outputRec1,
+			@Out @Name("po_var3") @Varray("a_test_package.var3") List<@IndexByTable("a_test_package.ibt5") SortedMap<@String_(20) String,@Varray("a_test_package.var5") List<@Varchar2(100) String>>> outputVar3,
+			@Out @Name("po_ibt2") @IndexByTable("a_test_package.ibt2") Map<@BinaryInteger BigInteger,@IndexByTable("a_test_package.ibt5") Map<@String_(20) String,@Varray("a_test_package.var5") List<@Varchar2(100) String>>> outputIbt2,
+			@Out @Name("po_nst1") @NestedTable("a_test_package.nst1") List<@IndexByTable("a_test_package.ibt5") Map<@String_(20) String,@Varray("a_test_package.var5") List<@Varchar2(100) String>>> outputNst1,
+			@Out @Name("po_ibt3") @IndexByTable("a_test_package.ibt3") Map<@Long_ String,@Varchar2(200) String @NestedTable("a_test_package.nst5") []> outputIbt3,
+			@Out @Name("po_var2") @Varray("a_test_package.var2") List<@Varchar2(200) String @NestedTable("a_test_package.nst5") []> outputVar2,
+			@Out @Name("po_clob") @Clob StringBuilder outputClob);
+
+}
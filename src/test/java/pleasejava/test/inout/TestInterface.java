@@ -0,0 +1,27 @@
+package pleasejava.test.inout;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import plsql.Plsql.Boolean_;
+import plsql.Plsql.InOut;
+import plsql.Plsql.Name;
+import plsql.Plsql.NestedTable;
+import plsql.Plsql.Number_;
+import plsql.Plsql.Procedure;
+import plsql.Plsql.Varchar2;
+
+/**
+ * Java counterpart of <code>typegraph/inout.xml</code>.
+ * @author Tomas Zalusky
+ */
+public interface TestInterface {
+
+	@Procedure("a_test_package.modify")
+	void modify(
+			@InOut @Name("pio_nst") @NestedTable("a_test_package.nst") List<@Varchar2(100) String> nst,
+			@Name("pi_flag") @Boolean_ boolean flag,
+			@InOut @Name("pio_num") AtomicReference<@Number_(30) BigDecimal> num);
+
+}
@@ -18,6 +18,25 @@ import org.junit.runners.Suite.SuiteClasses;
 		TransferObjectTreeTest.class,
 		TypeNodeTreeToTransferObjectTreeTest.class,
 		JavaModelTest.class,
+		MarshallerTest.class,
+		UnmarshallerTest.class,
+		RecordAccessorTest.class,
+		RecordAccessorProcessorTest.class,
+		PointersCodecTest.class,
+		DeletionsBitmapTest.class,
+		TransferObjectOptimizerTest.class,
+		ColumnPackingTest.class,
+		ChunkedTransferTest.class,
+		PrimitiveCollectionTest.class,
+		ColumnCodecTest.class,
+		IntKeyMapTest.class,
+		BlockGeneratorTest.class,
+		WrapperPackageTest.class,
+		StatementFingerprintsTest.class,
+		PlsqlRuntimeTest.class,
+		JavaTypeFactoryTest.class,
+		BatchCallTest.class,
+		CallGroupTest.class,
 })
 public class AllTests {
 
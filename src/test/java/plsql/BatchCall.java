@@ -0,0 +1,274 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import com.google.common.base.Equivalence;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * Executes procedure or function for many argument tuples in single round-trip.
+ * Signature is wrapped in implicit outer collection level: {@link BatchSignature} has the same parameters,
+ * each of them of type nested table of original type, whose n-th element is argument of n-th call.
+ * Hence {@link Marshaller} flattens data of all calls into the same columns as if they were single collection
+ * and {@link Pointers} delimit data of particular calls.
+ * </p>
+ * <p>
+ * Block generated for batch signature rebuilds all nested tables at once, calls procedure in loop
+ * with n-th elements as arguments and decomposes nested tables of OUT values.
+ * Every call is executed under savepoint, exception raised by call rolls back its changes,
+ * its message is stored at position of call into {@link #ERRORS_LABEL additional OUT column} and loop continues.
+ * OUT values and errors are mapped back to positions of calls in {@link Result}s.
+ * </p>
+ * <p>
+ * Savepoint is erased by commit. Call which commits and succeeds does not matter (next call establishes savepoint again),
+ * but call which commits and then raises exception cannot be rolled back: rollback to savepoint raises ORA-01086
+ * which aborts the whole batch, no OUT values are returned then and changes of previous calls are left
+ * (or committed) in transaction of caller. Procedures committing their work should not be batched.
+ * </p>
+ * <p>
+ * All columns including errors are bound as {@link ColumnKind schema-level nested tables},
+ * hence number of calls in batch is not limited by capacity of varray.
+ * </p>
+ * <p>
+ * Text of block does not depend on number of calls, it is generated once per signature.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class BatchCall {
+
+	/**
+	 * Name of OUT parameter of {@link BatchSignature} carrying error messages of failed calls.
+	 */
+	static final String ERRORS_LABEL = "(errors)";
+
+	/**
+	 * Procedure whose parameters are nested tables of parameters of original signature
+	 * (including return value of function and {@link BatchCall#ERRORS_LABEL errors}).
+	 * It is recognized by {@link BlockGenerator} which calls original signature for each element.
+	 * @author Tomas Zalusky
+	 */
+	static final class BatchSignature extends ProcedureSignature {
+
+		private final AbstractSignature target;
+
+		private BatchSignature(AbstractSignature target, Map<String,Parameter> parameters) {
+			super(new ProcedureSignature.StringConverter().fromString(target.getName()), parameters);
+			this.target = target;
+		}
+
+		/**
+		 * @return called procedure or function
+		 */
+		AbstractSignature getTarget() {
+			return target;
+		}
+
+	}
+
+	/**
+	 * Outcome of one call of batch.
+	 * @author Tomas Zalusky
+	 */
+	static final class Result {
+
+		private final Map<String,Object> values;
+
+		private final String error;
+
+		Result(Map<String,Object> values, String error) {
+			this.values = Collections.unmodifiableMap(values);
+			this.error = error;
+		}
+
+		/**
+		 * @return values of OUT and IN OUT parameters and return value of function ({@link FunctionSignature#RETURN_LABEL}) by name,
+		 * nulls if call failed
+		 */
+		Map<String,Object> getValues() {
+			return values;
+		}
+
+		/**
+		 * @return error message of failed call, null if call succeeded
+		 */
+		String getError() {
+			return error;
+		}
+
+		boolean isFailed() {
+			return error != null;
+		}
+
+		@Override
+		public String toString() {
+			return error != null ? "failed: " + error : values.toString();
+		}
+
+	}
+
+	/**
+	 * Maximal number of cached batch signatures, least recently used one is evicted.
+	 */
+	static final int CACHED_SIGNATURES = 1024;
+
+	/**
+	 * Batch signatures by identity of target signature. Value refers to its key, hence weak keys would never be cleared,
+	 * cache is bounded instead.
+	 */
+	private static final ConcurrentMap<Equivalence.Wrapper<AbstractSignature>,BatchSignature> SIGNATURES =
+			CacheBuilder.newBuilder().maximumSize(CACHED_SIGNATURES).<Equivalence.Wrapper<AbstractSignature>,BatchSignature>build().asMap();
+
+	private final BatchSignature signature;
+
+	private final TypeNodeTree typeNodeTree;
+
+	private final Function<RecordType,Class<?>> recordClasses;
+
+	/**
+	 * Names of OUT parameters of batch signature (original OUT parameters, return value and errors).
+	 */
+	private final List<String> outParameterNames;
+
+	private final BlockGenerator.Block block;
+
+	/**
+	 * @param graph
+	 * @param target called procedure or function
+	 * @param recordClasses Java classes of records in OUT values, see {@link Unmarshaller}
+	 */
+	BatchCall(TypeGraph graph, AbstractSignature target, Function<RecordType,Class<?>> recordClasses) {
+		this.signature = signature(target);
+		this.typeNodeTree = graph.toTypeNodeTree(signature);
+		this.recordClasses = recordClasses;
+		ImmutableList.Builder<String> outParameterNames = ImmutableList.builder();
+		for (Map.Entry<String,Parameter> e : signature.getParameters().entrySet()) {
+			if (e.getValue().getParameterMode() != ParameterMode.IN) {
+				outParameterNames.add(e.getKey());
+			}
+		}
+		this.outParameterNames = outParameterNames.build();
+		this.block = BlockGenerator.generate(typeNodeTree.toTransferObjectTree());
+	}
+
+	/**
+	 * @param target
+	 * @return batch signature wrapping given signature, one instance per signature
+	 * @throws IllegalArgumentException if signature has no IN nor IN OUT parameter (calls would not differ)
+	 * or if it has parameter of primitive type not transferrable in SQL collection (LOB)
+	 */
+	static BatchSignature signature(AbstractSignature target) {
+		Equivalence.Wrapper<AbstractSignature> key = Equivalence.identity().wrap(target);
+		BatchSignature result = SIGNATURES.get(key);
+		if (result == null) {
+			Map<String,Parameter> parameters = Maps.newLinkedHashMap();
+			boolean in = false;
+			for (Map.Entry<String,Parameter> e : target.getParameters().entrySet()) {
+				ParameterMode mode = e.getValue().getParameterMode();
+				checkBatchable(target, e.getKey(), e.getValue().getType());
+				parameters.put(e.getKey(), Parameter.create(mode, batchType(target, e.getKey(), e.getValue().getType())));
+				in |= mode != ParameterMode.OUT;
+			}
+			checkArgument(in, "Batch of %s cannot be created since it has no IN parameter.", target.getName());
+			if (target instanceof FunctionSignature) {
+				AbstractType returnType = ((FunctionSignature)target).getReturnType();
+				checkBatchable(target, FunctionSignature.RETURN_LABEL, returnType);
+				parameters.put(FunctionSignature.RETURN_LABEL, Parameter.create(ParameterMode.OUT, batchType(target, FunctionSignature.RETURN_LABEL, returnType)));
+			}
+			parameters.put(ERRORS_LABEL, Parameter.create(ParameterMode.OUT,
+					batchType(target, ERRORS_LABEL, AbstractPrimitiveType.recognizePrimitiveType("varchar2(4000)"))));
+			BatchSignature newResult = new BatchSignature(target, parameters);
+			result = SIGNATURES.putIfAbsent(key, newResult);
+			if (result == null) {
+				result = newResult;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Primitive value of parameter becomes element of collection, hence it must be transferrable in SQL collection.
+	 */
+	private static void checkBatchable(AbstractSignature target, String parameterName, AbstractType type) {
+		checkArgument(!(type instanceof AbstractPrimitiveType) || type instanceof BooleanType || ColumnKind.of((AbstractPrimitiveType)type) != null,
+				"Parameter %s of %s cannot be batched since type %s cannot be transferred in SQL collection.", parameterName, target.getName(), type.getName());
+	}
+
+	/**
+	 * @return nested table of given type, its name contains dot so that it is not considered JDBC-transferrable
+	 * (it is declared as local type of block)
+	 */
+	private static NestedTableType batchType(AbstractSignature target, String parameterName, AbstractType type) {
+		return TypeFactory.nestedTable(target.getName() + "." + parameterName + "(batch)", type);
+	}
+
+	BatchSignature getSignature() {
+		return signature;
+	}
+
+	BlockGenerator.Block getBlock() {
+		return block;
+	}
+
+	/**
+	 * Executes all calls in single round-trip.
+	 * @param calls arguments of every call, in order of declaration of parameters (values of OUT parameters are ignored)
+	 * @param executor
+	 * @return outcomes of calls, in order of calls
+	 */
+	List<Result> execute(List<? extends List<?>> calls, PlsqlRuntime.Executor executor) {
+		if (calls.isEmpty()) {
+			return ImmutableList.of();
+		}
+		List<Object> arguments = Lists.newArrayList();
+		int index = 0;
+		for (Map.Entry<String,Parameter> e : signature.getParameters().entrySet()) {
+			int position = index++; // return value and errors follow parameters of target
+			if (e.getValue().getParameterMode() == ParameterMode.OUT) {
+				arguments.add(null);
+				continue;
+			}
+			List<Object> column = new ArrayList<>(calls.size());
+			for (List<?> call : calls) {
+				checkArgument(call.size() == signature.getTarget().getParameters().size(), "Expected %s arguments but got %s.",
+						signature.getTarget().getParameters().size(), call.size());
+				column.add(call.get(position));
+			}
+			arguments.add(column);
+		}
+		TransferObjectTree tot = typeNodeTree.toTransferObjectTree();
+		Marshaller.marshal(tot, arguments);
+		Map<String,Object> values = PlsqlRuntime.execute(executor, block, tot, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap(),
+				Collections.<Pointers,PointersCodec.Encoded>emptyMap(), Collections.<Deletions,DeletionsBitmap>emptyMap(),
+				typeNodeTree, received -> new Unmarshaller(received, recordClasses, true, Integer.MAX_VALUE), outParameterNames);
+		List<?> errors = (List<?>)values.get(ERRORS_LABEL);
+		ImmutableList.Builder<Result> result = ImmutableList.builder();
+		for (int i = 0; i < calls.size(); i++) {
+			String error = (String)errors.get(i);
+			Map<String,Object> callValues = Maps.newLinkedHashMap();
+			for (String name : outParameterNames) {
+				if (!ERRORS_LABEL.equals(name)) {
+					callValues.put(name, error == null ? ((List<?>)values.get(name)).get(i) : null);
+				}
+			}
+			result.add(new Result(callValues, error));
+		}
+		return result.build();
+	}
+
+	@Override
+	public String toString() {
+		return "batch of " + signature.getName();
+	}
+
+}
@@ -0,0 +1,197 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests {@link BatchCall}. Generated blocks are executed by {@link BlockInterpreter}.
+ * @author Tomas Zalusky
+ */
+public class BatchCallTest extends AbstractTypeGraphTest {
+
+	private static final BlockInterpreter.Executable MODIFY = (name, arguments) -> {
+		assertEquals("a_test_package.modify", name);
+		if (!(Boolean)arguments.get("pi_flag")) {
+			throw new IllegalStateException("ORA-20001: rejected");
+		}
+		@SuppressWarnings("unchecked")
+		TreeMap<Object,Object> nst = (TreeMap<Object,Object>)arguments.get("pio_nst");
+		nst.put(nst.size() + 1, "added");
+		arguments.put("pio_num", ((BigDecimal)arguments.get("pio_num")).negate());
+		return null;
+	};
+
+	private static PlsqlRuntime.Executor executor(BlockInterpreter.Executable executable, AtomicInteger executions) {
+		return (block, inValues) -> {
+			executions.incrementAndGet();
+			return BlockInterpreter.execute(block.getText(), inValues, executable);
+		};
+	}
+
+	/**
+	 * @return arguments in order of parameters of signature, missing arguments are null
+	 */
+	private static List<Object> arguments(AbstractSignature signature, Map<String,?> arguments) {
+		List<Object> result = Lists.newArrayList();
+		for (String name : signature.getParameters().keySet()) {
+			result.add(arguments.get(name));
+		}
+		return result;
+	}
+
+	@Test
+	public void testEcho() throws IOException {
+		FunctionSignature alltypes = loadGraph("alltypes").findType(FunctionSignature.class, "echo");
+		FunctionSignature echo = TypeFactory.function("echo", // LOB cannot be transferred in SQL collection
+				ImmutableMap.copyOf(Maps.filterKeys(alltypes.getParameters(), k -> !k.endsWith("_clob"))), alltypes.getReturnType());
+		Map<String,Object> nulls = Maps.newLinkedHashMap();
+		nulls.put("pi_var1", null);
+		nulls.put("pi_nst1", null);
+		nulls.put("pi_ibt1", ImmutableMap.of());
+		Map<String,Object> withoutClob = Maps.filterKeys(BlockGeneratorTest.ARGUMENTS, k -> !k.equals("pi_clob"));
+		List<Map<String,?>> calls = ImmutableList.of(
+				withoutClob,
+				nulls,
+				ImmutableMap.of("pi_var2", ImmutableList.of(ImmutableList.of("x", "y"))),
+				withoutClob);
+		List<List<?>> argumentLists = Lists.newArrayList();
+		for (Map<String,?> call : calls) {
+			argumentLists.add(arguments(echo, call));
+		}
+		AtomicInteger executions = new AtomicInteger();
+		BatchCall batchCall = new BatchCall(loadGraph("alltypes"), echo, UnmarshallerTest.RECORD_CLASSES);
+		List<BatchCall.Result> results = batchCall.execute(argumentLists, executor(BlockGeneratorTest.ECHO, executions));
+		assertEquals(1, executions.get());
+		assertEquals(calls.size(), results.size());
+		for (int i = 0; i < calls.size(); i++) {
+			BatchCall.Result result = results.get(i);
+			assertFalse(result.toString(), result.isFailed());
+			for (Map.Entry<String,?> e : calls.get(i).entrySet()) {
+				String outName = "po_" + e.getKey().substring(3);
+				assertEquals(i + ":" + outName, e.getValue(), result.getValues().get(outName));
+			}
+			assertEquals(BlockGeneratorTest.RETURN_VALUE, result.getValues().get(FunctionSignature.RETURN_LABEL));
+		}
+	}
+
+	@Test
+	public void testErrors() throws IOException {
+		TypeGraph graph = loadGraph("inout");
+		ProcedureSignature modify = graph.findType(ProcedureSignature.class, "a_test_package.modify");
+		BatchCall batchCall = new BatchCall(graph, modify, t -> null);
+		List<BatchCall.Result> results = batchCall.execute(ImmutableList.of(
+				ImmutableList.of(ImmutableList.of("a"), true, new BigDecimal("25")),
+				ImmutableList.of(ImmutableList.of("b"), false, BigDecimal.ONE),
+				ImmutableList.of(ImmutableList.of("c", "d"), true, new BigDecimal("-3"))),
+				executor(MODIFY, new AtomicInteger()));
+		assertEquals(ImmutableList.of("a", "added"), results.get(0).getValues().get("pio_nst"));
+		assertEquals(new BigDecimal("-25"), results.get(0).getValues().get("pio_num"));
+		assertTrue(results.get(1).isFailed());
+		assertEquals("ORA-20001: rejected", results.get(1).getError());
+		assertNull(results.get(1).getValues().get("pio_nst"));
+		assertEquals(ImmutableList.of("c", "d", "added"), results.get(2).getValues().get("pio_nst"));
+		assertEquals(new BigDecimal("3"), results.get(2).getValues().get("pio_num"));
+		assertNull(results.get(2).getError());
+	}
+
+	@Test
+	public void testBlock() throws IOException {
+		TypeGraph graph = loadGraph("inout");
+		ProcedureSignature modify = graph.findType(ProcedureSignature.class, "a_test_package.modify");
+		BatchCall batchCall = new BatchCall(graph, modify, t -> null);
+		assertSame(batchCall.getSignature(), BatchCall.signature(modify));
+		assertSame(batchCall.getBlock(), new BatchCall(graph, modify, t -> null).getBlock()); // text does not depend on number of calls
+		String text = batchCall.getBlock().getText();
+		assertTrue(text, text.contains(" is table of a_test_package.nst;\n"));
+		assertTrue(text, text.contains("savepoint batch_call;\n"));
+		assertTrue(text, text.contains("a_test_package.modify(\n"));
+		AtomicInteger executions = new AtomicInteger();
+		List<List<?>> calls = Lists.newArrayList();
+		for (int i = 0; i < 100; i++) {
+			calls.add(ImmutableList.of(ImmutableList.of(), true, new BigDecimal(i)));
+		}
+		List<BatchCall.Result> results = batchCall.execute(calls, executor(MODIFY, executions));
+		assertEquals(1, executions.get());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(new BigDecimal(-i), results.get(i).getValues().get("pio_num"));
+		}
+		assertEquals(ImmutableList.of(), batchCall.execute(ImmutableList.<List<?>>of(), executor(MODIFY, executions)));
+		assertEquals(1, executions.get());
+	}
+
+	/**
+	 * Committed call which succeeds is harmless, committed call which fails cannot be rolled back and aborts the batch.
+	 */
+	@Test
+	public void testCommit() throws IOException {
+		TypeGraph graph = loadGraph("inout");
+		ProcedureSignature modify = graph.findType(ProcedureSignature.class, "a_test_package.modify");
+		BatchCall batchCall = new BatchCall(graph, modify, t -> null);
+		BlockInterpreter.Executable committing = (name, arguments) -> {
+			BlockInterpreter.commit();
+			return MODIFY.call(name, arguments);
+		};
+		List<BatchCall.Result> results = batchCall.execute(ImmutableList.of(
+				ImmutableList.of(ImmutableList.of("a"), true, BigDecimal.ONE),
+				ImmutableList.of(ImmutableList.of("b"), true, BigDecimal.TEN)),
+				executor(committing, new AtomicInteger()));
+		assertEquals(new BigDecimal("-10"), results.get(1).getValues().get("pio_num"));
+		try {
+			batchCall.execute(ImmutableList.of(
+					ImmutableList.of(ImmutableList.of("a"), true, BigDecimal.ONE),
+					ImmutableList.of(ImmutableList.of("b"), false, BigDecimal.TEN)),
+					executor(committing, new AtomicInteger()));
+			fail();
+		} catch (IllegalStateException expected) {
+			assertTrue(expected.getMessage(), expected.getMessage().startsWith("ORA-01086: savepoint 'BATCH_CALL'"));
+		}
+	}
+
+	/**
+	 * Errors column is nested table, hence batch is not limited to 32767 calls of predefined varray.
+	 */
+	@Test
+	public void testBeyondVarrayLimit() throws IOException {
+		TypeGraph graph = loadGraph("inout");
+		ProcedureSignature modify = graph.findType(ProcedureSignature.class, "a_test_package.modify");
+		List<List<?>> calls = Lists.newArrayList();
+		for (int i = 0; i < 40000; i++) {
+			calls.add(ImmutableList.of(ImmutableList.of(), i != 39999, BigDecimal.ONE));
+		}
+		List<BatchCall.Result> results = new BatchCall(graph, modify, t -> null).execute(calls, executor(MODIFY, new AtomicInteger()));
+		assertEquals(40000, results.size());
+		assertFalse(results.get(39998).isFailed());
+		assertEquals("ORA-20001: rejected", results.get(39999).getError());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLob() throws IOException {
+		BatchCall.signature(loadGraph("alltypes").findType(FunctionSignature.class, "echo"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoInParameter() {
+		ProcedureSignature signature = TypeFactory.procedure("a_test_package.out_only",
+				ImmutableMap.of("po_num", Parameter.create(ParameterMode.OUT, AbstractPrimitiveType.recognizePrimitiveType("integer"))));
+		BatchCall.signature(signature);
+	}
+
+}
@@ -0,0 +1,2051 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import pleasejava.Utils;
+
+import com.google.common.base.Equivalence;
+import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+/**
+ * <p>
+ * Generates anonymous PLSQL block which calls procedure or function described by {@link TransferObjectTree}.
+ * The block
+ * </p>
+ * <ol>
+ * <li>declares variable for every transfer object (<code>c</code> + {@link TransferObject#getId() id}),
+ * transfer objects of IN and IN OUT parameters are initialized by IN binds,</li>
+ * <li>decodes {@link ColumnCodec encoded} columns, unpacks {@link ColumnPacking packed} columns
+ * and derives {@link TransferObject#isElided() elided} pointers,</li>
+ * <li>rebuilds values of IN and IN OUT parameters (variable <code>v</code> + {@link TypeNode#id() id}) from columns,</li>
+ * <li>calls procedure or function using named notation,</li>
+ * <li>decomposes values of OUT and IN OUT parameters and return value of function into columns
+ * (reverse of {@link Marshaller}, see {@link Pointers} for format)</li>
+ * <li>and returns the columns via OUT binds.</li>
+ * </ol>
+ * <p>
+ * Columns are bound as SQL collections given by {@link ColumnKind}, PLSQL booleans are transferred as numbers 1 and 0.
+ * JDBC-transferrable records and collections are bound as their own SQL type.
+ * Auxiliary variables are named after type node or transfer object too:
+ * <code>i</code> - loop over elements of collection, <code>j</code>, <code>m</code> - positions in deletions and data of nested table
+ * (<code>m</code> is cursor over existing elements of nested table with deletions in {@link Style#BULK} style),
+ * <code>k</code> - key of index-by table, <code>n</code> - number of entries appended into child column of pointers.
+ * </p>
+ * <p>
+ * Code rebuilding collections is generated in {@link Style#BULK bulk} style by default,
+ * {@link Style#NAIVE naive} style is kept for comparison.
+ * Decomposition of OUT values appends entries one by one in both styles since sizes of columns are not known in advance.
+ * </p>
+ * <p>
+ * Since {@link TypeNodeTree} expands every use of type, record or collection type used at several positions
+ * would be rebuilt or decomposed by the same code repeated at each position.
+ * Such types are therefore handled by local subprograms (function <code>b</code> and procedure <code>d</code>
+ * + id of first position) called from every position with respective columns as arguments,
+ * see {@link #subprogram(TypeNode, boolean, boolean)}.
+ * </p>
+ * <p>
+ * Text of block depends only on signature and on shape of tree (elided, packed and encoded transfer objects), not on data.
+ * Blocks are cached per signature and shape, hence generation cost is paid once per JVM for each distinct shape of call.
+ * Text is also {@link StatementFingerprints#canonical(String) canonical}: names of variables are derived only from ids
+ * of type nodes and transfer objects, declarations follow depth-first order of tree and whitespace is fixed,
+ * so that the same call always produces byte-identical text and database can share parsed cursor.
+ * Fingerprint of every generated block is recorded in {@link #fingerprints() registry}.
+ * </p>
+ * <p>
+ * Block of {@link BatchCall.BatchSignature batch signature} declares local nested table type (<code>t</code> + id)
+ * for every parameter, calls original procedure or function in loop over elements (<code>b</code>)
+ * and stores message of exception raised by call into errors column, see {@link BatchCall}.
+ * </p>
+ * <p>
+ * Block of {@link CallGroup.GroupSignature group signature} calls all procedures and functions of group one after another,
+ * each of them with its own parameters, see {@link CallGroup}.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class BlockGenerator {
+
+	/**
+	 * JDBC bind of generated block (one "?" in block text) or parameter of generated procedure.
+	 * @author Tomas Zalusky
+	 */
+	static final class Bind {
+
+		private final String name;
+
+		private final String sqlType;
+
+		private final ParameterMode mode;
+
+		Bind(String name, String sqlType, ParameterMode mode) {
+			this.name = name;
+			this.sqlType = sqlType;
+			this.mode = mode;
+		}
+
+		/**
+		 * @return name of PLSQL variable initialized by bind (IN bind) or assigned into bind (OUT bind), or name of parameter
+		 */
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * @return SQL type of bound value
+		 */
+		String getSqlType() {
+			return sqlType;
+		}
+
+		ParameterMode getMode() {
+			return mode;
+		}
+
+		boolean isIn() {
+			return mode != ParameterMode.OUT;
+		}
+
+		boolean isOut() {
+			return mode != ParameterMode.IN;
+		}
+
+		@Override
+		public String toString() {
+			return name + " " + modeKeywords(mode) + " " + sqlType;
+		}
+
+	}
+
+	/**
+	 * Generated block.
+	 * @author Tomas Zalusky
+	 */
+	static final class Block {
+
+		private final String text;
+
+		private final List<Bind> binds;
+
+		/**
+		 * @param text text of block, it is converted into canonical form
+		 * @param binds
+		 */
+		Block(String text, List<Bind> binds) {
+			this.text = StatementFingerprints.canonical(text);
+			this.binds = ImmutableList.copyOf(binds);
+		}
+
+		String getText() {
+			return text;
+		}
+
+		/**
+		 * @return binds in order of occurrence in text, IN binds precede OUT binds
+		 * (parameters in order of declaration for procedure)
+		 */
+		List<Bind> getBinds() {
+			return binds;
+		}
+
+		@Override
+		public String toString() {
+			return text;
+		}
+
+	}
+
+	/**
+	 * Local function building value of reused type from columns, or local procedure decomposing it into columns.
+	 * @author Tomas Zalusky
+	 */
+	private static final class Subprogram {
+
+		/**
+		 * Type node for which subprogram is generated, names of variables in subprogram are relative to its id.
+		 */
+		private final TypeNode node;
+
+		/**
+		 * Transfer objects whose columns are passed as arguments, in order of parameters.
+		 */
+		private final Set<TransferObject> parameters = new LinkedHashSet<>();
+
+		/**
+		 * Pointers whose counters of entries are passed as arguments (following columns), in order of parameters.
+		 */
+		private final Set<TransferObject> counters = new LinkedHashSet<>();
+
+		private String name;
+
+		Subprogram(TypeNode node) {
+			this.node = node;
+		}
+
+	}
+
+	/**
+	 * Receives IN binds of transfer objects.
+	 */
+	private interface InBindConsumer {
+
+		void accept(String name, String sqlType, Object value);
+
+	}
+
+	/**
+	 * Style of code rebuilding collections from columns.
+	 */
+	enum Style {
+
+		/**
+		 * Collections grow by one element, each element is built completely (all its fields) before next one.
+		 */
+		NAIVE,
+
+		/**
+		 * Varrays and nested tables are sized once by <code>extend(n)</code> computed from pointers,
+		 * each column is read by its own tight loop and deletions of nested table are applied by single pass
+		 * before elements are filled.
+		 */
+		BULK
+
+	}
+
+	private static final String INDENT = "  ";
+
+	/**
+	 * Maximal number of signatures whose blocks are cached, least recently used signature is evicted with all its blocks.
+	 */
+	static final int CACHED_SIGNATURES = 1024;
+
+	/**
+	 * Maximal number of cached blocks (shapes of data) per signature, least recently used shape is evicted.
+	 */
+	static final int CACHED_SHAPES = 256;
+
+	/**
+	 * Blocks by identity of signature and shape. Entries are held strongly (signatures of {@link CallGroup}s and {@link BatchCall}s
+	 * are not referenced by type graph), cache is bounded instead.
+	 */
+	private static final ConcurrentMap<Equivalence.Wrapper<AbstractSignature>,ConcurrentMap<String,Block>> CACHE =
+			CacheBuilder.newBuilder().maximumSize(CACHED_SIGNATURES).<Equivalence.Wrapper<AbstractSignature>,ConcurrentMap<String,Block>>build().asMap();
+
+	/**
+	 * Fingerprints of generated blocks and wrapper calls, bounded by capacity of {@link #CACHE}.
+	 */
+	private static final StatementFingerprints FINGERPRINTS = new StatementFingerprints((long)CACHED_SIGNATURES * CACHED_SHAPES);
+
+	private final TransferObjectTree tree;
+
+	/**
+	 * Name of generated procedure, null for anonymous block.
+	 */
+	private final String procedureName;
+
+	private final Style style;
+
+	private final Map<PrimitiveCollection,ColumnPacking.PackedColumn> packedColumns = Maps.newIdentityHashMap();
+
+	private final Map<PrimitiveCollection,ColumnCodec.Encoded> encoded;
+
+	/**
+	 * Pointers bound as RAW, see {@link PointersCodec}.
+	 */
+	private final Map<Pointers,PointersCodec.Encoded> encodedPointers;
+
+	/**
+	 * Deletions bound as RAW, see {@link DeletionsBitmap}.
+	 */
+	private final Map<Deletions,DeletionsBitmap> bitmaps;
+
+	/**
+	 * Names of IN binds of block whose bind values are computed, null if block is generated for the same tree.
+	 */
+	private Set<String> inBindNames;
+
+	/**
+	 * Transfer objects of every parameter (and return value), in depth-first order.
+	 */
+	private final Map<TypeNode,List<TransferObject>> transferObjects = new LinkedHashMap<>();
+
+	private final StringBuilder declarations = new StringBuilder();
+
+	/**
+	 * Auxiliary variables of block or of currently generated subprogram.
+	 */
+	private Map<String,String> auxiliaries = new LinkedHashMap<>();
+
+	/**
+	 * Statements of block or of currently generated subprogram.
+	 */
+	private StringBuilder body = new StringBuilder();
+
+	private final List<Bind> binds = Lists.newArrayList();
+
+	private int indent = 1;
+
+	/**
+	 * Whether reused types are built and decomposed by subprograms.
+	 */
+	private final boolean subprograms;
+
+	/**
+	 * Types built at more than one position of IN parameters.
+	 */
+	private final Set<AbstractType> reusedBuiltTypes = Sets.newHashSet();
+
+	/**
+	 * Types decomposed at more than one position of OUT parameters.
+	 */
+	private final Set<AbstractType> reusedDecomposedTypes = Sets.newHashSet();
+
+	/**
+	 * Names of generated subprograms by their text (without name).
+	 */
+	private final Map<String,String> subprogramNames = new LinkedHashMap<>();
+
+	/**
+	 * Definitions of generated subprograms, each subprogram follows subprograms it calls.
+	 */
+	private final StringBuilder subprogramDefinitions = new StringBuilder();
+
+	/**
+	 * Currently generated subprogram, null when statements of block are generated.
+	 */
+	private Subprogram subprogram;
+
+	/**
+	 * Batch signature of tree, null for ordinary procedure or function.
+	 */
+	private final BatchCall.BatchSignature batch;
+
+	/**
+	 * Group signature of tree, null for ordinary procedure or function.
+	 */
+	private final CallGroup.GroupSignature group;
+
+	/**
+	 * Prefix of package variables holding columns of IN parameters (see {@link #generateStatefulProcedure(TransferObjectTree, String, String)}),
+	 * null if columns are passed as parameters or binds.
+	 */
+	private String statePrefix;
+
+	private BlockGenerator(TransferObjectTree tree, String procedureName, Style style, boolean subprograms, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded) {
+		this(tree, procedureName, style, subprograms, plan, encoded, Collections.<Pointers,PointersCodec.Encoded>emptyMap(), Collections.<Deletions,DeletionsBitmap>emptyMap());
+	}
+
+	private BlockGenerator(TransferObjectTree tree, String procedureName, Style style, boolean subprograms, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded,
+			Map<Pointers,PointersCodec.Encoded> encodedPointers, Map<Deletions,DeletionsBitmap> bitmaps) {
+		this.tree = tree;
+		this.procedureName = procedureName;
+		this.style = style;
+		this.subprograms = subprograms;
+		for (ColumnPacking.PackedColumn column : plan.getColumns()) {
+			for (PrimitiveCollection member : column.getMembers()) {
+				packedColumns.put(member, column);
+			}
+		}
+		this.encoded = encoded;
+		this.encodedPointers = encodedPointers;
+		this.bitmaps = bitmaps;
+		TypeNode root = tree.getTypeTreeRoot();
+		this.batch = root.getType() instanceof BatchCall.BatchSignature ? (BatchCall.BatchSignature)root.getType() : null;
+		this.group = root.getType() instanceof CallGroup.GroupSignature ? (CallGroup.GroupSignature)root.getType() : null;
+		for (TypeNode node : root.getChildren().values()) {
+			transferObjects.put(node, Lists.<TransferObject>newArrayList());
+		}
+		for (TransferObject to : tree.getRoot().getChildren()) {
+			TypeNode node = to.getTypeNode();
+			while (node.getParent() != root) {
+				node = node.getParent();
+			}
+			collect(to, transferObjects.get(node));
+		}
+	}
+
+	private static void collect(TransferObject to, List<TransferObject> result) {
+		result.add(to);
+		for (TransferObject child : to.getChildren()) {
+			collect(child, result);
+		}
+	}
+
+	/**
+	 * Generates block for tree without packed and encoded columns.
+	 * @param tree
+	 * @return cached block
+	 */
+	static Block generate(TransferObjectTree tree) {
+		return generate(tree, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap());
+	}
+
+	/**
+	 * Generates block in {@link Style#BULK bulk} style.
+	 * @param tree marshalled tree (shape of tree matters, not data)
+	 * @param plan packed columns
+	 * @param encoded encoded columns, columns which are not present are bound as they are
+	 * @return cached block
+	 */
+	static Block generate(TransferObjectTree tree, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded) {
+		return generate(tree, Style.BULK, plan, encoded);
+	}
+
+	/**
+	 * @param tree marshalled tree (shape of tree matters, not data)
+	 * @param style
+	 * @param plan packed columns
+	 * @param encoded encoded columns, columns which are not present are bound as they are
+	 * @return cached block
+	 */
+	static Block generate(TransferObjectTree tree, Style style, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded) {
+		return generate(tree, style, true, plan, encoded);
+	}
+
+	/**
+	 * @param tree marshalled tree (shape of tree matters, not data)
+	 * @param style
+	 * @param subprograms true if reused types are built and decomposed by {@link #subprogram(TypeNode, boolean, boolean) subprograms},
+	 * false if code building them is inlined at every position
+	 * @param plan packed columns
+	 * @param encoded encoded columns, columns which are not present are bound as they are
+	 * @return cached block
+	 */
+	static Block generate(TransferObjectTree tree, Style style, boolean subprograms, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded) {
+		return generate(tree, style, subprograms, plan, encoded, Collections.<Pointers,PointersCodec.Encoded>emptyMap(), Collections.<Deletions,DeletionsBitmap>emptyMap());
+	}
+
+	/**
+	 * Generates block in {@link Style#BULK bulk} style.
+	 * @param tree marshalled tree (shape of tree matters, not data)
+	 * @param plan packed columns
+	 * @param encoded encoded columns, columns which are not present are bound as they are
+	 * @param encodedPointers encoded pointers, pointers which are not present or are encoded {@link PointersCodec.Encoding#PLAIN plainly} are bound as they are
+	 * @param bitmaps deletions bound in wire format of {@link DeletionsBitmap}, deletions which are not present are bound as they are
+	 * @return cached block
+	 */
+	static Block generate(TransferObjectTree tree, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded, Map<Pointers,PointersCodec.Encoded> encodedPointers,
+			Map<Deletions,DeletionsBitmap> bitmaps) {
+		return generate(tree, Style.BULK, true, plan, encoded, encodedPointers, bitmaps);
+	}
+
+	/**
+	 * @param tree marshalled tree (shape of tree matters, not data)
+	 * @param style
+	 * @param subprograms true if reused types are built and decomposed by {@link #subprogram(TypeNode, boolean, boolean) subprograms},
+	 * false if code building them is inlined at every position
+	 * @param plan packed columns
+	 * @param encoded encoded columns, columns which are not present are bound as they are
+	 * @param encodedPointers encoded pointers, pointers which are not present or are encoded {@link PointersCodec.Encoding#PLAIN plainly} are bound as they are
+	 * @param bitmaps deletions bound in wire format of {@link DeletionsBitmap}, deletions which are not present are bound as they are
+	 * @return cached block
+	 */
+	static Block generate(TransferObjectTree tree, Style style, boolean subprograms, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded,
+			Map<Pointers,PointersCodec.Encoded> encodedPointers, Map<Deletions,DeletionsBitmap> bitmaps) {
+		AbstractSignature signature = (AbstractSignature)tree.getTypeTreeRoot().getType();
+		Equivalence.Wrapper<AbstractSignature> key = Equivalence.identity().wrap(signature);
+		ConcurrentMap<String,Block> blocks = CACHE.get(key);
+		if (blocks == null) {
+			ConcurrentMap<String,Block> newBlocks = CacheBuilder.newBuilder().maximumSize(CACHED_SHAPES).<String,Block>build().asMap();
+			blocks = CACHE.putIfAbsent(key, newBlocks);
+			if (blocks == null) {
+				blocks = newBlocks;
+			}
+		}
+		String shape = style + (subprograms ? "" : "-inline") + ":" + shape(tree, plan, encoded, encodedPointers, bitmaps);
+		Block result = blocks.get(shape);
+		if (result == null) {
+			Block newResult = new BlockGenerator(tree, null, style, subprograms, plan, encoded, encodedPointers, bitmaps).generate();
+			result = blocks.putIfAbsent(shape, newResult);
+			if (result == null) {
+				result = newResult;
+				FINGERPRINTS.record(StatementFingerprints.key(signature, shape), result.getText());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Generates procedure which does the same as block generated by {@link #generate(TransferObjectTree)},
+	 * columns are passed as parameters instead of binds.
+	 * Procedure is intended to be installed in database once, hence it cannot depend on shape of particular data:
+	 * transfer objects must not be elided, packed nor encoded.
+	 * @param tree tree of signature (data are not needed)
+	 * @param procedureName
+	 * @return procedure definition (without trailing semicolon and slash) and its parameters
+	 */
+	static Block generateProcedure(TransferObjectTree tree, String procedureName) {
+		checkArgument(!shape(tree, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap()).contains("-;"),
+				"Procedure cannot be generated for tree with elided transfer objects.");
+		return new BlockGenerator(tree, procedureName, Style.BULK, true, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap()).generate();
+	}
+
+	/**
+	 * Generates procedure which does the same as procedure generated by {@link #generateProcedure(TransferObjectTree, String)},
+	 * but columns of IN parameters are read from package variables filled by chunks
+	 * (see {@link #generateChunkProcedure(TransferObjectTree, String, String)}) instead of parameters.
+	 * Procedure has only OUT parameters (columns of OUT and IN OUT parameters) and resets package variables after call.
+	 * @param tree tree of signature (data are not needed)
+	 * @param procedureName
+	 * @param statePrefix prefix of names of package variables
+	 * @return procedure definition (without trailing semicolon and slash) and its parameters
+	 */
+	static Block generateStatefulProcedure(TransferObjectTree tree, String procedureName, String statePrefix) {
+		checkArgument(!shape(tree, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap()).contains("-;"),
+				"Procedure cannot be generated for tree with elided transfer objects.");
+		BlockGenerator generator = new BlockGenerator(tree, procedureName, Style.BULK, true, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap());
+		generator.statePrefix = statePrefix;
+		return generator.generate();
+	}
+
+	/**
+	 * @param tree tree of signature (data are not needed)
+	 * @param statePrefix prefix of names of package variables
+	 * @return declarations (without indentation) of package variables holding columns of IN parameters, collections are initialized empty
+	 */
+	static List<String> generateStateDeclarations(TransferObjectTree tree, String statePrefix) {
+		BlockGenerator generator = new BlockGenerator(tree, null, Style.BULK, false, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap());
+		List<String> result = Lists.newArrayList();
+		for (Map.Entry<TypeNode,List<TransferObject>> e : generator.transferObjects.entrySet()) {
+			if (generator.isIn(e.getKey())) {
+				for (TransferObject to : e.getValue()) {
+					result.add(String.format("%s%s %s%s;", statePrefix, c(to), sqlType(to), isColumn(to) ? String.format(" := %s()", sqlType(to)) : ""));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Generates procedure which stores one chunk of every column of IN parameters into package variables
+	 * (see {@link ChunkedTransfer}). For every transfer object, procedure takes offset (<code>o</code> + column) and chunk.
+	 * Chunk of column is written at given 0-based offset, package variable is emptied when offset is 0,
+	 * scalar is stored when offset is 0. Null offset means that no chunk of transfer object is sent.
+	 * </p>
+	 * <p>
+	 * Values of parameters are computed by {@link #chunkValues(TransferObjectTree, List)}.
+	 * </p>
+	 * @param tree tree of signature (data are not needed)
+	 * @param procedureName
+	 * @param statePrefix prefix of names of package variables
+	 * @return procedure definition (without trailing semicolon and slash) and its parameters
+	 */
+	static Block generateChunkProcedure(TransferObjectTree tree, String procedureName, String statePrefix) {
+		BlockGenerator generator = new BlockGenerator(tree, procedureName, Style.BULK, false, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap());
+		for (Map.Entry<TypeNode,List<TransferObject>> e : generator.transferObjects.entrySet()) {
+			if (generator.isIn(e.getKey())) {
+				for (TransferObject to : e.getValue()) {
+					generator.appendChunk(to, statePrefix + c(to));
+				}
+			}
+		}
+		return new Block(generator.procedureText(), generator.binds);
+	}
+
+	private void appendChunk(TransferObject to, String state) {
+		String offset = "o" + c(to);
+		binds.add(new Bind(offset, "pls_integer", ParameterMode.IN));
+		binds.add(new Bind(c(to), sqlType(to), ParameterMode.IN));
+		if (!isColumn(to)) {
+			line("if %s = 0 then", offset);
+			line("%s%s := %s;", INDENT, state, c(to));
+			line("end if;");
+			return;
+		}
+		line("if %s is not null then", offset);
+		indent++;
+		line("if %s = 0 then", offset);
+		line("%s%s := %s();", INDENT, state, sqlType(to));
+		line("end if;");
+		line("%s.extend(%s + %s.count - %s.count);", state, offset, c(to), state);
+		line("for i in 1 .. %s.count loop", c(to));
+		line("%s%s(%s + i) := %s(i);", INDENT, state, offset, c(to));
+		line("end loop;");
+		indent--;
+		line("end if;");
+	}
+
+	/**
+	 * Computes values of parameters of procedure generated by {@link #generateChunkProcedure(TransferObjectTree, String, String)}.
+	 * @param tree tree of signature (data are not needed)
+	 * @param chunks chunks sent in one round-trip
+	 * @return values of parameters in order of declaration, collections are represented by {@link List}
+	 */
+	static List<Object> chunkValues(TransferObjectTree tree, List<ChunkedTransfer.Chunk> chunks) {
+		Map<String,ChunkedTransfer.Chunk> chunksById = Maps.newHashMap();
+		for (ChunkedTransfer.Chunk chunk : chunks) {
+			chunksById.put(chunk.getId(), chunk);
+		}
+		BlockGenerator generator = new BlockGenerator(tree, null, Style.BULK, false, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap());
+		List<Object> result = Lists.newArrayList();
+		for (Map.Entry<TypeNode,List<TransferObject>> e : generator.transferObjects.entrySet()) {
+			if (generator.isIn(e.getKey())) {
+				for (TransferObject to : e.getValue()) {
+					ChunkedTransfer.Chunk chunk = chunksById.get(to.getId());
+					if (chunk == null) {
+						result.add(null);
+						result.add(null);
+						continue;
+					}
+					List<Object> data = chunk.getData() instanceof int[] ? Lists.<Object>newArrayList(Ints.asList((int[])chunk.getData())) : Arrays.asList((Object[])chunk.getData());
+					if (to instanceof PrimitiveHolder && to.getTypeNode().getType() instanceof BooleanType) {
+						data = toNumbers(data);
+					}
+					checkLength(c(to), sqlType(to), data);
+					result.add(chunk.getOffset());
+					result.add(isColumn(to) ? data : data.get(0));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return fingerprints of blocks recently generated by {@link #generate(TransferObjectTree, Style, ColumnPacking.Plan, Map)},
+	 * keyed by {@link StatementFingerprints#key(AbstractSignature, String) signature} and shape,
+	 * registry is bounded like cache of blocks
+	 */
+	static StatementFingerprints fingerprints() {
+		return FINGERPRINTS;
+	}
+
+	/**
+	 * @return number of cached blocks
+	 */
+	static int cacheSize() {
+		int result = 0;
+		for (Map<String,Block> blocks : CACHE.values()) {
+			result += blocks.size();
+		}
+		return result;
+	}
+
+	/**
+	 * @return cache key describing everything what text of block depends on besides signature
+	 */
+	private static String shape(TransferObjectTree tree, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded) {
+		return shape(tree, plan, encoded, Collections.<Pointers,PointersCodec.Encoded>emptyMap(), Collections.<Deletions,DeletionsBitmap>emptyMap());
+	}
+
+	private static String shape(TransferObjectTree tree, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded, Map<Pointers,PointersCodec.Encoded> encodedPointers,
+			Map<Deletions,DeletionsBitmap> bitmaps) {
+		StringBuilder result = new StringBuilder();
+		shape(tree.getRoot(), encoded, encodedPointers, bitmaps, result);
+		for (ColumnPacking.PackedColumn column : plan.getColumns()) {
+			result.append('|').append(column);
+		}
+		return result.toString();
+	}
+
+	private static void shape(TransferObject to, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded, Map<Pointers,PointersCodec.Encoded> encodedPointers,
+			Map<Deletions,DeletionsBitmap> bitmaps, StringBuilder result) {
+		if (to.isElided()) {
+			result.append(to.getId()).append("-;");
+		}
+		ColumnCodec.Encoded e = encoded.get(to);
+		if (e != null && e.getEncoding() != ColumnCodec.Encoding.PLAIN) {
+			result.append(to.getId()).append('=').append(e.getEncoding()).append(';');
+		}
+		PointersCodec.Encoded p = encodedPointers.get(to);
+		if (p != null && p.getEncoding() != PointersCodec.Encoding.PLAIN) {
+			result.append(to.getId()).append('=').append(p.getEncoding()).append(';');
+		}
+		if (bitmaps.containsKey(to)) {
+			result.append(to.getId()).append("=BITMAP;");
+		}
+		for (TransferObject child : to.getChildren()) {
+			shape(child, encoded, encodedPointers, bitmaps, result);
+		}
+	}
+
+	/**
+	 * Computes values of IN binds of block generated for given tree.
+	 * @param tree marshalled tree
+	 * @param plan packed columns
+	 * @param encoded encoded columns
+	 * @return values of IN binds by {@link Bind#getName() name}, collections are represented by {@link List}
+	 * @throws IllegalArgumentException if character value of column is longer than {@link ColumnKind#MAX_VARCHAR2_LENGTH}
+	 */
+	static Map<String,Object> bindValues(TransferObjectTree tree, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded) {
+		return bindValues(tree, plan, encoded, Collections.<Pointers,PointersCodec.Encoded>emptyMap(), Collections.<Deletions,DeletionsBitmap>emptyMap());
+	}
+
+	/**
+	 * Computes values of IN binds of block generated for given tree.
+	 * @param tree marshalled tree
+	 * @param plan packed columns
+	 * @param encoded encoded columns
+	 * @param encodedPointers encoded pointers
+	 * @param bitmaps deletions bound in wire format of {@link DeletionsBitmap}
+	 * @return values of IN binds by {@link Bind#getName() name}, collections are represented by {@link List} or <code>int[]</code>, RAW by <code>byte[]</code>
+	 * @throws IllegalArgumentException if character value of column is longer than {@link ColumnKind#MAX_VARCHAR2_LENGTH}
+	 */
+	static Map<String,Object> bindValues(TransferObjectTree tree, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded,
+			Map<Pointers,PointersCodec.Encoded> encodedPointers, Map<Deletions,DeletionsBitmap> bitmaps) {
+		return bindValues(null, tree, plan, encoded, encodedPointers, bitmaps);
+	}
+
+	/**
+	 * Computes values of IN binds of given block, which need not be generated for given tree (e.g. call of wrapper procedure).
+	 * Integer columns containing nulls are bound as primitive array only if block takes their companion column of nulls
+	 * (wrapper procedures do not, their IN parameters cannot be modified).
+	 * @param block block whose binds are computed, null for block generated for given tree
+	 * @param tree marshalled tree
+	 * @param plan packed columns
+	 * @param encoded encoded columns
+	 * @param encodedPointers encoded pointers
+	 * @param bitmaps deletions bound in wire format of {@link DeletionsBitmap}
+	 * @return values of IN binds by {@link Bind#getName() name}, collections are represented by {@link List} or <code>int[]</code>, RAW by <code>byte[]</code>
+	 * @throws IllegalArgumentException if character value of column is longer than {@link ColumnKind#MAX_VARCHAR2_LENGTH}
+	 */
+	static Map<String,Object> bindValues(Block block, TransferObjectTree tree, ColumnPacking.Plan plan, Map<PrimitiveCollection,ColumnCodec.Encoded> encoded,
+			Map<Pointers,PointersCodec.Encoded> encodedPointers, Map<Deletions,DeletionsBitmap> bitmaps) {
+		final Map<String,Object> result = new LinkedHashMap<>();
+		BlockGenerator generator = new BlockGenerator(tree, null, Style.BULK, false, plan, encoded, encodedPointers, bitmaps);
+		if (block != null) {
+			generator.inBindNames = Sets.newHashSet();
+			for (Bind bind : block.getBinds()) {
+				if (bind.isIn()) {
+					generator.inBindNames.add(bind.getName());
+				}
+			}
+		}
+		for (Map.Entry<TypeNode,List<TransferObject>> e : generator.transferObjects.entrySet()) {
+			if (generator.isIn(e.getKey())) {
+				for (TransferObject to : e.getValue()) {
+					generator.inBinds(to, new InBindConsumer() {
+						@Override
+						public void accept(String name, String sqlType, Object value) {
+							checkLength(name, sqlType, value);
+							result.put(name, value);
+						}
+					});
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Checks that character values fit into elements of {@link ColumnKind#VARCHAR2} collection.
+	 * @param name name of bind
+	 * @param sqlType
+	 * @param value collection (represented by {@link List}) or scalar
+	 */
+	private static void checkLength(String name, String sqlType, Object value) {
+		if (!sqlType.equals(ColumnKind.VARCHAR2.getCollectionType()) && !sqlType.equals(ColumnKind.VARCHAR2.getScalarType())) {
+			return;
+		}
+		for (Object element : value instanceof List ? (List<?>)value : Collections.singletonList(value)) {
+			checkArgument(!(element instanceof String) || ((String)element).length() <= ColumnKind.MAX_VARCHAR2_LENGTH,
+					"Bind %s contains value of length %s, at most %s characters can be transferred.", name, ((String)element).length(), ColumnKind.MAX_VARCHAR2_LENGTH);
+		}
+	}
+
+	/**
+	 * Fills transfer objects of OUT and IN OUT parameters and return value from values of OUT binds.
+	 * @param tree tree not containing data of OUT parameters yet
+	 * @param values values of OUT binds by {@link Bind#getName() name}, collections are represented by {@link List} or <code>int[]</code>
+	 * (integer columns, nulls are then given by companion column), RAW by <code>byte[]</code>
+	 */
+	static void readOutValues(TransferObjectTree tree, Map<String,?> values) {
+		BlockGenerator generator = new BlockGenerator(tree, null, Style.BULK, false, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap());
+		for (Map.Entry<TypeNode,List<TransferObject>> e : generator.transferObjects.entrySet()) {
+			if (generator.isOut(e.getKey())) {
+				for (TransferObject to : e.getValue()) {
+					Object value = values.get(c(to));
+					if (to instanceof Pointers) {
+						for (Object pointer : (List<?>)value) {
+							((Pointers)to).add(((Number)pointer).intValue());
+						}
+					} else if (to instanceof Deletions) {
+						for (Object index : (List<?>)value) {
+							((Deletions)to).add(((Number)index).intValue());
+						}
+					} else if (to instanceof Indexes) {
+						Indexes indexes = (Indexes)to;
+						boolean integer = indexes.getIndexType() instanceof PlsIntegerType || indexes.getIndexType() instanceof BinaryIntegerType;
+						for (Object index : (List<?>)value) {
+							indexes.add(integer && index != null ? (Object)((Number)index).intValue() : index);
+						}
+						// database returns integer keys in ascending order, character keys in order of NLS_SORT which may differ from natural order
+						indexes.setSorted(integer || indexes.isAscending((Pointers)to.getParent()));
+					} else if (to instanceof PrimitiveCollection) {
+						PrimitiveCollection column = (PrimitiveCollection)to;
+						byte[] nullBitmap = (byte[])values.get(c(column.getNullsId()));
+						if (value instanceof int[]) {
+							column.addAll((int[])value, nullBitmap);
+						} else {
+							BitSet nulls = nullBitmap == null ? new BitSet() : BitSet.valueOf(nullBitmap);
+							List<?> elements = (List<?>)value;
+							for (int i = 0; i < elements.size(); i++) {
+								Object element = nulls.get(i) ? null : elements.get(i);
+								column.add(column.getType() instanceof BooleanType ? toBoolean(element) : element);
+							}
+						}
+					} else if (to instanceof JdbcTransferrableCollection) {
+						((JdbcTransferrableCollection)to).addAll((List<?>)value);
+					} else if (to instanceof JdbcTransferrableRecord) {
+						((JdbcTransferrableRecord)to).setData(value);
+					} else if (to instanceof PrimitiveScalar) {
+						PrimitiveScalar scalar = (PrimitiveScalar)to;
+						scalar.setData(scalar.getType() instanceof BooleanType ? toBoolean(value) : value);
+					}
+				}
+			}
+		}
+	}
+
+	private boolean isIn(TypeNode parameterNode) {
+		ParameterMode mode = mode(parameterNode);
+		return mode == ParameterMode.IN || mode == ParameterMode.INOUT;
+	}
+
+	private boolean isOut(TypeNode parameterNode) {
+		ParameterMode mode = mode(parameterNode);
+		return mode == ParameterMode.OUT || mode == ParameterMode.INOUT;
+	}
+
+	private ParameterMode mode(TypeNode parameterNode) {
+		for (Map.Entry<String,TypeNode> e : tree.getTypeTreeRoot().getChildren().entrySet()) {
+			if (e.getValue() == parameterNode) {
+				if (FunctionSignature.RETURN_LABEL.equals(e.getKey())) {
+					return ParameterMode.OUT;
+				}
+				return ((AbstractSignature)tree.getTypeTreeRoot().getType()).getParameters().get(e.getKey()).getParameterMode();
+			}
+		}
+		throw new IllegalArgumentException(parameterNode.id());
+	}
+
+	private Block generate() {
+		TypeNode root = tree.getTypeTreeRoot();
+		for (Map.Entry<TypeNode,List<TransferObject>> e : transferObjects.entrySet()) {
+			if (procedureName != null && statePrefix != null) {
+				for (TransferObject to : e.getValue()) {
+					if (isOut(e.getKey())) {
+						binds.add(new Bind(c(to), sqlType(to), ParameterMode.OUT));
+						if (isIntTyped(to)) {
+							binds.add(new Bind(c(((PrimitiveCollection)to).getNullsId()), PointersCodec.RAW_TYPE, ParameterMode.OUT));
+						}
+						if (isIn(e.getKey())) {
+							line("%s := %s%s;", c(to), statePrefix, c(to));
+						}
+					} else {
+						Utils.appendf(declarations, "%s%s %s := %s%s;%n", INDENT, c(to), sqlType(to), statePrefix, c(to));
+					}
+				}
+			} else if (procedureName != null) {
+				for (TransferObject to : e.getValue()) {
+					binds.add(new Bind(c(to), sqlType(to), mode(e.getKey())));
+					if (isOut(e.getKey()) && isIntTyped(to)) {
+						binds.add(new Bind(c(((PrimitiveCollection)to).getNullsId()), PointersCodec.RAW_TYPE, ParameterMode.OUT));
+					}
+				}
+			} else if (isIn(e.getKey())) {
+				for (TransferObject to : e.getValue()) {
+					inBinds(to, new InBindConsumer() {
+						@Override
+						public void accept(String name, String sqlType, Object value) {
+							Utils.appendf(declarations, "%s%s %s := ?;%n", INDENT, name, sqlType);
+							binds.add(new Bind(name, sqlType, ParameterMode.IN));
+						}
+					});
+				}
+			}
+		}
+		for (Map.Entry<TypeNode,List<TransferObject>> e : transferObjects.entrySet()) {
+			for (TransferObject to : e.getValue()) {
+				if (procedureName == null && (!isIn(e.getKey()) || isLocal(to))) {
+					Utils.appendf(declarations, "%s%s %s;%n", INDENT, c(to), sqlType(to));
+				}
+				if (procedureName == null && isOut(e.getKey()) && isIntTyped(to) && (!isIn(e.getKey()) || !hasNullsCompanion(to))) {
+					Utils.appendf(declarations, "%s%s %s;%n", INDENT, c(((PrimitiveCollection)to).getNullsId()), PointersCodec.RAW_TYPE);
+				}
+			}
+		}
+		for (TypeNode node : root.getChildren().values()) {
+			if (batch != null) {
+				Utils.appendf(declarations, "%stype %s is table of %s;%n", INDENT, typeName(node),
+						node.getChildren().get(NestedTableType.ELEMENT_LABEL).getType().getName());
+			}
+			Utils.appendf(declarations, "%s%s %s;%n", INDENT, v(node), typeName(node));
+		}
+		for (Map.Entry<TypeNode,List<TransferObject>> e : transferObjects.entrySet()) {
+			if (isIn(e.getKey())) {
+				materialize(e.getValue());
+			}
+		}
+		if (subprograms) {
+			Multiset<AbstractType> built = HashMultiset.create();
+			Multiset<AbstractType> decomposed = HashMultiset.create();
+			for (TypeNode node : root.getChildren().values()) {
+				if (isIn(node)) {
+					countTypes(node, built);
+				}
+				if (isOut(node)) {
+					countTypes(node, decomposed);
+				}
+			}
+			for (Multiset.Entry<AbstractType> e : built.entrySet()) {
+				if (e.getCount() > 1) {
+					reusedBuiltTypes.add(e.getElement());
+				}
+			}
+			for (Multiset.Entry<AbstractType> e : decomposed.entrySet()) {
+				if (e.getCount() > 1) {
+					reusedDecomposedTypes.add(e.getElement());
+				}
+			}
+		}
+		for (TypeNode node : root.getChildren().values()) {
+			if (isIn(node)) {
+				node.getType().accept(new Build(), node, v(node), null);
+			}
+		}
+		appendCall();
+		for (Map.Entry<TypeNode,List<TransferObject>> e : transferObjects.entrySet()) {
+			if (isOut(e.getKey())) {
+				decompose(e.getKey(), e.getValue());
+				for (TransferObject to : e.getValue()) {
+					if (isIntTyped(to)) {
+						appendNullsEncode((PrimitiveCollection)to);
+					}
+				}
+			}
+		}
+		if (procedureName != null) {
+			if (statePrefix != null) {
+				for (Map.Entry<TypeNode,List<TransferObject>> e : transferObjects.entrySet()) {
+					if (isIn(e.getKey())) {
+						for (TransferObject to : e.getValue()) {
+							line("%s%s := %s;", statePrefix, c(to), isColumn(to) ? sqlType(to) + "()" : "null");
+						}
+					}
+				}
+			}
+			return new Block(procedureText(), binds);
+		}
+		for (Map.Entry<TypeNode,List<TransferObject>> e : transferObjects.entrySet()) {
+			if (isOut(e.getKey())) {
+				for (TransferObject to : e.getValue()) {
+					line("? := %s;", c(to));
+					binds.add(new Bind(c(to), sqlType(to), ParameterMode.OUT));
+					if (isIntTyped(to)) {
+						String nulls = c(((PrimitiveCollection)to).getNullsId());
+						line("? := %s;", nulls);
+						binds.add(new Bind(nulls, PointersCodec.RAW_TYPE, ParameterMode.OUT));
+					}
+				}
+			}
+		}
+		StringBuilder text = new StringBuilder();
+		Utils.appendf(text, "declare%n");
+		text.append(declarations);
+		for (Map.Entry<String,String> e : auxiliaries.entrySet()) {
+			Utils.appendf(text, "%s%s %s;%n", INDENT, e.getKey(), e.getValue());
+		}
+		text.append(subprogramDefinitions);
+		Utils.appendf(text, "begin%n");
+		text.append(body);
+		Utils.appendf(text, "end;%n");
+		return new Block(text.toString(), binds);
+	}
+
+	private String procedureText() {
+		StringBuilder text = new StringBuilder();
+		Utils.appendf(text, "procedure %s", procedureName);
+		for (int i = 0; i < binds.size(); i++) {
+			Bind bind = binds.get(i);
+			Utils.appendf(text, "%s%n%s%s %s %s", i == 0 ? "(" : ",", INDENT, bind.getName(), modeKeywords(bind.getMode()), unconstrained(bind.getSqlType()));
+		}
+		Utils.appendf(text, "%s is%n", binds.isEmpty() ? "" : String.format("%n)"));
+		text.append(declarations);
+		for (Map.Entry<String,String> e : auxiliaries.entrySet()) {
+			Utils.appendf(text, "%s%s %s;%n", INDENT, e.getKey(), e.getValue());
+		}
+		text.append(subprogramDefinitions);
+		Utils.appendf(text, "begin%n");
+		text.append(body);
+		Utils.appendf(text, "end %s", procedureName);
+		return text.toString();
+	}
+
+	/**
+	 * Counts types of records and collections at positions of subtree of parameter
+	 * (values transferred as whole by JDBC are assigned by single statement and are not counted).
+	 */
+	private void countTypes(TypeNode node, Multiset<AbstractType> result) {
+		AbstractType type = node.getType();
+		if (type instanceof RecordType && tree.getTransferObject(node, JdbcTransferrableRecord.class) == null
+				|| type instanceof VarrayType || type instanceof NestedTableType || type instanceof IndexByTableType) {
+			result.add(type);
+		}
+		if (tree.getTransferObject(node, JdbcTransferrableRecord.class) == null && tree.getTransferObject(node, JdbcTransferrableCollection.class) == null) {
+			for (TypeNode child : node.getChildren().values()) {
+				countTypes(child, result);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Generates local function which builds value of type of given node from columns and returns it
+	 * (<code>b</code> + id), or local procedure which decomposes value of type of given node into columns (<code>d</code> + id).
+	 * Function takes position in columns and columns of all transfer objects of subtree as arguments,
+	 * procedure takes decomposed value and columns and counters of entries of all transfer objects of subtree
+	 * as IN OUT arguments. Names of variables in subprogram are derived from ids relative to given node
+	 * (<code>c</code> + <code>r</code> + rest of id etc.), hence text of subprogram generated for other position of the same type
+	 * is identical and subprogram is shared. Subprogram is named after the first node it is generated for.
+	 * </p>
+	 * <p>
+	 * Collections are passed by reference (IN parameters and <code>nocopy</code> IN OUT parameters),
+	 * only value returned by function is copied.
+	 * </p>
+	 * @param node
+	 * @param build true for function building value, false for procedure decomposing it
+	 * @param positioned whether function takes position, always true for collection, for record only if it is inside collection
+	 * @return subprogram with name and transfer objects whose columns and counters are to be passed as arguments
+	 */
+	private Subprogram subprogram(TypeNode node, boolean build, boolean positioned) {
+		Subprogram outer = subprogram;
+		StringBuilder outerBody = body;
+		Map<String,String> outerAuxiliaries = auxiliaries;
+		int outerIndent = indent;
+		Subprogram result = new Subprogram(node);
+		subprogram = result;
+		body = new StringBuilder();
+		auxiliaries = new LinkedHashMap<>();
+		indent = 2;
+		String typeName = typeName(node);
+		if (build) {
+			node.getType().accept(new Build(), node, "r", positioned ? "p" : null);
+		} else {
+			node.getType().accept(new Decompose(), node, "s");
+		}
+		List<String> parameters = Lists.newArrayList();
+		if (build && positioned) {
+			parameters.add("p pls_integer");
+		}
+		if (!build) {
+			parameters.add("s " + typeName);
+		}
+		for (TransferObject to : result.parameters) {
+			parameters.add(String.format("%s %s%s", local("c", to.getId()), build ? "" : "in out nocopy ", unconstrained(sqlType(to))));
+		}
+		for (TransferObject to : result.counters) {
+			parameters.add(String.format("%s in out pls_integer", local("n", to.getId())));
+		}
+		StringBuilder text = new StringBuilder();
+		Utils.appendf(text, "(%n%s%s%s%n%s)%s is%n", INDENT, INDENT, String.join(String.format(",%n%s%s", INDENT, INDENT), parameters), INDENT,
+				build ? " return " + typeName : "");
+		if (build) {
+			Utils.appendf(text, "%s%sr %s;%n", INDENT, INDENT, typeName);
+		}
+		for (Map.Entry<String,String> e : auxiliaries.entrySet()) {
+			Utils.appendf(text, "%s%s%s %s;%n", INDENT, INDENT, e.getKey(), e.getValue());
+		}
+		Utils.appendf(text, "%sbegin%n", INDENT);
+		text.append(body);
+		if (build) {
+			Utils.appendf(text, "%s%sreturn r;%n", INDENT, INDENT);
+		}
+		Utils.appendf(text, "%send;%n", INDENT);
+		subprogram = outer;
+		body = outerBody;
+		auxiliaries = outerAuxiliaries;
+		indent = outerIndent;
+		String key = (build ? "function" : "procedure") + text;
+		result.name = subprogramNames.get(key);
+		if (result.name == null) {
+			result.name = (build ? "b" : "d") + node.id();
+			subprogramNames.put(key, result.name);
+			Utils.appendf(subprogramDefinitions, "%s%s %s%s", INDENT, build ? "function" : "procedure", result.name, text);
+		}
+		return result;
+	}
+
+	/**
+	 * @param called subprogram
+	 * @return arguments of call of subprogram in current context, following position or decomposed value
+	 */
+	private List<String> arguments(Subprogram called) {
+		List<String> result = Lists.newArrayList();
+		for (TransferObject to : called.parameters) {
+			result.add(column(to));
+		}
+		for (TransferObject to : called.counters) {
+			result.add(counter(to));
+		}
+		return result;
+	}
+
+	/**
+	 * @param type
+	 * @return type without length, precision or scale (which are not allowed for types of parameters)
+	 */
+	private static String unconstrained(String type) {
+		return type.replaceFirst("\\(.*\\)$", "");
+	}
+
+	private static String modeKeywords(ParameterMode mode) {
+		switch (mode) {
+			case IN: return "in";
+			case OUT: return "out";
+			case INOUT: return "in out";
+			default: throw new IllegalStateException(mode.toString());
+		}
+	}
+
+	/**
+	 * @param to transfer object of IN parameter
+	 * @return true if variable of transfer object is not initialized by IN bind
+	 */
+	private boolean isLocal(TransferObject to) {
+		if (to.isElided()) {
+			return true;
+		}
+		ColumnCodec.Encoded e = encoded.get(to);
+		return e != null && e.getEncoding() != ColumnCodec.Encoding.PLAIN || isEncodedPointers(to) || bitmaps.containsKey(to);
+	}
+
+	/**
+	 * @param to
+	 * @return true if transfer object is pointers bound as RAW
+	 */
+	private boolean isEncodedPointers(TransferObject to) {
+		PointersCodec.Encoded p = encodedPointers.get(to);
+		return p != null && p.getEncoding() != PointersCodec.Encoding.PLAIN;
+	}
+
+	/**
+	 * @param to
+	 * @return true if transfer object is column of integer type, which is stored unboxed (see {@link PrimitiveCollection#isIntType(AbstractPrimitiveType)})
+	 * and whose nulls are returned in companion column when it is OUT column
+	 */
+	private static boolean isIntTyped(TransferObject to) {
+		return to instanceof PrimitiveCollection && PrimitiveCollection.isIntType(((PrimitiveCollection)to).getType());
+	}
+
+	/**
+	 * @param column
+	 * @return null bitmap of unboxed integer column which fits into RAW, null if column contains no null or it is not unboxed
+	 */
+	private static byte[] companionBitmap(PrimitiveCollection column) {
+		if (!column.isIntColumn()) {
+			return null;
+		}
+		byte[] result = column.getNullBitmap();
+		return result != null && result.length <= PointersCodec.MAX_RAW_LENGTH ? result : null;
+	}
+
+	/**
+	 * Companion column is declared for every integer column bound as it is, regardless of data, hence text of block does not depend on nullity.
+	 * It is bound as null if column contains no null.
+	 * @param to transfer object of IN parameter
+	 * @return true if integer column takes companion column of nulls
+	 * (false if it is elided or encoded, or if block is procedure or call of procedure)
+	 */
+	private boolean hasNullsCompanion(TransferObject to) {
+		if (procedureName != null || !isIntTyped(to) || to.isElided()) {
+			return false;
+		}
+		ColumnCodec.Encoded e = encoded.get(to);
+		if (e != null && e.getEncoding() != ColumnCodec.Encoding.PLAIN) {
+			return false;
+		}
+		return inBindNames == null || inBindNames.contains(c(((PrimitiveCollection)to).getNullsId()));
+	}
+
+	/**
+	 * Appends code restoring nulls of IN integer column from its companion column (little-endian bitmap, null if there is no null).
+	 */
+	private void appendNullsDecode(PrimitiveCollection column) {
+		String nulls = c(column.getNullsId());
+		auxiliaries.putAll(PointersCodec.AUXILIARIES);
+		line("for i in 0 .. nvl(utl_raw.length(%s), 0) - 1 loop", nulls);
+		indent++;
+		line("rb := utl_raw.cast_to_binary_integer(utl_raw.substr(%s, i + 1, 1));", nulls);
+		line("rm := 8 * i + 1;");
+		line("while rb > 0 loop");
+		line("%sif mod(rb, 2) = 1 then", INDENT);
+		line("%s%s%s(rm) := null;", INDENT, INDENT, c(column));
+		line("%send if;", INDENT);
+		line("%srb := (rb - mod(rb, 2)) / 2;", INDENT);
+		line("%srm := rm + 1;", INDENT);
+		line("end loop;");
+		indent--;
+		line("end loop;");
+	}
+
+	/**
+	 * Appends code which replaces nulls of OUT integer column by 0 and fills its companion column by bitmap of their positions
+	 * (little-endian, as {@link java.util.BitSet#toByteArray()}). Companion column stays null if column contains no null,
+	 * nulls are kept in column if bitmap would not fit into RAW.
+	 */
+	private void appendNullsEncode(PrimitiveCollection column) {
+		String nulls = c(column.getNullsId());
+		auxiliaries.putAll(PointersCodec.AUXILIARIES);
+		line("%s := null;", nulls);
+		line("rn := 0;");
+		line("for i in 1 .. %s.count loop", c(column));
+		line("%sif %s(i) is null then", INDENT, c(column));
+		line("%s%srn := i;", INDENT, INDENT);
+		line("%send if;", INDENT);
+		line("end loop;");
+		line("if rn <= %d then", 8 * PointersCodec.MAX_RAW_LENGTH);
+		indent++;
+		line("rb := 0;");
+		line("rm := 1;");
+		line("for i in 1 .. rn loop");
+		indent++;
+		line("if %s(i) is null then", c(column));
+		line("%s%s(i) := 0;", INDENT, c(column));
+		line("%srb := rb + rm;", INDENT);
+		line("end if;");
+		line("if rm = 128 or i = rn then");
+		line("%s%s := utl_raw.concat(%s, utl_raw.substr(utl_raw.cast_from_binary_integer(rb), 4, 1));", INDENT, nulls, nulls);
+		line("%srb := 0;", INDENT);
+		line("%srm := 1;", INDENT);
+		line("else");
+		line("%srm := rm * 2;", INDENT);
+		line("end if;");
+		indent--;
+		line("end loop;");
+		indent--;
+		line("end if;");
+	}
+
+	/**
+	 * Provides IN binds carrying content of given transfer object of IN parameter.
+	 */
+	private void inBinds(TransferObject to, InBindConsumer consumer) {
+		if (to.isElided()) {
+			ColumnPacking.PackedColumn column = packedColumns.get(to);
+			if (column != null && column.getMembers().get(0) == to) {
+				consumer.accept(c(column.getId()), column.getKind().getCollectionType(), column.pack());
+			}
+			return;
+		}
+		ColumnCodec.Encoded e = encoded.get(to);
+		if (e != null && e.getEncoding() != ColumnCodec.Encoding.PLAIN) {
+			ColumnKind kind = kindOf(((PrimitiveCollection)to).getType());
+			boolean bool = ((PrimitiveCollection)to).getType() instanceof BooleanType;
+			switch (e.getEncoding()) {
+				case OMITTED:
+					break;
+				case CONSTANT:
+					consumer.accept(c(to) + "v", kind.getScalarType(), bool ? toNumber(e.getValues().get(0)) : e.getValues().get(0));
+					break;
+				case RUN_LENGTH: case DICTIONARY:
+					consumer.accept(c(to) + "v", kind.getCollectionType(), bool ? toNumbers(e.getValues()) : e.getValues());
+					consumer.accept(c(to) + "c", ColumnKind.NUMBER.getCollectionType(), Ints.asList(e.getCodes()));
+					break;
+				default:
+					throw new IllegalStateException(e.getEncoding().toString());
+			}
+			return;
+		}
+		if (isEncodedPointers(to)) {
+			consumer.accept(c(to) + "r", PointersCodec.RAW_TYPE, encodedPointers.get(to).getBytes());
+			return;
+		}
+		if (bitmaps.containsKey(to)) {
+			consumer.accept(c(to) + "r", PointersCodec.RAW_TYPE, bitmaps.get(to).toBytes());
+			return;
+		}
+		Object value;
+		if (to instanceof Pointers) {
+			value = ((Pointers)to).getData().asList();
+		} else if (to instanceof Deletions) {
+			value = ((Deletions)to).getData().asList();
+		} else if (to instanceof Indexes) {
+			value = ((Indexes)to).getData();
+		} else if (to instanceof PrimitiveCollection) {
+			PrimitiveCollection column = (PrimitiveCollection)to;
+			byte[] nullBitmap = null;
+			if (hasNullsCompanion(column)) {
+				nullBitmap = companionBitmap(column);
+				consumer.accept(c(column.getNullsId()), PointersCodec.RAW_TYPE, nullBitmap);
+			}
+			if (column.isIntColumn() && (nullBitmap != null || !column.hasNulls())) {
+				value = column.toIntArray();
+			} else {
+				value = column.getType() instanceof BooleanType ? toNumbers(column.getData()) : column.getData();
+			}
+		} else if (to instanceof JdbcTransferrableCollection) {
+			value = ((JdbcTransferrableCollection)to).getData();
+		} else if (to instanceof JdbcTransferrableRecord) {
+			value = ((JdbcTransferrableRecord)to).getData();
+		} else if (to instanceof PrimitiveScalar) {
+			PrimitiveScalar scalar = (PrimitiveScalar)to;
+			value = scalar.getType() instanceof BooleanType ? toNumber(scalar.getData()) : scalar.getData();
+		} else {
+			throw new IllegalStateException("Unexpected transfer object " + to.getId());
+		}
+		consumer.accept(c(to), sqlType(to), value);
+	}
+
+	/**
+	 * Fills local variables of transfer objects of IN parameter which are not bound directly.
+	 * Packed columns are unpacked first, then nulls of integer columns bound as primitive arrays are restored,
+	 * pointers bound as RAW and encoded columns are decoded
+	 * (columns whose number of elements is derived from pointers or siblings go last), derived pointers are computed
+	 * and deletions bound as RAW are decoded at the end (the latter need pointers of their nested tables).
+	 */
+	private void materialize(List<TransferObject> tos) {
+		for (TransferObject to : tos) {
+			ColumnPacking.PackedColumn column = packedColumns.get(to);
+			if (to.isPacked() && column != null && column.getMembers().get(0) == to) {
+				int m = column.getMembers().size();
+				for (int k = 0; k < m; k++) {
+					String member = c(column.getMembers().get(k));
+					line("%s := %s();", member, column.getKind().getCollectionType());
+					line("%s.extend(%s.count / %d);", member, c(column.getId()), m);
+					line("for i in 1 .. %s.count loop", member);
+					line("%s%s(i) := %s(%d * %s.count + i);", INDENT, member, c(column.getId()), k, member);
+					line("end loop;");
+				}
+			}
+		}
+		for (TransferObject to : tos) {
+			if (hasNullsCompanion(to)) {
+				appendNullsDecode((PrimitiveCollection)to);
+			}
+		}
+		for (TransferObject to : tos) {
+			if (isEncodedPointers(to)) {
+				auxiliaries.putAll(PointersCodec.AUXILIARIES);
+				line("%s := %s();", c(to), sqlType(to));
+				StringBuilder decode = new StringBuilder();
+				PointersCodec.appendDecode(decode, c(to), c(to) + "r", encodedPointers.get(to));
+				for (String decodeLine : decode.toString().split("\\r?\\n")) {
+					line("%s", decodeLine);
+				}
+			}
+		}
+		for (boolean hasCount : new boolean[] {true, false}) {
+			for (TransferObject to : tos) {
+				ColumnCodec.Encoded e = encoded.get(to);
+				if (!to.isElided() && e != null && e.getEncoding() != ColumnCodec.Encoding.PLAIN && e.hasCount() == hasCount) {
+					line("%s := %s();", c(to), sqlType(to));
+					StringBuilder decode = new StringBuilder();
+					ColumnCodec.appendDecode(decode, c(to), c(to), e, hasCount ? null : elementCount((DataPointers)to.getParent()));
+					for (String decodeLine : decode.toString().split("\\r?\\n")) {
+						line("%s", decodeLine);
+					}
+				}
+			}
+		}
+		for (TransferObject to : tos) {
+			if (to.isDerived() && to instanceof DataPointers) {
+				line("%s := %s(1, %s + 1);", c(to), ColumnKind.NUMBER.getCollectionType(), levelCount((DataPointers)to));
+			}
+		}
+		for (TransferObject to : tos) {
+			if (bitmaps.containsKey(to)) {
+				auxiliaries.putAll(PointersCodec.AUXILIARIES);
+				line("%s := %s();", c(to), sqlType(to));
+				StringBuilder decode = new StringBuilder();
+				DeletionsBitmap.appendDecode(decode, c(to), c(to) + "r",
+						c(tree.getTransferObject(to.getTypeNode(), DataPointers.class)), c(tree.getTransferObject(to.getTypeNode(), DeletionsPointers.class)));
+				for (String decodeLine : decode.toString().split("\\r?\\n")) {
+					line("%s", decodeLine);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param pointers
+	 * @return expression denoting number of entries in child columns of pointers, taken from last pointer unless pointers are derived
+	 */
+	private String elementCount(DataPointers pointers) {
+		if (pointers.isDerived()) {
+			return levelCount(pointers);
+		}
+		return String.format("abs(%s(%s.count)) - 1", c(pointers), c(pointers));
+	}
+
+	/**
+	 * @param pointers
+	 * @return expression denoting number of entries in child columns of pointers,
+	 * columns whose number of elements is derived from pointers are skipped
+	 */
+	private String levelCount(DataPointers pointers) {
+		for (TransferObject child : pointers.getChildren()) {
+			ColumnCodec.Encoded e = encoded.get(child);
+			if ((child instanceof Indexes || child instanceof PrimitiveCollection || child instanceof JdbcTransferrableCollection) && (e == null || e.hasCount())) {
+				return c(child) + ".count";
+			}
+		}
+		for (TransferObject child : pointers.getChildren()) {
+			if (child instanceof DataPointers) {
+				return c(child) + ".count - 1";
+			}
+		}
+		throw new IllegalStateException("Cannot derive pointers " + pointers.getId());
+	}
+
+	private void appendCall() {
+		TypeNode root = tree.getTypeTreeRoot();
+		if (batch != null) {
+			appendBatchCall();
+			return;
+		}
+		if (group != null) {
+			appendGroupCalls();
+			return;
+		}
+		AbstractSignature signature = (AbstractSignature)root.getType();
+		String assignment = "";
+		List<String> arguments = Lists.newArrayList();
+		for (Map.Entry<String,TypeNode> e : root.getChildren().entrySet()) {
+			if (FunctionSignature.RETURN_LABEL.equals(e.getKey())) {
+				assignment = v(e.getValue()) + " := ";
+			} else {
+				arguments.add(e.getKey() + " => " + v(e.getValue()));
+			}
+		}
+		appendCall(signature, assignment, arguments);
+	}
+
+	/**
+	 * Appends loop calling target of batch signature with n-th elements of nested tables (<code>b</code>)
+	 * as arguments. OUT nested tables are extended to number of calls in advance,
+	 * call which raises exception is rolled back to savepoint and its message is stored into errors
+	 * (rollback fails with ORA-01086 and aborts batch if call committed before raising exception).
+	 */
+	private void appendBatchCall() {
+		TypeNode root = tree.getTypeTreeRoot();
+		String count = null;
+		for (Map.Entry<String,TypeNode> e : root.getChildren().entrySet()) {
+			if (count == null && isIn(e.getValue())) {
+				count = v(e.getValue()) + ".count";
+			}
+		}
+		for (Map.Entry<String,TypeNode> e : root.getChildren().entrySet()) {
+			if (!isIn(e.getValue())) {
+				line("%s := %s();", v(e.getValue()), typeName(e.getValue()));
+				line("%s.extend(%s);", v(e.getValue()), count);
+			}
+		}
+		String assignment = "";
+		List<String> arguments = Lists.newArrayList();
+		String errors = null;
+		for (Map.Entry<String,TypeNode> e : root.getChildren().entrySet()) {
+			String element = v(e.getValue()) + "(b)";
+			if (FunctionSignature.RETURN_LABEL.equals(e.getKey())) {
+				assignment = element + " := ";
+			} else if (BatchCall.ERRORS_LABEL.equals(e.getKey())) {
+				errors = element;
+			} else {
+				arguments.add(e.getKey() + " => " + element);
+			}
+		}
+		line("for b in 1 .. %s loop", count);
+		indent++;
+		line("savepoint batch_call;");
+		line("begin");
+		indent++;
+		appendCall(batch.getTarget(), assignment, arguments);
+		indent--;
+		line("exception");
+		line("%swhen others then", INDENT);
+		line("%s%srollback to batch_call;", INDENT, INDENT);
+		line("%s%s%s := sqlerrm;", INDENT, INDENT, errors);
+		line("end;");
+		indent--;
+		line("end loop;");
+	}
+
+	/**
+	 * Appends calls of all members of group signature in order, each of them with its own parameters.
+	 */
+	private void appendGroupCalls() {
+		TypeNode root = tree.getTypeTreeRoot();
+		for (int i = 0; i < group.getMembers().size(); i++) {
+			AbstractSignature member = group.getMembers().get(i);
+			String assignment = "";
+			List<String> arguments = Lists.newArrayList();
+			for (String name : member.getParameters().keySet()) {
+				arguments.add(name + " => " + v(root.getChildren().get(CallGroup.parameterName(i, name))));
+			}
+			if (member instanceof FunctionSignature) {
+				assignment = v(root.getChildren().get(CallGroup.parameterName(i, FunctionSignature.RETURN_LABEL))) + " := ";
+			}
+			appendCall(member, assignment, arguments);
+		}
+	}
+
+	private void appendCall(AbstractSignature signature, String assignment, List<String> arguments) {
+		if (arguments.isEmpty()) {
+			line("%s%s;", assignment, signature.getName());
+		} else {
+			line("%s%s(", assignment, signature.getName());
+			for (int i = 0; i < arguments.size(); i++) {
+				line("%s%s%s", INDENT, arguments.get(i), i < arguments.size() - 1 ? "," : "");
+			}
+			line(");");
+		}
+	}
+
+	/**
+	 * Appends decomposition of OUT parameter into its (emptied) columns, followed by terminators of pointers.
+	 */
+	private void decompose(TypeNode node, List<TransferObject> tos) {
+		for (TransferObject to : tos) {
+			if (!(to instanceof PrimitiveScalar || to instanceof JdbcTransferrableRecord)) {
+				line("%s := %s();", c(to), sqlType(to));
+			}
+			if (to instanceof Pointers) {
+				auxiliaries.put(n(to), "pls_integer");
+				line("%s := 0;", n(to));
+			}
+		}
+		node.getType().accept(new Decompose(), node, v(node));
+		for (TransferObject to : tos) {
+			if (to instanceof Pointers) {
+				line("%s.extend;", c(to));
+				line("%s(%s.count) := %s + 1;", c(to), c(to), n(to));
+			}
+		}
+	}
+
+	/**
+	 * Appends statements which assign value of type node at given position of columns into target.
+	 * First argument is type node, second is target (PLSQL l-value),
+	 * third is PLSQL expression of 1-based position in columns (null for value outside of any collection).
+	 * @author Tomas Zalusky
+	 */
+	private class Build implements TypeVisitorAAA<TypeNode,String,String> {
+
+		@Override
+		public void visitProcedureSignature(ProcedureSignature type, TypeNode node, String target, String position) {
+			throw new IllegalStateException("signature is not expected to be nested");
+		}
+
+		@Override
+		public void visitFunctionSignature(FunctionSignature type, TypeNode node, String target, String position) {
+			throw new IllegalStateException("signature is not expected to be nested");
+		}
+
+		@Override
+		public void visitRecord(RecordType type, TypeNode node, String target, String position) {
+			JdbcTransferrableRecord to = tree.getTransferObject(node, JdbcTransferrableRecord.class);
+			if (to != null) {
+				line("%s := %s;", target, column(to));
+				return;
+			}
+			if (callSubprogram(node, target, position)) {
+				return;
+			}
+			for (String fieldName : type.getFields().keySet()) {
+				TypeNode child = node.getChildren().get(fieldName);
+				child.getType().accept(this, child, target + "." + fieldName, position);
+			}
+		}
+
+		@Override
+		public void visitVarray(VarrayType type, TypeNode node, String target, String position) {
+			if (callSubprogram(node, target, position)) {
+				return;
+			}
+			buildCollection(type, node, target, position, VarrayType.ELEMENT_LABEL);
+		}
+
+		@Override
+		public void visitNestedTable(NestedTableType type, TypeNode node, String target, String position) {
+			if (callSubprogram(node, target, position)) {
+				return;
+			}
+			buildCollection(type, node, target, position, NestedTableType.ELEMENT_LABEL);
+		}
+
+		@Override
+		public void visitIndexByTable(IndexByTableType type, TypeNode node, String target, String position) {
+			if (callSubprogram(node, target, position)) {
+				return;
+			}
+			DataPointers pointers = tree.getTransferObject(node, DataPointers.class);
+			String lower = String.format("%s(%s)", column(pointers), position == null ? "1" : position);
+			String upper = String.format("abs(%s(%s + 1))", column(pointers), position == null ? "1" : position);
+			String i = local("i", node.id());
+			String element = String.format("%s(%s(%s))", target, column(tree.getTransferObject(node, Indexes.class)), i);
+			line("%s.delete;", target);
+			line("if %s > 0 then", lower);
+			indent++;
+			if (style == Style.NAIVE) {
+				line("for %s in %s .. %s - 1 loop", i, lower, upper);
+				indent++;
+				buildElement(node, IndexByTableType.ELEMENT_LABEL, element, i);
+				indent--;
+				line("end loop;");
+			} else {
+				buildElements(node, IndexByTableType.ELEMENT_LABEL, element, lower, upper, null);
+			}
+			indent--;
+			line("end if;");
+		}
+
+		@Override
+		public void visitPrimitive(AbstractPrimitiveType type, TypeNode node, String target, String position) {
+			PrimitiveHolder to = tree.getTransferObject(node, PrimitiveHolder.class);
+			String value = position == null ? column(to) : String.format("%s(%s)", column(to), position);
+			if (type instanceof BooleanType) {
+				line("%s := case %s when 1 then true when 0 then false end;", target, value);
+			} else {
+				line("%s := %s;", target, value);
+			}
+		}
+
+		/**
+		 * Builds value of reused type by call of subprogram, see {@link BlockGenerator#subprogram(TypeNode, boolean, boolean)}.
+		 * @return false if value is to be built inline
+		 */
+		private boolean callSubprogram(TypeNode node, String target, String position) {
+			if (!reusedBuiltTypes.contains(node.getType()) || subprogram != null && subprogram.node == node) {
+				return false;
+			}
+			boolean positioned = position != null || !(node.getType() instanceof RecordType); // collection outside of collection starts at position 1 of its pointers
+			Subprogram called = subprogram(node, true, positioned);
+			List<String> arguments = Lists.newArrayList();
+			if (positioned) {
+				arguments.add(position == null ? "1" : position);
+			}
+			arguments.addAll(arguments(called));
+			line("%s := %s(%s);", target, called.name, String.join(", ", arguments));
+			return true;
+		}
+
+		private void buildCollection(AbstractType type, TypeNode node, String target, String position, String elementLabel) {
+			DataPointers pointers = tree.getTransferObject(node, DataPointers.class);
+			DeletionsPointers deletionsPointers = tree.getTransferObject(node, DeletionsPointers.class);
+			String p = position == null ? "1" : position;
+			String lower = String.format("%s(%s)", column(pointers), p);
+			String upper = String.format("abs(%s(%s + 1))", column(pointers), p);
+			String i = local("i", node.id());
+			line("if %s < 0 then", lower);
+			line("%s%s := null;", INDENT, target);
+			line("else");
+			indent++;
+			line("%s := %s();", target, typeName(node));
+			if (deletionsPointers == null || deletionsPointers.isElided()) {
+				if (style == Style.NAIVE) {
+					line("for %s in %s .. %s - 1 loop", i, lower, upper);
+					indent++;
+					line("%s.extend;", target);
+					buildElement(node, elementLabel, String.format("%s(%s.count)", target, target), i);
+					indent--;
+					line("end loop;");
+				} else {
+					line("%s.extend(%s - %s);", target, upper, lower);
+					buildElements(node, elementLabel, String.format("%s(%s - %s + 1)", target, i, lower), lower, upper, null);
+				}
+			} else {
+				String deletions = column(tree.getTransferObject(node, Deletions.class));
+				String deletionsLower = String.format("%s(%s)", column(deletionsPointers), p);
+				String deletionsUpper = String.format("abs(%s(%s + 1))", column(deletionsPointers), p);
+				String m = local("m", node.id());
+				auxiliaries.put(m, "pls_integer");
+				if (style == Style.NAIVE) {
+					String j = local("j", node.id());
+					auxiliaries.put(j, "pls_integer");
+					line("%s := %s;", j, deletionsLower);
+					line("%s := %s;", m, lower);
+					line("for %s in 1 .. %s - %s + %s - %s loop", i, upper, lower, deletionsUpper, deletionsLower);
+					indent++;
+					line("%s.extend;", target);
+					line("if %s < %s and %s(%s) = %s then", j, deletionsUpper, deletions, j, i);
+					line("%s%s := %s + 1;", INDENT, j, j);
+					line("else");
+					indent++;
+					buildElement(node, elementLabel, String.format("%s(%s)", target, i), m);
+					line("%s := %s + 1;", m, m);
+					indent--;
+					line("end if;");
+					indent--;
+					line("end loop;");
+					appendDeletions(target, deletions, deletionsLower, deletionsUpper, i);
+				} else {
+					line("%s.extend(%s - %s + %s - %s);", target, upper, lower, deletionsUpper, deletionsLower);
+					appendDeletions(target, deletions, deletionsLower, deletionsUpper, i);
+					buildElements(node, elementLabel, String.format("%s(%s)", target, m), lower, upper, target);
+				}
+			}
+			indent--;
+			line("end if;");
+		}
+
+		private void appendDeletions(String target, String deletions, String deletionsLower, String deletionsUpper, String i) {
+			line("for %s in %s .. %s - 1 loop", i, deletionsLower, deletionsUpper);
+			line("%s%s.delete(%s(%s));", INDENT, target, deletions, i);
+			line("end loop;");
+		}
+
+		/**
+		 * Appends statements building one element (element-major order).
+		 */
+		private void buildElement(TypeNode node, String elementLabel, String target, String position) {
+			JdbcTransferrableCollection array = tree.getTransferObject(node, JdbcTransferrableCollection.class);
+			if (array != null) {
+				line("%s := %s(%s);", target, column(array), position);
+			} else {
+				TypeNode element = node.getChildren().get(elementLabel);
+				element.getType().accept(this, element, target, position);
+			}
+		}
+
+		/**
+		 * Appends statements building all elements of collection (column-major order):
+		 * one tight loop over positions <code>lower .. upper - 1</code> of columns for every leaf of element
+		 * (primitive or JDBC-transferrable value or nested collection, reached via fields of records).
+		 * @param target target of element, expressed using loop variable <code>i</code> + node id
+		 * or cursor <code>m</code> + node id
+		 * @param traversed null if target refers to positions directly,
+		 * otherwise collection whose existing elements are traversed by cursor using <code>first</code> and <code>next</code>
+		 */
+		private void buildElements(TypeNode node, String elementLabel, String target, String lower, String upper, String traversed) {
+			String i = local("i", node.id());
+			String cursor = local("m", node.id());
+			Map<String,TypeNode> leaves = new LinkedHashMap<>();
+			JdbcTransferrableCollection array = tree.getTransferObject(node, JdbcTransferrableCollection.class);
+			if (array == null) {
+				collectLeaves(node.getChildren().get(elementLabel), "", leaves);
+			} else {
+				leaves.put("", null);
+			}
+			for (Map.Entry<String,TypeNode> leaf : leaves.entrySet()) {
+				if (traversed != null) {
+					line("%s := %s.first;", cursor, traversed);
+				}
+				line("for %s in %s .. %s - 1 loop", i, lower, upper);
+				indent++;
+				if (leaf.getValue() == null) {
+					line("%s := %s(%s);", target, column(array), i);
+				} else {
+					leaf.getValue().getType().accept(this, leaf.getValue(), target + leaf.getKey(), i);
+				}
+				if (traversed != null) {
+					line("%s := %s.next(%s);", cursor, traversed, cursor);
+				}
+				indent--;
+				line("end loop;");
+			}
+		}
+
+		private void collectLeaves(TypeNode node, String path, Map<String,TypeNode> result) {
+			if (node.getType() instanceof RecordType && tree.getTransferObject(node, JdbcTransferrableRecord.class) == null) {
+				for (Map.Entry<String,TypeNode> e : node.getChildren().entrySet()) {
+					collectLeaves(e.getValue(), path + "." + e.getKey(), result);
+				}
+			} else {
+				result.put(path, node);
+			}
+		}
+
+	}
+
+	/**
+	 * Appends statements which append value of type node given by source expression into columns.
+	 * First argument is type node, second is source (PLSQL expression).
+	 * @author Tomas Zalusky
+	 */
+	private class Decompose implements TypeVisitorAA<TypeNode,String> {
+
+		@Override
+		public void visitProcedureSignature(ProcedureSignature type, TypeNode node, String source) {
+			throw new IllegalStateException("signature is not expected to be nested");
+		}
+
+		@Override
+		public void visitFunctionSignature(FunctionSignature type, TypeNode node, String source) {
+			throw new IllegalStateException("signature is not expected to be nested");
+		}
+
+		@Override
+		public void visitRecord(RecordType type, TypeNode node, String source) {
+			JdbcTransferrableRecord to = tree.getTransferObject(node, JdbcTransferrableRecord.class);
+			if (to != null) {
+				line("%s := %s;", column(to), source);
+				return;
+			}
+			if (callSubprogram(node, source)) {
+				return;
+			}
+			for (String fieldName : type.getFields().keySet()) {
+				TypeNode child = node.getChildren().get(fieldName);
+				child.getType().accept(this, child, source + "." + fieldName);
+			}
+		}
+
+		@Override
+		public void visitVarray(VarrayType type, TypeNode node, String source) {
+			if (callSubprogram(node, source)) {
+				return;
+			}
+			decomposeCollection(node, source, VarrayType.ELEMENT_LABEL, false);
+		}
+
+		@Override
+		public void visitNestedTable(NestedTableType type, TypeNode node, String source) {
+			if (callSubprogram(node, source)) {
+				return;
+			}
+			decomposeCollection(node, source, NestedTableType.ELEMENT_LABEL, true);
+		}
+
+		@Override
+		public void visitIndexByTable(IndexByTableType type, TypeNode node, String source) {
+			if (callSubprogram(node, source)) {
+				return;
+			}
+			DataPointers pointers = tree.getTransferObject(node, DataPointers.class);
+			Indexes indexes = tree.getTransferObject(node, Indexes.class);
+			String k = local("k", node.id());
+			auxiliaries.put(k, type.getIndexType().getName());
+			appendPointer(pointers, "");
+			line("%s := %s.first;", k, source);
+			line("while %s is not null loop", k);
+			indent++;
+			line("%s.extend;", column(indexes));
+			line("%s(%s.count) := %s;", column(indexes), column(indexes), k);
+			decomposeElement(node, IndexByTableType.ELEMENT_LABEL, String.format("%s(%s)", source, k));
+			line("%s := %s + 1;", counter(pointers), counter(pointers));
+			line("%s := %s.next(%s);", k, source, k);
+			indent--;
+			line("end loop;");
+		}
+
+		@Override
+		public void visitPrimitive(AbstractPrimitiveType type, TypeNode node, String source) {
+			PrimitiveHolder to = tree.getTransferObject(node, PrimitiveHolder.class);
+			String value = type instanceof BooleanType ? String.format("case when %s then 1 when not %s then 0 end", source, source) : source;
+			if (to instanceof PrimitiveCollection) {
+				line("%s.extend;", column(to));
+				line("%s(%s.count) := %s;", column(to), column(to), value);
+			} else {
+				line("%s := %s;", column(to), value);
+			}
+		}
+
+		/**
+		 * Decomposes value of reused type by call of subprogram, see {@link BlockGenerator#subprogram(TypeNode, boolean, boolean)}.
+		 * @return false if value is to be decomposed inline
+		 */
+		private boolean callSubprogram(TypeNode node, String source) {
+			if (!reusedDecomposedTypes.contains(node.getType()) || subprogram != null && subprogram.node == node) {
+				return false;
+			}
+			Subprogram called = subprogram(node, false, false);
+			List<String> arguments = Lists.newArrayList();
+			arguments.add(source);
+			arguments.addAll(arguments(called));
+			line("%s(%s);", called.name, String.join(", ", arguments));
+			return true;
+		}
+
+		private void decomposeCollection(TypeNode node, String source, String elementLabel, boolean nestedTable) {
+			DataPointers pointers = tree.getTransferObject(node, DataPointers.class);
+			DeletionsPointers deletionsPointers = nestedTable ? tree.getTransferObject(node, DeletionsPointers.class) : null;
+			String i = local("i", node.id());
+			line("if %s is null then", source);
+			indent++;
+			appendPointer(pointers, "-");
+			if (deletionsPointers != null) {
+				appendPointer(deletionsPointers, "-");
+			}
+			indent--;
+			line("else");
+			indent++;
+			appendPointer(pointers, "");
+			if (deletionsPointers != null) {
+				appendPointer(deletionsPointers, "");
+				String deletions = column(tree.getTransferObject(node, Deletions.class));
+				line("for %s in 1 .. nvl(%s.last, 0) loop", i, source);
+				indent++;
+				line("if %s.exists(%s) then", source, i);
+				indent++;
+				decomposeElement(node, elementLabel, String.format("%s(%s)", source, i));
+				line("%s := %s + 1;", counter(pointers), counter(pointers));
+				indent--;
+				line("else");
+				indent++;
+				line("%s.extend;", deletions);
+				line("%s(%s.count) := %s;", deletions, deletions, i);
+				line("%s := %s + 1;", counter(deletionsPointers), counter(deletionsPointers));
+				indent--;
+				line("end if;");
+				indent--;
+				line("end loop;");
+			} else {
+				line("for %s in 1 .. %s.count loop", i, source);
+				indent++;
+				decomposeElement(node, elementLabel, String.format("%s(%s)", source, i));
+				line("%s := %s + 1;", counter(pointers), counter(pointers));
+				indent--;
+				line("end loop;");
+			}
+			indent--;
+			line("end if;");
+		}
+
+		private void decomposeElement(TypeNode node, String elementLabel, String source) {
+			JdbcTransferrableCollection array = tree.getTransferObject(node, JdbcTransferrableCollection.class);
+			if (array != null) {
+				line("%s.extend;", column(array));
+				line("%s(%s.count) := %s;", column(array), column(array), source);
+			} else {
+				TypeNode element = node.getChildren().get(elementLabel);
+				element.getType().accept(this, element, source);
+			}
+		}
+
+		/**
+		 * Appends pointer to current end of child columns.
+		 * @param pointers
+		 * @param sign "-" for null collection, empty otherwise
+		 */
+		private void appendPointer(Pointers pointers, String sign) {
+			line("%s.extend;", column(pointers));
+			line("%s(%s.count) := %s(%s + 1);", column(pointers), column(pointers), sign, counter(pointers));
+		}
+
+	}
+
+	private void line(String format, Object... args) {
+		body.append(Strings.repeat(INDENT, indent));
+		Utils.appendf(body, format + "%n", args);
+	}
+
+	private static String c(TransferObject to) {
+		return c(to.getId());
+	}
+
+	/**
+	 * @param to
+	 * @return variable of transfer object in block, or parameter of currently generated subprogram (which is registered)
+	 */
+	private String column(TransferObject to) {
+		if (subprogram != null) {
+			subprogram.parameters.add(to);
+		}
+		return local("c", to.getId());
+	}
+
+	/**
+	 * @param pointers
+	 * @return counter of entries of pointers in block, or parameter of currently generated subprogram (which is registered)
+	 */
+	private String counter(TransferObject pointers) {
+		if (subprogram != null) {
+			subprogram.counters.add(pointers);
+		}
+		return local("n", pointers.getId());
+	}
+
+	/**
+	 * @param prefix
+	 * @param id id of type node or transfer object
+	 * @return name of variable in block, or in currently generated subprogram
+	 */
+	private String local(String prefix, String id) {
+		return subprogram == null ? prefix + id : prefix + "r" + id.substring(subprogram.node.id().length());
+	}
+
+	private static String c(String id) {
+		return "c" + id;
+	}
+
+	private static String v(TypeNode node) {
+		return "v" + node.id();
+	}
+
+	/**
+	 * @return name of type of node, local type of block for parameter of batch signature
+	 */
+	private String typeName(TypeNode node) {
+		return batch != null && node.getParent() == tree.getTypeTreeRoot() ? "t" + node.id() : node.getType().getName();
+	}
+
+	private static String n(TransferObject pointers) {
+		return "n" + pointers.getId();
+	}
+
+	/**
+	 * @param to
+	 * @return true if transfer object is bound as collection, false for scalar
+	 */
+	private static boolean isColumn(TransferObject to) {
+		return to instanceof Pointers || to instanceof Deletions || to instanceof Indexes
+				|| to instanceof PrimitiveCollection || to instanceof JdbcTransferrableCollection;
+	}
+
+	/**
+	 * @param to
+	 * @return SQL type of variable of transfer object
+	 */
+	private static String sqlType(TransferObject to) {
+		if (to instanceof Pointers || to instanceof Deletions) {
+			return ColumnKind.NUMBER.getCollectionType();
+		} else if (to instanceof Indexes) {
+			return kindOf(((Indexes)to).getIndexType()).getCollectionType();
+		} else if (to instanceof PrimitiveCollection) {
+			return kindOf(((PrimitiveCollection)to).getType()).getCollectionType();
+		} else if (to instanceof PrimitiveScalar) {
+			return declaredType(((PrimitiveScalar)to).getType());
+		} else {
+			return to.getTypeNode().getType().getName(); // JDBC-transferrable record or collection
+		}
+	}
+
+	/**
+	 * @param type
+	 * @return type of variable holding value of given type (numeric for PLSQL boolean)
+	 */
+	private static String declaredType(AbstractType type) {
+		return type instanceof BooleanType ? ColumnKind.NUMBER.getScalarType() : type.getName();
+	}
+
+	private static ColumnKind kindOf(AbstractPrimitiveType type) {
+		ColumnKind result = type instanceof BooleanType ? ColumnKind.NUMBER : ColumnKind.of(type);
+		if (result == null) {
+			throw new IllegalArgumentException("Type " + type.getName() + " cannot be transferred in SQL collection.");
+		}
+		return result;
+	}
+
+	private static Object toNumber(Object value) {
+		return value == null ? null : (Boolean)value ? 1 : 0;
+	}
+
+	private static List<Object> toNumbers(List<?> values) {
+		List<Object> result = Lists.newArrayListWithCapacity(values.size());
+		for (Object value : values) {
+			result.add(toNumber(value));
+		}
+		return result;
+	}
+
+	private static Boolean toBoolean(Object value) {
+		return value == null ? null : ((Number)value).intValue() != 0;
+	}
+
+}
@@ -0,0 +1,55 @@
+package plsql;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Compares size of anonymous blocks generated in {@link BlockGenerator.Style#NAIVE naive}
+ * and {@link BlockGenerator.Style#BULK bulk} style with inlined code for all signatures of test type graphs,
+ * size of bulk style block whose reused types are built by local functions,
+ * and latency of loopback (marshal, generate, execute by {@link BlockInterpreter}, unmarshal) of large arguments.
+ * Interpreter latency is only indicative, it does not model cost of PLSQL engine.
+ * Run as Java application, not part of test suite.
+ * @author Tomas Zalusky
+ */
+public class BlockGeneratorBenchmark extends AbstractTypeGraphTest {
+
+	private static final String[] GRAPHS = {"simple", "dag1", "dag2", "alltypes", "toplevel", "javatype", "intkeymap", "inout", "wide"};
+
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args) throws IOException {
+		System.out.printf("%-32s %10s %10s %10s %10s %10s %10s%n", "signature", "naive", "lines", "bulk", "lines", "functions", "lines");
+		for (String graphName : GRAPHS) {
+			TypeGraph graph = loadGraph(graphName);
+			for (AbstractType type : graph.getTopologicalOrdering()) {
+				if (type instanceof AbstractSignature) {
+					TransferObjectTree tot = graph.toTypeNodeTree((AbstractSignature)type).toTransferObjectTree();
+					String naive = text(tot, BlockGenerator.Style.NAIVE, false);
+					String bulk = text(tot, BlockGenerator.Style.BULK, false);
+					String functions = text(tot, BlockGenerator.Style.BULK, true);
+					System.out.printf("%-32s %10d %10d %10d %10d %10d %10d%n", graphName + ":" + type.getName(),
+							naive.length(), lines(naive), bulk.length(), lines(bulk), functions.length(), lines(functions));
+				}
+			}
+		}
+		for (int iteration = 0; iteration < 5; iteration++) {
+			for (BlockGenerator.Style style : BlockGenerator.Style.values()) {
+				long start = System.nanoTime();
+				for (int r = 0; r < ROUNDS; r++) {
+					BlockGeneratorTest.loopback(MarshallerTest.largeArguments(500), style, true);
+				}
+				System.out.printf("%-6s %8.3f ms per interpreted loopback%n", style, (System.nanoTime() - start) / 1e6 / ROUNDS);
+			}
+		}
+	}
+
+	private static String text(TransferObjectTree tot, BlockGenerator.Style style, boolean subprograms) {
+		return BlockGenerator.generate(tot, style, subprograms, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap()).getText();
+	}
+
+	private static int lines(String text) {
+		return text.split("\\r?\\n").length;
+	}
+
+}
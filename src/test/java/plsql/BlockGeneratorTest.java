@@ -0,0 +1,441 @@
+package plsql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests {@link BlockGenerator} using loopback: generated block is executed by {@link BlockInterpreter}
+ * calling simulated function which copies IN parameters into OUT parameters.
+ * Unmarshalled OUT parameters must be equal to IN arguments.
+ * @author Tomas Zalusky
+ */
+public class BlockGeneratorTest extends AbstractTypeGraphTest {
+
+	static final int RETURN_VALUE = 7;
+
+	static final BlockInterpreter.Executable ECHO = (name, arguments) -> {
+		assertEquals("echo", name);
+		for (Map.Entry<String,Object> e : Lists.newArrayList(arguments.entrySet())) {
+			if (e.getKey().startsWith("pi_")) {
+				arguments.put("po_" + e.getKey().substring(3), e.getValue());
+			}
+		}
+		return RETURN_VALUE;
+	};
+
+	/**
+	 * Arguments of loopback tests. Index-by table cannot be atomically null in PLSQL,
+	 * hence null element of <code>pi_nst1</code> is replaced by empty table.
+	 */
+	static final Map<String,Object> ARGUMENTS = ImmutableMap.<String,Object>builder()
+			.putAll(Maps.filterKeys(UnmarshallerTest.ARGUMENTS, k -> !k.equals("pi_nst1")))
+			.put("pi_nst1", ImmutableList.of(ImmutableMap.of(), ImmutableMap.of("f", ImmutableList.of())))
+			.build();
+
+	static BlockGenerator.Block loopback(Map<String,?> arguments, BlockGenerator.Style style, boolean optimize) throws IOException {
+		return loopback(arguments, style, true, optimize);
+	}
+
+	static BlockGenerator.Block loopback(Map<String,?> arguments, BlockGenerator.Style style, boolean subprograms, boolean optimize) throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		TransferObjectTree tot = MarshallerTest.marshal(graph, "echo", arguments);
+		ColumnPacking.Plan plan = new ColumnPacking.Plan();
+		Map<PrimitiveCollection,ColumnCodec.Encoded> encoded = Collections.emptyMap();
+		Map<Pointers,PointersCodec.Encoded> encodedPointers = Collections.emptyMap();
+		Map<Deletions,DeletionsBitmap> bitmaps = Collections.emptyMap();
+		if (optimize) {
+			TransferObjectOptimizer.optimize(tot);
+			plan = ColumnPacking.pack(tot);
+			encoded = ColumnCodec.encodeAll(tot, ColumnCodec.DEFAULT_DICTIONARY_THRESHOLD);
+			encodedPointers = PointersCodec.encodeAll(tot);
+			bitmaps = DeletionsBitmap.encodeAll(tot);
+		}
+		BlockGenerator.Block block = BlockGenerator.generate(tot, style, subprograms, plan, encoded, encodedPointers, bitmaps);
+		Map<String,Object> bindValues = BlockGenerator.bindValues(tot, plan, encoded, encodedPointers, bitmaps);
+		List<Object> inValues = Lists.newArrayList();
+		List<String> outNames = Lists.newArrayList();
+		for (BlockGenerator.Bind bind : block.getBinds()) {
+			if (bind.isOut()) {
+				outNames.add(bind.getName());
+			} else {
+				assertTrue(bind.getName(), bindValues.containsKey(bind.getName()));
+				inValues.add(bindValues.get(bind.getName()));
+			}
+		}
+		assertEquals(bindValues.size(), inValues.size());
+		List<Object> outValues = BlockInterpreter.execute(block.getText(), inValues, ECHO);
+		Map<String,Object> outValuesByName = Maps.newHashMap();
+		for (int i = 0; i < outNames.size(); i++) {
+			outValuesByName.put(outNames.get(i), outValues.get(i));
+		}
+		TransferObjectTree received = graph.toTypeNodeTree(graph.findType(FunctionSignature.class, "echo")).toTransferObjectTree();
+		BlockGenerator.readOutValues(received, outValuesByName);
+		Unmarshaller unmarshaller = new Unmarshaller(received, UnmarshallerTest.RECORD_CLASSES, true);
+		for (Map.Entry<String,?> e : arguments.entrySet()) {
+			String outName = "po_" + e.getKey().substring(3);
+			assertEquals(outName, e.getValue(), unmarshaller.unmarshal(outName));
+		}
+		assertEquals(RETURN_VALUE, unmarshaller.unmarshal(FunctionSignature.RETURN_LABEL));
+		return block;
+	}
+
+	@Test
+	public void testLoopback() throws IOException {
+		for (BlockGenerator.Style style : BlockGenerator.Style.values()) {
+			loopback(ARGUMENTS, style, true, false);
+			loopback(ARGUMENTS, style, false, false);
+		}
+	}
+
+	@Test
+	public void testLoopbackOptimized() throws IOException {
+		for (BlockGenerator.Style style : BlockGenerator.Style.values()) {
+			loopback(ARGUMENTS, style, true, true);
+			loopback(ARGUMENTS, style, false, true);
+		}
+	}
+
+	@Test
+	public void testLoopbackLarge() throws IOException {
+		for (BlockGenerator.Style style : BlockGenerator.Style.values()) {
+			BlockGenerator.Block block = loopback(MarshallerTest.largeArguments(50), style, true);
+			assertTrue(block.getText(), block.getText().contains("c3ee1v pleasejava_number_table := ?;")); // run-length encoded booleans
+		}
+	}
+
+	@Test
+	public void testLoopbackNulls() throws IOException {
+		Map<String,Object> arguments = Maps.newLinkedHashMap();
+		arguments.put("pi_var1", null);
+		arguments.put("pi_nst1", null);
+		arguments.put("pi_ibt1", ImmutableMap.of());
+		arguments.put("pi_clob", null);
+		for (BlockGenerator.Style style : BlockGenerator.Style.values()) {
+			loopback(arguments, style, false);
+			loopback(arguments, style, true);
+		}
+	}
+
+	/**
+	 * Constant columns of records nested in varray (counts taken from pointers)
+	 * and in nested table under derived pointers (count taken from sibling forced to run-length encoding).
+	 */
+	@Test
+	public void testLoopbackDerivedCounts() throws IOException {
+		Map<String,Object> arguments = Maps.newLinkedHashMap(ARGUMENTS);
+		@SuppressWarnings("unchecked")
+		Map<String,Object> rec1 = Maps.newLinkedHashMap((Map<String,Object>)ARGUMENTS.get("pi_rec1"));
+		MarshallerTest.Record3 record = new MarshallerTest.Record3(true, 9);
+		rec1.put("f_nst4", ImmutableList.of(record, record, record));
+		arguments.put("pi_rec1", rec1);
+		arguments.put("pi_var1", Arrays.asList(ImmutableList.of(record, record), null, ImmutableList.of()));
+		for (BlockGenerator.Style style : BlockGenerator.Style.values()) {
+			String text = loopback(arguments, style, true).getText();
+			assertTrue(text, text.contains(".extend(abs("));
+			assertTrue(text, text.contains(".extend(c"));
+		}
+	}
+
+	/**
+	 * Integer column is bound as primitive array, nulls travel in companion column in both directions.
+	 */
+	@Test
+	public void testLoopbackIntColumnNulls() throws IOException {
+		Map<Integer,Object> elements = Maps.newLinkedHashMap();
+		for (Integer value : Arrays.asList(5, null, 6)) {
+			Map<String,Object> element = Maps.newLinkedHashMap();
+			element.put("f_var5", null);
+			element.put("f1_rec3", new MarshallerTest.Record3(false, 0));
+			element.put("f_pls_integer", value);
+			element.put("f2_rec3", new MarshallerTest.Record3(false, 0));
+			elements.put(elements.size() + 1, element);
+		}
+		Map<String,Object> arguments = ImmutableMap.<String,Object>of("pi_ibt1", elements);
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", arguments);
+		PrimitiveCollection column = tot.getTransferObject(MarshallerTest.node(tot, "pi_ibt1", IndexByTableType.ELEMENT_LABEL, "f_pls_integer"), PrimitiveCollection.class);
+		Map<String,Object> bindValues = BlockGenerator.bindValues(tot, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap());
+		assertArrayEquals(new int[] {5,0,6}, (int[])bindValues.get("c" + column.getId()));
+		assertArrayEquals(new byte[] {0b010}, (byte[])bindValues.get("c" + column.getNullsId()));
+		for (BlockGenerator.Style style : BlockGenerator.Style.values()) {
+			String text = loopback(arguments, style, false).getText();
+			assertTrue(text, text.contains("c" + column.getNullsId() + " " + PointersCodec.RAW_TYPE + " := ?;"));
+			assertTrue(text, text.contains("utl_raw.cast_from_binary_integer(rb)"));
+		}
+	}
+
+	/**
+	 * Pointers of matrix with null rows are sent as constant stride, pointers of large arguments as runs and deltas.
+	 */
+	@Test
+	public void testLoopbackEncodedPointers() throws IOException {
+		List<List<String>> matrix = Lists.newArrayList();
+		for (int i = 0; i < 30; i++) {
+			matrix.add(i % 3 == 0 ? null : ImmutableList.of("x" + i, "y" + i));
+		}
+		for (BlockGenerator.Style style : BlockGenerator.Style.values()) {
+			String text = loopback(Collections.singletonMap("pi_var2", matrix), style, true).getText();
+			assertTrue(text, text.contains("c_10_epr " + PointersCodec.RAW_TYPE + " := ?;"));
+			assertTrue(text, text.contains("rf := utl_raw.cast_to_binary_integer(utl_raw.substr(c_10_epr, rp, 1));"));
+			text = loopback(MarshallerTest.largeArguments(50), style, true).getText();
+			assertTrue(text, text.contains("while ri < rn loop"));
+			assertTrue(text, text.contains("ra := ra + (rv - rz) / 2;"));
+		}
+	}
+
+	/**
+	 * Deletions of sparse nested table are sent in wire format of {@link DeletionsBitmap}:
+	 * table with every 7th element deleted as array container, bulk deleted table as run container,
+	 * randomly thinned table as bitmap container.
+	 */
+	@Test
+	public void testLoopbackDeletionsBitmap() throws IOException {
+		Random random = new Random(31);
+		Map<Integer,String> thinned = new TreeMap<>(), bulk = new TreeMap<>(), randomized = new TreeMap<>();
+		for (int i = 1; i <= 3000; i++) {
+			if (i % 7 != 1) {
+				thinned.put(i, "t" + i);
+			}
+			if (i < 10 || i > 2990) {
+				bulk.put(i, "b" + i);
+			}
+		}
+		for (int i = 1; i <= 12000; i++) {
+			if (random.nextBoolean()) {
+				randomized.put(i, "r" + i);
+			}
+		}
+		Map<Map<Integer,String>,String> containers = ImmutableMap.of(thinned, "[0:ArrayContainer]", bulk, "[0:RunContainer]", randomized, "[0:BitmapContainer]");
+		for (Map.Entry<Map<Integer,String>,String> e : containers.entrySet()) {
+			Map<String,Object> value = ImmutableMap.<String,Object>of("a", ImmutableMap.of(2,"x",5,"y"), "b", ImmutableList.of("z"), "c", e.getKey());
+			TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", Collections.singletonMap("pi_ibt3", value));
+			TransferObjectOptimizer.optimize(tot);
+			assertEquals(e.getValue(), Iterables.getOnlyElement(DeletionsBitmap.encodeAll(tot).values()).toString());
+			String text = loopback(Collections.singletonMap("pi_ibt3", value), BlockGenerator.Style.BULK, true).getText();
+			assertTrue(text, text.contains("dr " + PointersCodec.RAW_TYPE + " := ?;"));
+		}
+	}
+
+	/**
+	 * Columns are bound as schema-level nested tables, hence they are not limited by capacity of varray.
+	 */
+	@Test
+	public void testLoopbackBeyondVarrayLimit() throws IOException {
+		Map<String,Object> arguments = Maps.newLinkedHashMap();
+		arguments.put("pi_var2", ImmutableList.of(Collections.nCopies(40000, "x")));
+		loopback(arguments, BlockGenerator.Style.BULK, false);
+	}
+
+	@Test
+	public void testCharacterLimit() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		String limit = Strings.repeat("x", ColumnKind.MAX_VARCHAR2_LENGTH);
+		TransferObjectTree tot = MarshallerTest.marshal(graph, "echo", ImmutableMap.of("pi_var2", ImmutableList.of(ImmutableList.of("a", limit))));
+		BlockGenerator.bindValues(tot, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap());
+		tot = MarshallerTest.marshal(graph, "echo", ImmutableMap.of("pi_var2", ImmutableList.of(ImmutableList.of("a", limit + "x"))));
+		try {
+			BlockGenerator.bindValues(tot, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap());
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test
+	public void testInterpreterCapacity() {
+		String varray = "declare\n  x sys.odcinumberlist := ?;\nbegin\n  ? := x.count;\nend;";
+		BlockInterpreter.execute(varray, ImmutableList.of(Collections.nCopies(32767, 1)), ECHO);
+		try {
+			BlockInterpreter.execute(varray, ImmutableList.of(Collections.nCopies(32768, 1)), ECHO);
+			fail();
+		} catch (IllegalStateException expected) {
+			assertTrue(expected.getMessage(), expected.getMessage().startsWith("ORA-06532"));
+		}
+		String nested = "declare\n  x pleasejava_varchar2_table := ?;\nbegin\n  ? := x.count;\nend;";
+		BlockInterpreter.execute(nested, ImmutableList.of(Collections.nCopies(32768, "x")), ECHO);
+		try {
+			BlockInterpreter.execute(nested, ImmutableList.of(ImmutableList.of(Strings.repeat("x", 4001))), ECHO);
+			fail();
+		} catch (IllegalStateException expected) {
+			assertTrue(expected.getMessage(), expected.getMessage().startsWith("ORA-06502"));
+		}
+	}
+
+	/**
+	 * Character keys returned in linguistic order (simulated by case-insensitive order) are not in natural order,
+	 * hence they must not be unmarshalled as sorted.
+	 */
+	@Test
+	public void testLinguisticOrder() throws IOException {
+		BlockInterpreter.Executable linguistic = (name, arguments) -> {
+			Object result = ECHO.call(name, arguments);
+			@SuppressWarnings("unchecked")
+			Map<Object,Map<Object,Object>> var3 = (Map<Object,Map<Object,Object>>)arguments.get("po_var3");
+			for (Map.Entry<Object,Map<Object,Object>> e : var3.entrySet()) {
+				TreeMap<Object,Object> ibt5 = new TreeMap<>((a, b) -> String.CASE_INSENSITIVE_ORDER.compare((String)a, (String)b));
+				ibt5.putAll(e.getValue());
+				e.setValue(ibt5);
+			}
+			return result;
+		};
+		Map<String,Object> arguments = Maps.newLinkedHashMap(ARGUMENTS);
+		arguments.put("pi_var3", ImmutableList.of(ImmutableMap.of("B", ImmutableList.of("b"), "a", ImmutableList.of("a")), ImmutableMap.of()));
+		TypeGraph graph = loadGraph("alltypes");
+		TransferObjectTree tot = MarshallerTest.marshal(graph, "echo", arguments);
+		BlockGenerator.Block block = BlockGenerator.generate(tot);
+		Map<String,Object> bindValues = BlockGenerator.bindValues(tot, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap());
+		List<Object> inValues = Lists.newArrayList();
+		List<String> outNames = Lists.newArrayList();
+		for (BlockGenerator.Bind bind : block.getBinds()) {
+			if (bind.isOut()) {
+				outNames.add(bind.getName());
+			} else {
+				inValues.add(bindValues.get(bind.getName()));
+			}
+		}
+		List<Object> outValues = BlockInterpreter.execute(block.getText(), inValues, linguistic);
+		Map<String,Object> outValuesByName = Maps.newHashMap();
+		for (int i = 0; i < outNames.size(); i++) {
+			outValuesByName.put(outNames.get(i), outValues.get(i));
+		}
+		TransferObjectTree received = graph.toTypeNodeTree(graph.findType(FunctionSignature.class, "echo")).toTransferObjectTree();
+		BlockGenerator.readOutValues(received, outValuesByName);
+		assertFalse(received.getTransferObject(MarshallerTest.node(received, "po_var3", VarrayType.ELEMENT_LABEL), Indexes.class).isSorted());
+		assertTrue(received.getTransferObject(MarshallerTest.node(received, "po_ibt1"), Indexes.class).isSorted());
+		for (boolean eager : new boolean[] {false, true}) {
+			List<?> var3 = (List<?>)new Unmarshaller(received, UnmarshallerTest.RECORD_CLASSES, eager).unmarshal("po_var3");
+			Map<?,?> ibt5 = (Map<?,?>)var3.get(0);
+			assertEquals(ImmutableList.of("a", "B"), ImmutableList.copyOf(ibt5.keySet()));
+			assertEquals(ImmutableList.of("b"), ibt5.get("B"));
+			assertEquals(ImmutableList.of("a"), ibt5.get("a"));
+		}
+	}
+
+	@Test
+	public void testText() throws IOException {
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", UnmarshallerTest.ARGUMENTS);
+		String text = BlockGenerator.generate(tot).getText();
+		assertTrue(text, text.startsWith("declare\n"));
+		assertTrue(text, text.endsWith("end;\n"));
+		assertTrue(text, text.contains("v0 := echo("));
+		assertTrue(text, text.contains("pi_clob => v_11_,"));
+		assertTrue(text, text.contains("po_clob => v_22_"));
+		int questionMarks = text.length() - text.replace("?", "").length();
+		assertEquals(BlockGenerator.generate(tot).getBinds().size(), questionMarks);
+	}
+
+	@Test
+	public void testStyles() throws IOException {
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", ARGUMENTS);
+		Map<PrimitiveCollection,ColumnCodec.Encoded> plain = Collections.emptyMap();
+		String naive = BlockGenerator.generate(tot, BlockGenerator.Style.NAIVE, false, new ColumnPacking.Plan(), plain).getText();
+		String bulk = BlockGenerator.generate(tot, BlockGenerator.Style.BULK, false, new ColumnPacking.Plan(), plain).getText();
+		// pi_nst2 (v3): nested table of varrays of records with deletions
+		assertTrue(naive, naive.contains("for i3 in 1 .. abs(c3p(1 + 1)) - c3p(1) + abs(c3q(1 + 1)) - c3q(1) loop\n      v3.extend;\n"));
+		assertTrue(bulk, bulk.contains("v3.extend(abs(c3p(1 + 1)) - c3p(1) + abs(c3q(1 + 1)) - c3q(1));\n"
+				+ "    for i3 in c3q(1) .. abs(c3q(1 + 1)) - 1 loop\n      v3.delete(c3d(i3));\n    end loop;\n    m3 := v3.first;\n"));
+		// pi_ibt1 (v1): fields of records are filled by separate loops
+		assertTrue(bulk, bulk.contains("for i1 in c1p(1) .. abs(c1p(1 + 1)) - 1 loop\n      v1(c1i(i1)).f_pls_integer := c1e3(i1);\n    end loop;\n"));
+		assertTrue(naive, naive.contains("      v1(c1i(i1)).f_pls_integer := c1e3(i1);\n      v1(c1i(i1)).f2_rec3.f_boolean := "));
+	}
+
+	@Test
+	public void testSubprograms() throws IOException {
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", ARGUMENTS);
+		Map<PrimitiveCollection,ColumnCodec.Encoded> plain = Collections.emptyMap();
+		for (BlockGenerator.Style style : BlockGenerator.Style.values()) {
+			String inline = BlockGenerator.generate(tot, style, false, new ColumnPacking.Plan(), plain).getText();
+			String text = BlockGenerator.generate(tot, style, true, new ColumnPacking.Plan(), plain).getText();
+			assertTrue(text.length() + " < " + inline.length(), text.length() < inline.length());
+			// nested table nst4 as field of record shares function with elements of nst3
+			assertTrue(text, text.contains("  function b4e(\n    p pls_integer,\n    crp pleasejava_number_table,\n"));
+			assertTrue(text, text.contains("  v5.f_nst4 := b4e(1, c51p, c51d, c51q, c51e1, c51e2);\n"));
+			assertTrue(text, text.contains("      v1(c1i(i1)).f_var5 := b1e1(i1, c1e1p, c1e1e);\n"));
+			assertEquals(text, text.indexOf("function b1e1("), text.lastIndexOf("function b1e1("));
+		}
+		String naive = BlockGenerator.generate(tot, BlockGenerator.Style.NAIVE, true, new ColumnPacking.Plan(), plain).getText();
+		assertTrue(naive, naive.contains("  function b1e2(\n    p pls_integer,\n    cr1 pleasejava_number_table,\n    cr2 pleasejava_number_table\n  ) return a_test_package.rec3 is\n"));
+		assertTrue(naive, naive.contains("      v1(c1i(i1)).f1_rec3 := b1e2(i1, c1e21, c1e22);\n      v1(c1i(i1)).f_pls_integer := c1e3(i1);\n      v1(c1i(i1)).f2_rec3 := b1e2(i1, c1e41, c1e42);\n"));
+	}
+
+	/**
+	 * Loopback of graph with records reused at many positions, all IN OUT parameters are returned unchanged.
+	 */
+	@Test
+	public void testSubprogramsDag() throws IOException {
+		TypeGraph graph = loadGraph("dag2");
+		Map<Integer,String> i = ImmutableMap.of(1, "one", -2, "minus two");
+		Map<String,Object> h = ImmutableMap.<String,Object>of("fi", i, "fj", "j");
+		Map<String,Object> g = ImmutableMap.<String,Object>of("fi", ImmutableMap.of(), "fh", h);
+		Map<String,Object> f = ImmutableMap.<String,Object>of("fg", g, "fi", i);
+		Map<String,Object> c = ImmutableMap.<String,Object>of("ff", f, "fg", g);
+		Map<String,Object> arguments = ImmutableMap.<String,Object>of(
+				"pio_a", ImmutableMap.of("fb", ImmutableList.of(f, f, f), "fc", c),
+				"pio_d", ImmutableMap.of("fc", c, "fe", ImmutableMap.of("fg", g, "fh", h)));
+		int[] lengths = new int[2];
+		for (boolean subprograms : new boolean[] {false, true}) {
+			TransferObjectTree tot = MarshallerTest.marshal(graph, "a_test_package.main", arguments);
+			Map<PrimitiveCollection,ColumnCodec.Encoded> plain = Collections.emptyMap();
+			BlockGenerator.Block block = BlockGenerator.generate(tot, BlockGenerator.Style.BULK, subprograms, new ColumnPacking.Plan(), plain);
+			lengths[subprograms ? 1 : 0] = block.getText().length();
+			Map<String,Object> bindValues = BlockGenerator.bindValues(tot, new ColumnPacking.Plan(), plain);
+			List<Object> inValues = Lists.newArrayList();
+			List<String> outNames = Lists.newArrayList();
+			for (BlockGenerator.Bind bind : block.getBinds()) {
+				if (bind.getMode() == ParameterMode.OUT) {
+					outNames.add(bind.getName());
+				} else {
+					inValues.add(bindValues.get(bind.getName()));
+				}
+			}
+			List<Object> outValues = BlockInterpreter.execute(block.getText(), inValues, (name, args) -> null);
+			Map<String,Object> outValuesByName = Maps.newHashMap();
+			for (int k = 0; k < outNames.size(); k++) {
+				outValuesByName.put(outNames.get(k), outValues.get(k));
+			}
+			TransferObjectTree received = graph.toTypeNodeTree(graph.findType(ProcedureSignature.class, "a_test_package.main")).toTransferObjectTree();
+			BlockGenerator.readOutValues(received, outValuesByName);
+			Unmarshaller unmarshaller = new Unmarshaller(received, t -> null, true);
+			for (Map.Entry<String,Object> e : arguments.entrySet()) {
+				assertEquals(e.getKey(), e.getValue(), unmarshaller.unmarshal(e.getKey()));
+			}
+		}
+		assertTrue(lengths[1] + " < " + lengths[0], lengths[1] < lengths[0]);
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		TransferObjectTree first = MarshallerTest.marshal(graph, "echo", UnmarshallerTest.ARGUMENTS);
+		TransferObjectTree second = MarshallerTest.marshal(graph, "echo", ImmutableMap.of("pi_clob", "other"));
+		BlockGenerator.Block block = BlockGenerator.generate(first);
+		assertSame(block, BlockGenerator.generate(second)); // text does not depend on data
+		int size = BlockGenerator.cacheSize();
+		TransferObjectOptimizer.optimize(second);
+		BlockGenerator.Block optimized = BlockGenerator.generate(second);
+		assertNotSame(block, optimized);
+		assertSame(optimized, BlockGenerator.generate(second));
+		assertEquals(size + 1, BlockGenerator.cacheSize());
+	}
+
+}
@@ -0,0 +1,1121 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+
+/**
+ * <p>
+ * Executes anonymous PLSQL block generated by {@link BlockGenerator} without database,
+ * used for loopback tests of generated code.
+ * Understands only subset of PLSQL which generator emits: declarations, assignments, collection methods,
+ * <code>if</code>, <code>for</code> and <code>while</code> statements, <code>case</code>, <code>abs</code>, <code>nvl</code> and <code>mod</code> expressions,
+ * <code>utl_raw.substr</code>, <code>utl_raw.length</code>, <code>utl_raw.concat</code>, <code>utl_raw.cast_to_binary_integer</code>
+ * and <code>utl_raw.cast_from_binary_integer</code> functions (RAW is represented by <code>byte[]</code>),
+ * call of procedure or function in named notation and local functions and procedures called in positional notation,
+ * local types (ignored), nested block with <code>when others</code> handler catching exception thrown by {@link Executable}
+ * (available as <code>sqlerrm</code>) and savepoints (only their validity is tracked: {@link #commit() commit} simulated by {@link Executable}
+ * erases them and rollback to erased savepoint raises ORA-01086, no changes are actually rolled back).
+ * Procedure of generated {@link WrapperPackage} can be executed as well,
+ * package variables are kept in map given by caller between executions (in the role of package state of database session).
+ * </p>
+ * <p>
+ * Collections are represented by {@link TreeMap} (null for atomically null collection),
+ * records by {@link LinkedHashMap} created on first access of field.
+ * SQL collections in binds are represented by {@link List} (IN binds of number collections also by <code>int[]</code>).
+ * Assignment copies collections and records, as in PLSQL.
+ * </p>
+ * <p>
+ * Capacity of declared types is enforced as in database when variable or parameter is initialized and when OUT bind is assigned:
+ * character value longer than declared <code>varchar2</code> length (also as element of {@link ColumnKind} collection)
+ * and bound collection exceeding limit of predefined varray raise error which can be caught by exception handler.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class BlockInterpreter {
+
+	/**
+	 * Simulated procedure or function called from block.
+	 * @author Tomas Zalusky
+	 */
+	interface Executable {
+
+		/**
+		 * @param name name of procedure or function
+		 * @param arguments arguments by parameter name, values of OUT parameters are to be put into the map
+		 * @return return value of function, ignored for procedure
+		 */
+		Object call(String name, Map<String,Object> arguments);
+
+	}
+
+	private static final Pattern TOKEN = Pattern.compile("\\s*('(?:[^']|'')*'|[A-Za-z_][A-Za-z0-9_$#]*|\\d+(?:\\.\\d+)?|:=|\\.\\.|=>|<>|<=|>=|[-+*/(),;.?<>=])");
+
+	private static final ImmutableSet<String> KEYWORDS = ImmutableSet.of("null", "true", "false", "case", "not", "abs", "nvl", "mod", "utl_raw");
+
+	private static final Object UNDECLARED = new Object();
+
+	private static final ImmutableSet<String> END_OF_STATEMENTS = ImmutableSet.of("end", "else", "elsif", "exception");
+
+	private static final Pattern VARCHAR2 = Pattern.compile("varchar2\\((\\d+)\\)");
+
+	private static final Pattern RAW = Pattern.compile("raw\\((\\d+)\\)");
+
+	/**
+	 * Maximal number of elements of predefined varrays.
+	 */
+	private static final int VARRAY_LIMIT = 32767;
+
+	/**
+	 * Element types of SQL collection types which can be bound, by name of collection type.
+	 */
+	private static final ImmutableMap<String,String> ELEMENT_TYPES;
+
+	static {
+		ImmutableMap.Builder<String,String> builder = ImmutableMap.builder();
+		for (ColumnKind kind : ColumnKind.values()) {
+			builder.put(kind.getCollectionType(), kind.getScalarType());
+		}
+		builder.put("sys.odcivarchar2list", "varchar2(4000)");
+		builder.put("sys.odcinumberlist", "number");
+		builder.put("sys.odcidatelist", "date");
+		ELEMENT_TYPES = builder.build();
+	}
+
+	/**
+	 * Interpreter whose block is calling {@link Executable} in current thread.
+	 */
+	private static final ThreadLocal<BlockInterpreter> CALLING = new ThreadLocal<>();
+
+	private final List<String> tokens = Lists.newArrayList();
+
+	private int pos;
+
+	private final Map<String,Object> variables = Maps.newHashMap();
+
+	/**
+	 * Declared types of variables and parameters (tokens of type concatenated without spaces).
+	 */
+	private final Map<String,String> types = Maps.newHashMap();
+
+	/**
+	 * Local functions and procedures by name.
+	 */
+	private final Map<String,Subprogram> subprograms = Maps.newHashMap();
+
+	/**
+	 * Value of <code>return</code> statement of currently executed local function.
+	 */
+	private Object returned;
+
+	private final Iterator<?> inValues;
+
+	private final List<Object> outValues = Lists.newArrayList();
+
+	private final Executable executable;
+
+	/**
+	 * Last exception thrown by {@link Executable}, the only exception which can be caught by exception handler.
+	 */
+	private RuntimeException raised;
+
+	/**
+	 * Names of established savepoints.
+	 */
+	private final Set<String> savepoints = Sets.newHashSet();
+
+	/**
+	 * Local function or procedure declared in block.
+	 * @author Tomas Zalusky
+	 */
+	private static final class Subprogram {
+
+		private final List<String> parameters;
+
+		/**
+		 * Indexes of OUT and IN OUT parameters, whose values are assigned back into argument variables.
+		 */
+		private final List<Integer> outParameters = Lists.newArrayList();
+
+		/**
+		 * Position of first token after <code>is</code>.
+		 */
+		private final int start;
+
+		/**
+		 * Names of parameters and local variables, which shadow variables of block during execution.
+		 */
+		private final List<String> scope = Lists.newArrayList();
+
+		Subprogram(List<String> parameters, int start) {
+			this.parameters = parameters;
+			this.start = start;
+		}
+
+	}
+
+	private BlockInterpreter(String text, List<?> inValues, Executable executable) {
+		Matcher m = TOKEN.matcher(text);
+		int end = 0;
+		while (m.lookingAt()) {
+			tokens.add(m.group(1));
+			end = m.end();
+			m.region(end, text.length());
+		}
+		if (!text.substring(end).trim().isEmpty()) {
+			throw new IllegalArgumentException("Cannot tokenize " + text.substring(end));
+		}
+		this.inValues = inValues.iterator();
+		this.executable = executable;
+	}
+
+	/**
+	 * Simulates commit executed by {@link Executable}: savepoints established by calling block are erased.
+	 * @throws IllegalStateException if not called from {@link Executable}
+	 */
+	static void commit() {
+		BlockInterpreter caller = CALLING.get();
+		checkState(caller != null, "Commit can be simulated only by called procedure or function.");
+		caller.savepoints.clear();
+	}
+
+	/**
+	 * @param text text of block
+	 * @param inValues values of IN binds in order of occurrence
+	 * @param executable
+	 * @return values of OUT binds in order of occurrence
+	 */
+	static List<Object> execute(String text, List<?> inValues, Executable executable) {
+		BlockInterpreter interpreter = new BlockInterpreter(text, inValues, executable);
+		interpreter.block();
+		return interpreter.outValues;
+	}
+
+	/**
+	 * Executes procedure defined in package body (without executing anything else in package body).
+	 * @param packageBody text of package body
+	 * @param procedureName
+	 * @param arguments values of all parameters in order of declaration (values of OUT parameters are ignored)
+	 * @param executable
+	 * @return values of OUT and IN OUT parameters in order of declaration
+	 */
+	static List<Object> executeProcedure(String packageBody, String procedureName, List<?> arguments, Executable executable) {
+		return executeProcedure(packageBody, procedureName, arguments, executable, Maps.<String,Object>newHashMap());
+	}
+
+	/**
+	 * Executes procedure defined in package body, package variables are read from and written back to given package state.
+	 * @param packageBody text of package body
+	 * @param procedureName
+	 * @param arguments values of all parameters in order of declaration (values of OUT parameters are ignored)
+	 * @param executable
+	 * @param packageState values of package variables by name, initialized by declarations of package body when empty
+	 * @return values of OUT and IN OUT parameters in order of declaration
+	 */
+	static List<Object> executeProcedure(String packageBody, String procedureName, List<?> arguments, Executable executable, Map<String,Object> packageState) {
+		BlockInterpreter interpreter = new BlockInterpreter(packageBody, Collections.emptyList(), executable);
+		if (packageState.isEmpty()) {
+			interpreter.packageVariables();
+			packageState.putAll(interpreter.variables);
+			interpreter.pos = 0;
+		}
+		interpreter.variables.putAll(packageState);
+		List<Object> result = interpreter.procedure(procedureName, arguments);
+		for (Map.Entry<String,Object> e : packageState.entrySet()) {
+			e.setValue(interpreter.variables.get(e.getKey()));
+		}
+		return result;
+	}
+
+	/**
+	 * Declares variables of package body (which precede its functions and procedures).
+	 */
+	private void packageVariables() {
+		while (!accept("as")) {
+			next();
+		}
+		while (!(peek("function") || peek("procedure") || peek("end"))) {
+			variable();
+		}
+	}
+
+	private List<Object> procedure(String procedureName, List<?> arguments) {
+		while (!(tokens.get(pos).equals("procedure") && tokens.get(pos + 1).equals(procedureName))) {
+			pos++;
+		}
+		pos += 2;
+		Iterator<?> argumentIterator = arguments.iterator();
+		List<String> outParameters = Lists.newArrayList();
+		if (accept("(")) {
+			do {
+				String name = next();
+				boolean in = accept("in");
+				if (accept("out")) {
+					outParameters.add(name);
+				}
+				types.put(name, type(","));
+				Object argument = argumentIterator.next();
+				variables.put(name, in ? checkCapacity(name, copy(fromBind(argument))) : null);
+			} while (accept(","));
+			expect(")");
+		}
+		expect("is");
+		declarations();
+		expect("begin");
+		statements(true);
+		expect("end");
+		List<Object> result = Lists.newArrayList();
+		for (String name : outParameters) {
+			result.add(toBind(checkCapacity(name, variables.get(name))));
+		}
+		return result;
+	}
+
+	private void block() {
+		expect("declare");
+		declarations();
+		expect("begin");
+		statements(true);
+		expect("end");
+		expect(";");
+		if (pos < tokens.size()) {
+			throw new IllegalStateException("Unexpected " + tokens.get(pos));
+		}
+	}
+
+	/**
+	 * @return names of declared variables
+	 */
+	private List<String> declarations() {
+		List<String> result = Lists.newArrayList();
+		while (!peek("begin")) {
+			if (peek("function") || peek("procedure")) {
+				subprogram();
+				continue;
+			}
+			if (accept("type")) {
+				while (!accept(";")) { // local type is not needed, values are untyped
+					next();
+				}
+				continue;
+			}
+			result.add(variable());
+		}
+		return result;
+	}
+
+	/**
+	 * Declares variable.
+	 * @return name of variable
+	 */
+	private String variable() {
+		String name = next();
+		types.put(name, type(":="));
+		variables.put(name, accept(":=") ? checkCapacity(name, copy(expression(true))) : null);
+		expect(";");
+		return name;
+	}
+
+	/**
+	 * Reads type of variable or parameter.
+	 * @param delimiter token following type (besides semicolon or right parenthesis)
+	 * @return tokens of type concatenated without spaces
+	 */
+	private String type(String delimiter) {
+		StringBuilder result = new StringBuilder();
+		int depth = 0;
+		while (depth > 0 || !(peek(delimiter) || peek(";") || peek(")"))) {
+			String t = next();
+			depth += t.equals("(") ? 1 : t.equals(")") ? -1 : 0;
+			result.append(t);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @param name name of variable or parameter
+	 * @param value value (collections represented by map)
+	 * @return given value
+	 * @throws IllegalStateException (which can be caught by exception handler) if value does not fit into declared type
+	 */
+	private Object checkCapacity(String name, Object value) {
+		String type = types.get(name);
+		String elementType = ELEMENT_TYPES.get(type);
+		if (elementType != null && value instanceof Map) {
+			Map<?,?> collection = (Map<?,?>)value;
+			if (type.startsWith("sys.") && collection.size() > VARRAY_LIMIT) {
+				throw raise("ORA-06532: Subscript outside of limit");
+			}
+			for (Object element : collection.values()) {
+				checkLength(elementType, element);
+			}
+		} else if (type != null) {
+			checkLength(type, value);
+		}
+		return value;
+	}
+
+	private void checkLength(String type, Object value) {
+		Matcher m = VARCHAR2.matcher(type);
+		if (value instanceof String && m.matches() && ((String)value).length() > Integer.parseInt(m.group(1))) {
+			throw raise("ORA-06502: PL/SQL: numeric or value error: character string buffer too small");
+		}
+		m = RAW.matcher(type);
+		if (value instanceof byte[] && m.matches() && ((byte[])value).length > Integer.parseInt(m.group(1))) {
+			throw raise("ORA-06502: PL/SQL: numeric or value error: raw variable length too long");
+		}
+	}
+
+	/**
+	 * @param message
+	 * @return database error which can be caught by exception handler
+	 */
+	private RuntimeException raise(String message) {
+		raised = new IllegalStateException(message);
+		return raised;
+	}
+
+	/**
+	 * Registers local function or procedure, its body is parsed without execution.
+	 */
+	private void subprogram() {
+		boolean function = next().equals("function");
+		String name = next();
+		List<String> parameters = Lists.newArrayList();
+		List<Integer> outParameters = Lists.newArrayList();
+		if (accept("(")) {
+			do {
+				parameters.add(next());
+				accept("in");
+				if (accept("out")) {
+					outParameters.add(parameters.size() - 1);
+				}
+				while (!(peek(",") || peek(")"))) { // skip nocopy and type
+					next();
+				}
+			} while (accept(","));
+			expect(")");
+		}
+		if (function) {
+			expect("return");
+			qualifiedName();
+		}
+		expect("is");
+		Subprogram subprogram = new Subprogram(parameters, pos);
+		subprogram.outParameters.addAll(outParameters);
+		subprograms.put(name, subprogram);
+		Map<String,Object> shadowed = enter(parameters);
+		subprogram.scope.addAll(parameters);
+		subprogram.scope.addAll(declarations());
+		expect("begin");
+		statements(false);
+		expect("end");
+		expect(";");
+		leave(shadowed);
+	}
+
+	/**
+	 * Parses arguments in positional notation and executes subprogram.
+	 * Collections and records are passed by reference (as by <code>nocopy</code>),
+	 * values of OUT parameters are assigned back into variables passed as arguments.
+	 * @return value returned by function
+	 */
+	private Object invoke(boolean run, Subprogram subprogram) {
+		List<Object> arguments = Lists.newArrayList();
+		List<String> argumentVariables = Lists.newArrayList();
+		expect("(");
+		do {
+			argumentVariables.add(tokens.get(pos));
+			arguments.add(expression(run));
+		} while (accept(","));
+		expect(")");
+		if (!run) {
+			return null;
+		}
+		int caller = pos;
+		Map<String,Object> shadowed = enter(subprogram.scope);
+		for (int i = 0; i < arguments.size(); i++) {
+			variables.put(subprogram.parameters.get(i), arguments.get(i));
+		}
+		pos = subprogram.start;
+		declarations();
+		expect("begin");
+		statements(true);
+		expect("end");
+		Object result = returned;
+		returned = null;
+		Map<String,Object> outValues = new LinkedHashMap<>();
+		for (int i : subprogram.outParameters) {
+			outValues.put(argumentVariables.get(i), variables.get(subprogram.parameters.get(i)));
+		}
+		leave(shadowed);
+		variables.putAll(outValues);
+		pos = caller;
+		return result;
+	}
+
+	/**
+	 * Declares variables of local function.
+	 * Declared types of shadowed variables are forgotten (capacity of such variables is not checked any more).
+	 * @return shadowed variables of block
+	 */
+	private Map<String,Object> enter(List<String> names) {
+		Map<String,Object> result = new LinkedHashMap<>();
+		for (String name : names) {
+			if (variables.containsKey(name)) {
+				result.put(name, variables.get(name));
+			}
+			variables.put(name, null);
+			types.remove(name);
+		}
+		for (String name : names) {
+			if (!result.containsKey(name)) {
+				result.put(name, UNDECLARED);
+			}
+		}
+		return result;
+	}
+
+	private void leave(Map<String,Object> shadowed) {
+		for (Map.Entry<String,Object> e : shadowed.entrySet()) {
+			types.remove(e.getKey());
+			if (e.getValue() == UNDECLARED) {
+				variables.remove(e.getKey());
+			} else {
+				variables.put(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	private void statements(boolean run) {
+		while (!END_OF_STATEMENTS.contains(tokens.get(pos))) {
+			statement(run);
+		}
+	}
+
+	private void statement(boolean run) {
+		if (accept("if")) {
+			boolean done = false;
+			do {
+				boolean condition = isTrue(expression(run && !done));
+				expect("then");
+				statements(run && !done && condition);
+				done |= condition;
+			} while (accept("elsif"));
+			if (accept("else")) {
+				statements(run && !done);
+			}
+			expect("end");
+			expect("if");
+		} else if (accept("for")) {
+			String index = next();
+			expect("in");
+			Object from = expression(run);
+			expect("..");
+			Object to = expression(run);
+			expect("loop");
+			int start = pos;
+			Object shadowed = variables.get(index);
+			variables.put(index, null);
+			int count = run ? (int)toLong(to) - (int)toLong(from) + 1 : 0;
+			for (int i = 0; i < count; i++) {
+				pos = start;
+				variables.put(index, (int)toLong(from) + i);
+				statements(true);
+			}
+			if (count <= 0) {
+				statements(false);
+			}
+			variables.put(index, shadowed);
+			expect("end");
+			expect("loop");
+		} else if (accept("while")) {
+			int start = pos;
+			boolean condition;
+			do {
+				pos = start;
+				Object value = expression(run);
+				condition = run && isTrue(value);
+				expect("loop");
+				statements(condition);
+			} while (condition);
+			expect("end");
+			expect("loop");
+		} else if (accept("begin")) {
+			nestedBlock(run);
+		} else if (accept("savepoint")) {
+			String name = next();
+			if (run) {
+				savepoints.add(name);
+			}
+		} else if (accept("rollback")) {
+			expect("to");
+			String name = next();
+			if (run && !savepoints.contains(name)) {
+				throw raise(String.format("ORA-01086: savepoint '%s' never established in this session or is invalid", name.toUpperCase()));
+			}
+		} else if (accept("return")) {
+			Object value = expression(run);
+			if (run) {
+				returned = value;
+			}
+		} else if (accept("?")) {
+			expect(":=");
+			String source = tokens.get(pos + 1).equals(";") ? tokens.get(pos) : null;
+			Object value = expression(run);
+			if (run) {
+				outValues.add(toBind(source != null ? checkCapacity(source, value) : value));
+			}
+		} else if (variables.containsKey(tokens.get(pos))) {
+			assignmentOrMethod(run);
+		} else if (subprograms.containsKey(tokens.get(pos))) {
+			invoke(run, subprograms.get(next()));
+		} else {
+			call(run, null);
+		}
+		expect(";");
+	}
+
+	/**
+	 * Executes statements of nested block, exception thrown by {@link Executable} is caught by <code>when others</code> handler.
+	 */
+	private void nestedBlock(boolean run) {
+		int start = pos;
+		RuntimeException caught = null;
+		try {
+			statements(run);
+		} catch (RuntimeException e) {
+			if (e != raised) {
+				throw e;
+			}
+			caught = e;
+			pos = start;
+			statements(false); // skip rest of statements
+		}
+		if (accept("exception")) {
+			expect("when");
+			expect("others");
+			expect("then");
+			Object shadowed = variables.get("sqlerrm");
+			variables.put("sqlerrm", caught == null ? null : caught.getMessage());
+			statements(run && caught != null);
+			variables.put("sqlerrm", shadowed);
+			if (shadowed == null) {
+				variables.remove("sqlerrm");
+			}
+		} else if (caught != null) {
+			throw caught;
+		}
+		expect("end");
+	}
+
+	private void assignmentOrMethod(boolean run) {
+		List<Object> path = Lists.newArrayList();
+		path.add(next());
+		String method = null;
+		while (method == null && (peek("(") || peek("."))) {
+			if (accept("(")) {
+				path.add(new Object[] {expression(run)});
+				expect(")");
+			} else {
+				expect(".");
+				String name = next();
+				if (name.equals("extend") || name.equals("delete")) {
+					method = name;
+				} else {
+					path.add(name);
+				}
+			}
+		}
+		if (method == null) {
+			expect(":=");
+			if (!isCall()) {
+				Object value = expression(run);
+				if (run) {
+					Map<Object,Object> container = container(path);
+					container.put(key(path.get(path.size() - 1)), copy(value));
+				}
+			} else {
+				call(run, path);
+			}
+			return;
+		}
+		Object argument = null;
+		boolean hasArgument = accept("(");
+		if (hasArgument) {
+			argument = expression(run);
+			expect(")");
+		}
+		if (run) {
+			@SuppressWarnings("unchecked")
+			TreeMap<Object,Object> collection = (TreeMap<Object,Object>)container(path).computeIfAbsent(key(path.get(path.size() - 1)), k -> new TreeMap<>());
+			if (method.equals("extend")) {
+				int n = hasArgument ? (int)toLong(argument) : 1;
+				int last = collection.isEmpty() ? 0 : (Integer)collection.lastKey();
+				for (int i = 1; i <= n; i++) {
+					collection.put(last + i, null);
+				}
+			} else if (hasArgument) {
+				collection.remove(normalize(argument));
+			} else {
+				collection.clear();
+			}
+		}
+	}
+
+	/**
+	 * @param path variable name followed by field names and one-element arrays of indexes
+	 * @return map containing last element of path, intermediate records and collections are created as needed
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<Object,Object> container(List<Object> path) {
+		Map<Object,Object> result = (Map<Object,Object>)(Map<?,?>)variables;
+		for (int i = 0; i < path.size() - 1; i++) {
+			Object k = key(path.get(i));
+			Object value = result.get(k);
+			if (value == null) {
+				value = path.get(i + 1) instanceof Object[] ? new TreeMap<>() : new LinkedHashMap<>();
+				result.put(k, value);
+			}
+			result = (Map<Object,Object>)value;
+		}
+		return result;
+	}
+
+	private static Object key(Object pathElement) {
+		return pathElement instanceof Object[] ? normalize(((Object[])pathElement)[0]) : pathElement;
+	}
+
+	/**
+	 * @return true if tokens at current position represent call of procedure or function (in contrast to variable, constructor or built-in function)
+	 */
+	private boolean isCall() {
+		int p = pos;
+		while (tokens.get(p + 1).equals(".")) {
+			p += 2;
+		}
+		String first = tokens.get(pos);
+		return Character.isLetter(first.charAt(0)) && !KEYWORDS.contains(first) && !variables.containsKey(first)
+				&& (tokens.get(p + 1).equals(";") || tokens.get(p + 3).equals("=>"));
+	}
+
+	/**
+	 * Calls procedure or function, arguments are variables or elements of collection variables.
+	 * @param resultPath path of variable or element assigned by result of function, null for procedure
+	 */
+	private void call(boolean run, List<Object> resultPath) {
+		String name = qualifiedName();
+		Map<String,Object> arguments = new LinkedHashMap<>();
+		Map<String,List<Object>> argumentPaths = new LinkedHashMap<>();
+		if (accept("(")) {
+			do {
+				String parameter = next();
+				expect("=>");
+				List<Object> path = Lists.newArrayList();
+				path.add(next());
+				while (accept("(")) {
+					path.add(new Object[] {expression(run)});
+					expect(")");
+				}
+				arguments.put(parameter, run ? copy(valueAt(path)) : null);
+				argumentPaths.put(parameter, path);
+			} while (accept(","));
+			expect(")");
+		}
+		if (run) {
+			Object result;
+			BlockInterpreter caller = CALLING.get();
+			CALLING.set(this);
+			try {
+				result = executable.call(name, arguments);
+			} catch (RuntimeException e) {
+				raised = e;
+				throw e;
+			} finally {
+				CALLING.set(caller);
+			}
+			for (Map.Entry<String,List<Object>> e : argumentPaths.entrySet()) {
+				List<Object> path = e.getValue();
+				container(path).put(key(path.get(path.size() - 1)), copy(arguments.get(e.getKey())));
+			}
+			if (resultPath != null) {
+				container(resultPath).put(key(resultPath.get(resultPath.size() - 1)), copy(result));
+			}
+		}
+	}
+
+	/**
+	 * @param path variable name followed by one-element arrays of indexes
+	 * @return value of variable or element
+	 */
+	private Object valueAt(List<Object> path) {
+		Object result = variables.get(path.get(0));
+		for (int i = 1; i < path.size() && result != null; i++) {
+			result = ((Map<?,?>)result).get(key(path.get(i)));
+		}
+		return result;
+	}
+
+	private String qualifiedName() {
+		StringBuilder result = new StringBuilder(next());
+		while (accept(".")) {
+			result.append('.').append(next());
+		}
+		return result.toString();
+	}
+
+	private Object expression(boolean run) {
+		Object result = conjunction(run);
+		while (accept("or")) {
+			Object right = conjunction(run);
+			result = isTrue(result) || isTrue(right) ? Boolean.TRUE : result == null || right == null ? null : Boolean.FALSE;
+		}
+		return result;
+	}
+
+	private Object conjunction(boolean run) {
+		Object result = negation(run);
+		while (accept("and")) {
+			Object right = negation(run);
+			result = Boolean.FALSE.equals(result) || Boolean.FALSE.equals(right) ? Boolean.FALSE : result == null || right == null ? null : Boolean.TRUE;
+		}
+		return result;
+	}
+
+	private Object negation(boolean run) {
+		if (accept("not")) {
+			Object operand = negation(run);
+			return operand == null ? null : !(Boolean)operand;
+		}
+		return comparison(run);
+	}
+
+	private Object comparison(boolean run) {
+		Object left = sum(run);
+		if (accept("is")) {
+			boolean not = accept("not");
+			expect("null");
+			return not != (left == null);
+		}
+		for (String operator : new String[] {"=", "<>", "<=", ">=", "<", ">"}) {
+			if (accept(operator)) {
+				Object right = sum(run);
+				if (left == null || right == null) {
+					return null;
+				}
+				int c = compare(left, right);
+				switch (operator) {
+					case "=": return c == 0;
+					case "<>": return c != 0;
+					case "<=": return c <= 0;
+					case ">=": return c >= 0;
+					case "<": return c < 0;
+					default: return c > 0;
+				}
+			}
+		}
+		return left;
+	}
+
+	private Object sum(boolean run) {
+		Object result = product(run);
+		while (peek("+") || peek("-")) {
+			boolean plus = next().equals("+");
+			Object right = product(run);
+			result = result == null || right == null ? null : normalize(plus ? toDecimal(result).add(toDecimal(right)) : toDecimal(result).subtract(toDecimal(right)));
+		}
+		return result;
+	}
+
+	private Object product(boolean run) {
+		Object result = unary(run);
+		while (peek("*") || peek("/")) {
+			boolean times = next().equals("*");
+			Object right = unary(run);
+			result = result == null || right == null ? null : normalize(times ? toDecimal(result).multiply(toDecimal(right)) : toDecimal(result).divide(toDecimal(right)));
+		}
+		return result;
+	}
+
+	private Object unary(boolean run) {
+		if (accept("-")) {
+			Object operand = unary(run);
+			return operand == null ? null : normalize(toDecimal(operand).negate());
+		}
+		return postfix(run, primary(run));
+	}
+
+	private Object primary(boolean run) {
+		String t = next();
+		if (t.equals("(")) {
+			Object result = expression(run);
+			expect(")");
+			return result;
+		} else if (t.startsWith("'")) {
+			return t.substring(1, t.length() - 1).replace("''", "'");
+		} else if (Character.isDigit(t.charAt(0))) {
+			return normalize(new BigDecimal(t));
+		} else if (t.equals("?")) {
+			return run ? fromBind(inValues.next()) : null;
+		} else if (t.equals("null")) {
+			return null;
+		} else if (t.equals("true") || t.equals("false")) {
+			return Boolean.valueOf(t);
+		} else if (t.equals("case")) {
+			return caseExpression(run);
+		} else if (t.equals("abs") || t.equals("nvl") || t.equals("mod")) {
+			expect("(");
+			Object first = expression(run);
+			Object second = accept(",") ? expression(run) : null;
+			expect(")");
+			if (t.equals("nvl")) {
+				return first != null ? first : second;
+			} else if (first == null || t.equals("mod") && second == null) {
+				return null;
+			}
+			return normalize(t.equals("abs") ? toDecimal(first).abs() : toDecimal(first).remainder(toDecimal(second)));
+		} else if (t.equals("utl_raw")) {
+			return utlRaw(run);
+		} else if (variables.containsKey(t)) {
+			return variables.get(t);
+		} else if (subprograms.containsKey(t)) {
+			return invoke(run, subprograms.get(t));
+		}
+		pos--;
+		qualifiedName(); // constructor of collection type
+		TreeMap<Object,Object> result = new TreeMap<>();
+		expect("(");
+		while (!accept(")")) {
+			result.put(result.size() + 1, expression(run));
+			accept(",");
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates function of <code>utl_raw</code> package.
+	 */
+	private Object utlRaw(boolean run) {
+		expect(".");
+		String function = next();
+		expect("(");
+		Object argument = expression(run);
+		byte[] raw = argument instanceof byte[] ? (byte[])argument : null;
+		Object result;
+		if (function.equals("length")) {
+			result = raw == null ? null : raw.length;
+		} else if (function.equals("concat")) {
+			byte[] concatenated = raw == null ? new byte[0] : raw;
+			while (accept(",")) {
+				byte[] next = (byte[])expression(run);
+				if (run && next != null) {
+					concatenated = Bytes.concat(concatenated, next);
+				}
+			}
+			result = run && concatenated.length > 0 ? concatenated : null;
+		} else if (function.equals("cast_from_binary_integer")) {
+			result = run ? Ints.toByteArray((int)toLong(argument)) : null;
+		} else if (function.equals("substr")) {
+			expect(",");
+			Object position = expression(run);
+			expect(",");
+			Object length = expression(run);
+			if (!run) {
+				result = null;
+			} else {
+				int from = (int)toLong(position) - 1;
+				int to = from + (int)toLong(length);
+				if (from < 0 || to > raw.length) {
+					throw raise("ORA-06502: PL/SQL: numeric or value error");
+				}
+				result = Arrays.copyOfRange(raw, from, to);
+			}
+		} else if (function.equals("cast_to_binary_integer")) {
+			int value = 0;
+			for (int i = 0; run && i < raw.length; i++) {
+				value = value << 8 | raw[i] & 0xff;
+			}
+			result = run ? value : null;
+		} else {
+			throw new IllegalStateException("Unsupported function utl_raw." + function);
+		}
+		expect(")");
+		return result;
+	}
+
+	private Object caseExpression(boolean run) {
+		boolean searched = peek("when");
+		Object selector = searched ? null : expression(run);
+		Object result = null;
+		boolean done = false;
+		while (accept("when")) {
+			Object candidate = expression(run);
+			expect("then");
+			Object value = expression(run);
+			boolean matches = searched ? isTrue(candidate) : selector != null && candidate != null && compare(selector, candidate) == 0;
+			if (!done && matches) {
+				result = value;
+				done = true;
+			}
+		}
+		if (accept("else")) {
+			Object value = expression(run);
+			result = done ? result : value;
+		}
+		expect("end");
+		return result;
+	}
+
+	private Object postfix(boolean run, Object value) {
+		while (peek("(") || peek(".")) {
+			if (accept("(")) {
+				Object index = expression(run);
+				expect(")");
+				value = run && value != null ? ((Map<?,?>)value).get(normalize(index)) : null;
+			} else {
+				expect(".");
+				String name = next();
+				if (name.equals("next") || name.equals("exists")) {
+					expect("(");
+					Object argument = expression(run);
+					expect(")");
+					if (run) {
+						@SuppressWarnings("unchecked") // collections are created by interpreter with keys of any type
+						TreeMap<Object,?> collection = (TreeMap<Object,?>)value;
+						value = name.equals("next") ? collection.higherKey(normalize(argument)) : collection != null && collection.containsKey(normalize(argument));
+					}
+				} else if (!run) {
+					value = null;
+				} else if (name.equals("count")) {
+					value = ((Map<?,?>)value).size();
+				} else if (name.equals("first")) {
+					value = ((TreeMap<?,?>)value).isEmpty() ? null : ((TreeMap<?,?>)value).firstKey();
+				} else if (name.equals("last")) {
+					value = ((TreeMap<?,?>)value).isEmpty() ? null : ((TreeMap<?,?>)value).lastKey();
+				} else {
+					value = value == null ? null : ((Map<?,?>)value).get(name);
+				}
+			}
+		}
+		return value;
+	}
+
+	private static int compare(Object left, Object right) {
+		if (left instanceof Number && right instanceof Number) {
+			return toDecimal(left).compareTo(toDecimal(right));
+		}
+		@SuppressWarnings("unchecked")
+		Comparable<Object> comparable = (Comparable<Object>)left;
+		return comparable.compareTo(right);
+	}
+
+	private static boolean isTrue(Object condition) {
+		return Boolean.TRUE.equals(condition);
+	}
+
+	private static BigDecimal toDecimal(Object value) {
+		return value instanceof BigDecimal ? (BigDecimal)value : new BigDecimal(value.toString());
+	}
+
+	private static long toLong(Object value) {
+		return toDecimal(value).longValueExact();
+	}
+
+	/**
+	 * @return integral numbers converted to {@link Integer} (for use as keys of collections), other values unchanged
+	 */
+	private static Object normalize(Object value) {
+		if (value instanceof Number && !(value instanceof Integer)) {
+			BigDecimal decimal = toDecimal(value);
+			if (decimal.stripTrailingZeros().scale() <= 0) {
+				try {
+					return decimal.intValueExact();
+				} catch (ArithmeticException e) {
+					return value;
+				}
+			}
+		}
+		return value;
+	}
+
+	private static Object copy(Object value) {
+		if (value instanceof TreeMap) {
+			@SuppressWarnings("unchecked")
+			TreeMap<Object,Object> result = new TreeMap<>((Comparator<Object>)((TreeMap<?,?>)value).comparator()); // keeps order of keys given by collation
+			for (Map.Entry<?,?> e : ((TreeMap<?,?>)value).entrySet()) {
+				result.put(e.getKey(), copy(e.getValue()));
+			}
+			return result;
+		} else if (value instanceof LinkedHashMap) {
+			Map<Object,Object> result = new LinkedHashMap<>();
+			for (Map.Entry<?,?> e : ((Map<?,?>)value).entrySet()) {
+				result.put(e.getKey(), copy(e.getValue()));
+			}
+			return result;
+		}
+		return value;
+	}
+
+	private static Object fromBind(Object value) {
+		if (value instanceof List || value instanceof int[]) {
+			TreeMap<Object,Object> result = new TreeMap<>();
+			for (Object element : value instanceof int[] ? Ints.asList((int[])value) : (List<?>)value) {
+				result.put(result.size() + 1, element);
+			}
+			return result;
+		}
+		return value;
+	}
+
+	private static Object toBind(Object value) {
+		return value instanceof TreeMap ? Lists.newArrayList(((TreeMap<?,?>)value).values()) : value;
+	}
+
+	private boolean peek(String token) {
+		return pos < tokens.size() && tokens.get(pos).equals(token);
+	}
+
+	private boolean accept(String token) {
+		if (peek(token)) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(String token) {
+		if (!accept(token)) {
+			throw new IllegalStateException(String.format("Expected %s at token %d but found %s", token, pos, pos < tokens.size() ? tokens.get(pos) : "end of text"));
+		}
+	}
+
+	private String next() {
+		return tokens.get(pos++);
+	}
+
+	@Override
+	public String toString() {
+		return Objects.toString(variables);
+	}
+
+}
@@ -0,0 +1,252 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import com.google.common.base.Joiner;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * Unit of work: several calls of (possibly different) procedures and functions executed in single round-trip.
+ * Calls are recorded by {@link #add(AbstractSignature, List)} and executed by {@link #execute(PlsqlRuntime.Executor)}.
+ * Signatures of calls are merged into {@link GroupSignature} whose parameters are parameters of all calls
+ * (prefixed by position of call), hence {@link Marshaller} puts data of all calls into columns of single transfer object tree
+ * and block has single set of binds.
+ * </p>
+ * <p>
+ * Block generated for group signature rebuilds arguments of all calls, calls procedures and functions in order of recording
+ * and decomposes OUT values of all calls. Exception raised by any call propagates from block,
+ * no OUT values are returned then and it is up to transaction of caller to roll back changes of previous calls.
+ * OUT values are distributed back into {@link Call}s.
+ * </p>
+ * <p>
+ * Text of block depends only on sequence of signatures (and shape of data), group signature is shared by all groups
+ * with the same sequence of signatures.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class CallGroup {
+
+	/**
+	 * Procedure whose parameters are parameters of all signatures of group, named by {@link CallGroup#parameterName(int, String)}
+	 * (including return values of functions).
+	 * It is recognized by {@link BlockGenerator} which calls every signature with its own parameters.
+	 * @author Tomas Zalusky
+	 */
+	static final class GroupSignature extends ProcedureSignature {
+
+		private final ImmutableList<AbstractSignature> members;
+
+		private GroupSignature(List<AbstractSignature> members, Map<String,Parameter> parameters) {
+			super(new ProcedureSignature.StringConverter().fromString(Joiner.on("; ").join(Lists.transform(members, AbstractSignature::getName))), parameters);
+			this.members = ImmutableList.copyOf(members);
+		}
+
+		/**
+		 * @return called procedures and functions, in order of calls
+		 */
+		ImmutableList<AbstractSignature> getMembers() {
+			return members;
+		}
+
+	}
+
+	/**
+	 * One call of group.
+	 * @author Tomas Zalusky
+	 */
+	static final class Call {
+
+		private final AbstractSignature signature;
+
+		private final List<Object> arguments;
+
+		private Map<String,Object> values;
+
+		private Call(AbstractSignature signature, List<Object> arguments) {
+			this.signature = signature;
+			this.arguments = arguments;
+		}
+
+		AbstractSignature getSignature() {
+			return signature;
+		}
+
+		/**
+		 * @return values of OUT and IN OUT parameters and return value of function ({@link FunctionSignature#RETURN_LABEL}) by name
+		 * @throws IllegalStateException if group has not been executed yet
+		 */
+		Map<String,Object> getValues() {
+			checkState(values != null, "Call of %s has not been executed yet.", signature.getName());
+			return values;
+		}
+
+		/**
+		 * @return return value of function, null for procedure
+		 */
+		Object getReturnValue() {
+			return getValues().get(FunctionSignature.RETURN_LABEL);
+		}
+
+		@Override
+		public String toString() {
+			return signature.getName() + (values != null ? " " + values : "");
+		}
+
+	}
+
+	/**
+	 * Maximal number of cached group signatures, least recently used sequence of signatures is evicted.
+	 */
+	static final int CACHED_SIGNATURES = 1024;
+
+	/**
+	 * Group signatures by sequence of member signatures. Values are held strongly since blocks generated for group signature
+	 * are cached by its instance, cache is bounded instead.
+	 */
+	private static final ConcurrentMap<List<AbstractSignature>,GroupSignature> SIGNATURES =
+			CacheBuilder.newBuilder().maximumSize(CACHED_SIGNATURES).<List<AbstractSignature>,GroupSignature>build().asMap();
+
+	private final TypeGraph graph;
+
+	private final Function<RecordType,Class<?>> recordClasses;
+
+	private final List<Call> calls = Lists.newArrayList();
+
+	private boolean executed;
+
+	/**
+	 * @param graph
+	 * @param recordClasses Java classes of records in OUT values, see {@link Unmarshaller}
+	 */
+	CallGroup(TypeGraph graph, Function<RecordType,Class<?>> recordClasses) {
+		this.graph = graph;
+		this.recordClasses = recordClasses;
+	}
+
+	/**
+	 * Records call.
+	 * @param signature called procedure or function
+	 * @param arguments in order of declaration of parameters (values of OUT parameters are ignored)
+	 * @return call whose OUT values are available after execution of group
+	 */
+	Call add(AbstractSignature signature, List<?> arguments) {
+		checkState(!executed, "Call group has already been executed.");
+		checkArgument(arguments.size() == signature.getParameters().size(), "Expected %s arguments of %s but got %s.",
+				signature.getParameters().size(), signature.getName(), arguments.size());
+		Call result = new Call(signature, new ArrayList<>(arguments));
+		calls.add(result);
+		return result;
+	}
+
+	List<Call> getCalls() {
+		return Collections.unmodifiableList(calls);
+	}
+
+	/**
+	 * @param member position of call in group
+	 * @param name name of parameter of called signature or {@link FunctionSignature#RETURN_LABEL}
+	 * @return name of parameter of group signature
+	 */
+	static String parameterName(int member, String name) {
+		return member + "." + name;
+	}
+
+	/**
+	 * @param members
+	 * @return group signature calling given signatures in given order, one instance per sequence of signatures
+	 */
+	static GroupSignature signature(List<? extends AbstractSignature> members) {
+		checkArgument(!members.isEmpty(), "Call group must contain at least one call.");
+		List<AbstractSignature> key = ImmutableList.copyOf(members);
+		GroupSignature result = SIGNATURES.get(key);
+		if (result == null) {
+			Map<String,Parameter> parameters = Maps.newLinkedHashMap();
+			for (int i = 0; i < key.size(); i++) {
+				AbstractSignature member = key.get(i);
+				for (Map.Entry<String,Parameter> e : member.getParameters().entrySet()) {
+					parameters.put(parameterName(i, e.getKey()), e.getValue());
+				}
+				if (member instanceof FunctionSignature) {
+					parameters.put(parameterName(i, FunctionSignature.RETURN_LABEL), Parameter.create(ParameterMode.OUT, ((FunctionSignature)member).getReturnType()));
+				}
+			}
+			GroupSignature newResult = new GroupSignature(key, parameters);
+			result = SIGNATURES.putIfAbsent(key, newResult);
+			if (result == null) {
+				result = newResult;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Executes all recorded calls in single round-trip and stores OUT values into calls.
+	 * Group can be executed only once.
+	 * @param executor
+	 * @return calls, in order of recording
+	 */
+	List<Call> execute(PlsqlRuntime.Executor executor) {
+		checkState(!executed, "Call group has already been executed.");
+		executed = true;
+		if (calls.isEmpty()) {
+			return ImmutableList.of();
+		}
+		GroupSignature signature = signature(Lists.transform(calls, Call::getSignature));
+		TypeNodeTree typeNodeTree = graph.toTypeNodeTree(signature);
+		List<Object> arguments = Lists.newArrayList();
+		List<String> outParameterNames = Lists.newArrayList();
+		for (Call call : calls) {
+			int index = 0;
+			for (Parameter parameter : call.signature.getParameters().values()) {
+				Object argument = call.arguments.get(index++);
+				arguments.add(parameter.getParameterMode() == ParameterMode.OUT ? null : argument);
+			}
+			if (call.signature instanceof FunctionSignature) {
+				arguments.add(null);
+			}
+		}
+		for (Map.Entry<String,Parameter> e : signature.getParameters().entrySet()) {
+			if (e.getValue().getParameterMode() != ParameterMode.IN) {
+				outParameterNames.add(e.getKey());
+			}
+		}
+		TransferObjectTree tot = typeNodeTree.toTransferObjectTree();
+		Marshaller.marshal(tot, arguments);
+		BlockGenerator.Block block = BlockGenerator.generate(tot);
+		Map<String,Object> values = PlsqlRuntime.execute(executor, block, tot, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap(),
+				Collections.<Pointers,PointersCodec.Encoded>emptyMap(), Collections.<Deletions,DeletionsBitmap>emptyMap(),
+				typeNodeTree, received -> new Unmarshaller(received, recordClasses, true, Integer.MAX_VALUE), outParameterNames);
+		for (int i = 0; i < calls.size(); i++) {
+			Call call = calls.get(i);
+			Map<String,Object> callValues = Maps.newLinkedHashMap();
+			for (Map.Entry<String,Parameter> e : call.signature.getParameters().entrySet()) {
+				if (e.getValue().getParameterMode() != ParameterMode.IN) {
+					callValues.put(e.getKey(), values.get(parameterName(i, e.getKey())));
+				}
+			}
+			if (call.signature instanceof FunctionSignature) {
+				callValues.put(FunctionSignature.RETURN_LABEL, values.get(parameterName(i, FunctionSignature.RETURN_LABEL)));
+			}
+			call.values = Collections.unmodifiableMap(callValues);
+		}
+		return getCalls();
+	}
+
+	@Override
+	public String toString() {
+		return "group of " + calls;
+	}
+
+}
@@ -0,0 +1,144 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link CallGroup}. Generated blocks are executed by {@link BlockInterpreter}.
+ * @author Tomas Zalusky
+ */
+public class CallGroupTest extends AbstractTypeGraphTest {
+
+	/**
+	 * Dispatches to {@link BlockGeneratorTest#ECHO} or modify procedure, the latter rejects call with false flag.
+	 */
+	private static final BlockInterpreter.Executable EXECUTABLE = (name, arguments) -> {
+		if ("echo".equals(name)) {
+			return BlockGeneratorTest.ECHO.call(name, arguments);
+		}
+		assertEquals("a_test_package.modify", name);
+		if (!(Boolean)arguments.get("pi_flag")) {
+			throw new IllegalStateException("ORA-20001: rejected");
+		}
+		@SuppressWarnings("unchecked")
+		TreeMap<Object,Object> nst = (TreeMap<Object,Object>)arguments.get("pio_nst");
+		nst.put(nst.size() + 1, "added");
+		arguments.put("pio_num", ((BigDecimal)arguments.get("pio_num")).negate());
+		return null;
+	};
+
+	private static PlsqlRuntime.Executor executor(AtomicInteger executions, AtomicReference<String> text) {
+		return (block, inValues) -> {
+			executions.incrementAndGet();
+			text.set(block.getText());
+			return BlockInterpreter.execute(block.getText(), inValues, EXECUTABLE);
+		};
+	}
+
+	/**
+	 * @return arguments in order of parameters of signature, missing arguments are null
+	 */
+	private static List<Object> arguments(AbstractSignature signature, Map<String,?> arguments) {
+		List<Object> result = Lists.newArrayList();
+		for (String name : signature.getParameters().keySet()) {
+			result.add(arguments.get(name));
+		}
+		return result;
+	}
+
+	@Test
+	public void testDifferentSignatures() throws IOException {
+		TypeGraph alltypes = loadGraph("alltypes");
+		FunctionSignature echo = alltypes.findType(FunctionSignature.class, "echo");
+		ProcedureSignature modify = loadGraph("inout").findType(ProcedureSignature.class, "a_test_package.modify");
+		CallGroup group = new CallGroup(alltypes, UnmarshallerTest.RECORD_CLASSES);
+		CallGroup.Call first = group.add(modify, ImmutableList.of(ImmutableList.of("a"), true, new BigDecimal("25")));
+		CallGroup.Call second = group.add(echo, arguments(echo, BlockGeneratorTest.ARGUMENTS));
+		CallGroup.Call third = group.add(modify, ImmutableList.of(ImmutableList.of("b", "c"), true, new BigDecimal("-3")));
+		AtomicInteger executions = new AtomicInteger();
+		AtomicReference<String> text = new AtomicReference<>();
+		assertEquals(ImmutableList.of(first, second, third), group.execute(executor(executions, text)));
+		assertEquals(1, executions.get());
+		assertEquals(ImmutableList.of("a", "added"), first.getValues().get("pio_nst"));
+		assertEquals(new BigDecimal("-25"), first.getValues().get("pio_num"));
+		assertEquals(null, first.getReturnValue());
+		for (Map.Entry<String,Object> e : BlockGeneratorTest.ARGUMENTS.entrySet()) {
+			String outName = "po_" + e.getKey().substring(3);
+			assertEquals(outName, e.getValue(), second.getValues().get(outName));
+		}
+		assertEquals(BlockGeneratorTest.RETURN_VALUE, second.getReturnValue());
+		assertEquals(ImmutableList.of("b", "c", "added"), third.getValues().get("pio_nst"));
+		assertEquals(new BigDecimal("3"), third.getValues().get("pio_num"));
+		int modify1 = text.get().indexOf("a_test_package.modify(");
+		int echo2 = text.get().indexOf(" := echo(");
+		int modify3 = text.get().lastIndexOf("a_test_package.modify(");
+		assertTrue(text.get(), 0 < modify1 && modify1 < echo2 && echo2 < modify3);
+	}
+
+	@Test
+	public void testSignatureShared() throws IOException {
+		ProcedureSignature modify = loadGraph("inout").findType(ProcedureSignature.class, "a_test_package.modify");
+		CallGroup.GroupSignature signature = CallGroup.signature(ImmutableList.of(modify, modify));
+		assertSame(signature, CallGroup.signature(Lists.newArrayList(modify, modify)));
+		assertEquals(ImmutableList.of(modify, modify), signature.getMembers());
+		assertEquals(ImmutableList.of("0.pio_nst", "0.pi_flag", "0.pio_num", "1.pio_nst", "1.pi_flag", "1.pio_num"),
+				ImmutableList.copyOf(signature.getParameters().keySet()));
+	}
+
+	/**
+	 * Group signature is not released while it is not referenced by caller, so that blocks cached for it can be reused.
+	 */
+	@Test
+	public void testSignatureRetained() throws IOException {
+		ProcedureSignature modify = loadGraph("inout").findType(ProcedureSignature.class, "a_test_package.modify");
+		List<ProcedureSignature> members = ImmutableList.of(modify, modify, modify);
+		int identity = System.identityHashCode(CallGroup.signature(members));
+		System.gc();
+		assertEquals(identity, System.identityHashCode(CallGroup.signature(members)));
+	}
+
+	@Test
+	public void testFailure() throws IOException {
+		TypeGraph graph = loadGraph("inout");
+		ProcedureSignature modify = graph.findType(ProcedureSignature.class, "a_test_package.modify");
+		CallGroup group = new CallGroup(graph, t -> null);
+		CallGroup.Call first = group.add(modify, ImmutableList.of(ImmutableList.of("a"), true, BigDecimal.ONE));
+		group.add(modify, ImmutableList.of(ImmutableList.of("b"), false, BigDecimal.ONE));
+		try {
+			group.execute(executor(new AtomicInteger(), new AtomicReference<>()));
+			fail();
+		} catch (IllegalStateException expected) {
+			assertEquals("ORA-20001: rejected", expected.getMessage());
+		}
+		try {
+			first.getValues();
+			fail();
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testExecutedOnce() throws IOException {
+		TypeGraph graph = loadGraph("inout");
+		CallGroup group = new CallGroup(graph, t -> null);
+		group.add(graph.findType(ProcedureSignature.class, "a_test_package.modify"), ImmutableList.of(ImmutableList.of(), true, BigDecimal.ONE));
+		group.execute(executor(new AtomicInteger(), new AtomicReference<>()));
+		group.execute(executor(new AtomicInteger(), new AtomicReference<>()));
+	}
+
+}
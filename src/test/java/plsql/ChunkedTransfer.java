@@ -0,0 +1,304 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * Transfers IN collection too large for single round-trip in bounded chunks.
+ * Elements of streamed collection are pulled from {@link Iterable} in batches,
+ * each batch is marshalled into fresh {@link TransferObjectTree} and its columns are sent by {@link ChunkSink}
+ * into server-side package state. Procedure is invoked once after all chunks have arrived.
+ * Package state is provided by {@link WrapperPackage#createChunked(String, TypeGraph, java.util.Collection) wrapper package}
+ * whose {@link WrapperPackage#getChunkSink(AbstractSignature, PlsqlRuntime.Executor) sink} calls its generated procedures.
+ * At most {@link ChunkSizeController#getMaximum()} elements are marshalled at a time,
+ * hence client memory is bounded regardless of size of collection.
+ * </p>
+ * <p>
+ * Chunk of column is written at given offset of server-side column, which is the current length of that column
+ * except for {@link Pointers}: pointers are rebased by number of entries received into their child collection so far
+ * and the first pointer of chunk overwrites the terminating pointer of previous chunk.
+ * Simple pointers of streamed collection itself describe single collection spanning all chunks,
+ * hence only their terminating pointer is sent.
+ * With these rules, concatenation of chunks equals to columns of whole collection marshalled at once.
+ * First chunk of every column has offset 0 (it is sent even if it is empty), so that receiving side can reset its state.
+ * </p>
+ * <p>
+ * Other arguments are sent in the first round-trip.
+ * {@link TransferObjectOptimizer} is not applied since elided transfer objects depend on data of whole collection.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class ChunkedTransfer {
+
+	/**
+	 * Part of column sent in one round-trip.
+	 * @author Tomas Zalusky
+	 */
+	static final class Chunk {
+
+		private final String id;
+
+		private final int offset;
+
+		private final Object data;
+
+		Chunk(String id, int offset, Object data) {
+			this.id = id;
+			this.offset = offset;
+			this.data = data;
+		}
+
+		/**
+		 * @return id of transfer object
+		 */
+		String getId() {
+			return id;
+		}
+
+		/**
+		 * @return 0-based position in server-side column where chunk starts
+		 */
+		int getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return int[] for {@link Pointers} and {@link Deletions}, Object[] otherwise
+		 */
+		Object getData() {
+			return data;
+		}
+
+		int length() {
+			return data instanceof int[] ? ((int[])data).length : ((Object[])data).length;
+		}
+
+		@Override
+		public String toString() {
+			return id + "@" + offset + (data instanceof int[] ? Arrays.toString((int[])data) : Arrays.toString((Object[])data));
+		}
+
+	}
+
+	/**
+	 * Receiving side of chunked transfer.
+	 * @author Tomas Zalusky
+	 */
+	interface ChunkSink {
+
+		/**
+		 * Stores chunks into server-side package state, one call represents one round-trip.
+		 * @param chunks
+		 */
+		void send(List<Chunk> chunks);
+
+		/**
+		 * Invokes procedure on complete package state.
+		 * @return values of OUT binds by name (see {@link BlockGenerator#readOutValues(TransferObjectTree, Map)})
+		 */
+		Map<String,Object> execute();
+
+	}
+
+	/**
+	 * Adapts number of elements per chunk to observed round-trip latency
+	 * (additive increase while latency is below target, multiplicative decrease otherwise).
+	 * @author Tomas Zalusky
+	 */
+	static final class ChunkSizeController {
+
+		private final int minimum;
+
+		private final int maximum;
+
+		private final int increment;
+
+		private final long targetLatencyNanos;
+
+		private int current;
+
+		/**
+		 * @param minimum minimal number of elements per chunk
+		 * @param maximum maximal number of elements per chunk (bounds client memory)
+		 * @param increment number of elements added after fast round-trip
+		 * @param targetLatencyNanos
+		 */
+		ChunkSizeController(int minimum, int maximum, int increment, long targetLatencyNanos) {
+			checkArgument(0 < minimum && minimum <= maximum, "Illegal chunk size bounds <%s,%s>.", minimum, maximum);
+			this.minimum = minimum;
+			this.maximum = maximum;
+			this.increment = increment;
+			this.targetLatencyNanos = targetLatencyNanos;
+			this.current = minimum;
+		}
+
+		int getMinimum() {
+			return minimum;
+		}
+
+		int getMaximum() {
+			return maximum;
+		}
+
+		int getCurrent() {
+			return current;
+		}
+
+		void update(long latencyNanos) {
+			if (latencyNanos <= targetLatencyNanos) {
+				current = Math.min(maximum, current + increment);
+			} else {
+				current = Math.max(minimum, current / 2);
+			}
+		}
+
+	}
+
+	private final AbstractSignature signature;
+
+	private final TypeNodeTree typeNodeTree;
+
+	private final String parameterName;
+
+	private final ChunkSink sink;
+
+	private final ChunkSizeController controller;
+
+	/**
+	 * Length of server-side columns by transfer object id.
+	 */
+	private final Map<String,Integer> lengths = Maps.newHashMap();
+
+	/**
+	 * Number of entries received into child collection of {@link Pointers} by transfer object id.
+	 */
+	private final Map<String,Integer> bases = Maps.newHashMap();
+
+	private int roundTrips;
+
+	/**
+	 * @param graph
+	 * @param signature called procedure or function
+	 * @param parameterName name of streamed IN parameter of type varray or nested table
+	 * @param sink
+	 * @param controller
+	 */
+	ChunkedTransfer(TypeGraph graph, AbstractSignature signature, String parameterName, ChunkSink sink, ChunkSizeController controller) {
+		Parameter parameter = signature.getParameters().get(parameterName);
+		checkArgument(parameter != null, "Unknown parameter %s.", parameterName);
+		checkArgument(parameter.getParameterMode() == ParameterMode.IN, "Streamed parameter %s must be IN parameter.", parameterName);
+		checkArgument(parameter.getType() instanceof VarrayType || parameter.getType() instanceof NestedTableType,
+				"Streamed parameter %s must be varray or nested table.", parameterName);
+		this.signature = signature;
+		this.typeNodeTree = graph.toTypeNodeTree(signature);
+		this.parameterName = parameterName;
+		this.sink = sink;
+		this.controller = controller;
+	}
+
+	/**
+	 * Sends all arguments in chunks and invokes procedure.
+	 * @param arguments values of parameters by name, value of streamed parameter must be {@link Iterable}
+	 * @return values of OUT binds by name, as returned by {@link ChunkSink#execute()}
+	 */
+	Map<String,Object> transfer(Map<String,?> arguments) {
+		Object streamed = arguments.get(parameterName);
+		checkArgument(streamed instanceof Iterable, "Streamed parameter %s must be represented by Iterable.", parameterName);
+		Iterator<?> elements = ((Iterable<?>)streamed).iterator();
+		lengths.clear();
+		bases.clear();
+		roundTrips = 0;
+		boolean first = true;
+		do {
+			List<Object> batch = Lists.newArrayListWithCapacity(controller.getCurrent());
+			while (batch.size() < controller.getCurrent() && elements.hasNext()) {
+				batch.add(elements.next());
+			}
+			TransferObjectTree tot = typeNodeTree.toTransferObjectTree();
+			List<Object> argumentList = Lists.newArrayList();
+			for (String name : signature.getParameters().keySet()) {
+				argumentList.add(name.equals(parameterName) ? batch : first ? arguments.get(name) : null);
+			}
+			Marshaller.marshal(tot, argumentList);
+			TypeNode parameterNode = tot.getTypeTreeRoot().getChildren().get(parameterName);
+			List<Chunk> chunks = Lists.newArrayList();
+			for (TransferObject to : tot.getRoot().getChildren()) {
+				if (first || to.getTypeNode() == parameterNode) {
+					addChunks(to, chunks);
+				}
+			}
+			long start = System.nanoTime();
+			sink.send(chunks);
+			controller.update(System.nanoTime() - start);
+			roundTrips++;
+			first = false;
+		} while (elements.hasNext());
+		return sink.execute();
+	}
+
+	/**
+	 * @return number of round-trips of last transfer (without invocation)
+	 */
+	int getRoundTrips() {
+		return roundTrips;
+	}
+
+	private void addChunks(TransferObject to, List<Chunk> chunks) {
+		Integer length = lengths.get(to.getId());
+		int offset = length == null ? 0 : length;
+		Object data = null;
+		if (to instanceof Pointers) {
+			int[] pointers = ((Pointers)to).getData().toArray();
+			if (pointers.length > 0) {
+				if (offset > 0) {
+					offset--; // overwrite terminating pointer
+					int base = bases.get(to.getId());
+					for (int i = 0; i < pointers.length; i++) {
+						pointers[i] = pointers[i] < 0 ? pointers[i] - base : pointers[i] + base;
+					}
+					if (((Pointers)to).isSimple()) { // streamed collection itself
+						pointers = new int[] {pointers[pointers.length - 1]};
+					}
+				}
+				bases.put(to.getId(), Math.abs(pointers[pointers.length - 1]) - 1);
+			}
+			data = pointers;
+		} else if (to instanceof Deletions) {
+			data = ((Deletions)to).getData().toArray();
+		} else if (to instanceof PrimitiveCollection) {
+			data = ((PrimitiveCollection)to).getData().toArray();
+		} else if (to instanceof Indexes) {
+			data = ((Indexes)to).getData().toArray();
+		} else if (to instanceof JdbcTransferrableCollection) {
+			data = ((JdbcTransferrableCollection)to).getData().toArray();
+		} else if (to instanceof PrimitiveScalar) {
+			data = new Object[] {((PrimitiveScalar)to).getData()};
+		} else if (to instanceof JdbcTransferrableRecord) {
+			data = new Object[] {((JdbcTransferrableRecord)to).getData()};
+		}
+		if (data != null) {
+			Chunk chunk = new Chunk(to.getId(), offset, data);
+			if (chunk.length() > 0 || length == null) {
+				chunks.add(chunk);
+				lengths.put(to.getId(), offset + chunk.length());
+			}
+		}
+		for (TransferObject child : to.getChildren()) {
+			addChunks(child, chunks);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("chunked transfer of %s, %d round-trips", parameterName, roundTrips);
+	}
+
+}
@@ -0,0 +1,241 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests {@link ChunkedTransfer} using loopback sink which assembles chunks into fresh {@link TransferObjectTree}
+ * (in the role of server-side package state), assembled tree must equal the tree marshalled at once,
+ * and using sink of {@link WrapperPackage} whose procedures are executed by {@link BlockInterpreter}.
+ * @author Tomas Zalusky
+ */
+public class ChunkedTransferTest extends AbstractTypeGraphTest {
+
+	private static final Function<RecordType,Class<?>> RECORD_CLASSES = type -> "a_test_package.rec3".equals(type.getName()) ? MarshallerTest.Record3.class : null;
+
+	private static class LoopbackSink implements ChunkedTransfer.ChunkSink {
+
+		private final Map<String,TransferObject> transferObjects = Maps.newHashMap();
+
+		private boolean executed;
+
+		LoopbackSink(TransferObjectTree received) {
+			index(received.getRoot());
+		}
+
+		private void index(TransferObject to) {
+			transferObjects.put(to.getId(), to);
+			for (TransferObject child : to.getChildren()) {
+				index(child);
+			}
+		}
+
+		@Override
+		public void send(List<ChunkedTransfer.Chunk> chunks) {
+			assertFalse(executed);
+			for (ChunkedTransfer.Chunk chunk : chunks) {
+				TransferObject to = transferObjects.get(chunk.getId());
+				if (to instanceof Pointers) {
+					IntList data = ((Pointers)to).getData();
+					int[] pointers = (int[])chunk.getData();
+					for (int i = 0; i < pointers.length; i++) {
+						if (chunk.getOffset() + i < data.size()) {
+							data.set(chunk.getOffset() + i, pointers[i]);
+						} else {
+							data.add(pointers[i]);
+						}
+					}
+				} else if (to instanceof Deletions) {
+					assertEquals(((Deletions)to).getData().size(), chunk.getOffset());
+					for (int deleted : (int[])chunk.getData()) {
+						((Deletions)to).add(deleted);
+					}
+				} else {
+					Object[] values = (Object[])chunk.getData();
+					if (to instanceof PrimitiveCollection) {
+						assertEquals(((PrimitiveCollection)to).size(), chunk.getOffset());
+						((PrimitiveCollection)to).addAll(java.util.Arrays.asList(values));
+					} else if (to instanceof Indexes) {
+						assertEquals(((Indexes)to).getData().size(), chunk.getOffset());
+						for (Object index : values) {
+							((Indexes)to).add(index);
+						}
+					} else if (to instanceof JdbcTransferrableCollection) {
+						assertEquals(((JdbcTransferrableCollection)to).getData().size(), chunk.getOffset());
+						((JdbcTransferrableCollection)to).addAll(java.util.Arrays.asList(values));
+					} else if (to instanceof PrimitiveScalar) {
+						((PrimitiveScalar)to).setData(values[0]);
+					} else {
+						((JdbcTransferrableRecord)to).setData(values[0]);
+					}
+				}
+			}
+		}
+
+		@Override
+		public Map<String,Object> execute() {
+			executed = true;
+			return Collections.emptyMap();
+		}
+
+	}
+
+	/**
+	 * Lazily generated elements of <code>a_test_package.nst3</code> (nested table of nested tables of records)
+	 * including null and sparse nested tables.
+	 */
+	private static Iterable<Object> nst3(final int count, final int[] produced) {
+		return new Iterable<Object>() {
+			@Override
+			public Iterator<Object> iterator() {
+				return new AbstractIterator<Object>() {
+					private int i;
+					@Override
+					protected Object computeNext() {
+						if (i == count) {
+							return endOfData();
+						}
+						produced[0]++;
+						int k = i++;
+						switch (k % 4) {
+							case 0: return null;
+							case 1: return ImmutableMap.of(2, new MarshallerTest.Record3(true, k), 5, new MarshallerTest.Record3(false, -k));
+							case 2: return ImmutableList.of();
+							default: return ImmutableList.of(new MarshallerTest.Record3(k % 3 == 0, k), new MarshallerTest.Record3(true, 1));
+						}
+					}
+				};
+			}
+		};
+	}
+
+	@Test
+	public void testLoopback() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		FunctionSignature echo = graph.findType(FunctionSignature.class, "echo");
+		int[] produced = new int[1];
+		Map<String,Object> arguments = ImmutableMap.<String,Object>of(
+				"pi_nst3", nst3(1000, produced),
+				"pi_var2", ImmutableList.of(ImmutableList.of("A","B")),
+				"pi_clob", "text");
+		TransferObjectTree received = graph.toTypeNodeTree(echo).toTransferObjectTree();
+		LoopbackSink sink = new LoopbackSink(received);
+		ChunkedTransfer.ChunkSizeController controller = new ChunkedTransfer.ChunkSizeController(10, 50, 10, Long.MAX_VALUE);
+		ChunkedTransfer transfer = new ChunkedTransfer(graph, echo, "pi_nst3", sink, controller);
+		transfer.transfer(arguments);
+		assertTrue(sink.executed);
+		assertEquals(1000, produced[0]);
+		assertEquals(4 + 900 / 50, transfer.getRoundTrips()); // 10,20,30,40,50,50,...
+		Map<String,Object> whole = Maps.newHashMap(arguments);
+		whole.put("pi_nst3", Lists.newArrayList(nst3(1000, new int[1])));
+		TransferObjectTree expected = MarshallerTest.marshal(graph, "echo", whole);
+		assertEquals(MarshallerTest.contents(expected), MarshallerTest.contents(received));
+		assertEquals(whole.get("pi_nst3"), new Unmarshaller(received, RECORD_CLASSES, true).unmarshal("pi_nst3"));
+	}
+
+	@Test
+	public void testWrapperPackage() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		FunctionSignature echo = graph.findType(FunctionSignature.class, "echo");
+		WrapperPackage wrapper = WrapperPackage.createChunked("pw_chunked", graph, ImmutableList.of(echo));
+		String body = wrapper.getBody();
+		assertTrue(body, body.startsWith("create or replace package body pw_chunked as\n  echo_c"));
+		assertTrue(wrapper.getSpecification(), wrapper.getSpecification().contains("  procedure echo_chunk(\n"));
+		assertTrue(wrapper.getSpecification(), wrapper.getSpecification().contains("  procedure echo_finish(\n"));
+		assertTrue(wrapper.getFinishCall(echo).getBinds().stream().allMatch(BlockGenerator.Bind::isOut));
+		Map<String,Object> packageState = Maps.newHashMap();
+		List<String> executed = Lists.newArrayList();
+		PlsqlRuntime.Executor executor = (block, inValues) -> {
+			Matcher m = Pattern.compile("begin pw_chunked\\.(\\w+)").matcher(block.getText());
+			assertTrue(block.getText(), m.find());
+			executed.add(m.group(1));
+			List<Object> arguments = Lists.newArrayList(inValues);
+			while (arguments.size() < block.getBinds().size()) {
+				arguments.add(null);
+			}
+			return BlockInterpreter.executeProcedure(body, m.group(1), arguments, BlockGeneratorTest.ECHO, packageState);
+		};
+		for (int attempt = 0; attempt < 2; attempt++) { // package state is reset between transfers
+			Map<String,Object> arguments = ImmutableMap.<String,Object>of(
+					"pi_nst3", nst3(100 + attempt, new int[1]),
+					"pi_var2", ImmutableList.of(ImmutableList.of("A","B")),
+					"pi_clob", "text" + attempt);
+			executed.clear();
+			ChunkedTransfer.ChunkSizeController controller = new ChunkedTransfer.ChunkSizeController(10, 30, 10, Long.MAX_VALUE);
+			Map<String,Object> outValues = new ChunkedTransfer(graph, echo, "pi_nst3", wrapper.getChunkSink(echo, executor), controller).transfer(arguments);
+			assertEquals(ImmutableList.of("echo_chunk", "echo_chunk", "echo_chunk", "echo_chunk", "echo_chunk", "echo_finish"), executed); // 10,20,30,30,30
+			TransferObjectTree received = graph.toTypeNodeTree(echo).toTransferObjectTree();
+			BlockGenerator.readOutValues(received, outValues);
+			Unmarshaller unmarshaller = new Unmarshaller(received, RECORD_CLASSES, true);
+			assertEquals(Lists.newArrayList(nst3(100 + attempt, new int[1])), unmarshaller.unmarshal("po_nst3"));
+			assertEquals(arguments.get("pi_var2"), unmarshaller.unmarshal("po_var2"));
+			assertEquals("text" + attempt, unmarshaller.unmarshal("po_clob"));
+		}
+	}
+
+	@Test
+	public void testBoundedMemory() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		FunctionSignature echo = graph.findType(FunctionSignature.class, "echo");
+		final int[] produced = new int[1];
+		final int[] previous = new int[1];
+		final TransferObjectTree assembled = graph.toTypeNodeTree(echo).toTransferObjectTree();
+		final DataPointers pointers = assembled.getTransferObject(assembled.getTypeTreeRoot().getChildren().get("pi_nst3"), DataPointers.class);
+		LoopbackSink sink = new LoopbackSink(assembled) {
+			@Override
+			public void send(List<ChunkedTransfer.Chunk> chunks) {
+				super.send(chunks);
+				int count = pointers.upperBound(0) - 1;
+				assertEquals(produced[0], count); // nothing is pulled ahead
+				assertTrue(count - previous[0] <= 64);
+				previous[0] = count;
+			}
+		};
+		ChunkedTransfer transfer = new ChunkedTransfer(graph, echo, "pi_nst3", sink, new ChunkedTransfer.ChunkSizeController(1, 64, 8, Long.MAX_VALUE));
+		transfer.transfer(ImmutableMap.<String,Object>of("pi_nst3", nst3(10000, produced)));
+		assertEquals(10000, produced[0]);
+		assertEquals(10000, previous[0]);
+	}
+
+	@Test
+	public void testChunkSizeController() {
+		ChunkedTransfer.ChunkSizeController controller = new ChunkedTransfer.ChunkSizeController(10, 50, 15, 1000);
+		assertEquals(10, controller.getCurrent());
+		controller.update(500);
+		assertEquals(25, controller.getCurrent());
+		controller.update(1000);
+		controller.update(1000);
+		assertEquals(50, controller.getCurrent());
+		controller.update(1001);
+		assertEquals(25, controller.getCurrent());
+		controller.update(2000);
+		assertEquals(12, controller.getCurrent());
+		controller.update(2000);
+		assertEquals(10, controller.getCurrent());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonCollectionParameter() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		new ChunkedTransfer(graph, graph.findType(FunctionSignature.class, "echo"), "pi_rec1", null, new ChunkedTransfer.ChunkSizeController(1, 1, 1, 1));
+	}
+
+}
@@ -0,0 +1,448 @@
+package plsql;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import pleasejava.Utils;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * <p>
+ * Encodings of {@link PrimitiveCollection} content reducing amount of transferred data and binds.
+ * Every encoding is transferred as at most two binds named after column id:
+ * </p>
+ * <ul>
+ * <li>{@link Encoding#PLAIN} - column as is (column <code>id</code>)</li>
+ * <li>{@link Encoding#OMITTED} - column containing only nulls, nothing is sent</li>
+ * <li>{@link Encoding#CONSTANT} - column containing single repeated non-null value, only the value (scalar <code>id</code>v) is sent</li>
+ * <li>{@link Encoding#RUN_LENGTH} - values of runs of equal elements (column <code>id</code>v)
+ * and lengths of runs (column <code>id</code>c)</li>
+ * <li>{@link Encoding#DICTIONARY} - distinct non-null values in order of first occurrence (column <code>id</code>v)
+ * and 1-based index of value in dictionary for every element, 0 for null (column <code>id</code>c).
+ * Intended for low-cardinality character columns (status codes, currency codes),
+ * considered only when number of distinct values does not exceed threshold and is less than half of elements.</li>
+ * </ul>
+ * <p>
+ * Number of elements of {@link Encoding#OMITTED} and {@link Encoding#CONSTANT} column is not sent,
+ * it is derived from parent pointers of column (or from sibling column if pointers are derived too, see {@link #encodeAll(TransferObjectTree, int)}).
+ * </p>
+ * <p>
+ * Encoding of column is selected after marshalling by estimated cost,
+ * which is approximate size of transferred data in bytes plus {@link #BIND_COST} for every bind.
+ * Code decoding columns on PLSQL side is generated by {@link #appendDecode(StringBuilder, String, String, Encoded, String)}.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class ColumnCodec {
+
+	enum Encoding {PLAIN, OMITTED, CONSTANT, RUN_LENGTH, DICTIONARY}
+
+	/**
+	 * Estimated cost of one JDBC bind (in bytes of transferred data).
+	 */
+	static final int BIND_COST = 64;
+
+	/**
+	 * Default maximal number of distinct values of dictionary-encoded column.
+	 */
+	static final int DEFAULT_DICTIONARY_THRESHOLD = 256;
+
+	/**
+	 * Encoded content of column.
+	 * @author Tomas Zalusky
+	 */
+	static final class Encoded {
+
+		private final Encoding encoding;
+
+		private final List<Object> values;
+
+		private final int[] codes;
+
+		private final int size;
+
+		Encoded(Encoding encoding, List<Object> values, int[] codes, int size) {
+			this.encoding = encoding;
+			this.values = Collections.unmodifiableList(values);
+			this.codes = codes;
+			this.size = size;
+		}
+
+		Encoding getEncoding() {
+			return encoding;
+		}
+
+		/**
+		 * @return all elements for {@link Encoding#PLAIN}, the value for {@link Encoding#CONSTANT},
+		 * values of runs for {@link Encoding#RUN_LENGTH}, dictionary for {@link Encoding#DICTIONARY},
+		 * empty list for {@link Encoding#OMITTED}
+		 */
+		List<Object> getValues() {
+			return values;
+		}
+
+		/**
+		 * @return codes for {@link Encoding#DICTIONARY}, lengths of runs for {@link Encoding#RUN_LENGTH}, null otherwise
+		 */
+		int[] getCodes() {
+			return codes;
+		}
+
+		/**
+		 * @return number of elements of original column
+		 */
+		int getSize() {
+			return size;
+		}
+
+		/**
+		 * @return number of transferred elements (of all bound columns)
+		 */
+		int getTransferredSize() {
+			return values.size() + (codes == null ? 0 : codes.length);
+		}
+
+		/**
+		 * @return number of JDBC binds
+		 */
+		int getBindCount() {
+			return encoding == Encoding.OMITTED ? 0 : encoding == Encoding.PLAIN || encoding == Encoding.CONSTANT ? 1 : 2;
+		}
+
+		/**
+		 * @return true if number of elements is given by bound columns,
+		 * false if it must be derived from pointers ({@link Encoding#OMITTED}, {@link Encoding#CONSTANT})
+		 */
+		boolean hasCount() {
+			return encoding != Encoding.OMITTED && encoding != Encoding.CONSTANT;
+		}
+
+		/**
+		 * @return estimated cost of transfer, see {@link ColumnCodec}
+		 */
+		int getCost() {
+			int result = getBindCount() * BIND_COST;
+			for (Object value : values) {
+				result += estimateSize(value);
+			}
+			if (codes != null) {
+				for (int code : codes) {
+					result += estimateSize(code);
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return encoding + "(" + getTransferredSize() + "/" + size + ")";
+		}
+
+	}
+
+	private ColumnCodec() {
+	}
+
+	/**
+	 * @param type
+	 * @return true if columns of given type are subject to dictionary encoding
+	 */
+	static boolean isDictionaryCandidate(AbstractPrimitiveType type) {
+		return type instanceof Varchar2Type || type instanceof CharType || type instanceof StringType;
+	}
+
+	/**
+	 * Encodes column using {@link #DEFAULT_DICTIONARY_THRESHOLD}.
+	 * @param column
+	 * @return encoded column
+	 */
+	static Encoded encode(PrimitiveCollection column) {
+		return encode(column, DEFAULT_DICTIONARY_THRESHOLD);
+	}
+
+	/**
+	 * Chooses the cheapest encoding of column.
+	 * @param column
+	 * @param dictionaryThreshold maximal number of distinct values of dictionary-encoded column
+	 * @return encoded column
+	 */
+	static Encoded encode(PrimitiveCollection column, int dictionaryThreshold) {
+		List<Object> data = column.getData();
+		Encoded result = encode(data, Encoding.PLAIN);
+		for (Encoding encoding : new Encoding[] {Encoding.OMITTED, Encoding.CONSTANT, Encoding.RUN_LENGTH}) {
+			result = cheaper(result, encode(data, encoding));
+		}
+		int maxDistinct = Math.min(dictionaryThreshold, (data.size() - 1) / 2);
+		if (isDictionaryCandidate(column.getType()) && maxDistinct > 0) {
+			result = cheaper(result, encodeDictionary(data, maxDistinct));
+		}
+		return result;
+	}
+
+	private static Encoded cheaper(Encoded current, Encoded candidate) {
+		return candidate != null && candidate.getCost() < current.getCost() ? candidate : current;
+	}
+
+	/**
+	 * @param data
+	 * @param encoding
+	 * @return data encoded by given encoding, null if encoding is not applicable
+	 */
+	static Encoded encode(List<?> data, Encoding encoding) {
+		switch (encoding) {
+			case PLAIN:
+				return new Encoded(Encoding.PLAIN, Lists.<Object>newArrayList(data), null, data.size());
+			case OMITTED:
+				for (Object value : data) {
+					if (value != null) {
+						return null;
+					}
+				}
+				return new Encoded(Encoding.OMITTED, Collections.emptyList(), null, data.size());
+			case CONSTANT:
+				Object first = data.isEmpty() ? null : data.get(0);
+				if (first == null) {
+					return null;
+				}
+				for (Object value : data) {
+					if (!first.equals(value)) {
+						return null;
+					}
+				}
+				return new Encoded(Encoding.CONSTANT, Collections.singletonList(first), null, data.size());
+			case RUN_LENGTH:
+				return encodeRunLength(data);
+			case DICTIONARY:
+				return encodeDictionary(data, Integer.MAX_VALUE);
+			default:
+				throw new IllegalArgumentException(encoding.toString());
+		}
+	}
+
+	private static Encoded encodeRunLength(List<?> data) {
+		List<Object> values = Lists.newArrayList();
+		IntList lengths = new IntList();
+		for (int i = 0; i < data.size(); i++) {
+			Object value = data.get(i);
+			if (i > 0 && Objects.equal(value, data.get(i - 1))) {
+				lengths.set(lengths.size() - 1, lengths.get(lengths.size() - 1) + 1);
+			} else {
+				values.add(value);
+				lengths.add(1);
+			}
+		}
+		return new Encoded(Encoding.RUN_LENGTH, values, lengths.toArray(), data.size());
+	}
+
+	/**
+	 * @param data
+	 * @param maxDistinct
+	 * @return dictionary encoding or null if there is more distinct values than given limit
+	 */
+	private static Encoded encodeDictionary(List<?> data, int maxDistinct) {
+		Map<Object,Integer> codesByValue = new HashMap<>();
+		List<Object> values = Lists.newArrayList();
+		int[] codes = new int[data.size()];
+		for (int i = 0; i < codes.length; i++) {
+			Object value = data.get(i);
+			if (value == null) {
+				continue;
+			}
+			Integer code = codesByValue.get(value);
+			if (code == null) {
+				if (values.size() == maxDistinct) {
+					return null;
+				}
+				values.add(value);
+				codesByValue.put(value, code = values.size());
+			}
+			codes[i] = code;
+		}
+		return new Encoded(Encoding.DICTIONARY, values, codes, codes.length);
+	}
+
+	/**
+	 * @param encoded
+	 * @return original column content
+	 */
+	static List<Object> decode(Encoded encoded) {
+		switch (encoded.getEncoding()) {
+			case PLAIN:
+				return Lists.newArrayList(encoded.getValues());
+			case OMITTED:
+				return Arrays.asList(new Object[encoded.getSize()]);
+			case CONSTANT:
+				return Lists.newArrayList(Collections.nCopies(encoded.getSize(), encoded.getValues().get(0)));
+			case RUN_LENGTH: {
+				List<Object> result = Lists.newArrayListWithCapacity(encoded.getSize());
+				int[] lengths = encoded.getCodes();
+				for (int r = 0; r < lengths.length; r++) {
+					result.addAll(Collections.nCopies(lengths[r], encoded.getValues().get(r)));
+				}
+				return result;
+			}
+			case DICTIONARY: {
+				Object[] result = new Object[encoded.getSize()];
+				int[] codes = encoded.getCodes();
+				for (int i = 0; i < result.length; i++) {
+					result[i] = codes[i] == 0 ? null : encoded.getValues().get(codes[i] - 1);
+				}
+				return Arrays.asList(result);
+			}
+			default:
+				throw new IllegalArgumentException(encoded.getEncoding().toString());
+		}
+	}
+
+	/**
+	 * Appends PLSQL code which fills (empty, initialized) collection from bound columns of encoded column.
+	 * @param buf
+	 * @param target name of collection variable to be filled
+	 * @param source name of bound column (suffixed as described in {@link ColumnCodec})
+	 * @param encoded
+	 * @param count expression denoting number of elements, used only if encoded column does not {@link Encoded#hasCount() have count}
+	 */
+	static void appendDecode(StringBuilder buf, String target, String source, Encoded encoded, String count) {
+		switch (encoded.getEncoding()) {
+			case PLAIN:
+				Utils.appendf(buf, "%s := %s;%n", target, source);
+				break;
+			case OMITTED:
+				Utils.appendf(buf, "%s.extend(%s);%n", target, count);
+				break;
+			case CONSTANT:
+				Utils.appendf(buf, "%s.extend(%s);%n", target, count);
+				Utils.appendf(buf, "for i in 1 .. %s.count loop%n", target);
+				Utils.appendf(buf, "  %s(i) := %sv;%n", target, source);
+				Utils.appendf(buf, "end loop;%n");
+				break;
+			case RUN_LENGTH:
+				Utils.appendf(buf, "for r in 1 .. %sc.count loop%n", source);
+				Utils.appendf(buf, "  %s.extend(%sc(r));%n", target, source);
+				Utils.appendf(buf, "  for i in %s.count - %sc(r) + 1 .. %s.count loop%n", target, source, target);
+				Utils.appendf(buf, "    %s(i) := %sv(r);%n", target, source);
+				Utils.appendf(buf, "  end loop;%n");
+				Utils.appendf(buf, "end loop;%n");
+				break;
+			case DICTIONARY:
+				Utils.appendf(buf, "%s.extend(%sc.count);%n", target, source);
+				Utils.appendf(buf, "for i in 1 .. %sc.count loop%n", source);
+				Utils.appendf(buf, "  if %sc(i) <> 0 then%n", source);
+				Utils.appendf(buf, "    %s(i) := %sv(%sc(i));%n", target, source, source);
+				Utils.appendf(buf, "  end if;%n");
+				Utils.appendf(buf, "end loop;%n");
+				break;
+			default:
+				throw new IllegalArgumentException(encoded.getEncoding().toString());
+		}
+	}
+
+	/**
+	 * @param value
+	 * @return approximate size of value in bytes when transferred (character values by length, numbers as Oracle NUMBER)
+	 */
+	static int estimateSize(Object value) {
+		if (value == null) {
+			return 1;
+		} else if (value instanceof CharSequence) {
+			return ((CharSequence)value).length() + 1;
+		} else if (value instanceof Integer) {
+			int abs = Math.abs((Integer)value);
+			return abs < 100 ? 2 : abs < 10000 ? 3 : abs < 1000000 ? 4 : 6;
+		} else {
+			return 8;
+		}
+	}
+
+	/**
+	 * Encodes all non-elided columns in tree.
+	 * Number of elements of columns under derived pointers cannot be taken from pointers,
+	 * hence if none of siblings of such columns carries count, the first column is encoded by {@link Encoding#RUN_LENGTH} instead.
+	 * Encoded tree never has more binds than plain tree (one bind per column):
+	 * two-bind encodings beyond binds saved by {@link Encoding#OMITTED} columns are replaced by {@link Encoding#PLAIN},
+	 * those with the least saving first.
+	 * @param tree
+	 * @param dictionaryThreshold
+	 * @return encoded columns in depth-first order of transfer objects
+	 */
+	static Map<PrimitiveCollection,Encoded> encodeAll(TransferObjectTree tree, int dictionaryThreshold) {
+		Map<PrimitiveCollection,Encoded> result = new LinkedHashMap<>();
+		encodeAll(tree.getRoot(), dictionaryThreshold, result);
+		int excess = -result.size();
+		List<PrimitiveCollection> twoBind = Lists.newArrayList();
+		for (Map.Entry<PrimitiveCollection,Encoded> e : result.entrySet()) {
+			excess += e.getValue().getBindCount();
+			if (e.getValue().getBindCount() == 2) {
+				twoBind.add(e.getKey());
+			}
+		}
+		if (excess > 0) {
+			final Map<PrimitiveCollection,Integer> savings = new HashMap<>();
+			for (PrimitiveCollection column : twoBind) {
+				savings.put(column, encode(column.getData(), Encoding.PLAIN).getCost() - result.get(column).getCost());
+			}
+			Collections.sort(twoBind, new Comparator<PrimitiveCollection>() {
+				@Override
+				public int compare(PrimitiveCollection o1, PrimitiveCollection o2) {
+					return Integer.compare(savings.get(o1), savings.get(o2));
+				}
+			});
+			for (PrimitiveCollection column : twoBind.subList(0, excess)) {
+				result.put(column, encode(column.getData(), Encoding.PLAIN));
+			}
+		}
+		return result;
+	}
+
+	private static void encodeAll(TransferObject to, int dictionaryThreshold, Map<PrimitiveCollection,Encoded> result) {
+		if (to instanceof PrimitiveCollection && !to.isElided()) {
+			result.put((PrimitiveCollection)to, encode((PrimitiveCollection)to, dictionaryThreshold));
+		}
+		for (TransferObject child : to.getChildren()) {
+			encodeAll(child, dictionaryThreshold, result);
+		}
+		if (to instanceof DataPointers && to.isDerived()) {
+			PrimitiveCollection first = null;
+			for (TransferObject child : to.getChildren()) {
+				Encoded e = result.get(child);
+				if (e == null || e.hasCount()) {
+					return;
+				}
+				if (first == null) {
+					first = (PrimitiveCollection)child;
+				}
+			}
+			if (first != null) {
+				result.put(first, encode(first.getData(), Encoding.RUN_LENGTH));
+			}
+		}
+	}
+
+	/**
+	 * @param encoded result of {@link #encodeAll(TransferObjectTree, int)}
+	 * @return human-readable report of chosen encodings and transferred elements
+	 */
+	static String report(Map<PrimitiveCollection,Encoded> encoded) {
+		StringBuilder result = new StringBuilder();
+		int plainTotal = 0, encodedTotal = 0, bindTotal = 0;
+		for (Map.Entry<PrimitiveCollection,Encoded> e : encoded.entrySet()) {
+			Encoded enc = e.getValue();
+			Preconditions.checkState(enc.getSize() == e.getKey().size(), "Column %s changed since encoding.", e.getKey().getId());
+			Utils.appendf(result, "%s %s %d -> %d%n", e.getKey().getId(), enc.getEncoding(), enc.getSize(), enc.getTransferredSize());
+			plainTotal += enc.getSize();
+			encodedTotal += enc.getTransferredSize();
+			bindTotal += enc.getBindCount();
+		}
+		Utils.appendf(result, "total %d -> %d elements, binds %d -> %d%n", plainTotal, encodedTotal, encoded.size(), bindTotal);
+		return result.toString();
+	}
+
+}
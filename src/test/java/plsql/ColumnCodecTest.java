@@ -0,0 +1,219 @@
+package plsql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ColumnCodec}.
+ * @author Tomas Zalusky
+ */
+public class ColumnCodecTest extends AbstractTypeGraphTest {
+
+	private static final String E = NestedTableType.ELEMENT_LABEL;
+
+	private static final List<String> CURRENCIES = Arrays.asList("CZK", "EUR", "USD");
+
+	/**
+	 * @param omitted fields never filled
+	 * @return marshalled <code>wide_pkg.rec_wide</code> rows where <code>f_01</code> is currency code
+	 */
+	private static TransferObjectTree marshalRows(int count, String... omitted) throws IOException {
+		List<Object> rows = ColumnPackingTest.rows(count);
+		for (int i = 0; i < count; i++) {
+			@SuppressWarnings("unchecked")
+			Map<String,Object> row = (Map<String,Object>)rows.get(i);
+			row.put("f_01", i % 10 == 9 ? null : CURRENCIES.get(i % 3));
+			for (String field : omitted) {
+				row.put(field, null);
+			}
+		}
+		return MarshallerTest.marshal(loadGraph("wide"), "wide_pkg.p_wide", Collections.singletonMap("pi_rows", rows));
+	}
+
+	private static PrimitiveCollection column(TransferObjectTree tot, String field) {
+		return tot.getTransferObject(MarshallerTest.node(tot, "pi_rows", E, field), PrimitiveCollection.class);
+	}
+
+	@Test
+	public void testDictionary() throws IOException {
+		TransferObjectTree tot = marshalRows(1000);
+		PrimitiveCollection currency = column(tot, "f_01");
+		ColumnCodec.Encoded encoded = ColumnCodec.encode(currency);
+		assertEquals(ColumnCodec.Encoding.DICTIONARY, encoded.getEncoding());
+		assertEquals(CURRENCIES, encoded.getValues());
+		assertArrayEquals(new int[] {1,2,3,1,2,3,1,2,3,0}, Arrays.copyOf(encoded.getCodes(), 10));
+		assertEquals(1003, encoded.getTransferredSize());
+		assertEquals(2, encoded.getBindCount());
+		assertEquals(currency.getData(), ColumnCodec.decode(encoded));
+	}
+
+	@Test
+	public void testThreshold() throws IOException {
+		TransferObjectTree tot = marshalRows(1000);
+		assertEquals(ColumnCodec.Encoding.PLAIN, ColumnCodec.encode(column(tot, "f_01"), 2).getEncoding());
+		assertEquals(ColumnCodec.Encoding.PLAIN, ColumnCodec.encode(column(tot, "f_02")).getEncoding()); // distinct values
+		assertEquals(ColumnCodec.Encoding.PLAIN, ColumnCodec.encode(column(tot, "n_1")).getEncoding()); // not character type
+		assertEquals(ColumnCodec.Encoding.PLAIN, ColumnCodec.encode(column(marshalRows(4), "f_01")).getEncoding()); // too short
+		ColumnCodec.Encoded plain = ColumnCodec.encode(column(tot, "f_02"));
+		assertEquals(1, plain.getBindCount());
+		assertEquals(column(tot, "f_02").getData(), ColumnCodec.decode(plain));
+	}
+
+	@Test
+	public void testForcedDictionary() {
+		ColumnCodec.Encoded encoded = ColumnCodec.encode(Arrays.asList("a", null, "b", "a"), ColumnCodec.Encoding.DICTIONARY);
+		assertEquals(Arrays.asList("a", "b"), encoded.getValues());
+		assertArrayEquals(new int[] {1,0,2,1}, encoded.getCodes());
+		assertEquals(Arrays.asList("a", null, "b", "a"), ColumnCodec.decode(encoded));
+	}
+
+	@Test
+	public void testAppendDecode() {
+		StringBuilder buf = new StringBuilder();
+		ColumnCodec.appendDecode(buf, "l_1e1", "b_1e1", ColumnCodec.encode(Arrays.asList("a", "a", "a"), ColumnCodec.Encoding.DICTIONARY), null);
+		assertEquals(String.format(
+				"l_1e1.extend(b_1e1c.count);%n" +
+				"for i in 1 .. b_1e1c.count loop%n" +
+				"  if b_1e1c(i) <> 0 then%n" +
+				"    l_1e1(i) := b_1e1v(b_1e1c(i));%n" +
+				"  end if;%n" +
+				"end loop;%n"), buf.toString());
+	}
+
+	/**
+	 * @param omitted fields never filled
+	 * @return marshalled <code>wide_pkg.rec_wide</code> rows with constant, omitted and run-length candidate columns
+	 */
+	private static TransferObjectTree marshalAdaptiveRows(String... omitted) throws IOException {
+		List<Object> rows = ColumnPackingTest.rows(1000);
+		for (int i = 0; i < rows.size(); i++) {
+			@SuppressWarnings("unchecked")
+			Map<String,Object> row = (Map<String,Object>)rows.get(i);
+			for (String field : omitted) {
+				row.put(field, null);
+			}
+			row.put("f_04", "X");
+			row.put("f_05", "batch" + i / 100);
+			row.put("n_2", i < 500 ? null : 1);
+		}
+		return MarshallerTest.marshal(loadGraph("wide"), "wide_pkg.p_wide", Collections.singletonMap("pi_rows", rows));
+	}
+
+	private static int bindCount(Map<PrimitiveCollection,ColumnCodec.Encoded> encoded) {
+		int result = 0;
+		for (ColumnCodec.Encoded e : encoded.values()) {
+			result += e.getBindCount();
+		}
+		return result;
+	}
+
+	@Test
+	public void testAdaptive() throws IOException {
+		TransferObjectTree tot = marshalAdaptiveRows("f_03", "f_07");
+		Map<PrimitiveCollection,ColumnCodec.Encoded> encoded = ColumnCodec.encodeAll(tot, ColumnCodec.DEFAULT_DICTIONARY_THRESHOLD);
+		assertEquals(ColumnCodec.Encoding.OMITTED, encoded.get(column(tot, "f_03")).getEncoding());
+		assertEquals(ColumnCodec.Encoding.OMITTED, encoded.get(column(tot, "f_07")).getEncoding());
+		assertEquals(ColumnCodec.Encoding.CONSTANT, encoded.get(column(tot, "f_04")).getEncoding());
+		assertEquals(Arrays.asList("X"), encoded.get(column(tot, "f_04")).getValues());
+		assertEquals(ColumnCodec.Encoding.RUN_LENGTH, encoded.get(column(tot, "f_05")).getEncoding());
+		assertEquals(ColumnCodec.Encoding.RUN_LENGTH, encoded.get(column(tot, "n_2")).getEncoding());
+		assertArrayEquals(new int[] {500,500}, encoded.get(column(tot, "n_2")).getCodes());
+		assertEquals(ColumnCodec.Encoding.PLAIN, encoded.get(column(tot, "f_06")).getEncoding());
+		for (Map.Entry<PrimitiveCollection,ColumnCodec.Encoded> e : encoded.entrySet()) {
+			assertEquals(e.getKey().getId(), e.getKey().getData(), ColumnCodec.decode(e.getValue()));
+			assertTrue(e.getKey().getId(), e.getValue().getCost() <= ColumnCodec.encode(e.getKey().getData(), ColumnCodec.Encoding.PLAIN).getCost());
+		}
+		assertEquals(0, encoded.get(column(tot, "f_03")).getTransferredSize());
+		assertEquals(0, encoded.get(column(tot, "f_03")).getBindCount());
+		assertEquals(1, encoded.get(column(tot, "f_04")).getBindCount());
+		assertEquals(encoded.size(), bindCount(encoded));
+	}
+
+	/**
+	 * Two-bind encodings not paid by omitted columns fall back to plain, the one with the least saving first.
+	 */
+	@Test
+	public void testBindBudget() throws IOException {
+		TransferObjectTree tot = marshalAdaptiveRows("f_03");
+		Map<PrimitiveCollection,ColumnCodec.Encoded> encoded = ColumnCodec.encodeAll(tot, ColumnCodec.DEFAULT_DICTIONARY_THRESHOLD);
+		assertEquals(ColumnCodec.Encoding.OMITTED, encoded.get(column(tot, "f_03")).getEncoding());
+		ColumnCodec.Encoded batch = ColumnCodec.encode(column(tot, "f_05")), half = ColumnCodec.encode(column(tot, "n_2"));
+		assertEquals(ColumnCodec.Encoding.RUN_LENGTH, batch.getEncoding());
+		assertEquals(ColumnCodec.Encoding.RUN_LENGTH, half.getEncoding());
+		boolean batchKept = saving(column(tot, "f_05"), batch) >= saving(column(tot, "n_2"), half);
+		assertEquals(batchKept ? ColumnCodec.Encoding.RUN_LENGTH : ColumnCodec.Encoding.PLAIN, encoded.get(column(tot, "f_05")).getEncoding());
+		assertEquals(batchKept ? ColumnCodec.Encoding.PLAIN : ColumnCodec.Encoding.RUN_LENGTH, encoded.get(column(tot, "n_2")).getEncoding());
+		assertEquals(encoded.size(), bindCount(encoded));
+	}
+
+	private static int saving(PrimitiveCollection column, ColumnCodec.Encoded encoded) {
+		return ColumnCodec.encode(column.getData(), ColumnCodec.Encoding.PLAIN).getCost() - encoded.getCost();
+	}
+
+	/**
+	 * Encoded tree never has more binds than plain one.
+	 */
+	@Test
+	public void testNoExtraBinds() throws IOException {
+		List<TransferObjectTree> trees = Arrays.asList(
+				marshalRows(4), marshalRows(1000), marshalAdaptiveRows(), marshalAdaptiveRows("f_03"),
+				MarshallerTest.marshal(loadGraph("alltypes"), "echo", MarshallerTest.largeArguments(50)));
+		for (TransferObjectTree tot : trees) {
+			TransferObjectOptimizer.optimize(tot);
+			ColumnPacking.Plan plan = new ColumnPacking.Plan();
+			Map<PrimitiveCollection,ColumnCodec.Encoded> encoded = ColumnCodec.encodeAll(tot, ColumnCodec.DEFAULT_DICTIONARY_THRESHOLD);
+			assertTrue(ColumnCodec.report(encoded), bindCount(encoded) <= encoded.size());
+			int plainBinds = BlockGenerator.generate(tot, plan, Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap()).getBinds().size();
+			int encodedBinds = BlockGenerator.generate(tot, plan, encoded).getBinds().size();
+			assertTrue(encodedBinds + " > " + plainBinds, encodedBinds <= plainBinds);
+		}
+	}
+
+	@Test
+	public void testNotApplicable() {
+		assertNull(ColumnCodec.encode(Arrays.asList("a", null), ColumnCodec.Encoding.OMITTED));
+		assertNull(ColumnCodec.encode(Arrays.asList("a", "b"), ColumnCodec.Encoding.CONSTANT));
+		assertNull(ColumnCodec.encode(Arrays.asList(null, null), ColumnCodec.Encoding.CONSTANT));
+		assertEquals(Arrays.asList(null, null), ColumnCodec.decode(ColumnCodec.encode(Arrays.asList(null, null), ColumnCodec.Encoding.OMITTED)));
+	}
+
+	@Test
+	public void testAppendDecodeRunLength() {
+		StringBuilder buf = new StringBuilder();
+		ColumnCodec.appendDecode(buf, "l_1e1", "b_1e1", ColumnCodec.encode(Arrays.asList("a", "a", "b"), ColumnCodec.Encoding.RUN_LENGTH), null);
+		assertEquals(String.format(
+				"for r in 1 .. b_1e1c.count loop%n" +
+				"  l_1e1.extend(b_1e1c(r));%n" +
+				"  for i in l_1e1.count - b_1e1c(r) + 1 .. l_1e1.count loop%n" +
+				"    l_1e1(i) := b_1e1v(r);%n" +
+				"  end loop;%n" +
+				"end loop;%n"), buf.toString());
+		buf.setLength(0);
+		ColumnCodec.appendDecode(buf, "l_1e1", "b_1e1", ColumnCodec.encode(Arrays.asList(null, null), ColumnCodec.Encoding.OMITTED), "abs(l_1p(l_1p.count)) - 1");
+		assertEquals(String.format("l_1e1.extend(abs(l_1p(l_1p.count)) - 1);%n"), buf.toString());
+	}
+
+	@Test
+	public void testEncodeAll() throws IOException {
+		TransferObjectTree tot = marshalRows(1000, "f_40");
+		Map<PrimitiveCollection,ColumnCodec.Encoded> encoded = ColumnCodec.encodeAll(tot, ColumnCodec.DEFAULT_DICTIONARY_THRESHOLD);
+		assertEquals(45, encoded.size());
+		assertEquals(ColumnCodec.Encoding.DICTIONARY, encoded.get(column(tot, "f_01")).getEncoding());
+		String report = ColumnCodec.report(encoded);
+		assertTrue(report, report.contains(column(tot, "f_01").getId() + " DICTIONARY 1000 -> 1003"));
+		assertTrue(report, report.contains("binds 45 -> 45"));
+		tot = marshalRows(1000);
+		assertEquals(ColumnCodec.Encoding.PLAIN, ColumnCodec.encodeAll(tot, ColumnCodec.DEFAULT_DICTIONARY_THRESHOLD).get(column(tot, "f_01")).getEncoding()); // no bind to spare
+	}
+
+}
@@ -0,0 +1,82 @@
+package plsql;
+
+import pleasejava.Utils;
+
+/**
+ * <p>
+ * Kind of SQL collection which carries {@link PrimitiveCollection} of given PLSQL primitive type via JDBC.
+ * Columns of same kind can be merged into single SQL collection.
+ * </p>
+ * <p>
+ * Columns are bound as schema-level nested tables installed by {@link #getDeployScript()}.
+ * Unlike predefined varrays (<code>sys.odcinumberlist</code> etc. limited to 32767 elements), nested table has no limit of number of elements.
+ * Length of character element is limited by {@link #MAX_VARCHAR2_LENGTH} (length of SQL <code>varchar2</code>),
+ * longer values are refused on Java side when binding.
+ * </p>
+ * @author Tomas Zalusky
+ */
+enum ColumnKind {
+
+	VARCHAR2("pleasejava_varchar2_table", "varchar2(4000)"),
+
+	NUMBER("pleasejava_number_table", "number"),
+
+	DATE("pleasejava_date_table", "date");
+
+	/**
+	 * Maximal length of element of {@link #VARCHAR2} column.
+	 */
+	static final int MAX_VARCHAR2_LENGTH = 4000;
+
+	private final String collectionType;
+
+	private final String scalarType;
+
+	private ColumnKind(String collectionType, String scalarType) {
+		this.collectionType = collectionType;
+		this.scalarType = scalarType;
+	}
+
+	/**
+	 * @return name of SQL collection type which column of this kind is bound as
+	 */
+	String getCollectionType() {
+		return collectionType;
+	}
+
+	/**
+	 * @return PLSQL type of single value of this kind
+	 */
+	String getScalarType() {
+		return scalarType;
+	}
+
+	/**
+	 * @return DDL script (for SQL*Plus or similar tool) installing SQL collection types of all kinds
+	 */
+	static String getDeployScript() {
+		StringBuilder buf = new StringBuilder();
+		for (ColumnKind kind : values()) {
+			Utils.appendf(buf, "create or replace type %s as table of %s;%n/%n", kind.collectionType, kind.scalarType);
+		}
+		return StatementFingerprints.canonical(buf.toString());
+	}
+
+	/**
+	 * @param type
+	 * @return kind of SQL collection for given type, null if type is not transferred using generic SQL collection
+	 * (LOBs, PLSQL boolean)
+	 */
+	static ColumnKind of(AbstractPrimitiveType type) {
+		if (type instanceof Varchar2Type || type instanceof CharType || type instanceof StringType || type instanceof LongType) {
+			return VARCHAR2;
+		} else if (type instanceof NumberType || type instanceof IntegerType || type instanceof PlsIntegerType || type instanceof BinaryIntegerType) {
+			return NUMBER;
+		} else if (type instanceof DateType) {
+			return DATE;
+		} else {
+			return null;
+		}
+	}
+
+}
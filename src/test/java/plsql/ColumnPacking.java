@@ -0,0 +1,189 @@
+package plsql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import pleasejava.Utils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * <p>
+ * Optional packing strategy reducing number of JDBC binds for records with many primitive fields in collections.
+ * {@link PrimitiveCollection}s with same parent {@link TransferObject} (i.e. at the same pointer level)
+ * and same {@link ColumnKind} are concatenated into one wide column, which is bound instead of them
+ * and unpacked in generated PLSQL code.
+ * </p>
+ * <p>
+ * Since packed columns are at the same pointer level, they all have the same length <em>n</em>
+ * and <em>k<sup>th</sup></em> member of packed column occupies interval <em>{@literal <k*n, (k+1)*n)}</em> (0-based).
+ * Packed members are marked as {@link TransferObject#isElided() elided},
+ * hence packing is supposed to run after {@link TransferObjectOptimizer}.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class ColumnPacking {
+
+	/**
+	 * Column composed of several {@link PrimitiveCollection}s.
+	 * @author Tomas Zalusky
+	 */
+	static final class PackedColumn {
+
+		private final String id;
+
+		private final ColumnKind kind;
+
+		private final List<PrimitiveCollection> members;
+
+		PackedColumn(String id, ColumnKind kind, List<PrimitiveCollection> members) {
+			this.id = id;
+			this.kind = kind;
+			this.members = ImmutableList.copyOf(members);
+		}
+
+		String getId() {
+			return id;
+		}
+
+		ColumnKind getKind() {
+			return kind;
+		}
+
+		List<PrimitiveCollection> getMembers() {
+			return members;
+		}
+
+		/**
+		 * @return offsets of members in packed column, last element is length of packed column
+		 */
+		int[] getOffsets() {
+			int[] result = new int[members.size() + 1];
+			for (int k = 0; k < members.size(); k++) {
+				result[k + 1] = result[k] + members.get(k).size();
+			}
+			return result;
+		}
+
+		/**
+		 * @return concatenated data of members
+		 */
+		List<Object> pack() {
+			List<Object> result = new ArrayList<>(getOffsets()[members.size()]);
+			for (PrimitiveCollection member : members) {
+				result.addAll(member.getData());
+			}
+			return result;
+		}
+
+		/**
+		 * Distributes data of packed column into (empty) members.
+		 * @param packed
+		 */
+		void unpack(List<?> packed) {
+			int m = members.size();
+			Preconditions.checkArgument(packed.size() % m == 0, "Packed column %s of length %s does not consist of %s members of same length.", id, packed.size(), m);
+			int n = packed.size() / m;
+			for (int k = 0; k < m; k++) {
+				members.get(k).addAll(packed.subList(k * n, (k + 1) * n));
+			}
+		}
+
+		@Override
+		public String toString() {
+			List<String> memberIds = Lists.newArrayList();
+			for (PrimitiveCollection member : members) {
+				memberIds.add(member.getId());
+			}
+			return id + " " + kind + " " + memberIds;
+		}
+
+	}
+
+	/**
+	 * Result of packing.
+	 * @author Tomas Zalusky
+	 */
+	static final class Plan {
+
+		private final List<PackedColumn> columns = Lists.newArrayList();
+
+		private int bindCountBefore;
+
+		List<PackedColumn> getColumns() {
+			return Collections.unmodifiableList(columns);
+		}
+
+		int getBindCountBefore() {
+			return bindCountBefore;
+		}
+
+		int getBindCountAfter() {
+			int result = bindCountBefore;
+			for (PackedColumn column : columns) {
+				result -= column.members.size() - 1;
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder result = new StringBuilder();
+			for (PackedColumn column : columns) {
+				Utils.appendf(result, "%s%n", column);
+			}
+			Utils.appendf(result, "binds %d -> %d%n", bindCountBefore, getBindCountAfter());
+			return result.toString();
+		}
+
+	}
+
+	private ColumnPacking() {
+	}
+
+	/**
+	 * Packs all groups of at least two compatible non-elided columns in tree.
+	 * @param tree
+	 * @return plan of packed columns
+	 */
+	static Plan pack(TransferObjectTree tree) {
+		Plan plan = new Plan();
+		pack(tree.getRoot(), plan);
+		return plan;
+	}
+
+	private static void pack(TransferObject to, Plan plan) {
+		if (!(to instanceof RootTransferObject) && !to.isElided()) {
+			plan.bindCountBefore++;
+		}
+		Map<ColumnKind,List<PrimitiveCollection>> groups = new EnumMap<>(ColumnKind.class);
+		for (TransferObject child : to.getChildren()) {
+			if (child instanceof PrimitiveCollection && !child.isElided()) {
+				ColumnKind kind = ColumnKind.of(((PrimitiveCollection)child).getType());
+				if (kind != null) {
+					List<PrimitiveCollection> group = groups.get(kind);
+					if (group == null) {
+						groups.put(kind, group = Lists.newArrayList());
+					}
+					group.add((PrimitiveCollection)child);
+				}
+			}
+			pack(child, plan);
+		}
+		for (Map.Entry<ColumnKind,List<PrimitiveCollection>> e : groups.entrySet()) {
+			List<PrimitiveCollection> members = e.getValue();
+			if (members.size() > 1) {
+				for (PrimitiveCollection member : members) {
+					member.setPacked(true);
+				}
+				plan.columns.add(new PackedColumn(to.getId() + "k" + Character.toLowerCase(e.getKey().name().charAt(0)), e.getKey(), members));
+			}
+		}
+	}
+
+}
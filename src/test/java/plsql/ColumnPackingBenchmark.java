@@ -0,0 +1,43 @@
+package plsql;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Compares bind count and Java-side loopback latency (marshal, build bound arrays, fill receiving tree, unmarshal)
+ * of plain and packed transfer of nested table of records with 45 primitive fields ({@code typegraph/wide.xml}).
+ * Run as Java application, not part of test suite.
+ * @author Tomas Zalusky
+ */
+public class ColumnPackingBenchmark extends AbstractTypeGraphTest {
+
+	private static final int ROWS = 1000;
+
+	private static final int ROUNDS = 200;
+
+	public static void main(String[] args) throws IOException {
+		TypeGraph graph = loadGraph("wide");
+		Map<String,?> arguments = Collections.singletonMap("pi_rows", ColumnPackingTest.rows(ROWS));
+		ProcedureSignature signature = graph.findType(ProcedureSignature.class, "wide_pkg.p_wide");
+		for (int iteration = 0; iteration < 5; iteration++) {
+			for (boolean packed : new boolean[] {false, true}) {
+				int binds = 0;
+				long start = System.nanoTime();
+				for (int r = 0; r < ROUNDS; r++) {
+					TransferObjectTree tot = MarshallerTest.marshal(graph, "wide_pkg.p_wide", arguments);
+					binds = TransferObjectOptimizer.optimize(tot).getBindCountAfter();
+					ColumnPacking.Plan plan = packed ? ColumnPacking.pack(tot) : new ColumnPacking.Plan();
+					if (packed) {
+						binds = plan.getBindCountAfter();
+					}
+					TransferObjectTree received = graph.toTypeNodeTree(signature).toTransferObjectTree();
+					ColumnPackingTest.loopback(tot, plan, received);
+					new Unmarshaller(received, t -> null, true).unmarshal("pi_rows");
+				}
+				System.out.printf("%-6s %3d binds %8.3f ms per call%n", packed ? "packed" : "plain", binds, (System.nanoTime() - start) / 1e6 / ROUNDS);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+package plsql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link ColumnPacking}.
+ * @author Tomas Zalusky
+ */
+public class ColumnPackingTest extends AbstractTypeGraphTest {
+
+	private static final String E = NestedTableType.ELEMENT_LABEL;
+
+	/**
+	 * @param count
+	 * @return list of records of type <code>wide_pkg.rec_wide</code>
+	 */
+	static List<Object> rows(int count) {
+		List<Object> result = Lists.newArrayList();
+		for (int i = 0; i < count; i++) {
+			Map<String,Object> row = new LinkedHashMap<>();
+			for (int f = 1; f <= 40; f++) {
+				row.put(String.format("f_%02d", f), i % 7 == f % 7 ? null : "v" + i + "_" + f);
+			}
+			for (int n = 1; n <= 3; n++) {
+				row.put("n_" + n, i * n);
+			}
+			row.put("d_1", new java.sql.Date(86400000L * i));
+			row.put("b_1", i % 2 == 0);
+			result.add(row);
+		}
+		return result;
+	}
+
+	/**
+	 * Simulates transfer of marshalled data to receiving side:
+	 * packed columns are sent as a whole and unpacked into fresh tree, other transfer objects are copied.
+	 * (Elided transfer objects are copied too since their derivation is up to receiving code.)
+	 * @param sent marshalled and packed tree
+	 * @param sentPlan
+	 * @param received fresh tree of same signature
+	 */
+	static void loopback(TransferObjectTree sent, ColumnPacking.Plan sentPlan, TransferObjectTree received) {
+		ColumnPacking.Plan receivedPlan = ColumnPacking.pack(received);
+		for (int c = 0; c < sentPlan.getColumns().size(); c++) {
+			Object[] bound = sentPlan.getColumns().get(c).pack().toArray();
+			receivedPlan.getColumns().get(c).unpack(java.util.Arrays.asList(bound));
+		}
+		copy(sent.getRoot(), received.getRoot());
+	}
+
+	private static void copy(TransferObject from, TransferObject to) {
+		if (from instanceof Pointers) {
+			IntList data = ((Pointers)from).getData();
+			for (int i = 0; i < data.size(); i++) {
+				((Pointers)to).add(data.get(i));
+			}
+		} else if (from instanceof Deletions) {
+			IntList data = ((Deletions)from).getData();
+			for (int i = 0; i < data.size(); i++) {
+				((Deletions)to).add(data.get(i));
+			}
+		} else if (from instanceof PrimitiveCollection && ((PrimitiveCollection)to).size() == 0) {
+			((PrimitiveCollection)to).addAll(((PrimitiveCollection)from).getData());
+		}
+		for (int i = 0; i < from.getChildren().size(); i++) {
+			copy(from.getChildren().get(i), to.getChildren().get(i));
+		}
+	}
+
+	private static TransferObjectTree emptyTree(TypeGraph graph) {
+		return graph.toTypeNodeTree(graph.findType(ProcedureSignature.class, "wide_pkg.p_wide")).toTransferObjectTree();
+	}
+
+	@Test
+	public void testPacking() throws IOException {
+		TypeGraph graph = loadGraph("wide");
+		TransferObjectTree tot = MarshallerTest.marshal(graph, "wide_pkg.p_wide", Collections.singletonMap("pi_rows", rows(5)));
+		TransferObjectOptimizer.Report report = TransferObjectOptimizer.optimize(tot);
+		ColumnPacking.Plan plan = ColumnPacking.pack(tot);
+		assertEquals(2, plan.getColumns().size());
+		ColumnPacking.PackedColumn varchar2 = plan.getColumns().get(0);
+		assertEquals(ColumnKind.VARCHAR2, varchar2.getKind());
+		assertEquals(40, varchar2.getMembers().size());
+		assertEquals(ColumnKind.NUMBER, plan.getColumns().get(1).getKind());
+		assertEquals(3, plan.getColumns().get(1).getMembers().size());
+		assertArrayEquals(new int[] {0,5,10,15}, plan.getColumns().get(1).getOffsets());
+		assertEquals(200, varchar2.pack().size());
+		assertTrue(tot.getTransferObject(MarshallerTest.node(tot, "pi_rows", E, "f_01"), PrimitiveCollection.class).isElided());
+		assertFalse(tot.getTransferObject(MarshallerTest.node(tot, "pi_rows", E, "d_1"), PrimitiveCollection.class).isElided()); // single date column
+		assertNull(ColumnKind.of(tot.getTransferObject(MarshallerTest.node(tot, "pi_rows", E, "b_1"), PrimitiveCollection.class).getType()));
+		assertEquals(report.getBindCountAfter(), plan.getBindCountBefore());
+		assertEquals(plan.getBindCountBefore() - 39 - 2, plan.getBindCountAfter());
+		assertTrue(plan.toString(), plan.toString().endsWith("binds " + plan.getBindCountBefore() + " -> " + plan.getBindCountAfter() + String.format("%n")));
+		assertTrue(ColumnPacking.pack(tot).getColumns().isEmpty()); // members are already elided
+		TransferObjectOptimizer.optimize(tot);
+		assertTrue(tot.getTransferObject(MarshallerTest.node(tot, "pi_rows", E, "f_01"), PrimitiveCollection.class).isElided()); // packing survives optimization
+	}
+
+	@Test
+	public void testLoopback() throws IOException {
+		TypeGraph graph = loadGraph("wide");
+		List<Object> rows = rows(10);
+		TransferObjectTree tot = MarshallerTest.marshal(graph, "wide_pkg.p_wide", Collections.singletonMap("pi_rows", rows));
+		TransferObjectOptimizer.optimize(tot);
+		ColumnPacking.Plan plan = ColumnPacking.pack(tot);
+		TransferObjectTree received = emptyTree(graph);
+		loopback(tot, plan, received);
+		assertEquals(rows, new Unmarshaller(received, t -> null, true).unmarshal("pi_rows"));
+		assertEquals(rows, new Unmarshaller(received, t -> null, false).unmarshal("pi_rows"));
+	}
+
+}
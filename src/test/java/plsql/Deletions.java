@@ -1,9 +1,5 @@
 package plsql;
 
-import java.util.List;
-
-import com.google.common.collect.Lists;
-
 /**
  * Collection of deleted indices (holes) in nested table.
  * This specific {@link TransferObject} is utilized only for nested tables
@@ -12,7 +8,9 @@ import com.google.common.collect.Lists;
  */
 public class Deletions extends TransferObject {
 
-	private List<Integer> data = Lists.newArrayList();
+	private final IntList data = new IntList();  // 1-based indexes of deleted elements, ascending within each nested table
+
+	private DeletionsBitmap bitmap; // compressed representation, built lazily from data
 
 	public Deletions(TransferObject parent, TypeNode typeNode) {
 		super(parent, typeNode, typeNode.id() + "d");
@@ -23,4 +21,25 @@ public class Deletions extends TransferObject {
 		return "{d}";
 	}
 
+	void add(int deletedIndex) {
+		data.add(deletedIndex);
+	}
+
+	IntList getData() {
+		return data;
+	}
+
+	/**
+	 * Returns compressed representation of deletions, building it from indexes on first call.
+	 * @param dataPointers sibling data pointers
+	 * @param deletionsPointers parent pointers
+	 * @return bitmap of deletions
+	 */
+	DeletionsBitmap getBitmap(DataPointers dataPointers, DeletionsPointers deletionsPointers) {
+		if (bitmap == null) {
+			bitmap = DeletionsBitmap.of(dataPointers, deletionsPointers, this);
+		}
+		return bitmap;
+	}
+
 }
@@ -0,0 +1,595 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pleasejava.Utils;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+/**
+ * <p>
+ * Compressed bitmap representation of {@link Deletions} (in Roaring style),
+ * suitable for nested tables with large number of deleted elements (e.g. after bulk <code>DELETE</code>).
+ * It serves lazy views of nested tables built by {@link Unmarshaller}
+ * and transfer of large deletions of IN parameters as single RAW value.
+ * </p>
+ * <p>
+ * All nested tables sharing one {@link Deletions} column are mapped into single space of <em>virtual positions</em>:
+ * nested table <em>j</em> occupies positions starting at <em>(p<sub>j</sub> - 1) + (q<sub>j</sub> - 1)</em>,
+ * where <em>p<sub>j</sub></em>, <em>q<sub>j</sub></em> are lower bounds from {@link DataPointers} and {@link DeletionsPointers},
+ * one position per existing or deleted element. Bitmap contains positions of deleted elements.
+ * Hence for 1-based index <em>k</em> of nested table <em>j</em> with virtual position <em>v</em>,
+ * the 0-based position of element in data columns is <em>v - rank(v)</em>.
+ * </p>
+ * <p>
+ * Positions are split by upper 16 bits into containers, each of them being the smallest of:
+ * </p>
+ * <ul>
+ * <li>array container - sorted lower 16 bits (up to 4096 values),
+ * rank and membership are computed by binary search</li>
+ * <li>bitmap container - 1024 words with precomputed rank of every word,
+ * rank and membership are computed in constant time</li>
+ * <li>run container - sorted runs of consecutive positions (typical for bulk deletions),
+ * rank and membership are computed by binary search over runs</li>
+ * </ul>
+ * <p>
+ * Container of position is found in constant time by table indexed by upper 16 bits.
+ * </p>
+ * <p>
+ * Wire format (big-endian): int container count, then for every container:
+ * char key, byte type (0 = array, 1 = bitmap, 2 = run) and content -
+ * char cardinality and chars of values for array, 1024 longs for bitmap,
+ * char run count and pairs of chars (start, length - 1) for run container.
+ * Deletions chosen by {@link #encodeAll(TransferObjectTree)} are bound as {@link PointersCodec#RAW_TYPE RAW} named <code>id</code>r
+ * instead of number collection, code restoring them on PLSQL side is generated by {@link #appendDecode(StringBuilder, String, String, String, String)}.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class DeletionsBitmap {
+
+	private static final int ARRAY = 0, BITMAP = 1, RUN = 2;
+
+	private static final int BITMAP_WORDS = 1 << 10;
+
+	private final char[] keys;
+
+	private final Container[] containers;
+
+	private final int[] containerRanks; // number of positions in preceding containers, length = containers + 1
+
+	private final int[] containerIndexes; // index of first container whose key is not lower than upper 16 bits, length = last key + 1
+
+	private DeletionsBitmap(char[] keys, Container[] containers) {
+		this.keys = keys;
+		this.containers = containers;
+		this.containerRanks = new int[containers.length + 1];
+		for (int i = 0; i < containers.length; i++) {
+			containerRanks[i + 1] = containerRanks[i] + containers[i].cardinality();
+		}
+		this.containerIndexes = new int[keys.length == 0 ? 0 : keys[keys.length - 1] + 1];
+		for (int high = 0, i = 0; high < containerIndexes.length; high++) {
+			while (keys[i] < high) {
+				i++;
+			}
+			containerIndexes[high] = i;
+		}
+	}
+
+	/**
+	 * @param dataPointers
+	 * @param deletionsPointers
+	 * @param j 0-based index of nested table
+	 * @return virtual position of first element of j-th nested table
+	 */
+	static int virtualStart(DataPointers dataPointers, DeletionsPointers deletionsPointers, int j) {
+		return dataPointers.lowerBound(j) - 1 + deletionsPointers.lowerBound(j) - 1;
+	}
+
+	/**
+	 * Builds bitmap from deleted indexes of all nested tables.
+	 * @param dataPointers
+	 * @param deletionsPointers
+	 * @param deletions
+	 * @return bitmap
+	 */
+	static DeletionsBitmap of(DataPointers dataPointers, DeletionsPointers deletionsPointers, Deletions deletions) {
+		IntList indexes = deletions.getData();
+		int[] positions = new int[indexes.size()];
+		for (int j = 0, n = deletionsPointers.count(); j < n; j++) {
+			int start = virtualStart(dataPointers, deletionsPointers, j);
+			for (int d = deletionsPointers.lowerBound(j) - 1, end = deletionsPointers.upperBound(j) - 1; d < end; d++) {
+				positions[d] = start + indexes.get(d) - 1;
+			}
+		}
+		return fromPositions(positions);
+	}
+
+	/**
+	 * @param positions ascending virtual positions
+	 * @return bitmap
+	 */
+	static DeletionsBitmap fromPositions(int[] positions) {
+		int count = 0;
+		for (int i = 0; i < positions.length; count++) {
+			int high = positions[i] >>> 16;
+			while (i < positions.length && positions[i] >>> 16 == high) {
+				i++;
+			}
+		}
+		char[] keys = new char[count];
+		Container[] containers = new Container[count];
+		int c = 0;
+		for (int i = 0; i < positions.length; c++) {
+			int high = positions[i] >>> 16;
+			int from = i;
+			while (i < positions.length && positions[i] >>> 16 == high) {
+				i++;
+			}
+			keys[c] = (char)high;
+			containers[c] = Container.of(positions, from, i);
+		}
+		return new DeletionsBitmap(keys, containers);
+	}
+
+	int cardinality() {
+		return containerRanks[containers.length];
+	}
+
+	/**
+	 * @param high upper 16 bits of position
+	 * @return index of first container whose key is not lower than given bits
+	 */
+	private int container(int high) {
+		return high < containerIndexes.length ? containerIndexes[high] : containers.length;
+	}
+
+	boolean contains(int position) {
+		int high = position >>> 16;
+		int i = container(high);
+		return i < containers.length && keys[i] == high && containers[i].contains((char)position);
+	}
+
+	/**
+	 * @param position
+	 * @return number of positions in bitmap lower than given position
+	 */
+	int rank(int position) {
+		int high = position >>> 16;
+		int i = container(high);
+		return i < containers.length && keys[i] == high ? containerRanks[i] + containers[i].rank((char)position) : containerRanks[i];
+	}
+
+	/**
+	 * @param rank 0-based
+	 * @return position with given rank
+	 */
+	int select(int rank) {
+		checkElementIndex(rank, cardinality());
+		int i = lastLowerOrEqual(containerRanks, containers.length, rank);
+		return keys[i] << 16 | containers[i].select(rank - containerRanks[i]);
+	}
+
+	/**
+	 * @return size of wire format in bytes
+	 */
+	int sizeInBytes() {
+		int result = 4;
+		for (Container container : containers) {
+			result += 3 + container.sizeInBytes();
+		}
+		return result;
+	}
+
+	byte[] toBytes() {
+		ByteArrayDataOutput out = ByteStreams.newDataOutput(sizeInBytes());
+		out.writeInt(containers.length);
+		for (int i = 0; i < containers.length; i++) {
+			out.writeChar(keys[i]);
+			containers[i].write(out);
+		}
+		return out.toByteArray();
+	}
+
+	static DeletionsBitmap fromBytes(byte[] bytes) {
+		ByteArrayDataInput in = ByteStreams.newDataInput(bytes);
+		int count = in.readInt();
+		char[] keys = new char[count];
+		Container[] containers = new Container[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = in.readChar();
+			containers[i] = Container.read(in);
+		}
+		return new DeletionsBitmap(keys, containers);
+	}
+
+	/**
+	 * Builds bitmaps of all deletions in tree which are not elided
+	 * and whose wire format is smaller than plain column of 4-byte indexes and fits into {@link PointersCodec#MAX_RAW_LENGTH}.
+	 * Other deletions are bound as they are.
+	 * @param tree
+	 * @return bitmaps in depth-first order of transfer objects
+	 */
+	static Map<Deletions,DeletionsBitmap> encodeAll(TransferObjectTree tree) {
+		Map<Deletions,DeletionsBitmap> result = new LinkedHashMap<>();
+		encodeAll(tree, tree.getRoot(), result);
+		return result;
+	}
+
+	private static void encodeAll(TransferObjectTree tree, TransferObject to, Map<Deletions,DeletionsBitmap> result) {
+		if (to instanceof Deletions && !to.isElided() && !((Deletions)to).getData().isEmpty()) {
+			Deletions deletions = (Deletions)to;
+			DataPointers dataPointers = tree.getTransferObject(to.getTypeNode(), DataPointers.class);
+			DeletionsPointers deletionsPointers = tree.getTransferObject(to.getTypeNode(), DeletionsPointers.class);
+			DeletionsBitmap bitmap = deletions.getBitmap(dataPointers, deletionsPointers);
+			int size = bitmap.sizeInBytes();
+			if (size < 4 * deletions.getData().size() && size <= PointersCodec.MAX_RAW_LENGTH) {
+				result.put(deletions, bitmap);
+			}
+		}
+		for (TransferObject child : to.getChildren()) {
+			encodeAll(tree, child, result);
+		}
+	}
+
+	/**
+	 * Appends PLSQL code which fills (empty, initialized) number collection of deletions from bound RAW in wire format.
+	 * Virtual positions are decoded first, then converted to indexes within particular nested tables,
+	 * hence both pointers must already be filled.
+	 * Variables {@link PointersCodec#AUXILIARIES} must be declared.
+	 * @param buf
+	 * @param target name of collection variable to be filled
+	 * @param source name of bound RAW
+	 * @param dataPointers name of collection variable of {@link DataPointers}
+	 * @param deletionsPointers name of collection variable of {@link DeletionsPointers}
+	 */
+	static void appendDecode(StringBuilder buf, String target, String source, String dataPointers, String deletionsPointers) {
+		Utils.appendf(buf, "rp := 1;%n");
+		appendRead(buf, "", source, "rn", 4);
+		Utils.appendf(buf, "ri := 0;%n");
+		Utils.appendf(buf, "for i in 1 .. rn loop%n");
+		appendRead(buf, "  ", source, "ra", 2);
+		Utils.appendf(buf, "  ra := ra * 65536;%n");
+		appendRead(buf, "  ", source, "rf", 1);
+		Utils.appendf(buf, "  if rf = %d then%n", RUN);
+		appendRead(buf, "    ", source, "rr", 2);
+		Utils.appendf(buf, "    for j in 1 .. rr loop%n");
+		appendRead(buf, "      ", source, "rs", 2);
+		appendRead(buf, "      ", source, "rv", 2);
+		Utils.appendf(buf, "      %s.extend(rv + 1);%n", target);
+		Utils.appendf(buf, "      for k in 0 .. rv loop%n");
+		Utils.appendf(buf, "        ri := ri + 1;%n");
+		Utils.appendf(buf, "        %s(ri) := ra + rs + k;%n", target);
+		Utils.appendf(buf, "      end loop;%n");
+		Utils.appendf(buf, "    end loop;%n");
+		Utils.appendf(buf, "  elsif rf = %d then%n", BITMAP);
+		// j-th group of 8 bits of container is stored in byte 7 - mod(j, 8) of big-endian word trunc(j / 8)
+		Utils.appendf(buf, "    for j in 0 .. %d loop%n", 8 * BITMAP_WORDS - 1);
+		Utils.appendf(buf, "      rb := utl_raw.cast_to_binary_integer(utl_raw.substr(%s, rp + j + 7 - 2 * mod(j, 8), 1));%n", source);
+		Utils.appendf(buf, "      rv := ra + 8 * j;%n");
+		Utils.appendf(buf, "      while rb > 0 loop%n");
+		Utils.appendf(buf, "        rz := mod(rb, 2);%n");
+		Utils.appendf(buf, "        if rz = 1 then%n");
+		Utils.appendf(buf, "          ri := ri + 1;%n");
+		Utils.appendf(buf, "          %s.extend;%n", target);
+		Utils.appendf(buf, "          %s(ri) := rv;%n", target);
+		Utils.appendf(buf, "        end if;%n");
+		Utils.appendf(buf, "        rb := (rb - rz) / 2;%n");
+		Utils.appendf(buf, "        rv := rv + 1;%n");
+		Utils.appendf(buf, "      end loop;%n");
+		Utils.appendf(buf, "    end loop;%n");
+		Utils.appendf(buf, "    rp := rp + %d;%n", 8 * BITMAP_WORDS);
+		Utils.appendf(buf, "  else%n");
+		appendRead(buf, "    ", source, "rr", 2);
+		Utils.appendf(buf, "    %s.extend(rr);%n", target);
+		Utils.appendf(buf, "    for j in 1 .. rr loop%n");
+		appendRead(buf, "      ", source, "rv", 2);
+		Utils.appendf(buf, "      ri := ri + 1;%n");
+		Utils.appendf(buf, "      %s(ri) := ra + rv;%n", target);
+		Utils.appendf(buf, "    end loop;%n");
+		Utils.appendf(buf, "  end if;%n");
+		Utils.appendf(buf, "end loop;%n");
+		// virtual position of first element of i-th nested table is (p(i) - 1) + (q(i) - 1)
+		Utils.appendf(buf, "for i in 1 .. %s.count - 1 loop%n", deletionsPointers);
+		Utils.appendf(buf, "  for j in abs(%s(i)) .. abs(%s(i + 1)) - 1 loop%n", deletionsPointers, deletionsPointers);
+		Utils.appendf(buf, "    %s(j) := %s(j) - abs(%s(i)) - abs(%s(i)) + 3;%n", target, target, dataPointers, deletionsPointers);
+		Utils.appendf(buf, "  end loop;%n");
+		Utils.appendf(buf, "end loop;%n");
+	}
+
+	/**
+	 * Appends code reading unsigned big-endian number of given length at position <code>rp</code> and advancing position.
+	 */
+	private static void appendRead(StringBuilder buf, String indent, String source, String target, int length) {
+		Utils.appendf(buf, "%s%s := utl_raw.cast_to_binary_integer(utl_raw.substr(%s, rp, %d));%n", indent, target, source, length);
+		Utils.appendf(buf, "%srp := rp + %d;%n", indent, length);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("[");
+		for (int i = 0; i < containers.length; i++) {
+			result.append(i == 0 ? "" : ",").append((int)keys[i]).append(':').append(containers[i].getClass().getSimpleName());
+		}
+		return result.append(']').toString();
+	}
+
+	/**
+	 * @param ranks ascending values
+	 * @param length number of considered values
+	 * @param value
+	 * @return index of last element of ranks lower than or equal to given value
+	 */
+	private static int lastLowerOrEqual(int[] ranks, int length, int value) {
+		int lo = 0, hi = length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (ranks[mid] <= value) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Set of lower 16 bits of positions sharing same upper 16 bits.
+	 * @author Tomas Zalusky
+	 */
+	private static abstract class Container {
+
+		abstract int cardinality();
+
+		abstract boolean contains(char low);
+
+		/**
+		 * @return number of values lower than given value
+		 */
+		abstract int rank(char low);
+
+		abstract char select(int rank);
+
+		abstract int sizeInBytes();
+
+		abstract void write(ByteArrayDataOutput out);
+
+		static Container of(int[] positions, int from, int to) {
+			int cardinality = to - from;
+			int runs = 0;
+			for (int i = from; i < to; i++) {
+				if (i == from || positions[i] != positions[i - 1] + 1) {
+					runs++;
+				}
+			}
+			int arraySize = 2 + 2 * cardinality, bitmapSize = 8 * BITMAP_WORDS, runSize = 2 + 4 * runs;
+			if (runSize <= arraySize && runSize <= bitmapSize) {
+				char[] starts = new char[runs], lengths = new char[runs];
+				int r = -1;
+				for (int i = from; i < to; i++) {
+					if (i == from || positions[i] != positions[i - 1] + 1) {
+						starts[++r] = (char)positions[i];
+					} else {
+						lengths[r]++;
+					}
+				}
+				return new RunContainer(starts, lengths);
+			} else if (arraySize <= bitmapSize) {
+				char[] values = new char[cardinality];
+				for (int i = from; i < to; i++) {
+					values[i - from] = (char)positions[i];
+				}
+				return new ArrayContainer(values);
+			} else {
+				long[] words = new long[BITMAP_WORDS];
+				for (int i = from; i < to; i++) {
+					char low = (char)positions[i];
+					words[low >>> 6] |= 1L << low;
+				}
+				return new BitmapContainer(words);
+			}
+		}
+
+		static Container read(ByteArrayDataInput in) {
+			int type = in.readByte();
+			switch (type) {
+				case ARRAY: {
+					char[] values = new char[in.readChar()];
+					for (int i = 0; i < values.length; i++) {
+						values[i] = in.readChar();
+					}
+					return new ArrayContainer(values);
+				}
+				case BITMAP: {
+					long[] words = new long[BITMAP_WORDS];
+					for (int i = 0; i < words.length; i++) {
+						words[i] = in.readLong();
+					}
+					return new BitmapContainer(words);
+				}
+				case RUN: {
+					int runs = in.readChar();
+					char[] starts = new char[runs], lengths = new char[runs];
+					for (int i = 0; i < runs; i++) {
+						starts[i] = in.readChar();
+						lengths[i] = in.readChar();
+					}
+					return new RunContainer(starts, lengths);
+				}
+				default: throw new IllegalArgumentException("Unknown container type " + type + ".");
+			}
+		}
+
+	}
+
+	private static final class ArrayContainer extends Container {
+
+		private final char[] values;
+
+		ArrayContainer(char[] values) {
+			this.values = values;
+		}
+
+		@Override
+		int cardinality() {
+			return values.length;
+		}
+
+		@Override
+		boolean contains(char low) {
+			return Arrays.binarySearch(values, low) >= 0;
+		}
+
+		@Override
+		int rank(char low) {
+			int i = Arrays.binarySearch(values, low);
+			return i >= 0 ? i : -i - 1;
+		}
+
+		@Override
+		char select(int rank) {
+			return values[rank];
+		}
+
+		@Override
+		int sizeInBytes() {
+			return 2 + 2 * values.length;
+		}
+
+		@Override
+		void write(ByteArrayDataOutput out) {
+			out.writeByte(ARRAY);
+			out.writeChar(values.length);
+			for (char value : values) {
+				out.writeChar(value);
+			}
+		}
+
+	}
+
+	private static final class BitmapContainer extends Container {
+
+		private final long[] words;
+
+		private final int[] wordRanks; // number of values in preceding words, length = words + 1
+
+		BitmapContainer(long[] words) {
+			this.words = words;
+			this.wordRanks = new int[words.length + 1];
+			for (int i = 0; i < words.length; i++) {
+				wordRanks[i + 1] = wordRanks[i] + Long.bitCount(words[i]);
+			}
+		}
+
+		@Override
+		int cardinality() {
+			return wordRanks[words.length];
+		}
+
+		@Override
+		boolean contains(char low) {
+			return (words[low >>> 6] & 1L << low) != 0;
+		}
+
+		@Override
+		int rank(char low) {
+			int w = low >>> 6;
+			return wordRanks[w] + Long.bitCount(words[w] & (1L << low) - 1);
+		}
+
+		@Override
+		char select(int rank) {
+			int w = lastLowerOrEqual(wordRanks, words.length, rank);
+			long word = words[w];
+			for (int r = rank - wordRanks[w]; r > 0; r--) {
+				word &= word - 1;
+			}
+			return (char)(w << 6 | Long.numberOfTrailingZeros(word));
+		}
+
+		@Override
+		int sizeInBytes() {
+			return 8 * words.length;
+		}
+
+		@Override
+		void write(ByteArrayDataOutput out) {
+			out.writeByte(BITMAP);
+			for (long word : words) {
+				out.writeLong(word);
+			}
+		}
+
+	}
+
+	private static final class RunContainer extends Container {
+
+		private final char[] starts;
+
+		private final char[] lengths; // length - 1
+
+		private final int[] runRanks; // number of values in preceding runs, length = runs + 1
+
+		RunContainer(char[] starts, char[] lengths) {
+			this.starts = starts;
+			this.lengths = lengths;
+			this.runRanks = new int[starts.length + 1];
+			for (int i = 0; i < starts.length; i++) {
+				runRanks[i + 1] = runRanks[i] + lengths[i] + 1;
+			}
+		}
+
+		/**
+		 * @return index of last run starting at or before given value, -1 if there is no such run
+		 */
+		private int run(char low) {
+			int i = Arrays.binarySearch(starts, low);
+			return i >= 0 ? i : -i - 2;
+		}
+
+		@Override
+		int cardinality() {
+			return runRanks[starts.length];
+		}
+
+		@Override
+		boolean contains(char low) {
+			int i = run(low);
+			return i >= 0 && low - starts[i] <= lengths[i];
+		}
+
+		@Override
+		int rank(char low) {
+			int i = run(low);
+			return i < 0 ? 0 : runRanks[i] + Math.min(low - starts[i], lengths[i] + 1);
+		}
+
+		@Override
+		char select(int rank) {
+			int i = lastLowerOrEqual(runRanks, starts.length, rank);
+			return (char)(starts[i] + rank - runRanks[i]);
+		}
+
+		@Override
+		int sizeInBytes() {
+			return 2 + 4 * starts.length;
+		}
+
+		@Override
+		void write(ByteArrayDataOutput out) {
+			out.writeByte(RUN);
+			out.writeChar(starts.length);
+			for (int i = 0; i < starts.length; i++) {
+				out.writeChar(starts[i]);
+				out.writeChar(lengths[i]);
+			}
+		}
+
+	}
+
+}
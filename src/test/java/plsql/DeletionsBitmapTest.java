@@ -0,0 +1,109 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+
+/**
+ * Tests {@link DeletionsBitmap}.
+ * @author Tomas Zalusky
+ */
+public class DeletionsBitmapTest extends AbstractTypeGraphTest {
+
+	private static void assertConsistent(int[] positions, DeletionsBitmap bitmap) {
+		assertEquals(positions.length, bitmap.cardinality());
+		int max = positions.length == 0 ? 10 : positions[positions.length - 1] + 10;
+		int rank = 0;
+		for (int v = 0; v < max; v++) {
+			boolean contained = rank < positions.length && positions[rank] == v;
+			assertEquals("contains " + v, contained, bitmap.contains(v));
+			assertEquals("rank " + v, rank, bitmap.rank(v));
+			if (contained) {
+				assertEquals("select " + rank, v, bitmap.select(rank));
+				rank++;
+			}
+		}
+	}
+
+	@Test
+	public void testContainers() {
+		Random random = new Random(31);
+		ImmutableList.Builder<Integer> builder = ImmutableList.builder();
+		for (int v = 5; v < 65536; v += 1 + random.nextInt(100)) { // sparse: array container
+			builder.add(v);
+		}
+		for (int v = 65536; v < 2 * 65536; v++) { // dense random: bitmap container
+			if (random.nextBoolean()) {
+				builder.add(v);
+			}
+		}
+		for (int v = 3 * 65536 + 100; v < 3 * 65536 + 60000; v++) { // bulk delete: run container
+			builder.add(v);
+		}
+		builder.add(3 * 65536 + 65535);
+		int[] positions = Ints.toArray(builder.build());
+		DeletionsBitmap bitmap = DeletionsBitmap.fromPositions(positions);
+		assertEquals("[0:ArrayContainer,1:BitmapContainer,3:RunContainer]", bitmap.toString());
+		assertConsistent(positions, bitmap);
+		byte[] bytes = bitmap.toBytes();
+		assertEquals(bitmap.sizeInBytes(), bytes.length);
+		DeletionsBitmap read = DeletionsBitmap.fromBytes(bytes);
+		assertEquals(bitmap.toString(), read.toString());
+		assertConsistent(positions, read);
+	}
+
+	@Test
+	public void testEmpty() {
+		DeletionsBitmap bitmap = DeletionsBitmap.fromPositions(new int[0]);
+		assertConsistent(new int[0], bitmap);
+		assertEquals(4, bitmap.toBytes().length);
+	}
+
+	@Test
+	public void testContainerGap() {
+		int[] positions = {3, 5 * 65536 + 1, 5 * 65536 + 7}; // no container for upper bits 1 to 4
+		DeletionsBitmap bitmap = DeletionsBitmap.fromPositions(positions);
+		assertEquals("[0:ArrayContainer,5:ArrayContainer]", bitmap.toString());
+		assertConsistent(positions, bitmap);
+		assertEquals(1, bitmap.rank(3 * 65536));
+		assertEquals(3, bitmap.rank(9 * 65536));
+	}
+
+	@Test
+	public void testNestedTables() throws IOException {
+		// nested table with 100000 elements from which all but every 1000th is deleted
+		Map<Integer,String> sparse = new TreeMap<>();
+		for (int i = 1; i <= 100000; i += 1000) {
+			sparse.put(i, "s" + i);
+		}
+		Map<String,Object> value = ImmutableMap.<String,Object>of("a", ImmutableMap.of(2,"x",5,"y"), "b", ImmutableList.of("z"), "c", sparse);
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", Collections.singletonMap("pi_ibt3", value));
+		TypeNode nst = MarshallerTest.node(tot, "pi_ibt3", NestedTableType.ELEMENT_LABEL);
+		DataPointers p = tot.getTransferObject(nst, DataPointers.class);
+		DeletionsPointers q = tot.getTransferObject(nst, DeletionsPointers.class);
+		Deletions d = tot.getTransferObject(nst, Deletions.class);
+		DeletionsBitmap bitmap = d.getBitmap(p, q);
+		assertEquals(d.getData().size(), bitmap.cardinality());
+		assertEquals(3 + 98901, bitmap.cardinality());
+		assertEquals("[0:RunContainer,1:RunContainer]", bitmap.toString());
+		for (int j = 0; j < q.count(); j++) {
+			int start = DeletionsBitmap.virtualStart(p, q, j);
+			for (int k = q.lowerBound(j) - 1; k < q.upperBound(j) - 1; k++) {
+				assertEquals(d.getData().get(k), bitmap.select(k) - start + 1);
+			}
+		}
+		assertEquals(value, new Unmarshaller(tot, t -> null, false).unmarshal("pi_ibt3"));
+		assertEquals(value, new Unmarshaller(tot, t -> null, true).unmarshal("pi_ibt3"));
+	}
+
+}
@@ -1,6 +1,10 @@
 package plsql;
 
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 import com.google.common.collect.Lists;
 
@@ -9,22 +13,161 @@ import com.google.common.collect.Lists;
  * This specific {@link TransferObject} is utilized only for index-by tables.
  * Values in this collection represent values of indexes in index-by table, i.e. keys of associative array,
  * table values are in corresponding {@link PrimitiveCollection} at matching index.
+ * Indexes of type <code>pls_integer</code> or <code>binary_integer</code> are stored unboxed
+ * as long as only {@link Integer}s are added (see {@link IntKeyMap}).
  * @author Tomas Zalusky
  */
 public class Indexes extends TransferObject {
 
 	private final AbstractPrimitiveType indexType;
 	
-	private final List<Object> data = Lists.newArrayList();  // elements of type which is compatible with indexType
+	private List<Object> data;  // elements of type which is compatible with indexType, null while indexes are stored unboxed
+
+	private IntList ints; // unboxed indexes, null if indexes are stored as objects
+
+	/**
+	 * True if indexes of every index-by table are in ascending natural order
+	 * (which is always the case for integer indexes of tables returned from database,
+	 * character indexes are ordered by database according to <code>NLS_SORT</code>, see {@link #isAscending(Pointers)}).
+	 * Sorted indexes are unmarshalled into sorted map without sorting.
+	 */
+	private boolean sorted;
 
 	public Indexes(AbstractPrimitiveType indexType, TransferObject parent, TypeNode typeNode) {
 		super(parent, typeNode, typeNode.id() + "i");
 		this.indexType = indexType;
+		if (indexType instanceof PlsIntegerType || indexType instanceof BinaryIntegerType) {
+			this.ints = new IntList();
+		} else {
+			this.data = Lists.newArrayList();
+		}
 	}
 	
 	@Override
 	protected String toStringDescription() {
 		return "{i:" + indexType.name + "}";
 	}
+
+	AbstractPrimitiveType getIndexType() {
+		return indexType;
+	}
+
+	void add(Object index) {
+		if (ints != null && index != null && index.getClass() == Integer.class) {
+			ints.add((Integer)index);
+		} else {
+			if (ints != null) {
+				data = Lists.newArrayList(getData());
+				ints = null;
+			}
+			data.add(index);
+		}
+	}
+
+	void addAll(Collection<?> indexes) {
+		if (ints == null) {
+			data.addAll(indexes);
+		} else {
+			for (Object index : indexes) {
+				add(index);
+			}
+		}
+	}
+
+	/**
+	 * Appends indexes without boxing (e.g. keys of {@link IntKeyMap} or OUT column).
+	 * @param indexes
+	 */
+	void addAll(int[] indexes) {
+		if (ints != null) {
+			for (int index : indexes) {
+				ints.add(index);
+			}
+		} else {
+			for (int index : indexes) {
+				data.add(index);
+			}
+		}
+	}
+
+	boolean isSorted() {
+		return sorted;
+	}
+
+	void setSorted(boolean sorted) {
+		this.sorted = sorted;
+	}
+
+	/**
+	 * Checks order of indexes in single pass.
+	 * @param pointers pointers delimiting index-by tables (parent of this transfer object)
+	 * @return true if indexes of every index-by table are in ascending natural order
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	boolean isAscending(Pointers pointers) {
+		for (int t = 0; t < pointers.count(); t++) {
+			int to = pointers.upperBound(t) - 1;
+			for (int i = pointers.lowerBound(t); i < to; i++) {
+				Object previous = get(i - 1), index = get(i);
+				if (!(previous instanceof Comparable) || index == null || ((Comparable)previous).compareTo(index) >= 0) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	Object get(int i) {
+		return ints != null ? Integer.valueOf(ints.get(i)) : data.get(i);
+	}
+
+	int size() {
+		return ints != null ? ints.size() : data.size();
+	}
+
+	List<Object> getData() {
+		if (ints != null) {
+			return new IntView();
+		}
+		return Collections.unmodifiableList(data);
+	}
+
+	/**
+	 * @return true if indexes are stored unboxed and can be read by {@link #toIntArray(int, int)}
+	 */
+	boolean isIntColumn() {
+		return ints != null;
+	}
+
+	/**
+	 * @param from inclusive
+	 * @param to exclusive
+	 * @return indexes from given interval as primitive array
+	 * @throws IllegalStateException if indexes are not stored unboxed
+	 */
+	int[] toIntArray(int from, int to) {
+		if (ints == null) {
+			throw new IllegalStateException("Indexes " + getId() + " are not stored as integers.");
+		}
+		return ints.toArray(from, to);
+	}
+
+	/**
+	 * Read-only boxing view of unboxed indexes.
+	 * @author Tomas Zalusky
+	 */
+	private final class IntView extends AbstractList<Object> implements RandomAccess {
+
+		@Override
+		public Object get(int index) {
+			return Indexes.this.get(index);
+		}
+
+		@Override
+		public int size() {
+			return Indexes.this.size();
+		}
+
+	}
 	
 }
@@ -0,0 +1,122 @@
+package plsql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests {@link IntKeyMap} and its use as Java representation of integer-indexed index-by table.
+ * @author Tomas Zalusky
+ */
+public class IntKeyMapTest extends AbstractTypeGraphTest {
+
+	@Test
+	public void testOperations() {
+		IntKeyMap<String> map = new IntKeyMap<>(2);
+		for (int key = -3; key <= 3; key++) {
+			assertNull(map.put(key, "v" + key));
+		}
+		assertTrue(map.isDense());
+		assertEquals("v2", map.get(2));
+		assertNull(map.get(4));
+		assertNull(map.get(Integer.MIN_VALUE));
+		assertEquals("v2", map.put(2, "w2"));
+		assertEquals("w2", map.get((Object)2));
+		assertNull(map.get("2"));
+		assertNull(map.put(10, "v10"));
+		assertFalse(map.isDense());
+		assertNull(map.put(-10, "v-10"));
+		assertNull(map.put(5, null));
+		assertTrue(map.containsKey(5));
+		assertFalse(map.containsKey(4));
+		assertEquals("v0", map.remove(0));
+		assertNull(map.remove(0));
+		assertArrayEquals(new int[] {-10,-3,-2,-1,1,2,3,5,10}, map.keys());
+		assertEquals(-10, map.firstKey());
+		assertEquals(10, map.lastKey());
+		assertEquals(3, map.keyAt(6));
+		assertEquals("v3", map.valueAt(6));
+		TreeMap<Integer,String> expected = new TreeMap<>(map);
+		assertEquals(expected, map);
+		assertEquals(expected.hashCode(), map.hashCode());
+		assertEquals(ImmutableList.copyOf(expected.keySet()), ImmutableList.copyOf(map.keySet()));
+		for (Iterator<Map.Entry<Integer,String>> it = map.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<Integer,String> entry = it.next();
+			if (entry.getKey() < 0) {
+				it.remove();
+			} else {
+				entry.setValue("x");
+			}
+		}
+		assertEquals(ImmutableMap.of(1,"x",2,"x",3,"x",5,"x",10,"x"), map);
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertTrue(map.isDense());
+	}
+
+	@Test
+	public void testOf() {
+		IntKeyMap<String> sorted = IntKeyMap.of(new int[] {1,2,3}, ImmutableList.of("a","b","c"));
+		assertTrue(sorted.isDense());
+		assertEquals("b", sorted.get(2));
+		IntKeyMap<String> unsorted = IntKeyMap.of(new int[] {7,-1,Integer.MIN_VALUE,Integer.MAX_VALUE}, Arrays.asList("a","b",null,"d"));
+		assertArrayEquals(new int[] {Integer.MIN_VALUE,-1,7,Integer.MAX_VALUE}, unsorted.keys());
+		assertEquals(Arrays.asList(null,"b","a","d"), Arrays.asList(unsorted.values().toArray()));
+		assertFalse(unsorted.isDense());
+		assertTrue(IntKeyMap.of(new int[0], Collections.emptyList()).isEmpty());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testOfDuplicate() {
+		IntKeyMap.of(new int[] {2,1,2}, ImmutableList.of("a","b","c"));
+	}
+
+	@Test
+	public void testLoopback() throws IOException {
+		IntKeyMap<Object> ibt2 = new IntKeyMap<>();
+		ibt2.put(1, ImmutableMap.of("c", ImmutableList.of("d","e")));
+		ibt2.put(2, ImmutableMap.of());
+		Map<String,Object> arguments = ImmutableMap.<String,Object>of("pi_ibt2", ibt2);
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", arguments);
+		Indexes indexes = tot.getTransferObject(MarshallerTest.node(tot, "pi_ibt2"), Indexes.class);
+		assertTrue(indexes.isIntColumn());
+		assertTrue(indexes.isSorted());
+		assertArrayEquals(new int[] {1,2}, indexes.toIntArray(0, 2));
+		for (boolean eager : new boolean[] {false, true}) {
+			Object actual = new Unmarshaller(tot, t -> null, t -> true, eager, Integer.MAX_VALUE).unmarshal("pi_ibt2");
+			assertTrue(actual instanceof IntKeyMap);
+			assertEquals(ibt2, actual);
+			assertFalse(new Unmarshaller(tot, t -> null, eager).unmarshal("pi_ibt2") instanceof IntKeyMap);
+		}
+	}
+
+	@Test
+	public void testJavaType() throws IOException, JDOMException {
+		TypeGraph typeGraph = loadGraph("intkeymap");
+		try (InputStream is = IntKeyMapTest.class.getResourceAsStream("typegraph/intkeymap.xml")) {
+			Document doc = new SAXBuilder().build(is);
+			String javaModel = JavaModel.from(typeGraph, doc.getRootElement()).toString();
+			assertTrue(javaModel, javaModel.contains("@IndexByTable(\"a_test_package.ibt\") IntKeyMap<@Varchar2(100) String>"));
+			assertTrue(javaModel, javaModel.contains("@IndexByTable(\"a_test_package.ibt_of_ibt\") IntKeyMap<@IndexByTable(\"a_test_package.ibt\") IntKeyMap<@Varchar2(100) String>>"));
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * Growable list of primitive ints.
+ * Serves as column buffer of transfer objects carrying integer data ({@link Pointers}, {@link Deletions})
+ * in order to avoid boxing of every element during marshalling.
+ * @author Tomas Zalusky
+ */
+final class IntList {
+
+	private int[] data;
+
+	private int size;
+
+	IntList() {
+		this(16);
+	}
+
+	IntList(int initialCapacity) {
+		this.data = new int[initialCapacity];
+	}
+
+	void add(int value) {
+		if (size == data.length) {
+			data = Ints.ensureCapacity(data, size + 1, size);
+		}
+		data[size++] = value;
+	}
+
+	int get(int index) {
+		checkElementIndex(index, size);
+		return data[index];
+	}
+
+	void set(int index, int value) {
+		checkElementIndex(index, size);
+		data[index] = value;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	/**
+	 * @param from inclusive
+	 * @param to exclusive
+	 * @return copy of given interval
+	 */
+	int[] toArray(int from, int to) {
+		checkPositionIndexes(from, to, size);
+		return Arrays.copyOfRange(data, from, to);
+	}
+
+	/**
+	 * @return snapshot of content as boxed list (for testing and debugging)
+	 */
+	List<Integer> asList() {
+		return Ints.asList(toArray());
+	}
+
+	@Override
+	public String toString() {
+		return asList().toString();
+	}
+
+}
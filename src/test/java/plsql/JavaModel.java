@@ -187,6 +187,12 @@ class JavaModel {
 					String javaFieldName = space == -1 ? fieldName : javaTypeStringAndFieldName.substring(space + 1);
 					FieldModel fieldModel = classModel.fields.computeIfAbsent(javaFieldName, fn -> new FieldModel(EnumSet.of(PRIVATE),fn));
 					fieldModel.type = fieldType.accept(new ComputeJavaType(classModel.importModel),javaTypeString);
+					if (!javaFieldName.equals(fieldName)) { // record fields are matched to Java fields by name, see RecordAccessor
+						String nameAnnotation = "@" + classModel.importModel.add(Plsql.Name.class.getName()) + "(\"" + fieldName + "\")";
+						if (!fieldModel.annotations.contains(nameAnnotation)) {
+							fieldModel.annotations.add(nameAnnotation);
+						}
+					}
 					String javaGetterName = computeJavaGetterName(javaFieldName,fieldModel.type); 
 					MethodModel getterModel = classModel.methods.computeIfAbsent(javaGetterName, mn ->
 							new MethodModel(EnumSet.of(PUBLIC),mn,String.format("return %s;",javaFieldName)));
@@ -446,6 +452,15 @@ class JavaModel {
 					String elementJavaType = elementType.accept(this,elementTypeString);
 					Utils.appendf(result, "%s %s<%s %s,%s>",typeAnnotation,importModel.add(typeName),keyTypeAnnotation,importModel.add(keyJavaType),elementJavaType);
 					break;
+				} case "plsql.IntKeyMap" : { // key is primitive int, its type is given by index type of table
+					AbstractPrimitiveType indexType = type.getIndexType();
+					if (!(indexType instanceof PlsIntegerType || indexType instanceof BinaryIntegerType)) {
+						throw new IllegalStateException("java type " + typeName + " cannot be used for index-by table indexed by " + indexType.getName());
+					}
+					String elementTypeString = typeString.substring(l + 1,r);
+					String elementJavaType = elementType.accept(this,elementTypeString);
+					Utils.appendf(result, "%s %s<%s>",typeAnnotation,importModel.add(typeName),elementJavaType);
+					break;
 				} default : {
 					throw new IllegalStateException("java type " + typeName + " cannot be used for nested table");
 				}
@@ -0,0 +1,354 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedArrayType;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.AnnotatedParameterizedType;
+import java.lang.reflect.AnnotatedType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import plsql.AbstractType.TypeAnnotationStringConverter;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * <p>
+ * Recognizes types from Java classes annotated with {@link Plsql} annotations
+ * (Java counterpart of {@link TypeFactory}, types are created by the same factory methods).
+ * </p>
+ * <ul>
+ * <li>record is recognized from class annotated with {@link Plsql.Record}, its fields are non-static fields of class
+ * in order given by {@link Plsql.Record#fields()} (fields of class are matched by name, order of their declaration is ignored)</li>
+ * <li>procedure or function is recognized from method annotated with {@link Plsql.Procedure} or {@link Plsql.Function},
+ * its parameters are parameters of method, OUT and IN OUT parameters are annotated with {@link Plsql.Out} or {@link Plsql.InOut}
+ * (type of parameter represented by {@link AtomicReference} holder is recognized from its type argument)</li>
+ * <li>type of field, parameter or return value is recognized from type annotations of its Java type,
+ * including types nested in type arguments and array components:
+ * <code>&#64;IndexByTable("pkg.ibt") Map&lt;&#64;Varchar2(10) String,&#64;NestedTable("pkg.nst") List&lt;Rec&gt;&gt;</code>.
+ * Element of collection is represented by element of Java collection, component of array or value of map,
+ * index of index-by table is represented by key of map ({@link IntKeyMap} represents table indexed by pls_integer).
+ * Java type without any type annotation represents record if its class is annotated with {@link Plsql.Record}.</li>
+ * <li>name of field or parameter is given by {@link Plsql.Name} or is inferred from Java name
+ * (without trailing underscore added to Java keywords), names of parameters are present only in classes compiled with <code>-parameters</code></li>
+ * </ul>
+ * <p>
+ * Types recognized from class depend only on that class and classes it refers to, hence they are cached per class in {@link ClassValue}
+ * (which does not prevent unloading of class) and classes can be processed in parallel.
+ * Circular dependency of record classes is detected by set of classes being recognized by current thread.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class JavaTypeFactory {
+
+	private static final ClassValue<RecordType> RECORDS = new ClassValue<RecordType>() {
+		@Override
+		protected RecordType computeValue(Class<?> recordClass) {
+			return record(recordClass);
+		}
+	};
+
+	private static final ClassValue<List<AbstractType>> CLASS_TYPES = new ClassValue<List<AbstractType>>() {
+		@Override
+		protected List<AbstractType> computeValue(Class<?> javaClass) {
+			return classTypes(javaClass);
+		}
+	};
+
+	private static final ClassValue<TypeAnnotationStringConverter<?>> CONVERTERS = new ClassValue<TypeAnnotationStringConverter<?>>() {
+		@Override
+		protected TypeAnnotationStringConverter<?> computeValue(Class<?> annotationClass) {
+			plsql.Type type = annotationClass.getAnnotation(plsql.Type.class);
+			if (type == null) {
+				return null;
+			}
+			try {
+				return type.nameConverter().newInstance();
+			} catch (InstantiationException | IllegalAccessException e) {
+				throw Throwables.propagate(e);
+			}
+		}
+	};
+
+	private static final ThreadLocal<Set<Class<?>>> RECORDS_BEING_RECOGNIZED = ThreadLocal.withInitial(Sets::newHashSet);
+
+	private JavaTypeFactory() {
+	}
+
+	/**
+	 * @param javaClass
+	 * @return record type of class (if annotated with {@link Plsql.Record}) and signatures of its annotated methods, cached per class
+	 */
+	static List<AbstractType> typesOf(Class<?> javaClass) {
+		return CLASS_TYPES.get(javaClass);
+	}
+
+	/**
+	 * Recognizes types of all classes in parallel on {@link java.util.concurrent.ForkJoinPool#commonPool() common fork-join pool}.
+	 * @param classes
+	 * @return types of all classes, in order of classes
+	 */
+	static List<AbstractType> typesOf(Collection<Class<?>> classes) {
+		return classes.parallelStream().flatMap(c -> typesOf(c).stream()).collect(toList());
+	}
+
+	/**
+	 * @param types
+	 * @return given types and all types they transitively depend on, each type once, in depth-first order
+	 * @throws IllegalArgumentException if there are two different types of the same name
+	 */
+	static Set<AbstractType> closure(List<AbstractType> types) {
+		Set<AbstractType> result = Sets.newLinkedHashSet();
+		Map<String,AbstractType> byName = Maps.newHashMap();
+		for (AbstractType type : types) {
+			closure(type, result, byName);
+		}
+		return result;
+	}
+
+	private static void closure(AbstractType type, Set<AbstractType> result, Map<String,AbstractType> byName) {
+		AbstractType existing = byName.putIfAbsent(type.getClass().getName() + ":" + type.getName(), type);
+		checkArgument(existing == null || existing.equals(type), "Conflicting definitions of type %s:%s%nand%s", type.getName(), existing, type);
+		if (result.add(type)) {
+			for (AbstractType child : type.getChildren().values()) {
+				closure(child, result, byName);
+			}
+		}
+	}
+
+	/**
+	 * Finds all classes of given packages and their subpackages in directories and jar files of classpath.
+	 * Classes are loaded in parallel, they are not initialized.
+	 * @param classLoader
+	 * @param packageNames
+	 * @return classes in order of names
+	 */
+	static List<Class<?>> scan(ClassLoader classLoader, String... packageNames) {
+		Set<String> classNames = new TreeSet<>();
+		try {
+			for (String packageName : packageNames) {
+				String path = packageName.replace('.', '/');
+				for (Enumeration<URL> urls = classLoader.getResources(path); urls.hasMoreElements(); ) {
+					URL url = urls.nextElement();
+					if ("file".equals(url.getProtocol())) {
+						Path root = Paths.get(url.toURI());
+						try (Stream<Path> files = Files.walk(root)) {
+							files.map(f -> root.relativize(f).toString().replace('\\', '/'))
+									.filter(f -> f.endsWith(".class"))
+									.forEach(f -> classNames.add(className(path + "/" + f)));
+						}
+					} else if ("jar".equals(url.getProtocol())) {
+						try (JarFile jarFile = ((JarURLConnection)url.openConnection()).getJarFile()) {
+							for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements(); ) {
+								String entryName = entries.nextElement().getName();
+								if (entryName.startsWith(path + "/") && entryName.endsWith(".class")) {
+									classNames.add(className(entryName));
+								}
+							}
+						}
+					}
+				}
+			}
+		} catch (IOException | URISyntaxException e) {
+			throw Throwables.propagate(e);
+		}
+		classNames.removeIf(n -> n.endsWith("package-info") || n.endsWith("module-info"));
+		return classNames.parallelStream().map(n -> {
+			try {
+				return Class.forName(n, false, classLoader);
+			} catch (ClassNotFoundException e) {
+				throw Throwables.propagate(e);
+			}
+		}).collect(toList());
+	}
+
+	private static String className(String classFilePath) {
+		return classFilePath.substring(0, classFilePath.length() - ".class".length()).replace('/', '.');
+	}
+
+	private static List<AbstractType> classTypes(Class<?> javaClass) {
+		ImmutableList.Builder<AbstractType> result = ImmutableList.builder();
+		if (javaClass.isAnnotationPresent(Plsql.Record.class)) {
+			result.add(RECORDS.get(javaClass));
+		}
+		List<Method> methods = Lists.newArrayList(javaClass.getDeclaredMethods());
+		methods.sort(Comparator.comparing(Method::toString)); // order of declared methods is not specified
+		for (Method method : methods) {
+			AbstractSignature signature = signature(method);
+			if (signature != null) {
+				result.add(signature);
+			}
+		}
+		return result.build();
+	}
+
+	private static RecordType record(Class<?> recordClass) {
+		Plsql.Record annotation = recordClass.getAnnotation(Plsql.Record.class);
+		Set<Class<?>> beingRecognized = RECORDS_BEING_RECOGNIZED.get();
+		if (!beingRecognized.add(recordClass)) {
+			throw new TypeCircularityException(annotation.value());
+		}
+		try {
+			Map<String,Field> fieldsByName = Maps.newHashMap();
+			for (Field field : recordClass.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+					Field existing = fieldsByName.put(name(field, field.getName()), field);
+					checkArgument(existing == null, "Record class %s has more fields named %s.", recordClass.getName(), name(field, field.getName()));
+				}
+			}
+			checkArgument(!fieldsByName.isEmpty(), "Record class %s has no fields.", recordClass.getName());
+			List<String> names = annotation.fields().length > 0 ? ImmutableList.copyOf(annotation.fields()) : ImmutableList.copyOf(fieldsByName.keySet());
+			checkArgument(names.size() == 1 || annotation.fields().length > 0, "Record class %s has %s fields, their order must be given by @Plsql.Record(fields=...).",
+					recordClass.getName(), fieldsByName.size());
+			checkArgument(ImmutableSet.copyOf(names).equals(fieldsByName.keySet()) && names.size() == fieldsByName.size(),
+					"Fields %s of record class %s do not match fields %s given by @Plsql.Record.", fieldsByName.keySet(), recordClass.getName(), names);
+			ImmutableMap.Builder<String,AbstractType> fields = ImmutableMap.builder();
+			for (String name : names) {
+				Field field = fieldsByName.get(name);
+				fields.put(name, type(field.getAnnotatedType(), field));
+			}
+			return TypeFactory.record(annotation.value(), fields.build());
+		} finally {
+			beingRecognized.remove(recordClass);
+		}
+	}
+
+	/**
+	 * @param method
+	 * @return signature represented by method, null if method is not annotated
+	 */
+	private static AbstractSignature signature(Method method) {
+		Plsql.Procedure procedure = method.getAnnotation(Plsql.Procedure.class);
+		Plsql.Function function = method.getAnnotation(Plsql.Function.class);
+		if (procedure == null && function == null) {
+			return null;
+		}
+		checkArgument(procedure == null || function == null, "Method %s is annotated both as procedure and function.", method);
+		ImmutableMap.Builder<String,Parameter> parameters = ImmutableMap.builder();
+		java.lang.reflect.Parameter[] javaParameters = method.getParameters();
+		AnnotatedType[] annotatedTypes = method.getAnnotatedParameterTypes();
+		for (int i = 0; i < javaParameters.length; i++) {
+			java.lang.reflect.Parameter javaParameter = javaParameters[i];
+			String name = name(javaParameter, javaParameter.isNamePresent() ? javaParameter.getName() : null);
+			checkArgument(name != null, "Parameter %s of method %s has no name, annotate it with @Plsql.Name or compile class with -parameters.", i, method);
+			ParameterMode mode = javaParameter.isAnnotationPresent(Plsql.Out.class) ? ParameterMode.OUT
+					: javaParameter.isAnnotationPresent(Plsql.InOut.class) ? ParameterMode.INOUT
+					: ParameterMode.IN;
+			AnnotatedType annotatedType = AtomicReference.class == rawClass(annotatedTypes[i]) // holder of OUT value, see PlsqlRuntime
+					? typeArgument(annotatedTypes[i], 0, javaParameter)
+					: annotatedTypes[i];
+			parameters.put(name, Parameter.create(mode, type(annotatedType, javaParameter)));
+		}
+		if (procedure != null) {
+			checkArgument(method.getReturnType() == void.class, "Method %s representing procedure must return void.", method);
+			return TypeFactory.procedure(procedure.value(), parameters.build());
+		}
+		return TypeFactory.function(function.value(), parameters.build(), type(method.getAnnotatedReturnType(), method));
+	}
+
+	/**
+	 * @param element field or parameter
+	 * @param javaName Java name of element, null if not available
+	 * @return PLSQL name
+	 */
+	private static String name(AnnotatedElement element, String javaName) {
+		Plsql.Name name = element.getAnnotation(Plsql.Name.class);
+		if (name != null) {
+			return name.value();
+		}
+		return javaName != null && javaName.endsWith("_") ? javaName.substring(0, javaName.length() - 1) : javaName;
+	}
+
+	/**
+	 * @param annotatedType Java type
+	 * @param context field, parameter or method whose type is recognized (for error messages)
+	 * @return PLSQL type represented by Java type
+	 */
+	private static AbstractType type(AnnotatedType annotatedType, Object context) {
+		Annotation annotation = null;
+		for (Annotation a : annotatedType.getAnnotations()) {
+			if (CONVERTERS.get(a.annotationType()) != null) {
+				checkArgument(annotation == null, "Type %s of %s has more than one PLSQL type annotation.", annotatedType.getType(), context);
+				annotation = a;
+			}
+		}
+		if (annotation == null) {
+			Class<?> rawClass = rawClass(annotatedType);
+			checkArgument(rawClass.isAnnotationPresent(Plsql.Record.class), "Type %s of %s has neither PLSQL type annotation nor @Plsql.Record annotation.",
+					annotatedType.getType(), context);
+			return RECORDS.get(rawClass);
+		}
+		String name = CONVERTERS.get(annotation.annotationType()).toStringErased(annotation);
+		if (annotation instanceof Plsql.Varray) {
+			return TypeFactory.varray(name, type(elementType(annotatedType, context), context));
+		} else if (annotation instanceof Plsql.NestedTable) {
+			return TypeFactory.nestedTable(name, type(elementType(annotatedType, context), context));
+		} else if (annotation instanceof Plsql.IndexByTable) {
+			AbstractType indexType = IntKeyMap.class.isAssignableFrom(rawClass(annotatedType))
+					? AbstractPrimitiveType.recognizePrimitiveType("pls_integer")
+					: type(typeArgument(annotatedType, 0, context), context);
+			checkArgument(indexType instanceof AbstractPrimitiveType, "Index of %s of %s must be primitive type.", annotatedType.getType(), context);
+			return TypeFactory.indexByTable(name, type(elementType(annotatedType, context), context), (AbstractPrimitiveType)indexType);
+		}
+		AbstractType result = AbstractPrimitiveType.recognizePrimitiveType(name);
+		checkArgument(result != null, "Annotation %s of %s does not represent PLSQL type.", annotation, context);
+		return result;
+	}
+
+	private static Class<?> rawClass(AnnotatedType annotatedType) {
+		java.lang.reflect.Type type = annotatedType.getType();
+		return type instanceof ParameterizedType ? (Class<?>)((ParameterizedType)type).getRawType()
+				: type instanceof Class ? (Class<?>)type
+				: Object.class;
+	}
+
+	/**
+	 * @return element of Java collection, component of array or value of map ({@link IntKeyMap} has just value type argument)
+	 */
+	private static AnnotatedType elementType(AnnotatedType annotatedType, Object context) {
+		if (annotatedType instanceof AnnotatedArrayType) {
+			return ((AnnotatedArrayType)annotatedType).getAnnotatedGenericComponentType();
+		}
+		Class<?> rawClass = rawClass(annotatedType);
+		boolean map = Map.class.isAssignableFrom(rawClass) && !IntKeyMap.class.isAssignableFrom(rawClass);
+		checkArgument(map || Collection.class.isAssignableFrom(rawClass) || IntKeyMap.class.isAssignableFrom(rawClass),
+				"Type %s of %s cannot represent PLSQL collection.", annotatedType.getType(), context);
+		return typeArgument(annotatedType, map ? 1 : 0, context);
+	}
+
+	private static AnnotatedType typeArgument(AnnotatedType annotatedType, int index, Object context) {
+		checkArgument(annotatedType instanceof AnnotatedParameterizedType, "Type %s of %s must have type arguments.", annotatedType.getType(), context);
+		AnnotatedType[] arguments = ((AnnotatedParameterizedType)annotatedType).getAnnotatedActualTypeArguments();
+		return arguments[index];
+	}
+
+}
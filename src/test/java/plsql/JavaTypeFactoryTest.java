@@ -0,0 +1,127 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Checks graphs built from annotated Java classes are identical to graphs loaded from XML.
+ * @author Tomas Zalusky
+ */
+public class JavaTypeFactoryTest extends AbstractTypeGraphTest {
+
+	@Plsql.Record(value = "a_test_package.circular", fields = {"id", "next"})
+	static class Circular {
+		@Plsql.Integer_ int id;
+		Circular next;
+	}
+
+	@Plsql.Record("a_test_package.unannotated")
+	static class Unannotated {
+		String text;
+	}
+
+	/**
+	 * Fields are declared in order different from order of PLSQL fields.
+	 */
+	@Plsql.Record(value = "a_test_package.reordered", fields = {"f_first", "f_second", "f_third"})
+	static class Reordered {
+		@Plsql.Name("f_third") @Plsql.Varchar2(10) String third;
+		@Plsql.Name("f_first") @Plsql.Integer_ int first;
+		@Plsql.Name("f_second") @Plsql.Boolean_ boolean second;
+	}
+
+	@Plsql.Record("a_test_package.unordered")
+	static class Unordered {
+		@Plsql.Integer_ int first;
+		@Plsql.Integer_ int second;
+	}
+
+	@Plsql.Record(value = "a_test_package.mismatched", fields = {"first", "other"})
+	static class Mismatched {
+		@Plsql.Integer_ int first;
+		@Plsql.Integer_ int second;
+	}
+
+	interface CircularSignature {
+		@Plsql.Procedure("a_test_package.circular")
+		void circular(@Plsql.Name("pi_rec") Circular rec);
+	}
+
+	interface UnnamedSignature {
+		@Plsql.Function("a_test_package.unnamed")
+		@Plsql.Integer_ int unnamed(@Plsql.Integer_ int arg); // test classes are not compiled with -parameters
+	}
+
+	interface AmbiguousSignature {
+		@Plsql.Procedure("a_test_package.ambiguous")
+		void ambiguous(@Plsql.Name("pi_num") @Plsql.Integer_ @Plsql.PlsInteger int num);
+	}
+
+	private static void assertIdentical(TypeGraph expected, TypeGraph actual) {
+		assertEquals(ImmutableSet.copyOf(expected.getTopologicalOrdering()), ImmutableSet.copyOf(actual.getTopologicalOrdering()));
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+	@Test
+	public void testAlltypes() throws IOException {
+		TypeGraph actual = TypeGraph.createFrom(ImmutableList.<Class<?>>of(pleasejava.test.alltypes.TestInterface.class));
+		assertIdentical(loadGraph("alltypes"), actual);
+	}
+
+	@Test
+	public void testInout() throws IOException {
+		TypeGraph actual = TypeGraph.createFrom(ImmutableList.<Class<?>>of(pleasejava.test.inout.TestInterface.class));
+		assertIdentical(loadGraph("inout"), actual);
+	}
+
+	@Test
+	public void testScanPackage() throws IOException {
+		List<Class<?>> classes = JavaTypeFactory.scan(getClass().getClassLoader(), "pleasejava.test.alltypes");
+		assertTrue(classes.contains(pleasejava.test.alltypes.Record1.class));
+		assertTrue(classes.contains(pleasejava.test.alltypes.TestInterface.class));
+		TypeGraph actual = TypeGraph.createFromPackages(getClass().getClassLoader(), "pleasejava.test.alltypes");
+		assertEquals(ImmutableSet.copyOf(loadGraph("alltypes").getTopologicalOrdering()), ImmutableSet.copyOf(actual.getTopologicalOrdering()));
+	}
+
+	@Test
+	public void testCachedPerClass() {
+		assertSame(JavaTypeFactory.typesOf(pleasejava.test.alltypes.Record2.class), JavaTypeFactory.typesOf(pleasejava.test.alltypes.Record2.class));
+		RecordType rec3 = (RecordType)JavaTypeFactory.typesOf(pleasejava.test.alltypes.Record3.class).get(0);
+		RecordType rec2 = (RecordType)JavaTypeFactory.typesOf(pleasejava.test.alltypes.Record2.class).get(0);
+		assertSame(rec3, rec2.getChildren().get("f1_rec3"));
+	}
+
+	@Test
+	public void testFieldOrder() {
+		RecordType reordered = (RecordType)JavaTypeFactory.typesOf(Reordered.class).get(0);
+		assertEquals(ImmutableList.of("f_first", "f_second", "f_third"), ImmutableList.copyOf(reordered.getFields().keySet()));
+		assertEquals("boolean", reordered.getFields().get("f_second").getName());
+	}
+
+	@Test(expected = TypeCircularityException.class)
+	public void testCircularRecord() {
+		JavaTypeFactory.typesOf(CircularSignature.class);
+	}
+
+	@Test
+	public void testInvalidAnnotations() {
+		for (Class<?> invalidClass : ImmutableList.of(Unannotated.class, UnnamedSignature.class, AmbiguousSignature.class, Unordered.class, Mismatched.class)) {
+			try {
+				JavaTypeFactory.typesOf(invalidClass);
+				fail(invalidClass.getName());
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+
+}
@@ -1,6 +1,8 @@
 package plsql;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import com.google.common.collect.Lists;
 
@@ -13,7 +15,7 @@ public class JdbcTransferrableCollection extends TransferObject {
 
 	private final AbstractType type;
 	
-	private final Collection<?> data = Lists.newArrayList();
+	private final List<Object> data = Lists.newArrayList(); // elements of all collections, boundaries are given by parent pointers
 
 	/**
 	 * @param type type of transferred collection
@@ -29,5 +31,25 @@ public class JdbcTransferrableCollection extends TransferObject {
 	protected String toStringDescription() {
 		return type.getName();
 	}
+
+	void add(Object element) {
+		data.add(element);
+	}
+
+	void addAll(Collection<?> elements) {
+		data.addAll(elements);
+	}
+
+	Object get(int i) {
+		return data.get(i);
+	}
+
+	int size() {
+		return data.size();
+	}
+
+	List<Object> getData() {
+		return Collections.unmodifiableList(data);
+	}
 	
 }
@@ -26,5 +26,13 @@ public class JdbcTransferrableRecord extends TransferObject {
 	protected String toStringDescription() {
 		return type.getName();
 	}
+
+	Object getData() {
+		return data;
+	}
+
+	void setData(Object data) {
+		this.data = data;
+	}
 	
 }
@@ -0,0 +1,749 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.collect.Lists;
+
+/**
+ * <p>
+ * Fills {@link TransferObjectTree} with data of Java representation of arguments of procedure or function call
+ * (in other words, marshals Java object graph into flattened columns).
+ * </p>
+ * <p>
+ * Before any data is walked, the type node tree is compiled into tree of {@link Step}s,
+ * each step holds transfer objects it appends into (so that they are resolved once per call, not once per value).
+ * The Java object graph is then walked exactly once in depth-first order.
+ * The walk is iterative, nesting of collections and records is handled by explicit stack of {@link Frame}s,
+ * leaf values are appended directly into column buffers without pushing any frame
+ * and collections of leaf values are appended in bulk.
+ * Since every column is appended only by the step of its own type node and all occurrences of type node are visited
+ * in the order in which they occur in object graph, the resulting columns conform to semantics described in {@link Pointers}.
+ * </p>
+ * <p>
+ * Large payloads can be marshalled in parallel on {@link java.util.concurrent.ForkJoinPool#commonPool() common fork-join pool}
+ * (see {@link #marshal(TransferObjectTree, List, int)}).
+ * Parameters are independent subtrees of transfer object tree, each of them is walked by its own marshaller.
+ * Collection of records whose fields are all leaves is split into groups of field columns, each group is filled by its own task
+ * which iterates over all elements. Every column is still appended by single task in order of elements,
+ * hence the result is identical to sequential marshalling.
+ * </p>
+ * <p>
+ * Java representation of PLSQL values:
+ * </p>
+ * <ul>
+ * <li>primitive type - any object, stored as is (conversion into JDBC type is not responsibility of marshaller)</li>
+ * <li>record - see {@link RecordAccessor}; null record is marshalled as record with all fields null
+ * (PLSQL record cannot be atomically null)</li>
+ * <li>varray - {@link List}, {@link Collection} or Java array</li>
+ * <li>nested table - same as varray, moreover {@link Map} of {@link Integer} indexes to elements
+ * where missing indexes below the highest index represent deleted elements</li>
+ * <li>index-by table - {@link Map}, indexes of {@link IntKeyMap} are transferred without boxing</li>
+ * <li>JDBC-transferrable record or collection - the object itself is stored into transfer object</li>
+ * </ul>
+ * @author Tomas Zalusky
+ */
+final class Marshaller {
+
+	private final TransferObjectTree transferObjectTree;
+
+	private final Deque<Frame> stack = new ArrayDeque<>();
+
+	/**
+	 * All compiled collection steps, their pointers must be terminated when all data is marshalled.
+	 */
+	private final List<CollectionStep> collectionSteps = Lists.newArrayList();
+
+	/**
+	 * Minimal size of payload marshalled in parallel, {@link Integer#MAX_VALUE} for sequential marshalling.
+	 */
+	private final int parallelThreshold;
+
+	private Marshaller(TransferObjectTree transferObjectTree, int parallelThreshold) {
+		this.transferObjectTree = transferObjectTree;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Marshals arguments of procedure or function call into given transfer object tree.
+	 * Values of OUT parameters are ignored, IN and IN OUT parameters are marshalled.
+	 * @param transferObjectTree freshly created tree (not containing any data yet)
+	 * @param arguments values of all parameters in order of declaration (without return value of function)
+	 */
+	static void marshal(TransferObjectTree transferObjectTree, List<?> arguments) {
+		marshal(transferObjectTree, arguments, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Marshals arguments, in parallel if payload is large enough.
+	 * Size of payload is estimated as sum of sizes of top-level collections (other values count as 1).
+	 * @param transferObjectTree freshly created tree (not containing any data yet)
+	 * @param arguments values of all parameters in order of declaration (without return value of function)
+	 * @param parallelThreshold minimal size of payload (and of collection of records) marshalled in parallel
+	 */
+	static void marshal(TransferObjectTree transferObjectTree, final List<?> arguments, final int parallelThreshold) {
+		final TypeNode rootNode = transferObjectTree.getTypeTreeRoot();
+		Map<String,Parameter> parameters = ((AbstractSignature)rootNode.getType()).getParameters();
+		checkArgument(arguments.size() == parameters.size(), "Expected %s arguments but got %s.", parameters.size(), arguments.size());
+		final List<TypeNode> nodes = Lists.newArrayList();
+		final List<Object> values = Lists.newArrayList();
+		long size = 0;
+		int i = 0;
+		for (Map.Entry<String,Parameter> entry : parameters.entrySet()) {
+			Object argument = arguments.get(i++);
+			if (entry.getValue().getParameterMode() == ParameterMode.OUT) {
+				continue;
+			}
+			nodes.add(rootNode.getChildren().get(entry.getKey()));
+			values.add(argument);
+			size += estimateSize(argument);
+		}
+		if (size < parallelThreshold || nodes.size() < 2) {
+			new Marshaller(transferObjectTree, parallelThreshold).marshalParameters(nodes, values);
+			return;
+		}
+		List<RecursiveAction> tasks = Lists.newArrayList();
+		for (int p = 0; p < nodes.size(); p++) {
+			final List<TypeNode> node = nodes.subList(p, p + 1);
+			final List<Object> value = values.subList(p, p + 1);
+			final Marshaller marshaller = new Marshaller(transferObjectTree, parallelThreshold);
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute() {
+					marshaller.marshalParameters(node, value);
+				}
+			});
+		}
+		ForkJoinTask.invokeAll(tasks);
+	}
+
+	private void marshalParameters(List<TypeNode> nodes, List<?> values) {
+		for (int i = 0; i < nodes.size(); i++) {
+			Step step = compile(nodes.get(i));
+			walk(step, values.get(i));
+		}
+		for (CollectionStep collectionStep : collectionSteps) {
+			collectionStep.terminate();
+		}
+	}
+
+	private static int estimateSize(Object value) {
+		if (value instanceof Collection) {
+			return ((Collection<?>)value).size();
+		} else if (value instanceof Map) {
+			return ((Map<?,?>)value).size();
+		} else if (value != null && value.getClass().isArray()) {
+			return Array.getLength(value);
+		}
+		return 1;
+	}
+
+	private void walk(Step step, Object value) {
+		step.process(value, this);
+		while (!stack.isEmpty()) {
+			if (!stack.peekLast().advance(this)) {
+				stack.removeLast();
+			}
+		}
+	}
+
+	private void pushElements(Step elementStep, Collection<?> elements) {
+		if (elements.isEmpty()) {
+			return;
+		}
+		if (elementStep instanceof LeafStep) {
+			((LeafStep)elementStep).appendAll(elements);
+		} else if (elementStep instanceof RecordStep && ((RecordStep)elementStep).leavesOnly && elements.size() >= parallelThreshold) {
+			((RecordStep)elementStep).appendAllInParallel(elements);
+		} else if (elements instanceof List && elements instanceof RandomAccess) {
+			stack.addLast(new ListFrame(elementStep, (List<?>)elements));
+		} else {
+			stack.addLast(new IteratorFrame(elementStep, elements.iterator()));
+		}
+	}
+
+	private Step compile(TypeNode typeNode) {
+		return typeNode.getType().accept(new Compile(), typeNode);
+	}
+
+	/**
+	 * Compiles type node into step, see {@link Step} subclasses for meaning.
+	 * @author Tomas Zalusky
+	 */
+	private class Compile implements TypeVisitorAR<TypeNode,Step> {
+
+		@Override
+		public Step visitProcedureSignature(ProcedureSignature type, TypeNode typeNode) {
+			throw new IllegalStateException("signature is not expected to be nested");
+		}
+
+		@Override
+		public Step visitFunctionSignature(FunctionSignature type, TypeNode typeNode) {
+			throw new IllegalStateException("signature is not expected to be nested");
+		}
+
+		@Override
+		public Step visitRecord(RecordType type, TypeNode typeNode) {
+			JdbcTransferrableRecord to = transferObjectTree.getTransferObject(typeNode, JdbcTransferrableRecord.class);
+			if (to != null) {
+				return new JdbcRecordStep(to);
+			}
+			List<Step> fieldSteps = Lists.newArrayList();
+			for (String fieldName : type.getFields().keySet()) {
+				fieldSteps.add(compile(typeNode.getChildren().get(fieldName)));
+			}
+			return new RecordStep(type, fieldSteps.toArray(new Step[0]));
+		}
+
+		@Override
+		public Step visitVarray(VarrayType type, TypeNode typeNode) {
+			return compileCollection(typeNode, VarrayType.ELEMENT_LABEL);
+		}
+
+		@Override
+		public Step visitNestedTable(NestedTableType type, TypeNode typeNode) {
+			return compileCollection(typeNode, NestedTableType.ELEMENT_LABEL);
+		}
+
+		@Override
+		public Step visitIndexByTable(IndexByTableType type, TypeNode typeNode) {
+			return compileCollection(typeNode, IndexByTableType.ELEMENT_LABEL);
+		}
+
+		@Override
+		public Step visitPrimitive(AbstractPrimitiveType type, TypeNode typeNode) {
+			PrimitiveHolder to = transferObjectTree.getTransferObject(typeNode, PrimitiveHolder.class);
+			if (to instanceof PrimitiveCollection) {
+				return new ColumnStep((PrimitiveCollection)to);
+			} else {
+				return new ScalarStep((PrimitiveScalar)to);
+			}
+		}
+
+		private Step compileCollection(TypeNode typeNode, String elementLabel) {
+			JdbcTransferrableCollection array = transferObjectTree.getTransferObject(typeNode, JdbcTransferrableCollection.class);
+			Step elementStep = array != null ? new ArrayElementStep(array) : compile(typeNode.getChildren().get(elementLabel));
+			CollectionStep result = new CollectionStep(
+					transferObjectTree.getTransferObject(typeNode, DataPointers.class),
+					transferObjectTree.getTransferObject(typeNode, DeletionsPointers.class),
+					transferObjectTree.getTransferObject(typeNode, Deletions.class),
+					transferObjectTree.getTransferObject(typeNode, Indexes.class),
+					elementStep);
+			collectionSteps.add(result);
+			return result;
+		}
+
+	}
+
+	/**
+	 * Processes value occurring at position of one type node.
+	 * @author Tomas Zalusky
+	 */
+	private static abstract class Step {
+
+		/**
+		 * Appends value into transfer objects and/or pushes frames for processing nested values.
+		 * @param value
+		 * @param marshaller
+		 */
+		abstract void process(Object value, Marshaller marshaller);
+
+	}
+
+	/**
+	 * Step which appends value into single column and never pushes any frame.
+	 * @author Tomas Zalusky
+	 */
+	private static abstract class LeafStep extends Step {
+
+		@Override
+		final void process(Object value, Marshaller marshaller) {
+			append(value);
+		}
+
+		abstract void append(Object value);
+
+		/**
+		 * Appends non-null integer, boxes it unless step supports unboxed values.
+		 * @param value
+		 */
+		void appendInt(int value) {
+			append(value);
+		}
+
+		abstract void appendAll(Collection<?> values);
+
+		/**
+		 * Appends value of record field, <code>int</code> field of class is read without boxing.
+		 * @param record record or null
+		 * @param accessor accessor of record
+		 * @param index index of field
+		 */
+		final void appendField(Object record, RecordAccessor accessor, int index) {
+			if (record == null) {
+				append(null);
+			} else if (accessor.fieldType(index) == int.class) {
+				appendInt(accessor.getInt(record, index));
+			} else {
+				append(accessor.get(record, index));
+			}
+		}
+
+	}
+
+	private static final class ColumnStep extends LeafStep {
+
+		private final PrimitiveCollection column;
+
+		ColumnStep(PrimitiveCollection column) {
+			this.column = column;
+		}
+
+		@Override
+		void append(Object value) {
+			column.add(value);
+		}
+
+		@Override
+		void appendInt(int value) {
+			column.addInt(value);
+		}
+
+		@Override
+		void appendAll(Collection<?> values) {
+			column.addAll(values);
+		}
+
+	}
+
+	/**
+	 * Appends element of JDBC-transferrable collection, element is not decomposed.
+	 * @author Tomas Zalusky
+	 */
+	private static final class ArrayElementStep extends LeafStep {
+
+		private final JdbcTransferrableCollection array;
+
+		ArrayElementStep(JdbcTransferrableCollection array) {
+			this.array = array;
+		}
+
+		@Override
+		void append(Object value) {
+			array.add(value);
+		}
+
+		@Override
+		void appendAll(Collection<?> values) {
+			array.addAll(values);
+		}
+
+	}
+
+	private static final class ScalarStep extends Step {
+
+		private final PrimitiveScalar scalar;
+
+		ScalarStep(PrimitiveScalar scalar) {
+			this.scalar = scalar;
+		}
+
+		@Override
+		void process(Object value, Marshaller marshaller) {
+			scalar.setData(value);
+		}
+
+	}
+
+	private static final class JdbcRecordStep extends Step {
+
+		private final JdbcTransferrableRecord record;
+
+		JdbcRecordStep(JdbcTransferrableRecord record) {
+			this.record = record;
+		}
+
+		@Override
+		void process(Object value, Marshaller marshaller) {
+			record.setData(value);
+		}
+
+	}
+
+	/**
+	 * Decomposes record into its fields.
+	 * Keeps accessor for the last seen record class since records at the same position
+	 * are almost always of the same class.
+	 * @author Tomas Zalusky
+	 */
+	private static final class RecordStep extends Step {
+
+		private final RecordType type;
+
+		private final Step[] fieldSteps;
+
+		private final boolean leavesOnly;
+
+		private RecordAccessor mapAccessor;
+
+		private Class<?> lastClass;
+
+		private RecordAccessor lastAccessor;
+
+		RecordStep(RecordType type, Step[] fieldSteps) {
+			this.type = type;
+			this.fieldSteps = fieldSteps;
+			boolean leavesOnly = true;
+			for (Step fieldStep : fieldSteps) {
+				leavesOnly &= fieldStep instanceof LeafStep;
+			}
+			this.leavesOnly = leavesOnly;
+		}
+
+		@Override
+		void process(Object value, Marshaller marshaller) {
+			RecordAccessor accessor = value == null ? null : accessor(value);
+			if (leavesOnly) {
+				for (int i = 0; i < fieldSteps.length; i++) {
+					((LeafStep)fieldSteps[i]).appendField(value, accessor, i);
+				}
+			} else {
+				marshaller.stack.addLast(new RecordFrame(fieldSteps, value, accessor));
+			}
+		}
+
+		private RecordAccessor accessor(Object value) {
+			Class<?> valueClass = value.getClass();
+			if (valueClass != lastClass) {
+				lastAccessor = newAccessor(value);
+				lastClass = valueClass;
+			}
+			return lastAccessor;
+		}
+
+		private RecordAccessor newAccessor(Object value) {
+			RecordAccessor accessor;
+			if (value instanceof Map) {
+				if (mapAccessor == null) {
+					mapAccessor = RecordAccessor.forMap(type);
+				}
+				accessor = mapAccessor;
+			} else {
+				accessor = RecordAccessor.forClass(value.getClass(), type);
+			}
+			checkArgument(accessor.size() == fieldSteps.length, "Class %s has %s fields but record %s has %s fields.",
+					value.getClass().getName(), accessor.size(), type.getName(), fieldSteps.length);
+			return accessor;
+		}
+
+		/**
+		 * Appends field values of all records, field columns are split into groups (one per processor),
+		 * each group is filled by its own task.
+		 * Values are appended sequentially when there is single processor or single field.
+		 * Accessors are resolved upfront so that tasks share no mutable state.
+		 * @param records
+		 */
+		void appendAllInParallel(Collection<?> records) {
+			final Object[] values = records.toArray();
+			final RecordAccessor[] accessors = new RecordAccessor[values.length];
+			for (int r = 0; r < values.length; r++) {
+				accessors[r] = values[r] == null ? null : accessor(values[r]);
+			}
+			int groups = Math.min(fieldSteps.length, Runtime.getRuntime().availableProcessors());
+			if (groups < 2) {
+				appendRange(values, accessors, 0, fieldSteps.length);
+				return;
+			}
+			List<RecursiveAction> tasks = Lists.newArrayList();
+			for (int g = 0; g < groups; g++) {
+				final int from = fieldSteps.length * g / groups;
+				final int to = fieldSteps.length * (g + 1) / groups;
+				tasks.add(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+					@Override
+					protected void compute() {
+						appendRange(values, accessors, from, to);
+					}
+				});
+			}
+			ForkJoinTask.invokeAll(tasks);
+		}
+
+		/**
+		 * Appends values of fields from given range of all records.
+		 */
+		private void appendRange(Object[] values, RecordAccessor[] accessors, int from, int to) {
+			for (int r = 0; r < values.length; r++) {
+				for (int i = from; i < to; i++) {
+					((LeafStep)fieldSteps[i]).appendField(values[r], accessors[r], i);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Appends pointers (and deletions or indexes, if applicable) for one collection
+	 * and lets elements to be processed by element step.
+	 * @author Tomas Zalusky
+	 */
+	private static final class CollectionStep extends Step {
+
+		private final DataPointers pointers;
+
+		private final DeletionsPointers deletionsPointers; // nested tables only
+
+		private final Deletions deletions; // nested tables only
+
+		private final Indexes indexes; // index-by tables only
+
+		private final Step elementStep;
+
+		/**
+		 * Number of elements of all collections processed so far.
+		 */
+		private int count;
+
+		/**
+		 * Number of deleted elements of all nested tables processed so far.
+		 */
+		private int deletionsCount;
+
+		CollectionStep(DataPointers pointers, DeletionsPointers deletionsPointers, Deletions deletions, Indexes indexes, Step elementStep) {
+			this.pointers = pointers;
+			this.deletionsPointers = deletionsPointers;
+			this.deletions = deletions;
+			this.indexes = indexes;
+			this.elementStep = elementStep;
+			if (indexes != null) {
+				indexes.setSorted(true);
+			}
+		}
+
+		@Override
+		void process(Object value, Marshaller marshaller) {
+			if (value == null) {
+				pointers.add(-(count + 1));
+				if (deletionsPointers != null) {
+					deletionsPointers.add(-(deletionsCount + 1));
+				}
+				return;
+			}
+			pointers.add(count + 1);
+			if (deletionsPointers != null) {
+				deletionsPointers.add(deletionsCount + 1);
+			}
+			Collection<?> elements;
+			if (indexes != null) {
+				checkArgument(value instanceof Map, "Index-by table must be represented by map, got %s.", value.getClass().getName());
+				Map<?,?> map = (Map<?,?>)value;
+				if (map instanceof IntKeyMap) { // ascending keys, no boxing
+					indexes.addAll(((IntKeyMap<?>)map).keys());
+				} else if (map instanceof SortedMap && ((SortedMap<?,?>)map).comparator() == null || !indexes.isSorted()) {
+					indexes.addAll(map.keySet());
+				} else {
+					addCheckingOrder(map.keySet());
+				}
+				elements = map.values();
+			} else if (value instanceof Map) {
+				checkArgument(deletions != null, "Only nested table can be represented by map.");
+				elements = sparse((Map<?,?>)value);
+			} else {
+				elements = asCollection(value);
+			}
+			count += elements.size();
+			marshaller.pushElements(elementStep, elements);
+		}
+
+		/**
+		 * Appends indexes and clears sorted flag of indexes if they are not in ascending natural order.
+		 * @param keys
+		 */
+		@SuppressWarnings({"unchecked","rawtypes"})
+		private void addCheckingOrder(Collection<?> keys) {
+			Object previous = null;
+			for (Object index : keys) {
+				if (indexes.isSorted() && (!(index instanceof Comparable) || previous != null && ((Comparable)previous).compareTo(index) >= 0)) {
+					indexes.setSorted(false);
+				}
+				indexes.add(index);
+				previous = index;
+			}
+		}
+
+		/**
+		 * Appends deleted indexes of sparse nested table.
+		 * @param map map of 1-based indexes to elements
+		 * @return elements ordered by indexes
+		 */
+		private Collection<?> sparse(Map<?,?> map) {
+			List<Map.Entry<?,?>> entries = Lists.<Map.Entry<?,?>>newArrayList(map.entrySet());
+			if (!(map instanceof SortedMap && ((SortedMap<?,?>)map).comparator() == null)) {
+				Collections.sort(entries, BY_INTEGER_KEY);
+			}
+			Object[] values = new Object[entries.size()];
+			int previous = 0;
+			for (int i = 0; i < values.length; i++) {
+				Map.Entry<?,?> entry = entries.get(i);
+				int index = ((Number)entry.getKey()).intValue();
+				checkArgument(index > previous, "Illegal nested table index %s.", index);
+				for (int deleted = previous + 1; deleted < index; deleted++) {
+					deletions.add(deleted);
+					deletionsCount++;
+				}
+				values[i] = entry.getValue();
+				previous = index;
+			}
+			return Arrays.asList(values);
+		}
+
+		/**
+		 * Appends the last element of pointers which serves as upper bound for the last collection.
+		 */
+		void terminate() {
+			pointers.add(count + 1);
+			if (deletionsPointers != null) {
+				deletionsPointers.add(deletionsCount + 1);
+			}
+		}
+
+	}
+
+	private static final Comparator<Map.Entry<?,?>> BY_INTEGER_KEY = new Comparator<Map.Entry<?,?>>() {
+		@Override
+		public int compare(Map.Entry<?,?> o1, Map.Entry<?,?> o2) {
+			return Integer.compare(((Number)o1.getKey()).intValue(), ((Number)o2.getKey()).intValue());
+		}
+	};
+
+	private static Collection<?> asCollection(final Object value) {
+		if (value instanceof Collection) {
+			return (Collection<?>)value;
+		} else if (value instanceof Object[]) {
+			return Arrays.asList((Object[])value);
+		} else if (value.getClass().isArray()) {
+			return new AbstractList<Object>() {
+				@Override
+				public Object get(int index) {
+					return Array.get(value, index);
+				}
+				@Override
+				public int size() {
+					return Array.getLength(value);
+				}
+			};
+		}
+		throw new IllegalArgumentException("Collection must be represented by collection or array, got " + value.getClass().getName() + ".");
+	}
+
+	/**
+	 * Represents unfinished processing of nested values.
+	 * @author Tomas Zalusky
+	 */
+	private static abstract class Frame {
+
+		/**
+		 * Processes next nested value.
+		 * @param marshaller
+		 * @return false if no nested value remains (and frame should be popped), true otherwise
+		 */
+		abstract boolean advance(Marshaller marshaller);
+
+	}
+
+	private static final class ListFrame extends Frame {
+
+		private final Step elementStep;
+
+		private final List<?> elements;
+
+		private int index;
+
+		ListFrame(Step elementStep, List<?> elements) {
+			this.elementStep = elementStep;
+			this.elements = elements;
+		}
+
+		@Override
+		boolean advance(Marshaller marshaller) {
+			if (index == elements.size()) {
+				return false;
+			}
+			elementStep.process(elements.get(index++), marshaller);
+			return true;
+		}
+
+	}
+
+	private static final class IteratorFrame extends Frame {
+
+		private final Step elementStep;
+
+		private final Iterator<?> elements;
+
+		IteratorFrame(Step elementStep, Iterator<?> elements) {
+			this.elementStep = elementStep;
+			this.elements = elements;
+		}
+
+		@Override
+		boolean advance(Marshaller marshaller) {
+			if (!elements.hasNext()) {
+				return false;
+			}
+			elementStep.process(elements.next(), marshaller);
+			return true;
+		}
+
+	}
+
+	private static final class RecordFrame extends Frame {
+
+		private final Step[] fieldSteps;
+
+		private final Object record; // null for null record
+
+		private final RecordAccessor accessor;
+
+		private int index;
+
+		RecordFrame(Step[] fieldSteps, Object record, RecordAccessor accessor) {
+			this.fieldSteps = fieldSteps;
+			this.record = record;
+			this.accessor = accessor;
+		}
+
+		@Override
+		boolean advance(Marshaller marshaller) {
+			if (index == fieldSteps.length) {
+				return false;
+			}
+			Step fieldStep = fieldSteps[index];
+			if (fieldStep instanceof LeafStep) {
+				((LeafStep)fieldStep).appendField(record, accessor, index);
+			} else {
+				fieldStep.process(record == null ? null : accessor.get(record, index), marshaller);
+			}
+			index++;
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,222 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests content of transfer objects filled by {@link Marshaller}.
+ * @author Tomas Zalusky
+ */
+public class MarshallerTest extends AbstractTypeGraphTest {
+
+	/**
+	 * Java representation of <code>a_test_package.rec3</code>, compare with {@link JavaModelTest} output.
+	 */
+	static class Record3 {
+		@Plsql.Name("f_boolean")
+		private boolean theBoolean;
+		@Plsql.Name("f_integer")
+		private int theInt;
+		Record3() {
+		}
+		Record3(boolean theBoolean, int theInt) {
+			this.theBoolean = theBoolean;
+			this.theInt = theInt;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Record3 && ((Record3)obj).theBoolean == theBoolean && ((Record3)obj).theInt == theInt;
+		}
+		@Override
+		public int hashCode() {
+			return theInt;
+		}
+		@Override
+		public String toString() {
+			return "Record3(" + theBoolean + "," + theInt + ")";
+		}
+	}
+
+	static TransferObjectTree marshal(TypeGraph graph, String executableName, Map<String,?> arguments) {
+		return marshal(graph, executableName, arguments, Integer.MAX_VALUE);
+	}
+
+	static TransferObjectTree marshal(TypeGraph graph, String executableName, Map<String,?> arguments, int parallelThreshold) {
+		AbstractSignature rootType = graph.findType(ProcedureSignature.class,executableName);
+		if (rootType == null) {
+			rootType = graph.findType(FunctionSignature.class,executableName);
+		}
+		TransferObjectTree tot = graph.toTypeNodeTree(rootType).toTransferObjectTree();
+		List<Object> argumentList = Lists.newArrayList();
+		for (String parameterName : rootType.getParameters().keySet()) {
+			argumentList.add(arguments.get(parameterName));
+		}
+		Marshaller.marshal(tot, argumentList, parallelThreshold);
+		return tot;
+	}
+
+	/**
+	 * @param tot
+	 * @return content of all transfer objects (except JDBC-transferrable ones) by id
+	 */
+	static Map<String,List<?>> contents(TransferObjectTree tot) {
+		return contents(tot.getRoot(), Maps.<String,List<?>>newTreeMap());
+	}
+
+	private static Map<String,List<?>> contents(TransferObject to, Map<String,List<?>> result) {
+		if (to instanceof Pointers) {
+			result.put(to.getId(), ((Pointers)to).getData().asList());
+		} else if (to instanceof Deletions) {
+			result.put(to.getId(), ((Deletions)to).getData().asList());
+		} else if (to instanceof PrimitiveCollection) {
+			result.put(to.getId(), ((PrimitiveCollection)to).getData());
+		} else if (to instanceof Indexes) {
+			result.put(to.getId(), ((Indexes)to).getData());
+		} else if (to instanceof PrimitiveScalar) {
+			result.put(to.getId(), Arrays.asList(((PrimitiveScalar)to).getData()));
+		}
+		for (TransferObject child : to.getChildren()) {
+			contents(child, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @param count
+	 * @return arguments of <code>echo</code> function with large collections
+	 */
+	static Map<String,Object> largeArguments(int count) {
+		List<Object> var1 = Lists.newArrayList();
+		Map<Integer,Object> nst3 = Maps.newLinkedHashMap();
+		Map<String,Object> ibt3 = Maps.newLinkedHashMap();
+		for (int i = 0; i < count; i++) {
+			List<Record3> records = Lists.newArrayList();
+			for (int j = 0; j < i % 5; j++) {
+				records.add(new Record3(j % 2 == 0, i * j));
+			}
+			var1.add(i % 7 == 0 ? null : records);
+			nst3.put(2 * i + 1, records);
+			ibt3.put("k" + i, i % 3 == 0 ? ImmutableMap.of(1, "a" + i, 3, "b" + i) : ImmutableList.of("c" + i));
+		}
+		List<Record3> manyRecords = Lists.newArrayList();
+		for (int i = 0; i < count * 10; i++) {
+			manyRecords.add(new Record3(i % 3 == 0, i));
+		}
+		return ImmutableMap.<String,Object>of("pi_var1", var1, "pi_nst2", ImmutableList.of(manyRecords, ImmutableList.of()), "pi_nst3", nst3, "pi_ibt3", ibt3, "pi_clob", "text");
+	}
+
+	static TypeNode node(TransferObjectTree tot, String... path) {
+		TypeNode result = tot.getTypeTreeRoot();
+		for (String name : path) {
+			result = result.getChildren().get(name);
+		}
+		return result;
+	}
+
+	private static List<Integer> pointers(TransferObjectTree tot, Class<? extends Pointers> pointersClass, String... path) {
+		return tot.getTransferObject(node(tot,path),pointersClass).getData().asList();
+	}
+
+	private static List<Object> column(TransferObjectTree tot, String... path) {
+		return tot.getTransferObject(node(tot,path),PrimitiveCollection.class).getData();
+	}
+
+	private static final String E = NestedTableType.ELEMENT_LABEL;
+
+	/**
+	 * Example from {@link Pointers} javadoc.
+	 */
+	@Test
+	public void testPointers() throws IOException {
+		List<List<String>> value = Arrays.asList(ImmutableList.of("A","B"), null, ImmutableList.of("C"), ImmutableList.<String>of(), ImmutableList.of("D","E","F"));
+		TransferObjectTree tot = marshal(loadGraph("alltypes"), "echo", Collections.singletonMap("pi_var2", value));
+		assertEquals(ImmutableList.of(1,6), pointers(tot, DataPointers.class, "pi_var2"));
+		assertEquals(ImmutableList.of(1,-3,3,4,4,7), pointers(tot, DataPointers.class, "pi_var2", E));
+		assertEquals(ImmutableList.of(1,-1,1,1,1,1), pointers(tot, DeletionsPointers.class, "pi_var2", E));
+		assertEquals(ImmutableList.of("A","B","C","D","E","F"), column(tot, "pi_var2", E, E));
+	}
+
+	@Test
+	public void testSparseNestedTable() throws IOException {
+		Map<String,Object> value = ImmutableMap.<String,Object>of("x", ImmutableMap.of(4,"b",1,"a"), "y", ImmutableList.of("c"));
+		TransferObjectTree tot = marshal(loadGraph("alltypes"), "echo", Collections.singletonMap("pi_ibt3", value));
+		assertEquals(ImmutableList.of(1,3), pointers(tot, DataPointers.class, "pi_ibt3"));
+		assertEquals(ImmutableList.of("x","y"), tot.getTransferObject(node(tot,"pi_ibt3"),Indexes.class).getData());
+		assertEquals(ImmutableList.of(1,3,3), pointers(tot, DeletionsPointers.class, "pi_ibt3", E));
+		assertEquals(ImmutableList.of(2,3), tot.getTransferObject(node(tot,"pi_ibt3",E),Deletions.class).getData().asList());
+		assertEquals(ImmutableList.of(1,3,4), pointers(tot, DataPointers.class, "pi_ibt3", E));
+		assertEquals(ImmutableList.of("a","b","c"), column(tot, "pi_ibt3", E, E));
+	}
+
+	@Test
+	public void testRecords() throws IOException {
+		Map<String,Object> rec2a = ImmutableMap.<String,Object>of("f_var5", ImmutableList.of("p","q"), "f1_rec3", new Record3(true,1), "f_pls_integer", 10, "f2_rec3", new Record3(false,2));
+		Map<String,Object> rec2b = Collections.<String,Object>singletonMap("f_pls_integer", 20);
+		Map<Integer,Object> value = ImmutableMap.<Integer,Object>of(7, rec2a, 8, rec2b);
+		TransferObjectTree tot = marshal(loadGraph("alltypes"), "echo", Collections.singletonMap("pi_ibt1", value));
+		assertEquals(ImmutableList.of(1,3), pointers(tot, DataPointers.class, "pi_ibt1"));
+		assertEquals(ImmutableList.of(7,8), tot.getTransferObject(node(tot,"pi_ibt1"),Indexes.class).getData());
+		assertEquals(ImmutableList.of(1,-3,3), pointers(tot, DataPointers.class, "pi_ibt1", E, "f_var5"));
+		assertEquals(ImmutableList.of("p","q"), column(tot, "pi_ibt1", E, "f_var5", E));
+		assertEquals(Arrays.asList(true,null), column(tot, "pi_ibt1", E, "f1_rec3", "f_boolean"));
+		assertEquals(Arrays.asList(1,null), column(tot, "pi_ibt1", E, "f1_rec3", "f_integer"));
+		assertEquals(ImmutableList.of(10,20), column(tot, "pi_ibt1", E, "f_pls_integer"));
+		assertEquals(Arrays.asList(false,null), column(tot, "pi_ibt1", E, "f2_rec3", "f_boolean"));
+		assertEquals(Arrays.asList(2,null), column(tot, "pi_ibt1", E, "f2_rec3", "f_integer"));
+	}
+
+	@Test
+	public void testScalarAndNullCollections() throws IOException {
+		TransferObjectTree tot = marshal(loadGraph("alltypes"), "echo", Collections.singletonMap("pi_clob", "text"));
+		assertEquals("text", tot.getTransferObject(node(tot,"pi_clob"),PrimitiveScalar.class).getData());
+		assertEquals(ImmutableList.of(-1,1), pointers(tot, DataPointers.class, "pi_nst3"));
+		assertEquals(ImmutableList.of(-1,1), pointers(tot, DeletionsPointers.class, "pi_nst3"));
+		assertEquals(ImmutableList.of(1), pointers(tot, DataPointers.class, "pi_nst3", E));
+		assertEquals(ImmutableList.of(), pointers(tot, DataPointers.class, "po_nst3")); // OUT parameter is not marshalled
+	}
+
+	@Test
+	public void testJdbcTransferrable() throws IOException {
+		TypeGraph graph = loadGraph("toplevel");
+		List<Map<String,Object>> value = ImmutableList.<Map<String,Object>>of(ImmutableMap.<String,Object>of("b",true,"i",1));
+		TransferObjectTree tot = marshal(graph, "tv_tr", Collections.singletonMap("arg", value));
+		assertEquals(ImmutableList.of(1,2), pointers(tot, DataPointers.class, "arg"));
+		assertEquals(value, tot.getTransferObject(node(tot,"arg"),JdbcTransferrableCollection.class).getData());
+		Object record = new Object();
+		tot = marshal(graph, "tr", Collections.singletonMap("arg", record));
+		assertSame(record, tot.getTransferObject(node(tot,"arg"),JdbcTransferrableRecord.class).getData());
+	}
+
+	@Test
+	public void testParallel() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		Map<String,Object> arguments = largeArguments(2000);
+		Map<String,List<?>> expected = contents(marshal(graph, "echo", arguments));
+		assertEquals(expected, contents(marshal(graph, "echo", arguments, 1)));
+		assertEquals(expected, contents(marshal(graph, "echo", arguments, 100)));
+		graph = loadGraph("wide");
+		Map<String,?> rows = Collections.singletonMap("pi_rows", ColumnPackingTest.rows(5000));
+		assertEquals(contents(marshal(graph, "wide_pkg.p_wide", rows)), contents(marshal(graph, "wide_pkg.p_wide", rows, 100)));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testArgumentCount() throws IOException {
+		TypeGraph graph = loadGraph("simple");
+		AbstractSignature rootType = graph.findType(ProcedureSignature.class,"main");
+		Marshaller.marshal(graph.toTypeNodeTree(rootType).toTransferObjectTree(), ImmutableList.of());
+	}
+
+}
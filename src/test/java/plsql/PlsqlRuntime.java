@@ -0,0 +1,671 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * <p>
+ * Executes PLSQL procedures and functions through Java interfaces whose methods are annotated
+ * with {@link Plsql.Procedure} or {@link Plsql.Function}: <code>runtime.execute(IpmgPortBl.class).p_ins(port)</code>.
+ * Parameters of Java method correspond to parameters of PLSQL signature in order of declaration
+ * (which is the way how interfaces are generated by {@link JavaModel}), OUT and IN OUT parameters
+ * must be annotated with {@link Plsql.Out} and {@link Plsql.InOut}, respectively.
+ * Return value of Java method is return value of PLSQL function.
+ * </p>
+ * <p>
+ * Each method is interpreted when it is called for the first time: signature is found in type graph,
+ * annotations and generic types of parameters are read and everything is stored
+ * into immutable {@link CallPlan} cached per method. Every call then only marshals arguments, executes block
+ * and unmarshals OUT values, no reflection or annotation parsing happens on this path.
+ * By default, block depends only on signature, it is generated once and its text is shared by all calls
+ * (see {@link BlockGenerator#generate(TransferObjectTree)}).
+ * Runtime created with <code>optimized</code> flag {@link TransferObjectOptimizer optimizes}, {@link ColumnPacking packs}
+ * and {@link ColumnCodec encodes} transfer object tree of every call according to its data,
+ * which reduces transferred data at the cost of one block text (and parsed cursor) per distinct shape of data.
+ * </p>
+ * <p>
+ * Signatures wrapped in {@link WrapperPackage}s given to runtime are called through wrapper procedure instead of anonymous block
+ * (columns are bound plainly then). Installed version of wrapper package is checked before its first call.
+ * </p>
+ * <p>
+ * OUT values are passed back through arguments: maps and collections are refilled, {@link StringBuilder}
+ * gets new content, instance of record class gets fields of record and {@link AtomicReference} serves as holder
+ * of any other value (for IN OUT parameter its content is also the IN value).
+ * </p>
+ * <p>
+ * Execution of block itself is delegated to {@link Executor}, runtime does not depend on particular JDBC driver.
+ * </p>
+ * <p>
+ * Method returning {@link CompletableFuture} (<code>CompletableFuture&lt;Void&gt;</code> for procedure) is called asynchronously:
+ * the whole call including creation of plan on first call (with check of wrapper version) and blocking execution of block
+ * runs as task of asynchronous executor, which is {@link #defaultAsyncExecutor() virtual-thread-per-task executor}
+ * by default (when available) or any given executor. Any failure (including invalid method or outdated wrapper package)
+ * completes future exceptionally, it is never thrown to caller.
+ * OUT values are passed back into arguments before future completes.
+ * Caches of proxies and plans do not run any computation while holding monitor of map
+ * (plan is created outside of map and published by <code>putIfAbsent</code>), hence virtual threads calling proxy
+ * for the first time do not pin their carrier threads.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class PlsqlRuntime {
+
+	/**
+	 * Executes generated block.
+	 */
+	interface Executor {
+
+		/**
+		 * @param block block to be executed
+		 * @param inValues values of IN binds, in order of IN binds of block
+		 * @return values of OUT binds, in order of OUT binds of block
+		 */
+		List<Object> execute(BlockGenerator.Block block, List<Object> inValues);
+
+	}
+
+	private static final Object[] NO_ARGUMENTS = {};
+
+	private final TypeGraph typeGraph;
+
+	private final Executor executor;
+
+	private final java.util.concurrent.Executor asyncExecutor;
+
+	/**
+	 * Whether tree of every call is optimized, packed and encoded according to its data.
+	 */
+	private final boolean optimized;
+
+	private final ConcurrentMap<Method,CallPlan> plans = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Class<?>,Object> proxies = new ConcurrentHashMap<>();
+
+	/**
+	 * Wrapper packages by name of wrapped signature.
+	 */
+	private final ImmutableMap<String,WrapperPackage> wrappers;
+
+	/**
+	 * Wrapper packages whose installed version has been checked.
+	 */
+	private final Set<WrapperPackage> checkedWrappers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+	/**
+	 * Asynchronous calls run on {@link #defaultAsyncExecutor()}.
+	 * @param typeGraph type graph containing signatures of all called methods
+	 * @param executor
+	 */
+	PlsqlRuntime(TypeGraph typeGraph, Executor executor) {
+		this(typeGraph, executor, defaultAsyncExecutor());
+	}
+
+	/**
+	 * @param typeGraph type graph containing signatures of all called methods
+	 * @param executor
+	 * @param asyncExecutor executor of asynchronous calls (methods returning {@link CompletableFuture})
+	 */
+	PlsqlRuntime(TypeGraph typeGraph, Executor executor, java.util.concurrent.Executor asyncExecutor) {
+		this(typeGraph, executor, asyncExecutor, ImmutableList.<WrapperPackage>of());
+	}
+
+	/**
+	 * @param typeGraph type graph containing signatures of all called methods
+	 * @param executor
+	 * @param asyncExecutor executor of asynchronous calls (methods returning {@link CompletableFuture})
+	 * @param wrappers installed wrapper packages, signatures wrapped in them are called through wrapper procedures
+	 */
+	PlsqlRuntime(TypeGraph typeGraph, Executor executor, java.util.concurrent.Executor asyncExecutor, Collection<WrapperPackage> wrappers) {
+		this(typeGraph, executor, asyncExecutor, wrappers, false);
+	}
+
+	/**
+	 * @param typeGraph type graph containing signatures of all called methods
+	 * @param executor
+	 * @param asyncExecutor executor of asynchronous calls (methods returning {@link CompletableFuture})
+	 * @param wrappers installed wrapper packages, signatures wrapped in them are called through wrapper procedures
+	 * @param optimized whether tree of every call (not called through wrapper) is optimized, packed and encoded according to its data
+	 */
+	PlsqlRuntime(TypeGraph typeGraph, Executor executor, java.util.concurrent.Executor asyncExecutor, Collection<WrapperPackage> wrappers, boolean optimized) {
+		this.typeGraph = checkNotNull(typeGraph);
+		this.executor = checkNotNull(executor);
+		this.asyncExecutor = checkNotNull(asyncExecutor);
+		this.optimized = optimized;
+		Map<String,WrapperPackage> wrappersBySignature = Maps.newHashMap();
+		for (WrapperPackage wrapper : wrappers) {
+			for (String signatureName : wrapper.getSignatureNames()) {
+				WrapperPackage existing = wrappersBySignature.put(signatureName, wrapper);
+				checkArgument(existing == null, "Signature %s is wrapped both in %s and %s.", signatureName, existing, wrapper.getName());
+			}
+		}
+		this.wrappers = ImmutableMap.copyOf(wrappersBySignature);
+	}
+
+	/**
+	 * Holder of default executor, created on first use.
+	 */
+	private static final class DefaultAsyncExecutor {
+
+		private static final ExecutorService INSTANCE = create();
+
+		/**
+		 * Code is compiled for Java 8, hence virtual-thread-per-task executor (Java 21) is obtained reflectively.
+		 */
+		private static ExecutorService create() {
+			try {
+				return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				return Executors.newCachedThreadPool(r -> {
+					Thread result = new Thread(r, "plsql-async");
+					result.setDaemon(true);
+					return result;
+				});
+			}
+		}
+
+	}
+
+	/**
+	 * @return executor starting new virtual thread for every call (on Java 21 and higher),
+	 * otherwise cached pool of daemon platform threads (each blocked call occupies one thread)
+	 */
+	static ExecutorService defaultAsyncExecutor() {
+		return DefaultAsyncExecutor.INSTANCE;
+	}
+
+	/**
+	 * @param api interface whose methods represent PLSQL procedures and functions
+	 * @return proxy executing PLSQL procedures and functions, one instance per interface
+	 */
+	<T> T execute(Class<T> api) {
+		checkArgument(api.isInterface(), "Class %s is not an interface.", api.getName());
+		Object result = proxies.get(api);
+		if (result == null) {
+			Object newResult = Proxy.newProxyInstance(api.getClassLoader(), new Class<?>[] {api}, this::invoke);
+			result = proxies.putIfAbsent(api, newResult);
+			if (result == null) {
+				result = newResult;
+			}
+		}
+		return api.cast(result);
+	}
+
+	private Object invoke(Object proxy, Method method, Object[] args) {
+		if (method.getDeclaringClass() == Object.class) {
+			switch (method.getName()) {
+				case "equals"   : return proxy == args[0];
+				case "hashCode" : return System.identityHashCode(proxy);
+				default         : return "PLSQL proxy of " + proxy.getClass().getInterfaces()[0].getName();
+			}
+		}
+		Object[] arguments = args == null ? NO_ARGUMENTS : args;
+		if (CallPlan.isAsync(method)) {
+			return CompletableFuture.supplyAsync(() -> plan(method).call(executor, arguments), asyncExecutor);
+		}
+		return plan(method).call(executor, arguments);
+	}
+
+	/**
+	 * @param method
+	 * @return call plan of method, created on first call (concurrent first calls may create plan more than once,
+	 * only one instance is published)
+	 * @throws IllegalStateException if signature is wrapped in package whose installed version does not match
+	 */
+	CallPlan plan(Method method) {
+		CallPlan result = plans.get(method);
+		if (result == null) {
+			CallPlan newResult = new CallPlan(typeGraph, method, wrappers::get, optimized);
+			WrapperPackage wrapper = newResult.getWrapper();
+			if (wrapper != null && !checkedWrappers.contains(wrapper)) {
+				wrapper.checkVersion(executor);
+				checkedWrappers.add(wrapper);
+			}
+			result = plans.putIfAbsent(method, newResult);
+			if (result == null) {
+				result = newResult;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Executes block for marshalled tree: computes values of IN binds, executes block, reads values of OUT binds
+	 * into new tree and unmarshals OUT values. Common path of {@link CallPlan}, {@link BatchCall} and {@link CallGroup}.
+	 * @param executor
+	 * @param block block generated for tree or call of wrapper procedure, binds are matched to columns by name
+	 * @param tot marshalled tree
+	 * @param plan packed columns of tree
+	 * @param encoded encoded columns of tree
+	 * @param encodedPointers pointers of tree bound as RAW
+	 * @param bitmaps deletions of tree bound as RAW
+	 * @param typeNodeTree type node tree of signature, tree receiving OUT values is created from it
+	 * @param unmarshallers creates unmarshaller of tree filled with OUT values
+	 * @param outParameterNames names of unmarshalled parameters
+	 * @return unmarshalled OUT values by name
+	 */
+	static Map<String,Object> execute(Executor executor, BlockGenerator.Block block, TransferObjectTree tot, ColumnPacking.Plan plan,
+			Map<PrimitiveCollection,ColumnCodec.Encoded> encoded, Map<Pointers,PointersCodec.Encoded> encodedPointers, Map<Deletions,DeletionsBitmap> bitmaps,
+			TypeNodeTree typeNodeTree, Function<TransferObjectTree,Unmarshaller> unmarshallers, List<String> outParameterNames) {
+		Map<String,Object> bindValues = BlockGenerator.bindValues(block, tot, plan, encoded, encodedPointers, bitmaps);
+		List<Object> inBindValues = Lists.newArrayList();
+		List<String> outBindNames = Lists.newArrayList();
+		for (BlockGenerator.Bind bind : block.getBinds()) {
+			if (bind.isIn()) {
+				inBindValues.add(bindValues.get(bind.getName()));
+			}
+			if (bind.isOut()) {
+				outBindNames.add(bind.getName());
+			}
+		}
+		List<Object> outBindValues = executor.execute(block, inBindValues);
+		checkState(outBindValues.size() == outBindNames.size(), "Executor returned %s OUT values, block of %s has %s OUT binds.",
+				outBindValues.size(), tot.getTypeTreeRoot().getType().getName(), outBindNames.size());
+		Map<String,Object> outValuesByName = Maps.newHashMapWithExpectedSize(outBindNames.size());
+		for (int i = 0; i < outBindNames.size(); i++) {
+			outValuesByName.put(outBindNames.get(i), outBindValues.get(i));
+		}
+		TransferObjectTree received = typeNodeTree.toTransferObjectTree();
+		BlockGenerator.readOutValues(received, outValuesByName);
+		return unmarshallers.apply(received).unmarshalAll(outParameterNames);
+	}
+
+	/**
+	 * Passes OUT value back into argument of Java method.
+	 */
+	private interface OutWriter {
+
+		void write(Object argument, Object value);
+
+	}
+
+	/**
+	 * Everything what is needed for calling PLSQL signature through Java method, resolved once per method.
+	 * Transfer object tree of every call is created from type node tree of plan.
+	 */
+	static final class CallPlan {
+
+		private static final ColumnPacking.Plan NO_PACKING = new ColumnPacking.Plan();
+
+		private final AbstractSignature signature;
+
+		private final TypeNodeTree typeNodeTree;
+
+		/**
+		 * Wrapper package containing signature, null if signature is called by anonymous block.
+		 */
+		private final WrapperPackage wrapper;
+
+		/**
+		 * PLSQL names of parameters, in order of Java parameters.
+		 */
+		private final ImmutableList<String> parameterNames;
+
+		/**
+		 * Converts Java argument into marshalled value (null for OUT parameters), in order of Java parameters.
+		 */
+		private final ImmutableList<Function<Object,Object>> inValues;
+
+		/**
+		 * Passes OUT value back (no-op for IN parameters), in order of Java parameters.
+		 */
+		private final ImmutableList<OutWriter> outWriters;
+
+		/**
+		 * Names of unmarshalled parameters, including {@link FunctionSignature#RETURN_LABEL}.
+		 */
+		private final ImmutableList<String> outParameterNames;
+
+		private final ImmutableMap<RecordType,Class<?>> recordClasses;
+
+		private final ImmutableSet<IndexByTableType> intKeyMaps;
+
+		/**
+		 * Whether method returns {@link CompletableFuture}.
+		 */
+		private final boolean async;
+
+		/**
+		 * Whether tree of every call is optimized, packed and encoded according to its data.
+		 */
+		private final boolean optimized;
+
+		/**
+		 * @param typeGraph
+		 * @param method
+		 * @param wrappers finds wrapper package by name of signature (null if signature is not wrapped)
+		 * @param optimized whether tree of every call is optimized, packed and encoded according to its data
+		 */
+		CallPlan(TypeGraph typeGraph, Method method, Function<String,WrapperPackage> wrappers, boolean optimized) {
+			Plsql.Procedure procedure = method.getAnnotation(Plsql.Procedure.class);
+			Plsql.Function function = method.getAnnotation(Plsql.Function.class);
+			checkArgument(procedure != null ^ function != null, "Method %s must be annotated either with @Plsql.Procedure or with @Plsql.Function.", method);
+			this.signature = procedure != null
+					? typeGraph.findType(ProcedureSignature.class, procedure.value())
+					: typeGraph.findType(FunctionSignature.class, function.value());
+			checkArgument(signature != null, "Signature of method %s not found in type graph.", method);
+			this.async = isAsync(method);
+			java.lang.reflect.Type returnType = async ? typeArgument(method.getGenericReturnType(), 0) : method.getGenericReturnType();
+			checkArgument(procedure == null || returnType == void.class || async && returnType == Void.class,
+					"Method %s representing procedure must return void or CompletableFuture<Void>.", method);
+			checkArgument(function == null || returnType != void.class && returnType != Void.class, "Method %s representing function must return value.", method);
+			Map<String,Parameter> parameters = signature.getParameters();
+			checkArgument(parameters.size() == method.getParameterCount(), "Method %s has %s parameters, signature %s has %s parameters.",
+					method, method.getParameterCount(), signature.getName(), parameters.size());
+			Map<RecordType,Class<?>> recordClasses = Maps.newHashMap();
+			Set<IndexByTableType> intKeyMaps = Sets.newHashSet();
+			JavaTypes javaTypes = new JavaTypes(recordClasses, intKeyMaps);
+			ImmutableList.Builder<String> outParameterNames = ImmutableList.builder();
+			ImmutableList.Builder<Function<Object,Object>> inValues = ImmutableList.builder();
+			ImmutableList.Builder<OutWriter> outWriters = ImmutableList.builder();
+			Class<?>[] javaClasses = method.getParameterTypes();
+			java.lang.reflect.Type[] javaTypeArray = method.getGenericParameterTypes();
+			Annotation[][] annotations = method.getParameterAnnotations();
+			int i = 0;
+			for (Map.Entry<String,Parameter> e : parameters.entrySet()) {
+				String parameterName = e.getKey();
+				ParameterMode mode = e.getValue().getParameterMode();
+				checkArgument(mode == mode(annotations[i]), "Parameter %s of method %s is %s parameter, it must be annotated accordingly.", parameterName, method, mode);
+				boolean holder = AtomicReference.class.isAssignableFrom(javaClasses[i]);
+				java.lang.reflect.Type javaType = holder ? typeArgument(javaTypeArray[i], 0) : javaTypeArray[i];
+				e.getValue().getType().accept(javaTypes, javaType);
+				inValues.add(mode == ParameterMode.OUT ? a -> null : holder ? a -> ((AtomicReference<?>)a).get() : a -> a);
+				if (mode == ParameterMode.IN) {
+					outWriters.add((a, v) -> {});
+				} else {
+					outWriters.add(writer(e.getValue().getType(), javaClasses[i], parameterName));
+					outParameterNames.add(parameterName);
+				}
+				i++;
+			}
+			if (function != null) {
+				((FunctionSignature)signature).getReturnType().accept(javaTypes, returnType);
+				outParameterNames.add(FunctionSignature.RETURN_LABEL);
+			}
+			this.typeNodeTree = typeGraph.toTypeNodeTree(signature);
+			this.wrapper = wrappers.apply(signature.getName());
+			this.parameterNames = ImmutableList.copyOf(parameters.keySet());
+			this.inValues = inValues.build();
+			this.outWriters = outWriters.build();
+			this.outParameterNames = outParameterNames.build();
+			this.recordClasses = ImmutableMap.copyOf(recordClasses);
+			this.intKeyMaps = ImmutableSet.copyOf(intKeyMaps);
+			this.optimized = optimized;
+		}
+
+		private static ParameterMode mode(Annotation[] annotations) {
+			ParameterMode result = ParameterMode.IN;
+			for (Annotation annotation : annotations) {
+				if (annotation instanceof Plsql.Out) {
+					result = ParameterMode.OUT;
+				} else if (annotation instanceof Plsql.InOut) {
+					result = ParameterMode.INOUT;
+				}
+			}
+			return result;
+		}
+
+		AbstractSignature getSignature() {
+			return signature;
+		}
+
+		/**
+		 * @return wrapper package containing signature, null if signature is called by anonymous block
+		 */
+		WrapperPackage getWrapper() {
+			return wrapper;
+		}
+
+		boolean isAsync() {
+			return async;
+		}
+
+		/**
+		 * @param method
+		 * @return true if method returns {@link CompletableFuture} and is called asynchronously
+		 */
+		static boolean isAsync(Method method) {
+			return CompletableFuture.class == method.getReturnType();
+		}
+
+		/**
+		 * Marshals arguments, executes block, unmarshals OUT values and passes them back into arguments.
+		 * Anonymous block is generated once for signature (or, if plan is optimized, for shape of optimized, packed and encoded columns
+		 * and encoded pointers of this call), wrapped signature is called through wrapper procedure with plainly bound columns.
+		 * @param executor
+		 * @param args arguments of Java method
+		 * @return return value of function, null for procedure
+		 */
+		Object call(Executor executor, Object[] args) {
+			List<Object> arguments = new ArrayList<>(args.length);
+			for (int i = 0; i < args.length; i++) {
+				arguments.add(inValues.get(i).apply(args[i]));
+			}
+			TransferObjectTree tot = typeNodeTree.toTransferObjectTree();
+			Marshaller.marshal(tot, arguments);
+			BlockGenerator.Block block;
+			ColumnPacking.Plan packing = NO_PACKING;
+			Map<PrimitiveCollection,ColumnCodec.Encoded> encoded = Collections.emptyMap();
+			Map<Pointers,PointersCodec.Encoded> encodedPointers = Collections.emptyMap();
+			Map<Deletions,DeletionsBitmap> bitmaps = Collections.emptyMap();
+			if (wrapper != null) {
+				block = wrapper.getCall(signature);
+			} else if (!optimized) {
+				block = BlockGenerator.generate(tot);
+			} else {
+				TransferObjectOptimizer.optimize(tot);
+				packing = ColumnPacking.pack(tot);
+				encoded = ColumnCodec.encodeAll(tot, ColumnCodec.DEFAULT_DICTIONARY_THRESHOLD);
+				encodedPointers = PointersCodec.encodeAll(tot);
+				bitmaps = DeletionsBitmap.encodeAll(tot);
+				block = BlockGenerator.generate(tot, packing, encoded, encodedPointers, bitmaps);
+			}
+			Map<String,Object> values = PlsqlRuntime.execute(executor, block, tot, packing, encoded, encodedPointers, bitmaps, typeNodeTree,
+					received -> new Unmarshaller(received, recordClasses::get, intKeyMaps::contains, true, Integer.MAX_VALUE), outParameterNames);
+			for (int i = 0; i < args.length; i++) {
+				outWriters.get(i).write(args[i], values.get(parameterNames.get(i)));
+			}
+			return values.get(FunctionSignature.RETURN_LABEL);
+		}
+
+		/**
+		 * @param type PLSQL type of parameter
+		 * @param javaClass Java type of parameter
+		 * @param parameterName
+		 * @return writer of OUT value into argument of given Java type
+		 */
+		@SuppressWarnings("unchecked")
+		private static OutWriter writer(AbstractType type, Class<?> javaClass, String parameterName) {
+			if (AtomicReference.class.isAssignableFrom(javaClass)) {
+				return (a, v) -> ((AtomicReference<Object>)checkNotNull(a, "Holder of %s must not be null.", parameterName)).set(v);
+			} else if (StringBuilder.class == javaClass) {
+				return (a, v) -> {
+					StringBuilder target = (StringBuilder)checkNotNull(a, "Argument %s must not be null.", parameterName);
+					target.setLength(0);
+					if (v != null) {
+						target.append(v);
+					}
+				};
+			} else if (Map.class.isAssignableFrom(javaClass)) {
+				return (a, v) -> {
+					Map<Object,Object> target = (Map<Object,Object>)checkNotNull(a, "Argument %s must not be null.", parameterName);
+					target.clear();
+					if (v instanceof Map) {
+						target.putAll((Map<?,?>)v);
+					} else if (v != null) {
+						int index = 1;
+						for (Object element : (List<?>)v) {
+							target.put(index++, element);
+						}
+					}
+				};
+			} else if (Collection.class.isAssignableFrom(javaClass)) {
+				return (a, v) -> {
+					Collection<Object> target = (Collection<Object>)checkNotNull(a, "Argument %s must not be null.", parameterName);
+					checkState(!(v instanceof Map), "Nested table %s with deleted elements cannot be passed back through collection.", parameterName);
+					target.clear();
+					if (v != null) {
+						target.addAll((Collection<?>)v);
+					}
+				};
+			} else if (javaClass.isArray() && !javaClass.getComponentType().isPrimitive()) {
+				return (a, v) -> {
+					Object[] target = (Object[])checkNotNull(a, "Argument %s must not be null.", parameterName);
+					Object[] source = v == null ? new Object[0] : ((List<?>)v).toArray();
+					checkState(target.length == source.length, "Array %s has length %s, OUT value has %s elements.", parameterName, target.length, source.length);
+					System.arraycopy(source, 0, target, 0, source.length);
+				};
+			} else if (type instanceof RecordType && !javaClass.isInterface() && javaClass != Object.class) {
+				RecordAccessor accessor = RecordAccessor.forClass(javaClass);
+				return (a, v) -> {
+					Object source = v != null ? v : accessor.newInstance();
+					checkNotNull(a, "Argument %s must not be null.", parameterName);
+					for (int i = 0; i < accessor.size(); i++) {
+						accessor.set(a, i, accessor.get(source, i));
+					}
+				};
+			}
+			throw new IllegalArgumentException(String.format("Value of parameter %s cannot be passed back through immutable %s, use %s.",
+					parameterName, javaClass.getName(), AtomicReference.class.getName()));
+		}
+
+	}
+
+	/**
+	 * Walks PLSQL type along with Java generic type representing it and collects Java classes of records
+	 * and index-by tables represented by {@link IntKeyMap}, which is information needed by {@link Unmarshaller}.
+	 */
+	private static final class JavaTypes implements TypeVisitorA<java.lang.reflect.Type> {
+
+		private final Map<RecordType,Class<?>> recordClasses;
+
+		private final Set<IndexByTableType> intKeyMaps;
+
+		JavaTypes(Map<RecordType,Class<?>> recordClasses, Set<IndexByTableType> intKeyMaps) {
+			this.recordClasses = recordClasses;
+			this.intKeyMaps = intKeyMaps;
+		}
+
+		@Override
+		public void visitProcedureSignature(ProcedureSignature type, java.lang.reflect.Type javaType) {
+			throw new IllegalStateException("Signature cannot be nested.");
+		}
+
+		@Override
+		public void visitFunctionSignature(FunctionSignature type, java.lang.reflect.Type javaType) {
+			throw new IllegalStateException("Signature cannot be nested.");
+		}
+
+		@Override
+		public void visitRecord(RecordType type, java.lang.reflect.Type javaType) {
+			Class<?> recordClass = rawClass(javaType);
+			if (Map.class.isAssignableFrom(recordClass) || recordClass == Object.class || recordClass.isInterface()) {
+				return;
+			}
+			Class<?> existing = recordClasses.put(type, recordClass);
+			checkArgument(existing == null || existing == recordClass, "Record %s is represented both by %s and %s.", type.getName(), existing, recordClass);
+			Map<String,Field> fields = Maps.newHashMap();
+			for (Field field : RecordAccessor.recordFields(recordClass)) {
+				fields.put(RecordAccessor.plsqlName(field), field);
+			}
+			checkArgument(fields.size() == type.getFields().size(), "Class %s has %s fields, record %s has %s fields.",
+					recordClass.getName(), fields.size(), type.getName(), type.getFields().size());
+			for (Map.Entry<String,AbstractType> e : type.getFields().entrySet()) {
+				Field field = fields.get(e.getKey());
+				checkArgument(field != null, "Class %s has no field %s of record %s.", recordClass.getName(), e.getKey(), type.getName());
+				e.getValue().accept(this, field.getGenericType());
+			}
+		}
+
+		@Override
+		public void visitVarray(VarrayType type, java.lang.reflect.Type javaType) {
+			type.getElementType().accept(this, elementType(javaType));
+		}
+
+		@Override
+		public void visitNestedTable(NestedTableType type, java.lang.reflect.Type javaType) {
+			type.getElementType().accept(this, elementType(javaType));
+		}
+
+		@Override
+		public void visitIndexByTable(IndexByTableType type, java.lang.reflect.Type javaType) {
+			if (IntKeyMap.class.isAssignableFrom(rawClass(javaType))) {
+				intKeyMaps.add(type);
+			}
+			type.getElementType().accept(this, elementType(javaType));
+		}
+
+		@Override
+		public void visitPrimitive(AbstractPrimitiveType type, java.lang.reflect.Type javaType) {
+		}
+
+	}
+
+	private static Class<?> rawClass(java.lang.reflect.Type javaType) {
+		if (javaType instanceof Class) {
+			return (Class<?>)javaType;
+		} else if (javaType instanceof ParameterizedType) {
+			return rawClass(((ParameterizedType)javaType).getRawType());
+		} else if (javaType instanceof GenericArrayType) {
+			return java.lang.reflect.Array.newInstance(rawClass(((GenericArrayType)javaType).getGenericComponentType()), 0).getClass();
+		} else if (javaType instanceof WildcardType) {
+			return rawClass(((WildcardType)javaType).getUpperBounds()[0]);
+		} else if (javaType instanceof TypeVariable) {
+			return rawClass(((TypeVariable<?>)javaType).getBounds()[0]);
+		}
+		return Object.class;
+	}
+
+	private static java.lang.reflect.Type typeArgument(java.lang.reflect.Type javaType, int index) {
+		if (javaType instanceof ParameterizedType) {
+			java.lang.reflect.Type[] arguments = ((ParameterizedType)javaType).getActualTypeArguments();
+			return index < arguments.length ? arguments[index] : Object.class;
+		}
+		return Object.class;
+	}
+
+	/**
+	 * @param javaType Java representation of collection
+	 * @return Java type of element: component of array, value of map (except {@link IntKeyMap}) or element of collection
+	 */
+	private static java.lang.reflect.Type elementType(java.lang.reflect.Type javaType) {
+		if (javaType instanceof GenericArrayType) {
+			return ((GenericArrayType)javaType).getGenericComponentType();
+		}
+		Class<?> rawClass = rawClass(javaType);
+		if (rawClass.isArray()) {
+			return rawClass.getComponentType();
+		}
+		return typeArgument(javaType, Map.class.isAssignableFrom(rawClass) && !IntKeyMap.class.isAssignableFrom(rawClass) ? 1 : 0);
+	}
+
+}
@@ -0,0 +1,436 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import plsql.MarshallerTest.Record3;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link PlsqlRuntime}. Generated blocks are executed by {@link BlockInterpreter}.
+ * @author Tomas Zalusky
+ */
+public class PlsqlRuntimeTest extends AbstractTypeGraphTest {
+
+	interface AllTypes {
+
+		@Plsql.Function("echo")
+		int echo(
+				Map<Integer,Map<String,Object>> inputIbt1,
+				List<List<Record3>> inputVar1,
+				List<List<Record3>> inputNst2,
+				Map<Integer,List<Record3>> inputNst3,
+				Map<String,Object> inputRec1,
+				List<Map<String,List<String>>> inputVar3,
+				Map<Integer,Map<String,List<String>>> inputIbt2,
+				List<Map<String,List<String>>> inputNst1,
+				Map<String,Object> inputIbt3,
+				List<List<String>> inputVar2,
+				String inputClob,
+				@Plsql.Out Map<Integer,Map<String,Object>> outputIbt1,
+				@Plsql.Out List<List<Record3>> outputVar1,
+				@Plsql.Out List<List<Record3>> outputNst2,
+				@Plsql.Out Map<Integer,List<Record3>> outputNst3,
+				@Plsql.Out Map<String,Object> outputRec1,
+				@Plsql.Out List<Map<String,List<String>>> outputVar3,
+				@Plsql.Out Map<Integer,Map<String,List<String>>> outputIbt2,
+				@Plsql.Out List<Map<String,List<String>>> outputNst1,
+				@Plsql.Out Map<String,Object> outputIbt3,
+				@Plsql.Out List<List<String>> outputVar2,
+				@Plsql.Out StringBuilder outputClob);
+
+	}
+
+	/**
+	 * Record <code>a_test_package.rec1</code> with fields declared in reverse order.
+	 */
+	static class Record1 {
+		@Plsql.Name("f_ibt5")
+		private Map<String,List<String>> ibt5;
+		@Plsql.Name("f_binary_integer")
+		private Integer binary;
+		@Plsql.Name("f_ibt4")
+		private Map<String,BigDecimal> ibt4;
+		@Plsql.Name("f_nst4")
+		private List<Record3> nst4;
+	}
+
+	interface RecordEcho {
+
+		@Plsql.Function("echo")
+		int echo(Object inputIbt1, Object inputVar1, Object inputNst2, Object inputNst3, Record1 inputRec1, Object inputVar3,
+				Object inputIbt2, Object inputNst1, Object inputIbt3, Object inputVar2, String inputClob,
+				@Plsql.Out AtomicReference<Object> outputIbt1, @Plsql.Out AtomicReference<Object> outputVar1,
+				@Plsql.Out AtomicReference<Object> outputNst2, @Plsql.Out AtomicReference<Object> outputNst3,
+				@Plsql.Out Record1 outputRec1, @Plsql.Out AtomicReference<Object> outputVar3,
+				@Plsql.Out AtomicReference<Object> outputIbt2, @Plsql.Out AtomicReference<Object> outputNst1,
+				@Plsql.Out AtomicReference<Object> outputIbt3, @Plsql.Out AtomicReference<Object> outputVar2,
+				@Plsql.Out StringBuilder outputClob);
+
+	}
+
+	interface Modify {
+
+		@Plsql.Procedure("a_test_package.modify")
+		void modify(@Plsql.InOut List<String> nst, boolean flag, @Plsql.InOut AtomicReference<BigDecimal> num);
+
+		@Plsql.Procedure("a_test_package.modify")
+		void missingMode(List<String> nst, boolean flag, @Plsql.InOut AtomicReference<BigDecimal> num);
+
+		@Plsql.Procedure("a_test_package.modify")
+		void immutable(@Plsql.InOut List<String> nst, boolean flag, @Plsql.InOut BigDecimal num);
+
+		@Plsql.Procedure("a_test_package.unknown")
+		void unknown();
+
+		@Plsql.Procedure("a_test_package.modify")
+		CompletableFuture<Void> modifyAsync(@Plsql.InOut List<String> nst, boolean flag, @Plsql.InOut AtomicReference<BigDecimal> num);
+
+		@Plsql.Procedure("a_test_package.modify")
+		CompletableFuture<String> valuedAsync(@Plsql.InOut List<String> nst, boolean flag, @Plsql.InOut AtomicReference<BigDecimal> num);
+
+	}
+
+	private static final BlockInterpreter.Executable MODIFY = (name, arguments) -> {
+		assertEquals("a_test_package.modify", name);
+		@SuppressWarnings("unchecked")
+		TreeMap<Object,Object> nst = (TreeMap<Object,Object>)arguments.get("pio_nst");
+		nst.put(nst.size() + 1, "added");
+		if ((Boolean)arguments.get("pi_flag")) {
+			arguments.put("pio_num", ((BigDecimal)arguments.get("pio_num")).negate());
+		}
+		return null;
+	};
+
+	/**
+	 * Size of simulated connection pool in load test.
+	 */
+	private static final int CONNECTIONS = 4;
+
+	private static PlsqlRuntime runtime(String graphName, BlockInterpreter.Executable executable, AtomicInteger executions) throws IOException {
+		return new PlsqlRuntime(loadGraph(graphName), (block, inValues) -> {
+			executions.incrementAndGet();
+			return BlockInterpreter.execute(block.getText(), inValues, executable);
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testEcho() throws IOException {
+		AtomicInteger executions = new AtomicInteger();
+		PlsqlRuntime runtime = runtime("alltypes", BlockGeneratorTest.ECHO, executions);
+		AllTypes proxy = runtime.execute(AllTypes.class);
+		assertSame(proxy, runtime.execute(AllTypes.class));
+		Map<String,Object> a = BlockGeneratorTest.ARGUMENTS;
+		List<Object> outputs = Lists.<Object>newArrayList(new HashMap<>(), new ArrayList<>(), new ArrayList<>(), new HashMap<>(), new HashMap<>(),
+				new ArrayList<>(), new HashMap<>(), new ArrayList<>(), new HashMap<>(), new ArrayList<>(), new StringBuilder("previous"));
+		for (int round = 0; round < 2; round++) {
+			int result = proxy.echo(
+					(Map<Integer,Map<String,Object>>)a.get("pi_ibt1"), (List<List<Record3>>)a.get("pi_var1"), (List<List<Record3>>)a.get("pi_nst2"),
+					(Map<Integer,List<Record3>>)a.get("pi_nst3"), (Map<String,Object>)a.get("pi_rec1"), (List<Map<String,List<String>>>)a.get("pi_var3"),
+					(Map<Integer,Map<String,List<String>>>)a.get("pi_ibt2"), (List<Map<String,List<String>>>)a.get("pi_nst1"), (Map<String,Object>)a.get("pi_ibt3"),
+					(List<List<String>>)a.get("pi_var2"), (String)a.get("pi_clob"),
+					(Map<Integer,Map<String,Object>>)outputs.get(0), (List<List<Record3>>)outputs.get(1), (List<List<Record3>>)outputs.get(2),
+					(Map<Integer,List<Record3>>)outputs.get(3), (Map<String,Object>)outputs.get(4), (List<Map<String,List<String>>>)outputs.get(5),
+					(Map<Integer,Map<String,List<String>>>)outputs.get(6), (List<Map<String,List<String>>>)outputs.get(7), (Map<String,Object>)outputs.get(8),
+					(List<List<String>>)outputs.get(9), (StringBuilder)outputs.get(10));
+			assertEquals(BlockGeneratorTest.RETURN_VALUE, result);
+			int i = 0;
+			for (String name : ImmutableList.of("ibt1","var1","nst2","nst3","rec1","var3","ibt2","nst1","ibt3","var2","clob")) {
+				Object output = outputs.get(i++);
+				assertEquals(name, a.get("pi_" + name), output instanceof StringBuilder ? output.toString() : output);
+			}
+		}
+		assertEquals(2, executions.get());
+	}
+
+	@Test
+	public void testPlanCached() throws IOException, NoSuchMethodException {
+		PlsqlRuntime runtime = runtime("inout", MODIFY, new AtomicInteger());
+		Modify proxy = runtime.execute(Modify.class);
+		proxy.modify(Lists.newArrayList("a"), false, new AtomicReference<>(BigDecimal.ONE));
+		PlsqlRuntime.CallPlan plan = runtime.plan(Modify.class.getMethod("modify", List.class, boolean.class, AtomicReference.class));
+		proxy.modify(Lists.newArrayList("a"), false, new AtomicReference<>(BigDecimal.ONE));
+		assertSame(plan, runtime.plan(Modify.class.getMethod("modify", List.class, boolean.class, AtomicReference.class)));
+		assertEquals("a_test_package.modify", plan.getSignature().getName());
+		assertEquals(null, plan.getWrapper());
+	}
+
+	/**
+	 * By default, block text does not depend on data of call. Optimized runtime generates block for shape
+	 * of optimized and encoded columns of every call (here trivial pointers are elided and derived from length of column).
+	 */
+	@Test
+	public void testOptimizedPerCall() throws IOException {
+		List<String> texts = Lists.newArrayList();
+		PlsqlRuntime.Executor executor = (block, inValues) -> {
+			texts.add(block.getText());
+			return BlockInterpreter.execute(block.getText(), inValues, MODIFY);
+		};
+		Modify proxy = new PlsqlRuntime(loadGraph("inout"), executor).execute(Modify.class);
+		List<String> distinct = Lists.newArrayList("a", "b");
+		proxy.modify(distinct, false, new AtomicReference<>(BigDecimal.ONE));
+		List<String> constant = Lists.newArrayList(Collections.nCopies(50, "a"));
+		proxy.modify(constant, false, new AtomicReference<>(BigDecimal.ONE));
+		assertEquals(ImmutableList.of("a", "b", "added"), distinct);
+		assertEquals(51, constant.size());
+		assertTrue(texts.get(0), texts.get(0).contains("a_test_package.modify("));
+		assertEquals(texts.get(0), texts.get(1));
+		assertFalse(texts.get(0), texts.get(0).contains("c1e.count + 1"));
+		Modify optimized = new PlsqlRuntime(loadGraph("inout"), executor, PlsqlRuntime.defaultAsyncExecutor(), ImmutableList.<WrapperPackage>of(), true)
+				.execute(Modify.class);
+		distinct = Lists.newArrayList("a", "b");
+		optimized.modify(distinct, false, new AtomicReference<>(BigDecimal.ONE));
+		assertEquals(ImmutableList.of("a", "b", "added"), distinct);
+		assertTrue(texts.get(2), texts.get(2).contains("c1e.count + 1"));
+	}
+
+	@Test
+	public void testWrapperPackage() throws IOException {
+		TypeGraph graph = loadGraph("inout");
+		WrapperPackage wrapper = WrapperPackage.createForPackages(graph, "pw_").get(0);
+		String body = wrapper.getBody();
+		List<String> texts = Lists.newArrayList();
+		PlsqlRuntime.Executor executor = (block, inValues) -> {
+			texts.add(block.getText());
+			if (block.getText().equals(wrapper.getVersionCall())) {
+				return ImmutableList.<Object>of(wrapper.getFingerprint());
+			}
+			Iterator<Object> in = inValues.iterator();
+			List<Object> parameterValues = Lists.newArrayList();
+			for (BlockGenerator.Bind bind : block.getBinds()) {
+				parameterValues.add(bind.isIn() ? in.next() : null);
+			}
+			return BlockInterpreter.executeProcedure(body, "modify", parameterValues, MODIFY);
+		};
+		PlsqlRuntime runtime = new PlsqlRuntime(graph, executor, PlsqlRuntime.defaultAsyncExecutor(), ImmutableList.of(wrapper));
+		Modify proxy = runtime.execute(Modify.class);
+		List<String> nst = Lists.newArrayList("a");
+		AtomicReference<BigDecimal> num = new AtomicReference<>(new BigDecimal("25"));
+		proxy.modify(nst, true, num);
+		proxy.modify(nst, true, num);
+		assertEquals(ImmutableList.of("a", "added", "added"), nst);
+		assertEquals(new BigDecimal("25"), num.get());
+		assertEquals(ImmutableList.of(wrapper.getVersionCall(), wrapper.getCall(modify(graph)).getText(), wrapper.getCall(modify(graph)).getText()), texts);
+	}
+
+	@Test
+	public void testWrapperPackageOutdated() throws IOException {
+		TypeGraph graph = loadGraph("inout");
+		WrapperPackage wrapper = WrapperPackage.createForPackages(graph, "pw_").get(0);
+		PlsqlRuntime runtime = new PlsqlRuntime(graph, (block, inValues) -> ImmutableList.<Object>of("outdated"),
+				PlsqlRuntime.defaultAsyncExecutor(), ImmutableList.of(wrapper));
+		try {
+			runtime.execute(Modify.class).modify(Lists.newArrayList("a"), true, new AtomicReference<>(BigDecimal.ONE));
+			fail();
+		} catch (IllegalStateException expected) {
+			assertTrue(expected.getMessage(), expected.getMessage().contains("pw_a_test_package"));
+		}
+	}
+
+	private static ProcedureSignature modify(TypeGraph graph) {
+		return graph.findType(ProcedureSignature.class, "a_test_package.modify");
+	}
+
+	/**
+	 * Fields of record class are declared in order different from order of record fields.
+	 */
+	@Test
+	public void testRecordFieldsByName() throws IOException {
+		Map<String,Object> a = BlockGeneratorTest.ARGUMENTS;
+		Record1 input = new Record1();
+		input.nst4 = ImmutableList.of(new Record3(true, 1), new Record3(false, 2));
+		input.ibt4 = ImmutableMap.of("k", new BigDecimal("3"));
+		input.binary = 4;
+		input.ibt5 = ImmutableMap.of("x", ImmutableList.of("y"));
+		Record1 output = new Record1();
+		AtomicReference<Object> var1 = new AtomicReference<>();
+		runtime("alltypes", BlockGeneratorTest.ECHO, new AtomicInteger()).execute(RecordEcho.class).echo(
+				a.get("pi_ibt1"), a.get("pi_var1"), a.get("pi_nst2"), a.get("pi_nst3"), input, a.get("pi_var3"),
+				a.get("pi_ibt2"), a.get("pi_nst1"), a.get("pi_ibt3"), a.get("pi_var2"), (String)a.get("pi_clob"),
+				new AtomicReference<>(), var1, new AtomicReference<>(), new AtomicReference<>(),
+				output, new AtomicReference<>(), new AtomicReference<>(), new AtomicReference<>(),
+				new AtomicReference<>(), new AtomicReference<>(), new StringBuilder());
+		assertEquals(a.get("pi_var1"), var1.get());
+		assertEquals(input.nst4, output.nst4);
+		assertTrue(output.nst4.get(0) instanceof Record3);
+		assertEquals(input.ibt4, output.ibt4);
+		assertEquals(input.binary, output.binary);
+		assertEquals(input.ibt5, output.ibt5);
+	}
+
+	@Test
+	public void testInOut() throws IOException {
+		Modify proxy = runtime("inout", MODIFY, new AtomicInteger()).execute(Modify.class);
+		List<String> nst = Lists.newArrayList("a","b");
+		AtomicReference<BigDecimal> num = new AtomicReference<>(new BigDecimal("25"));
+		proxy.modify(nst, true, num);
+		assertEquals(ImmutableList.of("a","b","added"), nst);
+		assertEquals(new BigDecimal("-25"), num.get());
+		proxy.modify(nst, false, num);
+		assertEquals(ImmutableList.of("a","b","added","added"), nst);
+		assertEquals(new BigDecimal("-25"), num.get());
+	}
+
+	@Test
+	public void testObjectMethods() throws IOException {
+		PlsqlRuntime runtime = runtime("inout", MODIFY, new AtomicInteger());
+		Modify proxy = runtime.execute(Modify.class);
+		assertEquals(proxy, proxy);
+		assertNotEquals(proxy, runtime("inout", MODIFY, new AtomicInteger()).execute(Modify.class));
+		assertEquals(System.identityHashCode(proxy), proxy.hashCode());
+		assertTrue(proxy.toString(), proxy.toString().contains(Modify.class.getName()));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMissingMode() throws IOException {
+		runtime("inout", MODIFY, new AtomicInteger()).execute(Modify.class).missingMode(Lists.newArrayList("a"), false, new AtomicReference<>(BigDecimal.ONE));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testImmutableOut() throws IOException {
+		runtime("inout", MODIFY, new AtomicInteger()).execute(Modify.class).immutable(Lists.newArrayList("a"), false, BigDecimal.ONE);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnknownSignature() throws IOException {
+		runtime("inout", MODIFY, new AtomicInteger()).execute(Modify.class).unknown();
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+		AtomicInteger executions = new AtomicInteger();
+		Modify proxy = runtime("inout", MODIFY, executions).execute(Modify.class);
+		List<String> nst = Lists.newArrayList("a");
+		AtomicReference<BigDecimal> num = new AtomicReference<>(new BigDecimal("25"));
+		CompletableFuture<Void> future = proxy.modifyAsync(nst, true, num);
+		assertEquals(null, future.get(10, TimeUnit.SECONDS));
+		assertEquals(ImmutableList.of("a","added"), nst);
+		assertEquals(new BigDecimal("-25"), num.get());
+		assertEquals(1, executions.get());
+		assertTrue(runtime("inout", MODIFY, executions).plan(Modify.class.getMethod("modifyAsync", List.class, boolean.class, AtomicReference.class)).isAsync());
+		assertFalse(runtime("inout", MODIFY, executions).plan(Modify.class.getMethod("modify", List.class, boolean.class, AtomicReference.class)).isAsync());
+	}
+
+	@Test
+	public void testAsyncFailure() throws Exception {
+		Modify proxy = new PlsqlRuntime(loadGraph("inout"), (block, inValues) -> {
+			throw new IllegalStateException("ORA-20001: rejected");
+		}).execute(Modify.class);
+		CompletableFuture<Void> future = proxy.modifyAsync(Lists.newArrayList("a"), true, new AtomicReference<>(BigDecimal.ONE));
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException expected) {
+			assertEquals("ORA-20001: rejected", expected.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testAsyncProcedureWithValue() throws Exception {
+		CompletableFuture<String> future = runtime("inout", MODIFY, new AtomicInteger()).execute(Modify.class)
+				.valuedAsync(Lists.newArrayList("a"), false, new AtomicReference<>(BigDecimal.ONE));
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException expected) {
+			assertTrue(String.valueOf(expected.getCause()), expected.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	/**
+	 * Version of wrapper package is checked by first asynchronous call on asynchronous executor, not on caller thread.
+	 */
+	@Test
+	public void testAsyncWrapperPackageOutdated() throws Exception {
+		TypeGraph graph = loadGraph("inout");
+		WrapperPackage wrapper = WrapperPackage.createForPackages(graph, "pw_").get(0);
+		List<Thread> threads = Lists.newCopyOnWriteArrayList();
+		PlsqlRuntime runtime = new PlsqlRuntime(graph, (block, inValues) -> {
+			threads.add(Thread.currentThread());
+			return ImmutableList.<Object>of("outdated");
+		}, PlsqlRuntime.defaultAsyncExecutor(), ImmutableList.of(wrapper));
+		CompletableFuture<Void> future = runtime.execute(Modify.class).modifyAsync(Lists.newArrayList("a"), true, new AtomicReference<>(BigDecimal.ONE));
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException expected) {
+			assertTrue(String.valueOf(expected.getCause()), expected.getCause() instanceof IllegalStateException);
+			assertTrue(expected.getCause().getMessage(), expected.getCause().getMessage().contains("pw_a_test_package"));
+		}
+		assertEquals(1, threads.size());
+		assertNotEquals(Thread.currentThread(), threads.get(0));
+	}
+
+	/**
+	 * Thousands of calls are in flight at the same time (each of them waits until all are started)
+	 * while at most {@value #CONNECTIONS} blocks are executed at the same time, like with small connection pool.
+	 */
+	@Test
+	public void testAsyncLoad() throws Exception {
+		final int calls = 2000;
+		AtomicInteger inFlight = new AtomicInteger();
+		CountDownLatch allInFlight = new CountDownLatch(calls);
+		Semaphore pool = new Semaphore(CONNECTIONS);
+		AtomicInteger executing = new AtomicInteger();
+		AtomicInteger maxExecuting = new AtomicInteger();
+		PlsqlRuntime runtime = new PlsqlRuntime(loadGraph("inout"), (block, inValues) -> {
+			inFlight.incrementAndGet();
+			allInFlight.countDown();
+			try {
+				assertTrue("not all calls in flight", allInFlight.await(60, TimeUnit.SECONDS));
+				pool.acquire();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			try {
+				maxExecuting.accumulateAndGet(executing.incrementAndGet(), Math::max);
+				return BlockInterpreter.execute(block.getText(), inValues, MODIFY);
+			} finally {
+				executing.decrementAndGet();
+				pool.release();
+			}
+		});
+		Modify proxy = runtime.execute(Modify.class);
+		List<CompletableFuture<Void>> futures = Lists.newArrayList();
+		List<AtomicReference<BigDecimal>> nums = Lists.newArrayList();
+		for (int i = 0; i < calls; i++) {
+			AtomicReference<BigDecimal> num = new AtomicReference<>(new BigDecimal(i));
+			nums.add(num);
+			futures.add(proxy.modifyAsync(Lists.newArrayList("a"), true, num));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(120, TimeUnit.SECONDS);
+		assertEquals(calls, inFlight.get());
+		assertTrue(String.valueOf(maxExecuting.get()), maxExecuting.get() <= CONNECTIONS);
+		for (int i = 0; i < calls; i++) {
+			assertEquals(new BigDecimal(-i), nums.get(i).get());
+		}
+	}
+
+}
@@ -1,8 +1,5 @@
 package plsql;
 
-import java.util.List;
-
-import com.google.common.collect.Lists;
 import com.google.common.collect.Range;
 
 /**
@@ -42,7 +39,7 @@ import com.google.common.collect.Range;
  */
 public abstract class Pointers extends TransferObject {
 
-	private final List<Integer> data = Lists.newArrayList();
+	private final IntList data = new IntList();
 
 	/**
 	 * Indicates usage as trivial navigation collections for single-level collections
@@ -67,5 +64,52 @@ public abstract class Pointers extends TransferObject {
 	protected String toStringDescription() {
 		return String.format("{%s%s}", simple ? "s" : "", deletions ? "q" : "p");
 	}
+
+	boolean isSimple() {
+		return simple;
+	}
+
+	boolean isDeletions() {
+		return deletions;
+	}
+
+	void add(int pointer) {
+		data.add(pointer);
+	}
+
+	IntList getData() {
+		return data;
+	}
+
+	/**
+	 * @return number of collections described by pointers (i.e. number of elements without the last one)
+	 */
+	int count() {
+		return data.size() - 1;
+	}
+
+	/**
+	 * @param i 0-based index of collection
+	 * @return true if i-th collection is null
+	 */
+	boolean isNull(int i) {
+		return data.get(i) < 0;
+	}
+
+	/**
+	 * @param i 0-based index of collection
+	 * @return 1-based lower bound (inclusive) of interval in child collection
+	 */
+	int lowerBound(int i) {
+		return Math.abs(data.get(i));
+	}
+
+	/**
+	 * @param i 0-based index of collection
+	 * @return 1-based upper bound (exclusive) of interval in child collection
+	 */
+	int upperBound(int i) {
+		return Math.abs(data.get(i + 1));
+	}
 	
 }
@@ -0,0 +1,456 @@
+package plsql;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pleasejava.Utils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * <p>
+ * Compact binary encodings of {@link Pointers} content intended for transfer as single RAW value
+ * instead of collection of numbers.
+ * Pointers are monotonic (in absolute value) and for matrix-like data mostly redundant,
+ * hence they can be reconstructed from much smaller information.
+ * </p>
+ * <p>
+ * All encodings start with varint count of pointers, followed by encoding-specific content:
+ * </p>
+ * <ul>
+ * <li>{@link Encoding#PLAIN} - every pointer as 4-byte signed big-endian int (baseline)</li>
+ * <li>{@link Encoding#CONSTANT_STRIDE} - start, stride (size of every non-null collection)
+ * and bitmap of null collections (preceded with flag byte, bitmap is omitted if there is no null collection)</li>
+ * <li>{@link Encoding#RUN_LENGTH} - start and runs of collections of same size and nullity,
+ * every run as pair of varints (run length, size &lt;&lt; 1 | null flag)</li>
+ * <li>{@link Encoding#DELTA_VARINT} - every pointer as varint of (difference of absolute value from previous pointer &lt;&lt; 1 | sign flag),
+ * difference of first pointer is taken from 0</li>
+ * </ul>
+ * <p>
+ * Varints are unsigned, 7 bits per byte, least significant group first, high bit set on all bytes but last.
+ * Null collections always have size 0 (see {@link Pointers}).
+ * </p>
+ * <p>
+ * Pointers whose smallest encoding is not {@link Encoding#PLAIN} are bound as {@link #RAW_TYPE RAW} named <code>id</code>r
+ * instead of number collection, code restoring them on PLSQL side is generated by {@link #appendDecode(StringBuilder, String, String, Encoded)}.
+ * Plain pointers are bound as they are, plain encoding only serves as baseline.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class PointersCodec {
+
+	enum Encoding {PLAIN, CONSTANT_STRIDE, RUN_LENGTH, DELTA_VARINT}
+
+	/**
+	 * Maximal length of RAW variable in PLSQL, longer encodings are not used.
+	 */
+	static final int MAX_RAW_LENGTH = 32767;
+
+	/**
+	 * SQL type of bind carrying encoded pointers.
+	 */
+	static final String RAW_TYPE = "raw(" + MAX_RAW_LENGTH + ")";
+
+	/**
+	 * Auxiliary variables used by decoding code (position in RAW, current byte, decoded values etc.).
+	 */
+	static final ImmutableMap<String,String> AUXILIARIES = ImmutableMap.<String,String>builder()
+			.put("rp", "pls_integer").put("rb", "pls_integer").put("rn", "pls_integer").put("ri", "pls_integer")
+			.put("rr", "pls_integer").put("rz", "pls_integer").put("rf", "pls_integer")
+			.put("ra", "number").put("rs", "number").put("rv", "number").put("rm", "number")
+			.build();
+
+	/**
+	 * Pointers encoded into bytes.
+	 * @author Tomas Zalusky
+	 */
+	static final class Encoded {
+
+		private final Encoding encoding;
+
+		private final byte[] bytes;
+
+		private final int count;
+
+		Encoded(Encoding encoding, byte[] bytes, int count) {
+			this.encoding = encoding;
+			this.bytes = bytes;
+			this.count = count;
+		}
+
+		Encoding getEncoding() {
+			return encoding;
+		}
+
+		byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return size of {@link Encoding#PLAIN} encoding of same pointers
+		 */
+		int getPlainSize() {
+			return plainSize(count);
+		}
+
+		@Override
+		public String toString() {
+			return encoding + "(" + bytes.length + "B)";
+		}
+
+	}
+
+	private PointersCodec() {
+	}
+
+	private static int plainSize(int count) {
+		return varintSize(count) + 4 * count;
+	}
+
+	/**
+	 * Encodes pointers using encoding which produces the smallest result not exceeding {@link #MAX_RAW_LENGTH}
+	 * (in case of equality, earlier encoding in {@link Encoding} order is chosen).
+	 * @param pointers
+	 * @return encoded pointers
+	 */
+	static Encoded encode(Pointers pointers) {
+		int[] data = pointers.getData().toArray();
+		Encoded result = null;
+		for (Encoding encoding : Encoding.values()) {
+			byte[] bytes = encode(data, encoding);
+			if (bytes != null && (result == null || bytes.length < result.bytes.length) && (encoding == Encoding.PLAIN || bytes.length <= MAX_RAW_LENGTH)) {
+				result = new Encoded(encoding, bytes, data.length);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param data pointers
+	 * @param encoding
+	 * @return encoded bytes or null if pointers cannot be encoded using given encoding
+	 */
+	static byte[] encode(int[] data, Encoding encoding) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeVarint(out, data.length);
+		int n = data.length - 1; // number of collections
+		if (encoding != Encoding.PLAIN && (n >= 0 && data[n] < 0 || !isMonotonic(data))) {
+			return null;
+		}
+		switch (encoding) {
+			case PLAIN: {
+				for (int p : data) {
+					out.write(p >>> 24);
+					out.write(p >>> 16);
+					out.write(p >>> 8);
+					out.write(p);
+				}
+				break;
+			}
+			case CONSTANT_STRIDE: {
+				if (n < 0) {
+					return null;
+				}
+				int stride = -1;
+				boolean hasNulls = false;
+				for (int i = 0; i < n; i++) {
+					if (data[i] < 0) {
+						if (size(data, i) != 0) {
+							return null;
+						}
+						hasNulls = true;
+					} else if (stride == -1) {
+						stride = size(data, i);
+					} else if (stride != size(data, i)) {
+						return null;
+					}
+				}
+				writeVarint(out, Math.abs(data[0]));
+				writeVarint(out, Math.max(stride, 0));
+				out.write(hasNulls ? 1 : 0);
+				if (hasNulls) {
+					byte[] bitmap = new byte[(n + 7) / 8];
+					for (int i = 0; i < n; i++) {
+						if (data[i] < 0) {
+							bitmap[i >>> 3] |= 1 << (i & 7);
+						}
+					}
+					out.write(bitmap, 0, bitmap.length);
+				}
+				break;
+			}
+			case RUN_LENGTH: {
+				if (n < 0) {
+					return null;
+				}
+				writeVarint(out, Math.abs(data[0]));
+				int i = 0;
+				while (i < n) {
+					int code = size(data, i) << 1 | (data[i] < 0 ? 1 : 0);
+					int run = 1;
+					while (i + run < n && (size(data, i + run) << 1 | (data[i + run] < 0 ? 1 : 0)) == code) {
+						run++;
+					}
+					writeVarint(out, run);
+					writeVarint(out, code);
+					i += run;
+				}
+				break;
+			}
+			case DELTA_VARINT: {
+				int previous = 0;
+				for (int p : data) {
+					writeVarint(out, (Math.abs(p) - previous) << 1 | (p < 0 ? 1 : 0));
+					previous = Math.abs(p);
+				}
+				break;
+			}
+			default: throw new IllegalStateException(encoding.toString());
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param encoded
+	 * @return pointers
+	 */
+	static int[] decode(Encoded encoded) {
+		return decode(encoded.getBytes(), encoded.getEncoding());
+	}
+
+	static int[] decode(byte[] bytes, Encoding encoding) {
+		int[] position = {0};
+		int count = readVarint(bytes, position);
+		int[] result = new int[count];
+		int n = count - 1;
+		switch (encoding) {
+			case PLAIN: {
+				for (int i = 0; i < count; i++) {
+					int pos = position[0];
+					result[i] = (bytes[pos] & 0xff) << 24 | (bytes[pos + 1] & 0xff) << 16 | (bytes[pos + 2] & 0xff) << 8 | bytes[pos + 3] & 0xff;
+					position[0] += 4;
+				}
+				break;
+			}
+			case CONSTANT_STRIDE: {
+				int current = readVarint(bytes, position);
+				int stride = readVarint(bytes, position);
+				boolean hasNulls = bytes[position[0]++] != 0;
+				int bitmapStart = position[0];
+				for (int i = 0; i < n; i++) {
+					boolean isNull = hasNulls && (bytes[bitmapStart + (i >>> 3)] & 1 << (i & 7)) != 0;
+					result[i] = isNull ? -current : current;
+					current += isNull ? 0 : stride;
+				}
+				result[n] = current;
+				position[0] = bitmapStart + (hasNulls ? (n + 7) / 8 : 0);
+				break;
+			}
+			case RUN_LENGTH: {
+				int current = readVarint(bytes, position);
+				int i = 0;
+				while (i < n) {
+					int run = readVarint(bytes, position);
+					int code = readVarint(bytes, position);
+					for (int end = i + run; i < end; i++) {
+						result[i] = (code & 1) != 0 ? -current : current;
+						current += code >>> 1;
+					}
+				}
+				result[n] = current;
+				break;
+			}
+			case DELTA_VARINT: {
+				int previous = 0;
+				for (int i = 0; i < count; i++) {
+					int code = readVarint(bytes, position);
+					previous += code >>> 1;
+					result[i] = (code & 1) != 0 ? -previous : previous;
+				}
+				break;
+			}
+			default: throw new IllegalStateException(encoding.toString());
+		}
+		Preconditions.checkArgument(position[0] == bytes.length, "Malformed %s pointers.", encoding);
+		return result;
+	}
+
+	/**
+	 * Appends PLSQL code which fills (empty, initialized) number collection from bound RAW of encoded pointers.
+	 * Variables {@link #AUXILIARIES} must be declared.
+	 * @param buf
+	 * @param target name of collection variable to be filled
+	 * @param source name of bound RAW
+	 * @param encoded pointers encoded by other than {@link Encoding#PLAIN} encoding
+	 */
+	static void appendDecode(StringBuilder buf, String target, String source, Encoded encoded) {
+		Utils.appendf(buf, "rp := 1;%n");
+		appendReadVarint(buf, "", source, "rn");
+		Utils.appendf(buf, "%s.extend(rn);%n", target);
+		switch (encoded.getEncoding()) {
+			case CONSTANT_STRIDE:
+				appendReadVarint(buf, "", source, "ra");
+				appendReadVarint(buf, "", source, "rs");
+				appendReadByte(buf, "", source, "rf");
+				Utils.appendf(buf, "for i in 1 .. rn - 1 loop%n");
+				Utils.appendf(buf, "  rz := 0;%n");
+				Utils.appendf(buf, "  if rf = 1 then%n");
+				Utils.appendf(buf, "    if mod(i - 1, 8) = 0 then%n");
+				appendReadByte(buf, "      ", source, "rb");
+				Utils.appendf(buf, "    end if;%n");
+				Utils.appendf(buf, "    rz := mod(rb, 2);%n");
+				Utils.appendf(buf, "    rb := (rb - rz) / 2;%n");
+				Utils.appendf(buf, "  end if;%n");
+				Utils.appendf(buf, "  if rz = 1 then%n");
+				Utils.appendf(buf, "    %s(i) := -ra;%n", target);
+				Utils.appendf(buf, "  else%n");
+				Utils.appendf(buf, "    %s(i) := ra;%n", target);
+				Utils.appendf(buf, "    ra := ra + rs;%n");
+				Utils.appendf(buf, "  end if;%n");
+				Utils.appendf(buf, "end loop;%n");
+				Utils.appendf(buf, "%s(rn) := ra;%n", target);
+				break;
+			case RUN_LENGTH:
+				appendReadVarint(buf, "", source, "ra");
+				Utils.appendf(buf, "ri := 1;%n");
+				Utils.appendf(buf, "while ri < rn loop%n");
+				appendReadVarint(buf, "  ", source, "rr");
+				appendReadVarint(buf, "  ", source, "rv");
+				Utils.appendf(buf, "  rz := mod(rv, 2);%n");
+				Utils.appendf(buf, "  rv := (rv - rz) / 2;%n");
+				Utils.appendf(buf, "  for i in ri .. ri + rr - 1 loop%n");
+				appendSigned(buf, "    ", target);
+				Utils.appendf(buf, "    ra := ra + rv;%n");
+				Utils.appendf(buf, "  end loop;%n");
+				Utils.appendf(buf, "  ri := ri + rr;%n");
+				Utils.appendf(buf, "end loop;%n");
+				Utils.appendf(buf, "%s(rn) := ra;%n", target);
+				break;
+			case DELTA_VARINT:
+				Utils.appendf(buf, "ra := 0;%n");
+				Utils.appendf(buf, "for i in 1 .. rn loop%n");
+				appendReadVarint(buf, "  ", source, "rv");
+				Utils.appendf(buf, "  rz := mod(rv, 2);%n");
+				Utils.appendf(buf, "  ra := ra + (rv - rz) / 2;%n");
+				appendSigned(buf, "  ", target);
+				Utils.appendf(buf, "end loop;%n");
+				break;
+			default:
+				throw new IllegalArgumentException(encoded.getEncoding().toString());
+		}
+	}
+
+	/**
+	 * Appends code reading byte at position <code>rp</code> and advancing position.
+	 */
+	private static void appendReadByte(StringBuilder buf, String indent, String source, String target) {
+		Utils.appendf(buf, "%s%s := utl_raw.cast_to_binary_integer(utl_raw.substr(%s, rp, 1));%n", indent, target, source);
+		Utils.appendf(buf, "%srp := rp + 1;%n", indent);
+	}
+
+	/**
+	 * Appends code reading varint at position <code>rp</code> and advancing position.
+	 */
+	private static void appendReadVarint(StringBuilder buf, String indent, String source, String target) {
+		Utils.appendf(buf, "%s%s := 0;%n", indent, target);
+		Utils.appendf(buf, "%srm := 1;%n", indent);
+		Utils.appendf(buf, "%srb := 128;%n", indent);
+		Utils.appendf(buf, "%swhile rb >= 128 loop%n", indent);
+		appendReadByte(buf, indent + "  ", source, "rb");
+		Utils.appendf(buf, "%s  %s := %s + mod(rb, 128) * rm;%n", indent, target, target);
+		Utils.appendf(buf, "%s  rm := rm * 128;%n", indent);
+		Utils.appendf(buf, "%send loop;%n", indent);
+	}
+
+	/**
+	 * Appends code storing pointer <code>ra</code> at index <code>i</code>, negated if null flag <code>rz</code> is set.
+	 */
+	private static void appendSigned(StringBuilder buf, String indent, String target) {
+		Utils.appendf(buf, "%sif rz = 1 then%n", indent);
+		Utils.appendf(buf, "%s  %s(i) := -ra;%n", indent, target);
+		Utils.appendf(buf, "%selse%n", indent);
+		Utils.appendf(buf, "%s  %s(i) := ra;%n", indent, target);
+		Utils.appendf(buf, "%send if;%n", indent);
+	}
+
+	/**
+	 * Encodes all pointers in tree which are not elided nor empty (pointers of OUT parameters).
+	 * @param tree
+	 * @return encoded pointers in depth-first order of transfer objects
+	 */
+	static Map<Pointers,Encoded> encodeAll(TransferObjectTree tree) {
+		Map<Pointers,Encoded> result = new LinkedHashMap<>();
+		encodeAll(tree.getRoot(), result);
+		return result;
+	}
+
+	private static void encodeAll(TransferObject to, Map<Pointers,Encoded> result) {
+		if (to instanceof Pointers && !to.isElided() && !((Pointers)to).getData().isEmpty()) {
+			result.put((Pointers)to, encode((Pointers)to));
+		}
+		for (TransferObject child : to.getChildren()) {
+			encodeAll(child, result);
+		}
+	}
+
+	/**
+	 * @param encoded result of {@link #encodeAll(TransferObjectTree)}
+	 * @return human-readable report of chosen encodings and bytes saved against plain encoding
+	 */
+	static String report(Map<Pointers,Encoded> encoded) {
+		StringBuilder result = new StringBuilder();
+		int plainTotal = 0, encodedTotal = 0;
+		for (Map.Entry<Pointers,Encoded> e : encoded.entrySet()) {
+			Encoded enc = e.getValue();
+			Utils.appendf(result, "%s %s %d -> %d%n", e.getKey().getId(), enc.getEncoding(), enc.getPlainSize(), enc.getBytes().length);
+			plainTotal += enc.getPlainSize();
+			encodedTotal += enc.getBytes().length;
+		}
+		Utils.appendf(result, "total %d -> %d, saved %d bytes%n", plainTotal, encodedTotal, plainTotal - encodedTotal);
+		return result.toString();
+	}
+
+	private static boolean isMonotonic(int[] data) {
+		for (int i = 1; i < data.length; i++) {
+			if (Math.abs(data[i]) < Math.abs(data[i - 1])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int size(int[] data, int i) {
+		return Math.abs(data[i + 1]) - Math.abs(data[i]);
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7f) != 0) {
+			out.write(value & 0x7f | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarint(byte[] bytes, int[] position) {
+		int result = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = bytes[position[0]++];
+			result |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return result;
+			}
+		}
+	}
+
+	private static int varintSize(int value) {
+		int result = 1;
+		while ((value & ~0x7f) != 0) {
+			value >>>= 7;
+			result++;
+		}
+		return result;
+	}
+
+}
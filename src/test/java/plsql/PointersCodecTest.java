@@ -0,0 +1,108 @@
+package plsql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import plsql.PointersCodec.Encoded;
+import plsql.PointersCodec.Encoding;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link PointersCodec}.
+ * @author Tomas Zalusky
+ */
+public class PointersCodecTest extends AbstractTypeGraphTest {
+
+	private static final int[] JAVADOC_EXAMPLE = {1,-3,3,4,4,7};
+
+	private static void assertRoundTrip(int[] data) {
+		for (Encoding encoding : Encoding.values()) {
+			byte[] bytes = PointersCodec.encode(data, encoding);
+			if (bytes != null) {
+				assertArrayEquals(encoding.toString(), data, PointersCodec.decode(bytes, encoding));
+			}
+		}
+	}
+
+	@Test
+	public void testRoundTrip() {
+		assertRoundTrip(JAVADOC_EXAMPLE);
+		assertRoundTrip(new int[] {});
+		assertRoundTrip(new int[] {1});
+		assertRoundTrip(new int[] {-1,1});
+		assertRoundTrip(new int[] {1,6});
+		assertRoundTrip(new int[] {5,-8,8,8,-8,100000,100003});
+		assertRoundTrip(new int[] {1,3,5,-7,7,9,11});
+	}
+
+	@Test
+	public void testApplicability() {
+		assertNull(PointersCodec.encode(JAVADOC_EXAMPLE, Encoding.CONSTANT_STRIDE));
+		assertNull(PointersCodec.encode(new int[] {1,3,2}, Encoding.DELTA_VARINT)); // not monotonic
+		assertEquals(1 + 4 * 6, PointersCodec.encode(JAVADOC_EXAMPLE, Encoding.PLAIN).length);
+		assertEquals(1 + 6, PointersCodec.encode(JAVADOC_EXAMPLE, Encoding.DELTA_VARINT).length);
+	}
+
+	@Test
+	public void testChoice() throws IOException {
+		// matrix 1000x10 with every third row null: constant stride
+		List<List<String>> matrix = Lists.newArrayList();
+		for (int i = 0; i < 1000; i++) {
+			matrix.add(i % 3 == 0 ? null : Collections.nCopies(10, "x"));
+		}
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", Collections.singletonMap("pi_var2", matrix));
+		Pointers pointers = tot.getTransferObject(MarshallerTest.node(tot, "pi_var2", NestedTableType.ELEMENT_LABEL), DataPointers.class);
+		Encoded encoded = PointersCodec.encode(pointers);
+		assertEquals(Encoding.CONSTANT_STRIDE, encoded.getEncoding());
+		assertEquals(2 + 1 + 1 + 1 + 125, encoded.getBytes().length);
+		assertEquals(2 + 4 * 1001, encoded.getPlainSize());
+		assertArrayEquals(pointers.getData().toArray(), PointersCodec.decode(encoded));
+		// two blocks of sizes: run length
+		int[] blocks = new int[201];
+		blocks[0] = 1;
+		for (int i = 1; i < blocks.length; i++) {
+			blocks[i] = blocks[i - 1] + (i <= 100 ? 2 : 300);
+		}
+		assertEquals(Encoding.RUN_LENGTH, choose(blocks));
+		assertEquals(Encoding.DELTA_VARINT, choose(JAVADOC_EXAMPLE));
+		assertEquals(Encoding.PLAIN, choose(new int[] {}));
+	}
+
+	private static Encoding choose(int[] data) {
+		Encoding result = null;
+		int size = Integer.MAX_VALUE;
+		for (Encoding encoding : Encoding.values()) {
+			byte[] bytes = PointersCodec.encode(data, encoding);
+			if (bytes != null && bytes.length < size) {
+				result = encoding;
+				size = bytes.length;
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testReport() throws IOException {
+		List<List<String>> value = ImmutableList.<List<String>>of(ImmutableList.of("A","B"), ImmutableList.of("C","D"));
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", Collections.singletonMap("pi_var2", value));
+		Map<Pointers,Encoded> encoded = PointersCodec.encodeAll(tot);
+		for (Map.Entry<Pointers,Encoded> e : encoded.entrySet()) {
+			assertArrayEquals(e.getKey().getData().toArray(), PointersCodec.decode(e.getValue()));
+		}
+		String report = PointersCodec.report(encoded);
+		assertTrue(report, report.contains(" CONSTANT_STRIDE 13 -> 4"));
+		assertTrue(report, report.contains("saved "));
+	}
+
+}
@@ -1,27 +1,208 @@
 package plsql;
 
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 import com.google.common.collect.Lists;
 
 /**
  * Collection of primitive values.
  * Can be sent via JDBC as a whole (i.e. using java.sql.Array).
+ * <p>
+ * Columns of integer types holding only {@link Integer}s and nulls are stored unboxed
+ * and are bound as primitive array, element at null position of primitive array is 0.
+ * Positions of nulls are tracked in bitmap, which is sent as companion column
+ * (with id suffixed by <code>n</code>) only if column actually contains nulls.
+ * Once any other value is added, the column switches to storing objects, nulls are then stored as elements.
+ * </p>
  * @author Tomas Zalusky
  */
 public class PrimitiveCollection extends PrimitiveHolder {
 
 	private final AbstractPrimitiveType type;
 	
-	private final List<Object> data = Lists.newArrayList();  // elements of type which is compatible with type
+	private List<Object> data;  // elements of type which is compatible with type, null while column is stored unboxed
+
+	private IntList ints; // unboxed elements, null if column stores objects
+
+	private BitSet nulls; // positions of nulls in unboxed elements, null if column stores objects
 
 	public PrimitiveCollection(AbstractPrimitiveType type, TransferObject parent, TypeNode typeNode) {
 		super(parent, typeNode, typeNode.id());
 		this.type = type;
+		if (isIntType(type)) {
+			this.ints = new IntList();
+			this.nulls = new BitSet();
+		} else {
+			this.data = Lists.newArrayList();
+		}
 	}
 
 	protected String toStringDescription() {
 		return "{" + type.name + "}";
 	}
-	
+
+	AbstractPrimitiveType getType() {
+		return type;
+	}
+
+	/**
+	 * @param type
+	 * @return true if column of given type is stored unboxed (until value of other class than {@link Integer} is added)
+	 */
+	static boolean isIntType(AbstractPrimitiveType type) {
+		return type instanceof PlsIntegerType || type instanceof BinaryIntegerType || type instanceof IntegerType;
+	}
+
+	void add(Object value) {
+		if (value == null) {
+			if (ints != null) {
+				nulls.set(ints.size());
+				ints.add(0);
+			} else {
+				data.add(null);
+			}
+		} else if (ints != null && value.getClass() == Integer.class) {
+			ints.add((Integer)value);
+		} else {
+			if (ints != null) {
+				data = Lists.newArrayList(getData());
+				ints = null;
+				nulls = null;
+			}
+			data.add(value);
+		}
+	}
+
+	/**
+	 * Appends non-null integer, without boxing if column is stored unboxed.
+	 * @param value
+	 */
+	void addInt(int value) {
+		if (ints != null) {
+			ints.add(value);
+		} else {
+			data.add(value);
+		}
+	}
+
+	void addAll(Collection<?> values) {
+		if (ints == null) {
+			data.addAll(values);
+		} else {
+			for (Object value : values) {
+				add(value);
+			}
+		}
+	}
+
+	/**
+	 * Appends values received in primitive array (e.g. OUT column).
+	 * @param values
+	 * @param nullBitmap companion bitmap of nulls in little-endian byte order, positions are relative to values, null if there is no null value
+	 */
+	void addAll(int[] values, byte[] nullBitmap) {
+		BitSet received = nullBitmap == null ? new BitSet() : BitSet.valueOf(nullBitmap);
+		for (int i = 0; i < values.length; i++) {
+			if (received.get(i)) {
+				add(null);
+			} else {
+				addInt(values[i]);
+			}
+		}
+	}
+
+	Object get(int i) {
+		if (ints != null) {
+			return nulls.get(i) ? null : Integer.valueOf(ints.get(i));
+		}
+		return data.get(i);
+	}
+
+	boolean isNull(int i) {
+		return ints != null ? nulls.get(i) : data.get(i) == null;
+	}
+
+	/**
+	 * @param i
+	 * @return non-null element as <code>int</code>, without boxing if column is stored unboxed
+	 */
+	int getInt(int i) {
+		return ints != null ? ints.get(i) : ((Number)data.get(i)).intValue();
+	}
+
+	int size() {
+		return ints != null ? ints.size() : data.size();
+	}
+
+	List<Object> getData() {
+		if (ints != null) {
+			return new IntView();
+		}
+		return Collections.unmodifiableList(data);
+	}
+
+	/**
+	 * @return true if column is stored unboxed and can be bound by {@link #toIntArray()}
+	 */
+	boolean isIntColumn() {
+		return ints != null;
+	}
+
+	/**
+	 * @return content as primitive array, 0 at null positions
+	 * @throws IllegalStateException if column does not store unboxed integers
+	 */
+	int[] toIntArray() {
+		if (ints == null) {
+			throw new IllegalStateException("Column " + getId() + " does not store integers.");
+		}
+		return ints.toArray();
+	}
+
+	boolean hasNulls() {
+		return ints != null ? !nulls.isEmpty() : data.contains(null);
+	}
+
+	/**
+	 * @return id of companion column carrying null bitmap
+	 */
+	String getNullsId() {
+		return getId() + "n";
+	}
+
+	/**
+	 * @return null bitmap in little-endian byte order ({@link BitSet#toByteArray()}),
+	 * null if column contains no null (companion column is not sent at all)
+	 * @throws IllegalStateException if column does not store unboxed integers (nulls are stored as elements then)
+	 */
+	byte[] getNullBitmap() {
+		if (ints == null) {
+			throw new IllegalStateException("Column " + getId() + " does not store integers.");
+		}
+		return nulls.isEmpty() ? null : nulls.toByteArray();
+	}
+
+	/**
+	 * Read-only boxing view of unboxed column.
+	 * @author Tomas Zalusky
+	 */
+	private final class IntView extends AbstractList<Object> implements RandomAccess {
+
+		@Override
+		public Object get(int index) {
+			return PrimitiveCollection.this.get(index);
+		}
+
+		@Override
+		public int size() {
+			return PrimitiveCollection.this.size();
+		}
+
+	}
+
 }
@@ -0,0 +1,88 @@
+package plsql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests storage of {@link PrimitiveCollection} (unboxed integer columns).
+ * @author Tomas Zalusky
+ */
+public class PrimitiveCollectionTest extends AbstractTypeGraphTest {
+
+	private static final String E = NestedTableType.ELEMENT_LABEL;
+
+	private static PrimitiveCollection column(TransferObjectTree tot, String... path) {
+		return tot.getTransferObject(MarshallerTest.node(tot, path), PrimitiveCollection.class);
+	}
+
+	private static TransferObjectTree marshalNst3(Object... integers) throws IOException {
+		ImmutableList.Builder<MarshallerTest.Record3> records = ImmutableList.builder();
+		for (Object i : integers) {
+			records.add(new MarshallerTest.Record3(true, (Integer)i));
+		}
+		return MarshallerTest.marshal(loadGraph("alltypes"), "echo", ImmutableMap.of("pi_nst3", ImmutableList.of(records.build())));
+	}
+
+	@Test
+	public void testIntColumn() throws IOException {
+		TransferObjectTree tot = marshalNst3(3, -1, 7);
+		PrimitiveCollection column = column(tot, "pi_nst3", E, E, "f_integer");
+		assertTrue(column.isIntColumn());
+		assertArrayEquals(new int[] {3,-1,7}, column.toIntArray());
+		assertEquals(Arrays.asList(3,-1,7), column.getData());
+		assertFalse(column.hasNulls());
+		assertNull(column.getNullBitmap()); // companion column is bound as null
+	}
+
+	@Test
+	public void testIntColumnNulls() throws IOException {
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", ImmutableMap.of("pi_ibt1", ImmutableMap.of(
+				1, ImmutableMap.of("f_pls_integer", 5),
+				2, ImmutableMap.of(),
+				3, ImmutableMap.of("f_pls_integer", 6))));
+		PrimitiveCollection column = column(tot, "pi_ibt1", IndexByTableType.ELEMENT_LABEL, "f_pls_integer");
+		assertTrue(column.isIntColumn());
+		assertArrayEquals(new int[] {5,0,6}, column.toIntArray());
+		assertEquals(Arrays.asList(5,null,6), column.getData());
+		assertTrue(column.hasNulls());
+		assertEquals(column.getId() + "n", column.getNullsId());
+		assertArrayEquals(new byte[] {0b010}, column.getNullBitmap());
+		PrimitiveCollection received = column(MarshallerTest.marshal(loadGraph("alltypes"), "echo", ImmutableMap.<String,Object>of()),
+				"po_ibt1", IndexByTableType.ELEMENT_LABEL, "f_pls_integer");
+		received.addAll(column.toIntArray(), column.getNullBitmap());
+		assertTrue(received.isIntColumn());
+		assertEquals(column.getData(), received.getData());
+	}
+
+	@Test
+	public void testSwitchToObjects() throws IOException {
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", ImmutableMap.of("pi_ibt1", ImmutableMap.of(
+				1, ImmutableMap.of("f_pls_integer", 5),
+				2, ImmutableMap.of(),
+				3, ImmutableMap.of("f_pls_integer", new BigDecimal("6")))));
+		PrimitiveCollection column = column(tot, "pi_ibt1", IndexByTableType.ELEMENT_LABEL, "f_pls_integer");
+		assertFalse(column.isIntColumn());
+		assertEquals(Arrays.asList(5,null,new BigDecimal("6")), column.getData());
+		assertEquals(null, column.get(1));
+		assertTrue(column.hasNulls());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testObjectColumnToIntArray() throws IOException {
+		column(MarshallerTest.marshal(loadGraph("alltypes"), "echo", ImmutableMap.of("pi_var2", ImmutableList.of(ImmutableList.of("a")))),
+				"pi_var2", VarrayType.ELEMENT_LABEL, E).toIntArray();
+	}
+
+}
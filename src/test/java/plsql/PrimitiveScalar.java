@@ -19,5 +19,17 @@ public class PrimitiveScalar extends PrimitiveHolder {
 	protected String toStringDescription() {
 		return type.getName();
 	}
+
+	AbstractPrimitiveType getType() {
+		return type;
+	}
+
+	Object getData() {
+		return data;
+	}
+
+	void setData(Object data) {
+		this.data = data;
+	}
 	
 }
@@ -0,0 +1,556 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Provides access to fields of Java representation of PLSQL record.
+ * Fields are addressed by 0-based order of field in {@link RecordType}.
+ * <p>
+ * Two Java representations of record are supported:
+ * </p>
+ * <ul>
+ * <li>instance of class whose non-static fields correspond to record fields by name
+ * (PLSQL name is given by {@link Plsql.Name} or is equal to Java name of field, see {@link #plsqlName(Field)})</li>
+ * <li>{@link Map} whose keys are PLSQL names of record fields</li>
+ * </ul>
+ * <p>
+ * Order of fields returned by {@link Class#getDeclaredFields()} is not specified,
+ * hence fields of class are matched to fields of record only by name, never by position.
+ * </p>
+ * @author Tomas Zalusky
+ */
+public abstract class RecordAccessor {
+
+	/**
+	 * Suffix of name of accessor class generated by {@link RecordAccessorProcessor}.
+	 */
+	static final String GENERATED_SUFFIX = "_RecordAccessor";
+
+	private static final ClassValue<RecordAccessor> CLASS_ACCESSORS = new ClassValue<RecordAccessor>() {
+		@Override
+		protected RecordAccessor computeValue(Class<?> recordClass) {
+			RecordAccessor result = generated(recordClass);
+			return result != null ? result : new MethodHandleAccessor(recordClass);
+		}
+	};
+
+	/**
+	 * @return number of fields
+	 */
+	public abstract int size();
+
+	/**
+	 * @return PLSQL names of fields in order of indexes of this accessor
+	 */
+	public abstract List<String> fieldNames();
+
+	public abstract Object get(Object record, int index);
+
+	public abstract void set(Object record, int index, Object value);
+
+	/**
+	 * @return new instance of record with all fields having default value
+	 */
+	public abstract Object newInstance();
+
+	/**
+	 * @param index
+	 * @return Java type of field, {@link Object} if accessor does not know it (values are then always accessed boxed)
+	 */
+	public Class<?> fieldType(int index) {
+		return Object.class;
+	}
+
+	/**
+	 * Reads field as <code>int</code>, avoiding boxing if accessor supports it.
+	 * @param record
+	 * @param index
+	 * @return field value
+	 */
+	public int getInt(Object record, int index) {
+		return ((Number)get(record, index)).intValue();
+	}
+
+	/**
+	 * Reads field as <code>long</code>, avoiding boxing if accessor supports it.
+	 * @param record
+	 * @param index
+	 * @return field value
+	 */
+	public long getLong(Object record, int index) {
+		return ((Number)get(record, index)).longValue();
+	}
+
+	/**
+	 * Reads field as <code>boolean</code>, avoiding boxing if accessor supports it.
+	 * @param record
+	 * @param index
+	 * @return field value
+	 */
+	public boolean getBoolean(Object record, int index) {
+		return (Boolean)get(record, index);
+	}
+
+	public void setInt(Object record, int index, int value) {
+		set(record, index, value);
+	}
+
+	public void setLong(Object record, int index, long value) {
+		set(record, index, value);
+	}
+
+	public void setBoolean(Object record, int index, boolean value) {
+		set(record, index, value);
+	}
+
+	/**
+	 * Returns accessor for record represented by instances of given class, with fields in order of {@link #fieldNames()}.
+	 * Accessor generated at compile time by {@link RecordAccessorProcessor} is preferred,
+	 * accessor based on method handles is used for classes without generated accessor.
+	 * Accessors are cached per class in {@link ClassValue}, which does not prevent unloading of record class.
+	 * @param recordClass
+	 * @return accessor
+	 */
+	static RecordAccessor forClass(Class<?> recordClass) {
+		return CLASS_ACCESSORS.get(recordClass);
+	}
+
+	/**
+	 * Returns accessor for record represented by instances of given class, with fields in order of fields of record type.
+	 * @param recordClass
+	 * @param type
+	 * @return accessor of class itself if its fields are in order of record, otherwise accessor translating indexes
+	 * @throws IllegalArgumentException if fields of class do not match fields of record by name
+	 */
+	static RecordAccessor forClass(Class<?> recordClass, RecordType type) {
+		RecordAccessor accessor = forClass(recordClass);
+		List<String> fieldNames = ImmutableList.copyOf(type.getFields().keySet());
+		List<String> classFieldNames = accessor.fieldNames();
+		if (classFieldNames.equals(fieldNames)) {
+			return accessor;
+		}
+		checkArgument(classFieldNames.size() == fieldNames.size(), "Class %s has %s fields but record %s has %s fields.",
+				recordClass.getName(), classFieldNames.size(), type.getName(), fieldNames.size());
+		int[] indexes = new int[fieldNames.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = classFieldNames.indexOf(fieldNames.get(i));
+			checkArgument(indexes[i] != -1, "Class %s has no field %s of record %s.", recordClass.getName(), fieldNames.get(i), type.getName());
+		}
+		return new ReorderedAccessor(accessor, fieldNames, indexes);
+	}
+
+	/**
+	 * @param field Java field representing record field
+	 * @return PLSQL name of record field
+	 */
+	static String plsqlName(Field field) {
+		Plsql.Name name = field.getAnnotation(Plsql.Name.class);
+		return name != null ? name.value() : field.getName();
+	}
+
+	/**
+	 * @param recordClass
+	 * @return non-static fields of class representing record fields (in unspecified order)
+	 */
+	static List<Field> recordFields(Class<?> recordClass) {
+		List<Field> result = Lists.newArrayList();
+		for (Field field : recordClass.getDeclaredFields()) {
+			if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+				result.add(field);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param binaryName binary name of record class
+	 * @return binary name of generated accessor class (placed in the same package as record class),
+	 * <code>$</code> separating nested class is doubled so that accessors of <code>Rec$Inner</code> and <code>Rec_Inner</code> differ
+	 */
+	static String generatedAccessorName(String binaryName) {
+		int lastDot = binaryName.lastIndexOf('.');
+		return binaryName.substring(0, lastDot + 1) + binaryName.substring(lastDot + 1).replace("$", "$$") + GENERATED_SUFFIX;
+	}
+
+	private static RecordAccessor generated(Class<?> recordClass) {
+		Class<?> accessorClass;
+		try {
+			accessorClass = Class.forName(generatedAccessorName(recordClass.getName()), true, recordClass.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+		try {
+			return (RecordAccessor)accessorClass.getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw Throwables.propagate(e);
+		}
+	}
+
+	/**
+	 * Returns accessor for record represented by {@link Map} keyed by field names of given record type.
+	 * @param type
+	 * @return accessor
+	 */
+	static RecordAccessor forMap(RecordType type) {
+		return new MapAccessor(ImmutableList.copyOf(type.getFields().keySet()));
+	}
+
+	/**
+	 * Accessor based on method handles of fields, used for classes without generated accessor.
+	 * Handles are unreflected from fields once per class.
+	 * Primitive fields of type <code>int</code>, <code>long</code> and <code>boolean</code>
+	 * have additional handles of exact type accessing values without boxing,
+	 * {@link #set(Object, int, Object)} of such field unboxes given value once and uses them too.
+	 * @author Tomas Zalusky
+	 */
+	private static final class MethodHandleAccessor extends RecordAccessor {
+
+		private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+
+		private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+		private final Class<?>[] types;
+
+		private final List<String> fieldNames;
+
+		private final MethodHandle constructor; // ()Object
+
+		private final MethodHandle[] getters; // (Object)Object
+
+		private final MethodHandle[] setters; // (Object,Object)void
+
+		private final MethodHandle[] primitiveGetters; // (Object)int|long|boolean for fields of that type, otherwise null
+
+		private final MethodHandle[] primitiveSetters; // (Object,int|long|boolean)void for fields of that type, otherwise null
+
+		MethodHandleAccessor(Class<?> recordClass) {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			List<Field> fields = recordFields(recordClass);
+			int size = fields.size();
+			ImmutableList.Builder<String> fieldNames = ImmutableList.builder();
+			for (Field field : fields) {
+				fieldNames.add(plsqlName(field));
+			}
+			this.fieldNames = fieldNames.build();
+			this.types = new Class<?>[size];
+			this.getters = new MethodHandle[size];
+			this.setters = new MethodHandle[size];
+			this.primitiveGetters = new MethodHandle[size];
+			this.primitiveSetters = new MethodHandle[size];
+			try {
+				Constructor<?> c = recordClass.getDeclaredConstructor();
+				c.setAccessible(true);
+				this.constructor = lookup.unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+				for (int i = 0; i < size; i++) {
+					Field field = fields.get(i);
+					field.setAccessible(true);
+					Class<?> type = field.getType();
+					types[i] = type;
+					MethodHandle getter = lookup.unreflectGetter(field);
+					MethodHandle setter = lookup.unreflectSetter(field);
+					getters[i] = getter.asType(GETTER);
+					setters[i] = setter.asType(SETTER);
+					if (type == int.class || type == long.class || type == boolean.class) {
+						primitiveGetters[i] = getter.asType(MethodType.methodType(type, Object.class));
+						primitiveSetters[i] = setter.asType(MethodType.methodType(void.class, Object.class, type));
+					}
+				}
+			} catch (ReflectiveOperationException e) {
+				throw Throwables.propagate(e);
+			}
+		}
+
+		@Override
+		public int size() {
+			return getters.length;
+		}
+
+		@Override
+		public List<String> fieldNames() {
+			return fieldNames;
+		}
+
+		@Override
+		public Class<?> fieldType(int index) {
+			return types[index];
+		}
+
+		@Override
+		public Object get(Object record, int index) {
+			try {
+				return (Object)getters[index].invokeExact(record);
+			} catch (Throwable e) {
+				throw Throwables.propagate(e);
+			}
+		}
+
+		@Override
+		public void set(Object record, int index, Object value) {
+			Class<?> type = types[index];
+			if (type.isPrimitive()) {
+				if (value == null) {
+					return; // field keeps default value
+				}
+				if (type == int.class) {
+					setInt(record, index, ((Number)value).intValue());
+					return;
+				} else if (type == long.class) {
+					setLong(record, index, ((Number)value).longValue());
+					return;
+				} else if (type == boolean.class) {
+					setBoolean(record, index, (Boolean)value);
+					return;
+				} else if (value instanceof Number) {
+					value = toPrimitiveWrapper(type, (Number)value);
+				}
+			}
+			try {
+				setters[index].invokeExact(record, value);
+			} catch (Throwable e) {
+				throw Throwables.propagate(e);
+			}
+		}
+
+		@Override
+		public int getInt(Object record, int index) {
+			if (types[index] != int.class) {
+				return super.getInt(record, index);
+			}
+			try {
+				return (int)primitiveGetters[index].invokeExact(record);
+			} catch (Throwable e) {
+				throw Throwables.propagate(e);
+			}
+		}
+
+		@Override
+		public long getLong(Object record, int index) {
+			if (types[index] != long.class) {
+				return super.getLong(record, index);
+			}
+			try {
+				return (long)primitiveGetters[index].invokeExact(record);
+			} catch (Throwable e) {
+				throw Throwables.propagate(e);
+			}
+		}
+
+		@Override
+		public boolean getBoolean(Object record, int index) {
+			if (types[index] != boolean.class) {
+				return super.getBoolean(record, index);
+			}
+			try {
+				return (boolean)primitiveGetters[index].invokeExact(record);
+			} catch (Throwable e) {
+				throw Throwables.propagate(e);
+			}
+		}
+
+		@Override
+		public void setInt(Object record, int index, int value) {
+			if (types[index] != int.class) {
+				super.setInt(record, index, value);
+				return;
+			}
+			try {
+				primitiveSetters[index].invokeExact(record, value);
+			} catch (Throwable e) {
+				throw Throwables.propagate(e);
+			}
+		}
+
+		@Override
+		public void setLong(Object record, int index, long value) {
+			if (types[index] != long.class) {
+				super.setLong(record, index, value);
+				return;
+			}
+			try {
+				primitiveSetters[index].invokeExact(record, value);
+			} catch (Throwable e) {
+				throw Throwables.propagate(e);
+			}
+		}
+
+		@Override
+		public void setBoolean(Object record, int index, boolean value) {
+			if (types[index] != boolean.class) {
+				super.setBoolean(record, index, value);
+				return;
+			}
+			try {
+				primitiveSetters[index].invokeExact(record, value);
+			} catch (Throwable e) {
+				throw Throwables.propagate(e);
+			}
+		}
+
+		@Override
+		public Object newInstance() {
+			try {
+				return (Object)constructor.invokeExact();
+			} catch (Throwable e) {
+				throw Throwables.propagate(e);
+			}
+		}
+
+		/**
+		 * Converts numeric value (which may be of any numeric type when coming from database) to wrapper of primitive type.
+		 */
+		private static Object toPrimitiveWrapper(Class<?> type, Number value) {
+			if (type == int.class) {
+				return value.intValue();
+			} else if (type == long.class) {
+				return value.longValue();
+			} else if (type == short.class) {
+				return value.shortValue();
+			} else if (type == byte.class) {
+				return value.byteValue();
+			} else if (type == double.class) {
+				return value.doubleValue();
+			} else if (type == float.class) {
+				return value.floatValue();
+			} else {
+				return value;
+			}
+		}
+
+	}
+
+	/**
+	 * Accessor for records represented by map of field names to field values.
+	 * @author Tomas Zalusky
+	 */
+	private static final class MapAccessor extends RecordAccessor {
+
+		private final List<String> fieldNames;
+
+		MapAccessor(List<String> fieldNames) {
+			this.fieldNames = fieldNames;
+		}
+
+		@Override
+		public int size() {
+			return fieldNames.size();
+		}
+
+		@Override
+		public List<String> fieldNames() {
+			return fieldNames;
+		}
+
+		@Override
+		public Object get(Object record, int index) {
+			return ((Map<?,?>)record).get(fieldNames.get(index));
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void set(Object record, int index, Object value) {
+			((Map<String,Object>)record).put(fieldNames.get(index), value);
+		}
+
+		@Override
+		public Object newInstance() {
+			return new LinkedHashMap<String,Object>();
+		}
+
+	}
+
+	/**
+	 * Accessor of class whose fields are declared in order different from order of record fields,
+	 * translates index of record field to index of field of class accessor.
+	 * @author Tomas Zalusky
+	 */
+	private static final class ReorderedAccessor extends RecordAccessor {
+
+		private final RecordAccessor delegate;
+
+		private final List<String> fieldNames;
+
+		private final int[] indexes;
+
+		ReorderedAccessor(RecordAccessor delegate, List<String> fieldNames, int[] indexes) {
+			this.delegate = delegate;
+			this.fieldNames = fieldNames;
+			this.indexes = indexes;
+		}
+
+		@Override
+		public int size() {
+			return indexes.length;
+		}
+
+		@Override
+		public List<String> fieldNames() {
+			return fieldNames;
+		}
+
+		@Override
+		public Object get(Object record, int index) {
+			return delegate.get(record, indexes[index]);
+		}
+
+		@Override
+		public void set(Object record, int index, Object value) {
+			delegate.set(record, indexes[index], value);
+		}
+
+		@Override
+		public Class<?> fieldType(int index) {
+			return delegate.fieldType(indexes[index]);
+		}
+
+		@Override
+		public int getInt(Object record, int index) {
+			return delegate.getInt(record, indexes[index]);
+		}
+
+		@Override
+		public long getLong(Object record, int index) {
+			return delegate.getLong(record, indexes[index]);
+		}
+
+		@Override
+		public boolean getBoolean(Object record, int index) {
+			return delegate.getBoolean(record, indexes[index]);
+		}
+
+		@Override
+		public void setInt(Object record, int index, int value) {
+			delegate.setInt(record, indexes[index], value);
+		}
+
+		@Override
+		public void setLong(Object record, int index, long value) {
+			delegate.setLong(record, indexes[index], value);
+		}
+
+		@Override
+		public void setBoolean(Object record, int index, boolean value) {
+			delegate.setBoolean(record, indexes[index], value);
+		}
+
+		@Override
+		public Object newInstance() {
+			return delegate.newInstance();
+		}
+
+	}
+
+}
@@ -0,0 +1,128 @@
+package plsql;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Compares reading and writing of record fields through {@link Field} and through runtime {@link RecordAccessor}
+ * based on method handles, both with boxed values and with typed access of primitive fields
+ * (the way how {@link Marshaller} and {@link Unmarshaller} access <code>int</code> fields).
+ * Run as Java application, not part of test suite.
+ * @author Tomas Zalusky
+ */
+public class RecordAccessorBenchmark {
+
+	private static final int RECORDS = 1000;
+
+	private static final int ROUNDS = 20000;
+
+	private static class Record {
+		@Plsql.Name("f_int")
+		private int theInt;
+		@Plsql.Name("f_long")
+		private long theLong;
+		@Plsql.Name("f_string")
+		private String theString;
+		@Plsql.Name("f_boolean")
+		private boolean theBoolean;
+	}
+
+	private static final RecordType TYPE = TypeFactory.record("benchmark.rec", ImmutableMap.of(
+			"f_int", AbstractPrimitiveType.recognizePrimitiveType("integer"),
+			"f_long", AbstractPrimitiveType.recognizePrimitiveType("integer"),
+			"f_string", AbstractPrimitiveType.recognizePrimitiveType("varchar2(10)"),
+			"f_boolean", AbstractPrimitiveType.recognizePrimitiveType("boolean")));
+
+	public static void main(String[] args) throws ReflectiveOperationException {
+		RecordAccessor accessor = RecordAccessor.forClass(Record.class, TYPE);
+		Field[] fields = new Field[TYPE.getFields().size()];
+		List<Field> recordFields = RecordAccessor.recordFields(Record.class);
+		int f = 0;
+		for (String name : TYPE.getFields().keySet()) {
+			for (Field field : recordFields) {
+				if (RecordAccessor.plsqlName(field).equals(name)) {
+					field.setAccessible(true);
+					fields[f++] = field;
+				}
+			}
+		}
+		Record[] records = new Record[RECORDS];
+		for (int r = 0; r < RECORDS; r++) {
+			records[r] = (Record)accessor.newInstance();
+			accessor.set(records[r], 0, r);
+			accessor.set(records[r], 1, (long)r);
+			accessor.set(records[r], 2, "s" + r);
+			accessor.set(records[r], 3, r % 2 == 0);
+		}
+		long sink = 0;
+		for (int iteration = 0; iteration < 5; iteration++) {
+			long start = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++) {
+				for (Record record : records) {
+					for (int i = 0; i < fields.length; i++) {
+						sink += fields[i].get(record) == null ? 0 : 1;
+					}
+				}
+			}
+			report("Field.get", start);
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++) {
+				for (Record record : records) {
+					for (int i = 0; i < fields.length; i++) {
+						sink += accessor.get(record, i) == null ? 0 : 1;
+					}
+				}
+			}
+			report("RecordAccessor.get", start);
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS / 10; round++) {
+				for (Record record : records) {
+					for (int i = 0; i < fields.length; i++) {
+						fields[i].set(record, fields[i].get(record));
+					}
+				}
+			}
+			report("Field.set", start, 10);
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS / 10; round++) {
+				for (Record record : records) {
+					for (int i = 0; i < fields.length; i++) {
+						accessor.set(record, i, accessor.get(record, i));
+					}
+				}
+			}
+			report("RecordAccessor.set", start, 10);
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++) {
+				for (Record record : records) {
+					sink += accessor.getInt(record, 0) + accessor.getLong(record, 1)
+							+ (accessor.get(record, 2) == null ? 0 : 1) + (accessor.getBoolean(record, 3) ? 1 : 0);
+				}
+			}
+			report("typed get", start);
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS / 10; round++) {
+				for (Record record : records) {
+					accessor.setInt(record, 0, accessor.getInt(record, 0));
+					accessor.setLong(record, 1, accessor.getLong(record, 1));
+					accessor.set(record, 2, accessor.get(record, 2));
+					accessor.setBoolean(record, 3, accessor.getBoolean(record, 3));
+				}
+			}
+			report("typed set", start, 10);
+		}
+		System.out.println(sink);
+	}
+
+	private static void report(String name, long start) {
+		report(name, start, 1);
+	}
+
+	private static void report(String name, long start, int divisor) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-20s %8.1f M field accesses/s%n", name, (double)RECORDS * ROUNDS / divisor * TYPE.getFields().size() / seconds / 1e6);
+	}
+
+}
@@ -0,0 +1,217 @@
+package plsql;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import pleasejava.Utils;
+
+import com.google.common.collect.Lists;
+
+/**
+ * <p>
+ * Annotation processor generating {@link RecordAccessor} for every class annotated with {@link Plsql.Record}.
+ * Generated accessor accesses record fields directly (or via getter and setter for private fields)
+ * with field index dispatched by switch, hence no reflection is involved in marshalling or unmarshalling of record
+ * and accessor methods can be inlined by JIT.
+ * </p>
+ * <p>
+ * Accessor is generated into the same package as record class,
+ * its name is given by {@link RecordAccessor#generatedAccessorName(String)}
+ * and it is picked up by {@link RecordAccessor#forClass(Class)} at runtime.
+ * Fields are indexed in order of declaration in source, generated {@link RecordAccessor#fieldNames()} provides their PLSQL names
+ * (given by {@link Plsql.Name} or equal to Java name) so that they are matched to record fields by name.
+ * If generated code could not access record (private class, inner class, inaccessible constructor,
+ * private field without getter or setter), warning is reported and accessor is not generated
+ * (runtime accessor based on method handles is used instead).
+ * </p>
+ * <p>
+ * No accessor is generated for {@link Plsql.Procedure} and {@link Plsql.Function} methods,
+ * since their arguments are passed as array and don't need reflective access.
+ * </p>
+ * @author Tomas Zalusky
+ */
+@SupportedAnnotationTypes("plsql.Plsql.Record")
+public class RecordAccessorProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(Plsql.Record.class)) {
+			if (element.getKind() == ElementKind.CLASS) {
+				generate((TypeElement)element);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * How generated code reads and writes one record field.
+	 * @author Tomas Zalusky
+	 */
+	private static class FieldModel {
+
+		final String getExpression;
+
+		final String setStatement;
+
+		FieldModel(String getExpression, String setStatement) {
+			this.getExpression = getExpression;
+			this.setStatement = setStatement;
+		}
+
+	}
+
+	private void generate(TypeElement recordClass) {
+		if (!isAccessible(recordClass)) {
+			warn(recordClass, "class is not accessible from its package");
+			return;
+		}
+		if (!hasAccessibleConstructor(recordClass)) {
+			warn(recordClass, "class has no accessible no-arg constructor");
+			return;
+		}
+		String recordType = recordClass.getQualifiedName().toString();
+		List<FieldModel> fields = Lists.newArrayList();
+		List<String> fieldNames = Lists.newArrayList();
+		for (VariableElement field : ElementFilter.fieldsIn(recordClass.getEnclosedElements())) {
+			if (field.getModifiers().contains(Modifier.STATIC)) {
+				continue;
+			}
+			FieldModel fieldModel = fieldModel(recordClass, field);
+			if (fieldModel == null) {
+				warn(field, "private field has no getter or setter");
+				return;
+			}
+			fields.add(fieldModel);
+			Plsql.Name name = field.getAnnotation(Plsql.Name.class);
+			fieldNames.add(name != null ? name.value() : field.getSimpleName().toString());
+		}
+		String binaryName = processingEnv.getElementUtils().getBinaryName(recordClass).toString();
+		String accessorName = RecordAccessor.generatedAccessorName(binaryName);
+		int lastDot = accessorName.lastIndexOf('.');
+		StringBuilder buf = new StringBuilder();
+		if (lastDot != -1) {
+			Utils.appendf(buf, "package %s;%n%n", accessorName.substring(0, lastDot));
+		}
+		Utils.appendf(buf, "/**%n * Generated by %s.%n */%n", RecordAccessorProcessor.class.getName());
+		Utils.appendf(buf, "public final class %s extends %s {%n%n", accessorName.substring(lastDot + 1), RecordAccessor.class.getName());
+		Utils.appendf(buf, "\tprivate static final java.util.List<String> FIELD_NAMES = java.util.Collections.unmodifiableList(java.util.Arrays.asList(");
+		for (int i = 0; i < fieldNames.size(); i++) {
+			Utils.appendf(buf, "%s\"%s\"", i == 0 ? "" : ", ", fieldNames.get(i).replace("\\", "\\\\").replace("\"", "\\\""));
+		}
+		Utils.appendf(buf, "));%n%n");
+		Utils.appendf(buf, "\t@Override%n\tpublic int size() {%n\t\treturn %d;%n\t}%n%n", fields.size());
+		Utils.appendf(buf, "\t@Override%n\tpublic java.util.List<String> fieldNames() {%n\t\treturn FIELD_NAMES;%n\t}%n%n");
+		Utils.appendf(buf, "\t@Override%n\tpublic Object get(Object record, int index) {%n");
+		Utils.appendf(buf, "\t\t%s r = (%s)record;%n\t\tswitch (index) {%n", recordType, recordType);
+		for (int i = 0; i < fields.size(); i++) {
+			Utils.appendf(buf, "\t\t\tcase %d: return %s;%n", i, fields.get(i).getExpression);
+		}
+		Utils.appendf(buf, "\t\t\tdefault: throw new IndexOutOfBoundsException(String.valueOf(index));%n\t\t}%n\t}%n%n");
+		Utils.appendf(buf, "\t@SuppressWarnings({\"unchecked\",\"rawtypes\"})%n\t@Override%n\tpublic void set(Object record, int index, Object value) {%n");
+		Utils.appendf(buf, "\t\t%s r = (%s)record;%n\t\tswitch (index) {%n", recordType, recordType);
+		for (int i = 0; i < fields.size(); i++) {
+			Utils.appendf(buf, "\t\t\tcase %d: %s break;%n", i, fields.get(i).setStatement);
+		}
+		Utils.appendf(buf, "\t\t\tdefault: throw new IndexOutOfBoundsException(String.valueOf(index));%n\t\t}%n\t}%n%n");
+		Utils.appendf(buf, "\t@Override%n\tpublic Object newInstance() {%n\t\treturn new %s();%n\t}%n%n}%n", recordType);
+		try (Writer writer = processingEnv.getFiler().createSourceFile(accessorName, recordClass).openWriter()) {
+			writer.write(buf.toString());
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + accessorName + ": " + e, recordClass);
+		}
+	}
+
+	private FieldModel fieldModel(TypeElement recordClass, VariableElement field) {
+		String name = field.getSimpleName().toString();
+		TypeMirror type = field.asType();
+		String getExpression;
+		String setTemplate; // %s stands for converted value
+		if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+			getExpression = "r." + name;
+			setTemplate = "r." + name + " = %s;";
+		} else {
+			String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			ExecutableElement getter = findMethod(recordClass, (type.getKind() == TypeKind.BOOLEAN ? "is" : "get") + capitalized, 0);
+			ExecutableElement setter = findMethod(recordClass, "set" + capitalized, 1);
+			if (getter == null || setter == null) {
+				return null;
+			}
+			getExpression = "r." + getter.getSimpleName() + "()";
+			setTemplate = "r." + setter.getSimpleName() + "(%s);";
+		}
+		String setStatement;
+		if (type.getKind().isPrimitive()) {
+			// values coming from database may be of any numeric type, null leaves default value
+			String conversion;
+			switch (type.getKind()) {
+				case BOOLEAN: conversion = "((Boolean)value).booleanValue()"; break;
+				case CHAR: conversion = "((Character)value).charValue()"; break;
+				default: conversion = "((Number)value)." + type.getKind().name().toLowerCase() + "Value()"; break;
+			}
+			setStatement = "if (value != null) " + String.format(setTemplate, conversion);
+		} else {
+			TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+			setStatement = String.format(setTemplate, "(" + erasure + ")value");
+		}
+		return new FieldModel(getExpression, setStatement);
+	}
+
+	private static ExecutableElement findMethod(TypeElement type, String name, int parameterCount) {
+		for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == parameterCount
+					&& !method.getModifiers().contains(Modifier.PRIVATE) && !method.getModifiers().contains(Modifier.STATIC)) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isAccessible(TypeElement type) {
+		for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+			TypeElement t = (TypeElement)e;
+			if (t.getModifiers().contains(Modifier.PRIVATE)
+					|| t.getNestingKind() == NestingKind.LOCAL || t.getNestingKind() == NestingKind.ANONYMOUS
+					|| t.getNestingKind() == NestingKind.MEMBER && !t.getModifiers().contains(Modifier.STATIC)) {
+				return false;
+			}
+		}
+		return !type.getModifiers().contains(Modifier.ABSTRACT);
+	}
+
+	private static boolean hasAccessibleConstructor(TypeElement type) {
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void warn(Element element, String reason) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Record accessor not generated, runtime accessor will be used: " + reason, element);
+	}
+
+}
@@ -0,0 +1,149 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests {@link RecordAccessorProcessor} by in-process compilation of sample record classes.
+ * @author Tomas Zalusky
+ */
+public class RecordAccessorProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String PACKAGE = "pleasejava.test.generated";
+
+	private static final String RECORD_SOURCE =
+			"package " + PACKAGE + ";\n" +
+			"import java.util.List;\n" +
+			"import plsql.Plsql;\n" +
+			"@Plsql.Record(\"pkg.rec\")\n" +
+			"public class Rec {\n" +
+			"	static final int IGNORED = 0;\n" +
+			"	boolean flag;\n" +
+			"	private int count;\n" +
+			"	private List<String> names;\n" +
+			"	@Plsql.Name(\"f_total\") long total;\n" +
+			"	public int getCount() { return count; }\n" +
+			"	public void setCount(int count) { this.count = count; }\n" +
+			"	public List<String> getNames() { return names; }\n" +
+			"	public void setNames(List<String> names) { this.names = names; }\n" +
+			"	@Plsql.Record(\"pkg.inner\")\n" +
+			"	public static class Inner {\n" +
+			"		String text;\n" +
+			"	}\n" +
+			"}\n";
+
+	/**
+	 * Top-level class whose name would clash with nested <code>Rec$Inner</code> if <code>$</code> were replaced by <code>_</code>.
+	 */
+	private static final String CLASHING_SOURCE =
+			"package " + PACKAGE + ";\n" +
+			"import plsql.Plsql;\n" +
+			"@Plsql.Record(\"pkg.clashing\")\n" +
+			"public class Rec_Inner {\n" +
+			"	int number;\n" +
+			"}\n";
+
+	private static final String UNSUPPORTED_SOURCE =
+			"package " + PACKAGE + ";\n" +
+			"import plsql.Plsql;\n" +
+			"@Plsql.Record(\"pkg.unsupported\")\n" +
+			"public class Unsupported {\n" +
+			"	private int hidden;\n" +
+			"}\n";
+
+	private static JavaFileObject source(String simpleName, String content) {
+		return new SimpleJavaFileObject(URI.create("string:///" + PACKAGE.replace('.', '/') + "/" + simpleName + ".java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return content;
+			}
+		};
+	}
+
+	@Test
+	public void testGeneratedAccessor() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeNotNull(compiler); // running on JRE
+		File output = folder.newFolder();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+				ImmutableList.of("-classpath", System.getProperty("java.class.path"), "-d", output.getPath()),
+				null, ImmutableList.of(source("Rec", RECORD_SOURCE), source("Rec_Inner", CLASHING_SOURCE), source("Unsupported", UNSUPPORTED_SOURCE)));
+		task.setProcessors(ImmutableList.of(new RecordAccessorProcessor()));
+		assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+		boolean warned = false;
+		for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+			warned |= d.getKind() == Diagnostic.Kind.WARNING && d.getMessage(null).contains("private field has no getter or setter");
+		}
+		assertTrue(warned);
+		try (URLClassLoader loader = new URLClassLoader(new URL[] {output.toURI().toURL()}, getClass().getClassLoader())) {
+			Class<?> recClass = loader.loadClass(PACKAGE + ".Rec");
+			RecordAccessor accessor = RecordAccessor.forClass(recClass);
+			assertEquals(PACKAGE + ".Rec" + RecordAccessor.GENERATED_SUFFIX, accessor.getClass().getName());
+			assertEquals(4, accessor.size());
+			assertEquals(ImmutableList.of("flag", "count", "names", "f_total"), accessor.fieldNames());
+			Object rec = accessor.newInstance();
+			accessor.set(rec, 0, true);
+			accessor.set(rec, 1, new BigDecimal(5)); // numeric value from database
+			accessor.set(rec, 2, ImmutableList.of("a"));
+			accessor.set(rec, 3, null); // primitive keeps default
+			assertEquals(ImmutableList.of(true, 5, ImmutableList.of("a"), 0L), values(accessor, rec));
+			Class<?> innerClass = loader.loadClass(PACKAGE + ".Rec$Inner");
+			RecordAccessor innerAccessor = RecordAccessor.forClass(innerClass);
+			assertEquals(PACKAGE + ".Rec$$Inner" + RecordAccessor.GENERATED_SUFFIX, innerAccessor.getClass().getName());
+			Object inner = innerAccessor.newInstance();
+			innerAccessor.set(inner, 0, "x");
+			assertEquals("x", innerAccessor.get(inner, 0));
+			RecordAccessor clashingAccessor = RecordAccessor.forClass(loader.loadClass(PACKAGE + ".Rec_Inner"));
+			assertEquals(PACKAGE + ".Rec_Inner" + RecordAccessor.GENERATED_SUFFIX, clashingAccessor.getClass().getName());
+			assertEquals(ImmutableList.of("number"), clashingAccessor.fieldNames());
+			RecordAccessor fallback = RecordAccessor.forClass(loader.loadClass(PACKAGE + ".Unsupported"));
+			assertNotNull(fallback);
+			assertFalse(fallback.getClass().getName().endsWith(RecordAccessor.GENERATED_SUFFIX));
+		}
+	}
+
+	private static List<Object> values(RecordAccessor accessor, Object record) {
+		ImmutableList.Builder<Object> result = ImmutableList.builder();
+		for (int i = 0; i < accessor.size(); i++) {
+			result.add(accessor.get(record, i));
+		}
+		return result.build();
+	}
+
+	@Test
+	public void testGeneratedAccessorName() {
+		assertEquals("a.b.C" + RecordAccessor.GENERATED_SUFFIX, RecordAccessor.generatedAccessorName("a.b.C"));
+		assertEquals("a.b.C$$D" + RecordAccessor.GENERATED_SUFFIX, RecordAccessor.generatedAccessorName("a.b.C$D"));
+		assertEquals("a.b.C_D" + RecordAccessor.GENERATED_SUFFIX, RecordAccessor.generatedAccessorName("a.b.C_D"));
+		assertEquals("a.b.C$$$$D" + RecordAccessor.GENERATED_SUFFIX, RecordAccessor.generatedAccessorName("a.b.C$$D"));
+		assertEquals("C" + RecordAccessor.GENERATED_SUFFIX, RecordAccessor.generatedAccessorName("C"));
+	}
+
+}
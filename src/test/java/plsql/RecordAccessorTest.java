@@ -0,0 +1,123 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import plsql.MarshallerTest.Record3;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests runtime {@link RecordAccessor} of classes without generated accessor.
+ * @author Tomas Zalusky
+ */
+public class RecordAccessorTest {
+
+	private static class Record4 {
+		static final int IGNORED = 0;
+		private long theLong;
+		private String theString;
+		private Record4() {
+		}
+	}
+
+	/**
+	 * Fields are declared in order different from order of record fields.
+	 */
+	private static class Record5 {
+		@Plsql.Name("f_integer")
+		private int theInt;
+		private String text;
+		@Plsql.Name("f_boolean")
+		private boolean theBoolean;
+	}
+
+	private static final RecordType REC3 = TypeFactory.record("a_test_package.rec3", ImmutableMap.of(
+			"f_boolean", AbstractPrimitiveType.recognizePrimitiveType("boolean"),
+			"f_integer", AbstractPrimitiveType.recognizePrimitiveType("integer")));
+
+	private static final RecordType REC5 = TypeFactory.record("a_test_package.rec5", ImmutableMap.of(
+			"f_boolean", AbstractPrimitiveType.recognizePrimitiveType("boolean"),
+			"text", AbstractPrimitiveType.recognizePrimitiveType("varchar2(10)"),
+			"f_integer", AbstractPrimitiveType.recognizePrimitiveType("integer")));
+
+	@Test
+	public void testAccess() {
+		assertSame(RecordAccessor.forClass(Record3.class), RecordAccessor.forClass(Record3.class));
+		RecordAccessor accessor = RecordAccessor.forClass(Record3.class, REC3);
+		assertEquals(ImmutableList.of("f_boolean", "f_integer"), accessor.fieldNames());
+		assertEquals(2, accessor.size());
+		Object record = accessor.newInstance();
+		accessor.set(record, 0, true);
+		accessor.set(record, 1, new BigDecimal(7)); // numeric value from database
+		assertEquals(new Record3(true,7), record);
+		assertEquals(true, accessor.get(record, 0));
+		assertEquals(7, accessor.get(record, 1));
+		accessor.set(record, 1, null); // primitive keeps value
+		assertEquals(7, accessor.getInt(record, 1));
+		accessor.setInt(record, 1, 8);
+		accessor.setBoolean(record, 0, false);
+		assertFalse(accessor.getBoolean(record, 0));
+		assertEquals(8L, accessor.getLong(record, 1)); // widened from int field
+		accessor.set(record, 1, 9L); // narrowed to int field
+		assertEquals(9, accessor.get(record, 1));
+		assertEquals(boolean.class, accessor.fieldType(0));
+		assertEquals(int.class, accessor.fieldType(1));
+	}
+
+	@Test
+	public void testPrivateClass() {
+		RecordAccessor accessor = RecordAccessor.forClass(Record4.class, TypeFactory.record("a_test_package.rec4", ImmutableMap.of(
+				"theLong", AbstractPrimitiveType.recognizePrimitiveType("integer"),
+				"theString", AbstractPrimitiveType.recognizePrimitiveType("varchar2(10)"))));
+		assertEquals(2, accessor.size());
+		Record4 record = (Record4)accessor.newInstance();
+		accessor.set(record, 0, new BigDecimal(1L << 40));
+		accessor.set(record, 1, "s");
+		assertEquals(1L << 40, record.theLong);
+		assertEquals(1L << 40, accessor.getLong(record, 0));
+		accessor.setLong(record, 0, 1L << 41);
+		assertEquals(1L << 41, accessor.get(record, 0));
+		assertEquals(String.class, accessor.fieldType(1));
+		assertEquals("s", accessor.get(record, 1));
+	}
+
+	@Test
+	public void testMatchedByName() {
+		RecordAccessor accessor = RecordAccessor.forClass(Record5.class, REC5);
+		assertEquals(ImmutableList.of("f_boolean", "text", "f_integer"), accessor.fieldNames());
+		Record5 record = (Record5)accessor.newInstance();
+		accessor.set(record, 0, true);
+		accessor.set(record, 1, "t");
+		accessor.set(record, 2, 3);
+		assertEquals(true, record.theBoolean);
+		assertEquals("t", record.text);
+		assertEquals(3, record.theInt);
+		assertEquals(ImmutableList.of(true, "t", 3), ImmutableList.of(accessor.get(record, 0), accessor.get(record, 1), accessor.get(record, 2)));
+		assertEquals(int.class, accessor.fieldType(2));
+		accessor.setInt(record, 2, 4);
+		assertEquals(4, accessor.getInt(record, 2));
+		assertEquals(4, record.theInt);
+	}
+
+	@Test
+	public void testUnmatchedField() {
+		try {
+			RecordAccessor.forClass(Record5.class, TypeFactory.record("a_test_package.rec6", ImmutableMap.of(
+					"f_boolean", AbstractPrimitiveType.recognizePrimitiveType("boolean"),
+					"f_text", AbstractPrimitiveType.recognizePrimitiveType("varchar2(10)"),
+					"f_integer", AbstractPrimitiveType.recognizePrimitiveType("integer"))));
+			fail();
+		} catch (IllegalArgumentException expected) {
+			assertEquals(expected.getMessage(), true, expected.getMessage().contains("f_text"));
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package plsql;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import pleasejava.Utils;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * <p>
+ * Registry of fingerprints (SHA-256 hashes) of generated statements.
+ * Database server shares parsed cursor among sessions only if statement text is identical byte by byte,
+ * hence generated text must be canonical: same signature and same shape of call must always produce the same text,
+ * regardless of JVM, platform line separator or case in which types are declared in type graph.
+ * Generators pass every text through {@link #canonical(String)} and record it under key identifying
+ * signature and shape of call (see {@link #key(AbstractSignature, String)}).
+ * Recording different text under existing key means generation is not deterministic and fails immediately.
+ * </p>
+ * <p>
+ * Registry used on production path is bounded (see {@link #StatementFingerprints(long)}),
+ * least recently recorded keys are evicted and determinism is then checked only against retained entries.
+ * Unbounded registry is intended for tests and diagnostics comparing all generated statements.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class StatementFingerprints {
+
+	private final ConcurrentMap<String,String> fingerprints;
+
+	/**
+	 * Creates unbounded registry.
+	 */
+	StatementFingerprints() {
+		this.fingerprints = Maps.newConcurrentMap();
+	}
+
+	/**
+	 * Creates registry holding at most given number of keys.
+	 * @param maximumSize
+	 */
+	StatementFingerprints(long maximumSize) {
+		this.fingerprints = CacheBuilder.newBuilder().maximumSize(maximumSize).<String,String>build().asMap();
+	}
+
+	/**
+	 * Converts text of statement into canonical form: lines are separated by <code>\n</code>,
+	 * trailing whitespace of lines is removed and text outside of string literals and quoted identifiers is in lowercase
+	 * (PLSQL identifiers and keywords are case insensitive).
+	 * @param text
+	 * @return canonical text
+	 */
+	static String canonical(String text) {
+		StringBuilder result = new StringBuilder(text.length());
+		char quote = 0;
+		int lineEnd = 0; // length of result after last non-whitespace character of current line
+		for (int i = 0; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			if (quote == 0 && (ch == '\r' || ch == '\n')) {
+				result.setLength(lineEnd);
+				if (ch == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+					i++;
+				}
+				result.append('\n');
+				lineEnd = result.length();
+				continue;
+			}
+			if (quote != 0) {
+				if (ch == quote) {
+					quote = 0;
+				}
+			} else if (ch == '\'' || ch == '"') {
+				quote = ch;
+			} else {
+				ch = Character.toLowerCase(ch);
+			}
+			result.append(ch);
+			if (quote != 0 || !Character.isWhitespace(ch)) {
+				lineEnd = result.length();
+			}
+		}
+		result.setLength(lineEnd);
+		return result.toString();
+	}
+
+	/**
+	 * @param text canonical text of statement
+	 * @return SHA-256 hash in hexadecimal form
+	 */
+	static String fingerprint(String text) {
+		return Hashing.sha256().hashString(text, StandardCharsets.UTF_8).toString();
+	}
+
+	/**
+	 * Key consists of name of signature, short fingerprint of its structure (so that equally named signatures
+	 * of different type graphs do not clash) and description of shape of call.
+	 * @param signature
+	 * @param shape
+	 * @return key of statement
+	 */
+	static String key(AbstractSignature signature, String shape) {
+		return String.format("%s@%s %s", signature.getName(), fingerprint(signature.toString()).substring(0, 12), shape);
+	}
+
+	/**
+	 * Records fingerprint of statement.
+	 * @param key
+	 * @param text canonical text of statement
+	 * @return fingerprint
+	 * @throws IllegalStateException if different text has already been recorded under the same key
+	 */
+	String record(String key, String text) {
+		String result = fingerprint(text);
+		String existing = fingerprints.putIfAbsent(key, result);
+		if (existing != null && !existing.equals(result)) {
+			throw new IllegalStateException(String.format("Statement %s is not generated deterministically, fingerprint %s differs from recorded %s.", key, result, existing));
+		}
+		return result;
+	}
+
+	/**
+	 * @param key
+	 * @return recorded fingerprint or null
+	 */
+	String get(String key) {
+		return fingerprints.get(key);
+	}
+
+	/**
+	 * @return recorded fingerprints by keys, in order of keys
+	 */
+	Map<String,String> getFingerprints() {
+		return ImmutableSortedMap.copyOf(fingerprints);
+	}
+
+	/**
+	 * @return one line per key in form <code>key fingerprint</code>, in order of keys
+	 */
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder();
+		for (Map.Entry<String,String> e : getFingerprints().entrySet()) {
+			Utils.appendf(buf, "%s %s%n", e.getKey(), e.getValue());
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Reverse of {@link #toString()}.
+	 * @param text
+	 * @return fingerprints by keys
+	 */
+	static Map<String,String> parse(String text) {
+		ImmutableSortedMap.Builder<String,String> result = ImmutableSortedMap.naturalOrder();
+		for (String line : text.split("\\r?\\n")) {
+			if (!line.isEmpty()) {
+				int space = line.lastIndexOf(' ');
+				result.put(line.substring(0, space), line.substring(space + 1));
+			}
+		}
+		return result.build();
+	}
+
+}
@@ -0,0 +1,111 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Regenerates blocks and wrapper procedures for all signatures of test graph and compares their fingerprints
+ * with recorded ones. Any change of generated text (intended or not) changes fingerprint,
+ * intended change must be recorded again.
+ * @author Tomas Zalusky
+ */
+@RunWith(Parameterized.class)
+public class StatementFingerprintsTest extends AbstractTypeGraphTest {
+
+	private static boolean record = false;
+
+	private final String graphName;
+
+	private final String expected;
+
+	public StatementFingerprintsTest(String graphName) throws IOException {
+		this.graphName = graphName;
+		this.expected = record ? null : readExpectedOutput(getClass(),graphName);
+	}
+
+	@Parameterized.Parameters(name = "{index}: {0}")
+	public static Collection<Object[]> data() {
+		return Arrays.asList(new Object[][] {
+				{"simple"},
+				{"dag1"},
+				{"dag2"},
+				{"alltypes"},
+				{"toplevel"},
+				{"javatype"},
+				{"intkeymap"},
+				{"inout"},
+				{"wide"},
+		});
+	}
+
+	/**
+	 * Generates all statements of graph into new registry.
+	 * Graph is loaded again, hence blocks are really generated, not taken from cache.
+	 */
+	static StatementFingerprints generateAll(String graphName) throws IOException {
+		TypeGraph graph = loadGraph(graphName);
+		StatementFingerprints result = new StatementFingerprints();
+		for (AbstractType type : graph.getTopologicalOrdering()) {
+			if (type instanceof AbstractSignature) {
+				AbstractSignature signature = (AbstractSignature)type;
+				TransferObjectTree tot = graph.toTypeNodeTree(signature).toTransferObjectTree();
+				for (BlockGenerator.Style style : BlockGenerator.Style.values()) {
+					String text = BlockGenerator.generate(tot, style, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap()).getText();
+					String key = StatementFingerprints.key(signature, style + ":");
+					result.record(key, text);
+					assertEquals(key, BlockGenerator.fingerprints().get(key), result.get(key));
+				}
+				result.record(StatementFingerprints.key(signature, "procedure"), BlockGenerator.generateProcedure(tot, "p").getText());
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void test() throws IOException {
+		StatementFingerprints first = generateAll(graphName);
+		StatementFingerprints second = generateAll(graphName);
+		assertEquals(first.getFingerprints(), second.getFingerprints());
+		if (record) {
+			writeExpectedOutput(getClass(),graphName,first.toString());
+		} else {
+			assertEquals(StatementFingerprints.parse(expected), first.getFingerprints());
+		}
+	}
+
+	@Test
+	public void testCanonical() {
+		assertEquals("begin\n  x := 'AbC';\n  \"Y\" := 1;\nend;\n", StatementFingerprints.canonical("BEGIN\r\n  X := 'AbC';  \r\n  \"Y\" := 1;\nEnd;\t\r\n"));
+		assertEquals(StatementFingerprints.fingerprint("begin null; end;"), StatementFingerprints.fingerprint(StatementFingerprints.canonical("BEGIN NULL; END; ")));
+		assertNotEquals(StatementFingerprints.fingerprint("begin null; end;"), StatementFingerprints.fingerprint("begin  null; end;"));
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testNotDeterministic() {
+		StatementFingerprints fingerprints = new StatementFingerprints();
+		fingerprints.record("k", "begin null; end;");
+		fingerprints.record("k", "begin null; end;");
+		fingerprints.record("k", "begin x; end;");
+	}
+
+	@Test
+	public void testBounded() {
+		StatementFingerprints fingerprints = new StatementFingerprints(2);
+		for (int i = 0; i < 100; i++) {
+			fingerprints.record("k" + i, "begin null; end;");
+		}
+		assertTrue(fingerprints.toString(), fingerprints.getFingerprints().size() <= 2);
+		assertEquals(StatementFingerprints.fingerprint("begin null; end;"), fingerprints.get("k99"));
+	}
+
+}
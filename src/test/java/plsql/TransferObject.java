@@ -1,5 +1,6 @@
 package plsql;
 
+import java.util.Collections;
 import java.util.List;
 
 import pleasejava.Utils;
@@ -41,6 +42,16 @@ public abstract class TransferObject {
 	private final TypeNode typeNode;
 
 	private final String id;
+
+	/**
+	 * True if content of this transfer object can be derived on receiving side, see {@link TransferObjectOptimizer}.
+	 */
+	private boolean derived;
+
+	/**
+	 * True if content of this transfer object is bound as part of packed column, see {@link ColumnPacking}.
+	 */
+	private boolean packed;
 	
 	protected TransferObject(TransferObject parent, TypeNode typeNode, String id) {
 		this.parent = parent;
@@ -56,6 +67,41 @@ public abstract class TransferObject {
 	public void addChild(TransferObject child) {
 		children.add(child);
 	}
+
+	TransferObject getParent() {
+		return parent;
+	}
+
+	List<TransferObject> getChildren() {
+		return Collections.unmodifiableList(children);
+	}
+
+	TypeNode getTypeNode() {
+		return typeNode;
+	}
+
+	/**
+	 * @return true if no JDBC parameter is generated for this transfer object since it is either derived or packed
+	 */
+	boolean isElided() {
+		return derived || packed;
+	}
+
+	boolean isDerived() {
+		return derived;
+	}
+
+	void setDerived(boolean derived) {
+		this.derived = derived;
+	}
+
+	boolean isPacked() {
+		return packed;
+	}
+
+	void setPacked(boolean packed) {
+		this.packed = packed;
+	}
 	
 	@Override
 	public String toString() {
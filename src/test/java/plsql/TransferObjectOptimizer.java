@@ -0,0 +1,131 @@
+package plsql;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pleasejava.Utils;
+
+/**
+ * <p>
+ * Optimization pass over filled {@link TransferObjectTree} which marks transfer objects
+ * whose content can be derived on receiving side as {@link TransferObject#isElided() elided}.
+ * No JDBC parameter is bound and no code is generated for elided transfer object.
+ * Content of elided transfer object is left untouched in Java.
+ * </p>
+ * <p>
+ * Following transfer objects are elided:
+ * </p>
+ * <ul>
+ * <li>trivial simple {@link Pointers} - pointers of collection on the top of hierarchy
+ * with content <em>[1,n+1]</em>, where <em>n</em> is the length of child collection</li>
+ * <li>{@link DeletionsPointers} pointing only to empty intervals - their content <em>[&#177;1,...,1]</em>
+ * is derived from signs of sibling {@link DataPointers}</li>
+ * <li>{@link Deletions} under elided {@link DeletionsPointers} (they are necessarily empty)</li>
+ * </ul>
+ * <p>
+ * Since elided transfer objects depend on data, the pass must be run after every marshalling.
+ * It concerns data sent to database, transfer objects which were not marshalled (OUT parameters) are never elided.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class TransferObjectOptimizer {
+
+	/**
+	 * Result of optimization.
+	 * @author Tomas Zalusky
+	 */
+	static final class Report {
+
+		private final Map<TransferObject,String> elided = new LinkedHashMap<>();
+
+		private int bindCountBefore;
+
+		/**
+		 * @return elided transfer objects in depth-first order, mapped to reason of elision
+		 */
+		Map<TransferObject,String> getElided() {
+			return Collections.unmodifiableMap(elided);
+		}
+
+		int getBindCountBefore() {
+			return bindCountBefore;
+		}
+
+		int getBindCountAfter() {
+			return bindCountBefore - elided.size();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder result = new StringBuilder();
+			for (Map.Entry<TransferObject,String> e : elided.entrySet()) {
+				Utils.appendf(result, "%s: %s%n", e.getKey().getId(), e.getValue());
+			}
+			Utils.appendf(result, "binds %d -> %d%n", bindCountBefore, getBindCountAfter());
+			return result.toString();
+		}
+
+	}
+
+	private TransferObjectOptimizer() {
+	}
+
+	/**
+	 * Marks derivable transfer objects of tree as elided.
+	 * Previous marks of this pass are reset, marks of {@link ColumnPacking} are kept.
+	 * @param tree
+	 * @return report of elided transfer objects
+	 */
+	static Report optimize(TransferObjectTree tree) {
+		Report report = new Report();
+		optimize(tree.getRoot(), report);
+		return report;
+	}
+
+	private static void optimize(TransferObject to, Report report) {
+		String reason = null;
+		if (to instanceof DeletionsPointers) {
+			if (isZeroLength((Pointers)to)) {
+				reason = "deletions pointers of zero length";
+			}
+		} else if (to instanceof Pointers) {
+			if (isTrivialSimple((Pointers)to)) {
+				reason = "trivial simple pointers";
+			}
+		} else if (to instanceof Deletions) {
+			if (to.getParent().isDerived()) {
+				reason = "empty deletions";
+			}
+		}
+		to.setDerived(reason != null);
+		if (!(to instanceof RootTransferObject)) {
+			report.bindCountBefore++;
+		}
+		if (reason != null) {
+			report.elided.put(to, reason);
+		}
+		for (TransferObject child : to.getChildren()) {
+			optimize(child, report);
+		}
+	}
+
+	private static boolean isTrivialSimple(Pointers pointers) {
+		IntList data = pointers.getData();
+		return pointers.isSimple() && data.size() == 2 && data.get(0) == 1;
+	}
+
+	private static boolean isZeroLength(Pointers pointers) {
+		IntList data = pointers.getData();
+		if (data.isEmpty()) { // not marshalled
+			return false;
+		}
+		for (int i = 0; i < data.size(); i++) {
+			if (Math.abs(data.get(i)) != 1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,67 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests {@link TransferObjectOptimizer}.
+ * @author Tomas Zalusky
+ */
+public class TransferObjectOptimizerTest extends AbstractTypeGraphTest {
+
+	private static final String E = NestedTableType.ELEMENT_LABEL;
+
+	private static <T extends TransferObject> T to(TransferObjectTree tot, Class<T> toClass, String... path) {
+		return tot.getTransferObject(MarshallerTest.node(tot, path), toClass);
+	}
+
+	@Test
+	public void testElision() throws IOException {
+		Map<String,Object> arguments = ImmutableMap.<String,Object>of(
+				"pi_var2", Arrays.asList(ImmutableList.of("A","B"), null, ImmutableList.of("C"), ImmutableList.of(), ImmutableList.of("D","E","F")),
+				"pi_ibt3", ImmutableMap.of("x", ImmutableMap.of(1,"a",4,"b")));
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", arguments);
+		TransferObjectOptimizer.Report report = TransferObjectOptimizer.optimize(tot);
+		assertTrue(to(tot, DataPointers.class, "pi_var2").isElided()); // [1,6]
+		assertTrue(to(tot, DeletionsPointers.class, "pi_var2", E).isElided()); // [1,-1,1,1,1,1]
+		assertTrue(to(tot, Deletions.class, "pi_var2", E).isElided());
+		assertFalse(to(tot, DataPointers.class, "pi_var2", E).isElided());
+		assertFalse(to(tot, PrimitiveCollection.class, "pi_var2", E, E).isElided());
+		assertTrue(to(tot, DataPointers.class, "pi_ibt3").isElided());
+		assertFalse(to(tot, DeletionsPointers.class, "pi_ibt3", E).isElided()); // table with holes
+		assertFalse(to(tot, Deletions.class, "pi_ibt3", E).isElided());
+		assertFalse(to(tot, DataPointers.class, "pi_nst3").isElided()); // null collection [-1,1]
+		assertFalse(to(tot, DeletionsPointers.class, "po_var2", E).isElided()); // OUT parameter
+		assertFalse(to(tot, Deletions.class, "po_var2", E).isElided());
+		assertEquals(report.getBindCountBefore() - report.getElided().size(), report.getBindCountAfter());
+		assertEquals("trivial simple pointers", report.getElided().get(to(tot, DataPointers.class, "pi_var2")));
+		assertTrue(report.toString(), report.toString().contains("binds " + report.getBindCountBefore() + " -> " + report.getBindCountAfter()));
+	}
+
+	@Test
+	public void testRepeatedOptimization() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		TransferObjectTree tot = MarshallerTest.marshal(graph, "echo", Collections.singletonMap("pi_clob", "text"));
+		TransferObjectOptimizer.Report report = TransferObjectOptimizer.optimize(tot);
+		assertEquals(report.getElided(), TransferObjectOptimizer.optimize(tot).getElided());
+		assertFalse(to(tot, PrimitiveScalar.class, "pi_clob").isElided());
+		to(tot, DataPointers.class, "pi_var2").setDerived(true);
+		TransferObjectOptimizer.optimize(tot);
+		assertFalse(to(tot, DataPointers.class, "pi_var2").isElided()); // marks are reset
+		to(tot, DataPointers.class, "pi_var2").setPacked(true);
+		TransferObjectOptimizer.optimize(tot);
+		assertTrue(to(tot, DataPointers.class, "pi_var2").isElided()); // marks of packing are kept
+	}
+
+}
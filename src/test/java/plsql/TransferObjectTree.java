@@ -55,6 +55,14 @@ public class TransferObjectTree {
 		boolean result = associations.containsKey(typeNode);
 		return result;
 	}
+
+	TypeNode getTypeTreeRoot() {
+		return typeTreeRoot;
+	}
+
+	TransferObject getRoot() {
+		return root;
+	}
 	
 	@Override
 	public String toString() {
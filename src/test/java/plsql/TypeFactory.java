@@ -55,6 +55,34 @@ class TypeFactory {
 		return result.get();
 	}
 
+	/*
+	 * Factory methods shared with JavaTypeFactory, so that types recognized from XML and from Java classes are created the same way.
+	 */
+
+	static RecordType record(String name, ImmutableMap<String,AbstractType> fields) {
+		return new RecordType(new RecordType.StringConverter().fromString(name),fields);
+	}
+
+	static VarrayType varray(String name, AbstractType elementType) {
+		return new VarrayType(new VarrayType.StringConverter().fromString(name),elementType);
+	}
+
+	static NestedTableType nestedTable(String name, AbstractType elementType) {
+		return new NestedTableType(new NestedTableType.StringConverter().fromString(name),elementType);
+	}
+
+	static IndexByTableType indexByTable(String name, AbstractType elementType, AbstractPrimitiveType indexType) {
+		return new IndexByTableType(new IndexByTableType.StringConverter().fromString(name),elementType,indexType);
+	}
+
+	static ProcedureSignature procedure(String name, ImmutableMap<String,Parameter> parameters) {
+		return new ProcedureSignature(new ProcedureSignature.StringConverter().fromString(name),parameters);
+	}
+
+	static FunctionSignature function(String name, ImmutableMap<String,Parameter> parameters, AbstractType returnType) {
+		return new FunctionSignature(new FunctionSignature.StringConverter().fromString(name),parameters,returnType);
+	}
+
 	/**
 	 * Returns instance of type for given name.
 	 * If such an instance does not exist, it is recursively created.
@@ -86,28 +114,24 @@ class TypeFactory {
 							AbstractType fieldType = ensureType(fieldTypeName);
 							builder.put(fieldName,fieldType);
 						}
-						plsql.Plsql.Record annotation = new RecordType.StringConverter().fromString(name);
-						result = new RecordType(annotation,builder.build());
+						result = record(name,builder.build());
 						break;
 					} case "varray" : {
 						String elementTypeName = attr(typeElement,"of");
 						AbstractType elementType = ensureType(elementTypeName);
-						plsql.Plsql.Varray annotation = new VarrayType.StringConverter().fromString(name);
-						result = new VarrayType(annotation,elementType);
+						result = varray(name,elementType);
 						break;
 					} case "nestedtable" : {
 						String elementTypeName = attr(typeElement,"of");
 						AbstractType elementType = ensureType(elementTypeName);
-						plsql.Plsql.NestedTable annotation = new NestedTableType.StringConverter().fromString(name);
-						result = new NestedTableType(annotation,elementType);
+						result = nestedTable(name,elementType);
 						break;
 					} case "indexbytable" : {
 						String elementTypeName = attr(typeElement,"of");
 						AbstractType elementType = ensureType(elementTypeName);
 						String indexTypeName = attr(typeElement,"indexby");
 						AbstractPrimitiveType indexType = (AbstractPrimitiveType)ensureType(indexTypeName);
-						plsql.Plsql.IndexByTable annotation = new IndexByTableType.StringConverter().fromString(name);
-						result = new IndexByTableType(annotation,elementType,indexType);
+						result = indexByTable(name,elementType,indexType);
 						break;
 					} case "procedure" : {
 						ImmutableMap.Builder<String,Parameter> builder = ImmutableMap.builder();
@@ -119,8 +143,7 @@ class TypeFactory {
 							Parameter parameter = Parameter.create(mode, parameterType);
 							builder.put(parameterName,parameter);
 						}
-						plsql.Plsql.Procedure annotation = new ProcedureSignature.StringConverter().fromString(name);
-						result = new ProcedureSignature(annotation,builder.build());
+						result = procedure(name,builder.build());
 						break;
 					} case "function" : {
 						ImmutableMap.Builder<String,Parameter> builder = ImmutableMap.builder();
@@ -141,8 +164,7 @@ class TypeFactory {
 						}
 						String returnTypeName = attr(returnElement,"type");
 						AbstractType returnType = ensureType(returnTypeName);
-						plsql.Plsql.Function annotation = new FunctionSignature.StringConverter().fromString(name);
-						result = new FunctionSignature(annotation,builder.build(),returnType);
+						result = function(name,builder.build(),returnType);
 						break;
 					} default : {
 						throw new InvalidPlsqlConstructException(typeElementName);
@@ -90,22 +90,55 @@ public class TypeGraph {
 			Document doc = builder.build(xml);
 			Element rootElement = doc.getRootElement();
 			TypeFactory typeFactory = new TypeFactory(rootElement);
-			ImmutableSet.Builder<AbstractType> allTypesBuilder = ImmutableSet.builder();
-			ImmutableListMultimap.Builder<AbstractType,AbstractType> childrenBuilder = ImmutableListMultimap.builder();
+			List<AbstractType> types = Lists.newArrayList();
 			for (Element typeElement : rootElement.getChildren()) {
 				String name = typeElement.getAttributeValue("name");
-				AbstractType type = typeFactory.ensureType(name);
-				Collection<AbstractType> children = type.getChildren().values();
-				allTypesBuilder.add(type).addAll(children);
-				childrenBuilder.putAll(type,children);
+				types.add(typeFactory.ensureType(name));
 			}
-			ImmutableListMultimap<AbstractType,AbstractType> children = childrenBuilder.build();
-			ImmutableSet<AbstractType> allTypes = allTypesBuilder.build();
-			return new TypeGraph(allTypes, children);
+			return create(types);
 		} catch (Exception e) {
 			throw Throwables.propagate(e);
 		}
 	}
+
+	/**
+	 * Factory method, creates instance from Java classes annotated with {@link Plsql} annotations.
+	 * Graph built from Java counterparts of types declared in XML is identical to graph built from that XML.
+	 * @param classes record classes and classes (usually interfaces) containing methods representing procedures and functions
+	 * @return new instance
+	 * @see JavaTypeFactory
+	 */
+	public static TypeGraph createFrom(Collection<Class<?>> classes) {
+		return create(JavaTypeFactory.closure(JavaTypeFactory.typesOf(classes)));
+	}
+
+	/**
+	 * Factory method, creates instance from all classes of given packages (including subpackages) found on classpath.
+	 * @param classLoader
+	 * @param packageNames
+	 * @return new instance
+	 * @see #createFrom(Collection)
+	 */
+	public static TypeGraph createFromPackages(ClassLoader classLoader, String... packageNames) {
+		return createFrom(JavaTypeFactory.scan(classLoader, packageNames));
+	}
+
+	/**
+	 * @param types types of graph, each of them is added along with its children
+	 * @return new instance
+	 */
+	private static TypeGraph create(Iterable<AbstractType> types) {
+		ImmutableSet.Builder<AbstractType> allTypesBuilder = ImmutableSet.builder();
+		ImmutableListMultimap.Builder<AbstractType,AbstractType> childrenBuilder = ImmutableListMultimap.builder();
+		for (AbstractType type : types) {
+			Collection<AbstractType> children = type.getChildren().values();
+			allTypesBuilder.add(type).addAll(children);
+			childrenBuilder.putAll(type,children);
+		}
+		ImmutableListMultimap<AbstractType,AbstractType> children = childrenBuilder.build();
+		ImmutableSet<AbstractType> allTypes = allTypesBuilder.build();
+		return new TypeGraph(allTypes, children);
+	}
 	
 	/**
 	 * Sequence of types which satisfies condition on topological ordering.
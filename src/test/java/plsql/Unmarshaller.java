@@ -0,0 +1,909 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * Reads Java representation of parameter values from {@link TransferObjectTree} (unmarshalling),
+ * inverse operation to {@link Marshaller}.
+ * </p>
+ * <p>
+ * In default (lazy) mode, collections and records are returned as views
+ * which decode elements on access straight from {@link Pointers}, {@link Deletions}, {@link Indexes}
+ * and {@link PrimitiveCollection} columns.
+ * A view holds only reference to decoding {@link Reader} and interval in columns,
+ * hence memory consumption of unmarshalled value stays near size of transferred columns
+ * regardless of number of elements. Views are read-only and decode element again on every access.
+ * In eager mode, detached objects are built.
+ * </p>
+ * <p>
+ * Eager mode can run in parallel on {@link java.util.concurrent.ForkJoinPool#commonPool() common fork-join pool}
+ * if parallel threshold is given: {@link #unmarshalAll(Collection)} reads parameters in parallel
+ * and elements of large varray, nested table or index-by table are read in parallel in ranges.
+ * Readers and deletion bitmaps are built before any task is forked and columns are only read,
+ * every element is stored at its own position, hence the result is identical to sequential unmarshalling.
+ * </p>
+ * <p>
+ * Java representation of PLSQL values:
+ * </p>
+ * <ul>
+ * <li>varray - {@link List}</li>
+ * <li>nested table - {@link List}, or {@link Map} of 1-based indexes to elements if nested table contains deleted elements</li>
+ * <li>index-by table - {@link Map} iterated in order of transferred indexes,
+ * {@link SortedMap} if indexes are sorted (see {@link Indexes#isSorted()}),
+ * or {@link IntKeyMap} built from unboxed indexes if requested for index-by table indexed by <code>pls_integer</code>
+ * or <code>binary_integer</code> (detached object in both modes, elements are read according to mode)</li>
+ * <li>record - instance of class provided for record type (fields are set using {@link RecordAccessor}),
+ * or {@link Map} of PLSQL field names to values if no class is provided</li>
+ * <li>primitive type, JDBC-transferrable record or collection - object stored in transfer object</li>
+ * </ul>
+ * @author Tomas Zalusky
+ */
+final class Unmarshaller {
+
+	private final TransferObjectTree transferObjectTree;
+
+	private final Function<RecordType,Class<?>> recordClasses;
+
+	private final Predicate<IndexByTableType> intKeyMaps;
+
+	private final boolean eager;
+
+	/**
+	 * Minimal number of elements read in parallel, {@link Integer#MAX_VALUE} for sequential unmarshalling.
+	 */
+	private final int parallelThreshold;
+
+	private final Map<TypeNode,Reader> readers = Maps.newIdentityHashMap();
+
+	/**
+	 * @param transferObjectTree tree filled with data
+	 * @param recordClasses provides Java class representing given record type, returns null for representing record by map
+	 * @param eager true for building detached objects, false for views
+	 */
+	Unmarshaller(TransferObjectTree transferObjectTree, Function<RecordType,Class<?>> recordClasses, boolean eager) {
+		this(transferObjectTree, recordClasses, eager, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param transferObjectTree tree filled with data
+	 * @param recordClasses provides Java class representing given record type, returns null for representing record by map
+	 * @param eager true for building detached objects, false for views
+	 * @param parallelThreshold minimal number of elements (or parameters) read in parallel in eager mode
+	 */
+	Unmarshaller(TransferObjectTree transferObjectTree, Function<RecordType,Class<?>> recordClasses, boolean eager, int parallelThreshold) {
+		this(transferObjectTree, recordClasses, t -> false, eager, parallelThreshold);
+	}
+
+	/**
+	 * @param transferObjectTree tree filled with data
+	 * @param recordClasses provides Java class representing given record type, returns null for representing record by map
+	 * @param intKeyMaps true for representing given index-by table by {@link IntKeyMap} (ignored for tables not indexed by integers)
+	 * @param eager true for building detached objects, false for views
+	 * @param parallelThreshold minimal number of elements (or parameters) read in parallel in eager mode
+	 */
+	Unmarshaller(TransferObjectTree transferObjectTree, Function<RecordType,Class<?>> recordClasses, Predicate<IndexByTableType> intKeyMaps,
+			boolean eager, int parallelThreshold) {
+		this.transferObjectTree = transferObjectTree;
+		this.recordClasses = recordClasses;
+		this.intKeyMaps = intKeyMaps;
+		this.eager = eager;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * @param parameterName name of parameter or {@link FunctionSignature#RETURN_LABEL} for return value of function
+	 * @return Java representation of value of given parameter
+	 */
+	Object unmarshal(String parameterName) {
+		TypeNode typeNode = transferObjectTree.getTypeTreeRoot().getChildren().get(parameterName);
+		if (typeNode == null) {
+			throw new IllegalArgumentException("Unknown parameter " + parameterName + ".");
+		}
+		return reader(typeNode).read(0);
+	}
+
+	/**
+	 * @param parameterNames names of parameters or {@link FunctionSignature#RETURN_LABEL}
+	 * @return Java representations of given parameters by name
+	 */
+	Map<String,Object> unmarshalAll(Collection<String> parameterNames) {
+		final List<Reader> parameterReaders = Lists.newArrayList();
+		for (String parameterName : parameterNames) {
+			TypeNode typeNode = transferObjectTree.getTypeTreeRoot().getChildren().get(parameterName);
+			if (typeNode == null) {
+				throw new IllegalArgumentException("Unknown parameter " + parameterName + ".");
+			}
+			parameterReaders.add(reader(typeNode));
+		}
+		final Object[] values = new Object[parameterReaders.size()];
+		if (eager && parameterReaders.size() > 1 && size(transferObjectTree.getRoot()) >= parallelThreshold) {
+			List<RecursiveAction> tasks = Lists.newArrayList();
+			for (int i = 0; i < values.length; i++) {
+				final int index = i;
+				tasks.add(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+					@Override
+					protected void compute() {
+						values[index] = parameterReaders.get(index).read(0);
+					}
+				});
+			}
+			ForkJoinTask.invokeAll(tasks);
+		} else {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = parameterReaders.get(i).read(0);
+			}
+		}
+		Map<String,Object> result = new LinkedHashMap<>();
+		int i = 0;
+		for (String parameterName : parameterNames) {
+			result.put(parameterName, values[i++]);
+		}
+		return result;
+	}
+
+	/**
+	 * @param to
+	 * @return number of primitive values in columns of subtree (approximate size of payload)
+	 */
+	private static long size(TransferObject to) {
+		long result = to instanceof PrimitiveCollection ? ((PrimitiveCollection)to).size() : 0;
+		for (TransferObject child : to.getChildren()) {
+			result += size(child);
+		}
+		return result;
+	}
+
+	private Reader reader(TypeNode typeNode) {
+		Reader result = readers.get(typeNode);
+		if (result == null) {
+			result = typeNode.getType().accept(new Compile(), typeNode);
+			readers.put(typeNode, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Compiles type node into reader, see {@link Reader} subclasses for meaning.
+	 * @author Tomas Zalusky
+	 */
+	private class Compile implements TypeVisitorAR<TypeNode,Reader> {
+
+		@Override
+		public Reader visitProcedureSignature(ProcedureSignature type, TypeNode typeNode) {
+			throw new IllegalStateException("signature is not expected to be nested");
+		}
+
+		@Override
+		public Reader visitFunctionSignature(FunctionSignature type, TypeNode typeNode) {
+			throw new IllegalStateException("signature is not expected to be nested");
+		}
+
+		@Override
+		public Reader visitRecord(RecordType type, TypeNode typeNode) {
+			final JdbcTransferrableRecord to = transferObjectTree.getTransferObject(typeNode, JdbcTransferrableRecord.class);
+			if (to != null) {
+				return new Reader() {
+					@Override
+					Object read(int position) {
+						return to.getData();
+					}
+				};
+			}
+			ImmutableList.Builder<Reader> fieldReaders = ImmutableList.builder();
+			for (String fieldName : type.getFields().keySet()) {
+				fieldReaders.add(reader(typeNode.getChildren().get(fieldName)));
+			}
+			Class<?> recordClass = recordClasses.apply(type);
+			return new RecordReader(type, fieldReaders.build(), recordClass == null ? null : RecordAccessor.forClass(recordClass, type));
+		}
+
+		@Override
+		public Reader visitVarray(VarrayType type, TypeNode typeNode) {
+			return compileCollection(typeNode, VarrayType.ELEMENT_LABEL);
+		}
+
+		@Override
+		public Reader visitNestedTable(NestedTableType type, TypeNode typeNode) {
+			return compileCollection(typeNode, NestedTableType.ELEMENT_LABEL);
+		}
+
+		@Override
+		public Reader visitIndexByTable(IndexByTableType type, TypeNode typeNode) {
+			CollectionReader result = compileCollection(typeNode, IndexByTableType.ELEMENT_LABEL);
+			result.intKeyMap = result.indexes != null && result.indexes.isIntColumn() && intKeyMaps.test(type);
+			return result;
+		}
+
+		@Override
+		public Reader visitPrimitive(AbstractPrimitiveType type, TypeNode typeNode) {
+			PrimitiveHolder to = transferObjectTree.getTransferObject(typeNode, PrimitiveHolder.class);
+			if (to instanceof PrimitiveCollection) {
+				return new ColumnReader((PrimitiveCollection)to);
+			} else {
+				final PrimitiveScalar scalar = (PrimitiveScalar)to;
+				return new Reader() {
+					@Override
+					Object read(int position) {
+						return scalar.getData();
+					}
+				};
+			}
+		}
+
+		private CollectionReader compileCollection(TypeNode typeNode, String elementLabel) {
+			final JdbcTransferrableCollection array = transferObjectTree.getTransferObject(typeNode, JdbcTransferrableCollection.class);
+			Reader elementReader = array == null ? reader(typeNode.getChildren().get(elementLabel)) : new Reader() {
+				@Override
+				Object read(int position) {
+					return array.get(position);
+				}
+			};
+			DataPointers pointers = transferObjectTree.getTransferObject(typeNode, DataPointers.class);
+			DeletionsPointers deletionsPointers = transferObjectTree.getTransferObject(typeNode, DeletionsPointers.class);
+			Deletions deletions = transferObjectTree.getTransferObject(typeNode, Deletions.class);
+			if (parallelThreshold != Integer.MAX_VALUE && deletions != null && !deletions.getData().isEmpty()) {
+				deletions.getBitmap(pointers, deletionsPointers); // built lazily, must not be built concurrently
+			}
+			return new CollectionReader(pointers, deletionsPointers, deletions,
+					transferObjectTree.getTransferObject(typeNode, Indexes.class),
+					elementReader);
+		}
+
+	}
+
+	/**
+	 * Decodes value at position of one type node.
+	 * @author Tomas Zalusky
+	 */
+	private static abstract class Reader {
+
+		/**
+		 * @param position 0-based position in columns of nearest outer collection
+		 * (for value which is not part of any collection, the position is 0)
+		 * @return decoded value
+		 */
+		abstract Object read(int position);
+
+		/**
+		 * Reads values at positions from given interval, in parallel if interval is large enough.
+		 * @param from inclusive
+		 * @param to exclusive
+		 * @return values in order of positions
+		 */
+		final Object[] readAll(int from, int to, int parallelThreshold) {
+			Object[] result = new Object[to - from];
+			if (to - from < parallelThreshold) {
+				for (int p = from; p < to; p++) {
+					result[p - from] = read(p);
+				}
+			} else {
+				new RangeTask(this, result, from, from, to, parallelThreshold).invoke();
+			}
+			return result;
+		}
+
+	}
+
+	/**
+	 * Reads range of positions, splits it into halves while it is larger than threshold.
+	 * @author Tomas Zalusky
+	 */
+	private static final class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Reader reader;
+
+		private final Object[] result;
+
+		private final int base;
+
+		private final int from;
+
+		private final int to;
+
+		private final int threshold;
+
+		RangeTask(Reader reader, Object[] result, int base, int from, int to, int threshold) {
+			this.reader = reader;
+			this.result = result;
+			this.base = base;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= threshold) {
+				for (int p = from; p < to; p++) {
+					result[p - base] = reader.read(p);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RangeTask(reader, result, base, from, middle, threshold), new RangeTask(reader, result, base, middle, to, threshold));
+			}
+		}
+
+	}
+
+	private static final class ColumnReader extends Reader {
+
+		private final PrimitiveCollection column;
+
+		ColumnReader(PrimitiveCollection column) {
+			this.column = column;
+		}
+
+		@Override
+		Object read(int position) {
+			return column.get(position);
+		}
+
+	}
+
+	private final class RecordReader extends Reader {
+
+		private final List<String> fieldNames;
+
+		private final Map<String,Integer> fieldIndexes;
+
+		private final List<Reader> fieldReaders;
+
+		private final RecordAccessor accessor; // null for records represented by map
+
+		/**
+		 * Columns of fields represented by <code>int</code> field of class, set without boxing; null for other fields.
+		 */
+		private final PrimitiveCollection[] intColumns;
+
+		RecordReader(RecordType type, List<Reader> fieldReaders, RecordAccessor accessor) {
+			this.fieldNames = ImmutableList.copyOf(type.getFields().keySet());
+			ImmutableMap.Builder<String,Integer> fieldIndexes = ImmutableMap.builder();
+			for (int i = 0; i < fieldNames.size(); i++) {
+				fieldIndexes.put(fieldNames.get(i), i);
+			}
+			this.fieldIndexes = fieldIndexes.build();
+			this.fieldReaders = fieldReaders;
+			this.accessor = accessor;
+			this.intColumns = new PrimitiveCollection[fieldReaders.size()];
+			for (int i = 0; i < intColumns.length; i++) {
+				if (accessor != null && accessor.fieldType(i) == int.class && fieldReaders.get(i) instanceof ColumnReader) {
+					intColumns[i] = ((ColumnReader)fieldReaders.get(i)).column;
+				}
+			}
+		}
+
+		@Override
+		Object read(int position) {
+			if (accessor != null) {
+				Object result = accessor.newInstance();
+				for (int i = 0; i < fieldReaders.size(); i++) {
+					PrimitiveCollection intColumn = intColumns[i];
+					if (intColumn == null) {
+						accessor.set(result, i, fieldReaders.get(i).read(position));
+					} else if (!intColumn.isNull(position)) { // null leaves default value
+						accessor.setInt(result, i, intColumn.getInt(position));
+					}
+				}
+				return result;
+			} else if (eager) {
+				Map<String,Object> result = new LinkedHashMap<>();
+				for (int i = 0; i < fieldReaders.size(); i++) {
+					result.put(fieldNames.get(i), fieldReaders.get(i).read(position));
+				}
+				return result;
+			} else {
+				return new RecordView(this, position);
+			}
+		}
+
+	}
+
+	private final class CollectionReader extends Reader {
+
+		private final DataPointers pointers;
+
+		private final DeletionsPointers deletionsPointers; // nested tables only
+
+		private final Deletions deletions; // nested tables only
+
+		private final Indexes indexes; // index-by tables only
+
+		private final Reader elementReader;
+
+		private boolean intKeyMap; // index-by table represented by IntKeyMap
+
+		CollectionReader(DataPointers pointers, DeletionsPointers deletionsPointers, Deletions deletions, Indexes indexes, Reader elementReader) {
+			this.pointers = pointers;
+			this.deletionsPointers = deletionsPointers;
+			this.deletions = deletions;
+			this.indexes = indexes;
+			this.elementReader = elementReader;
+		}
+
+		@Override
+		Object read(int position) {
+			if (pointers.isNull(position)) {
+				return null;
+			}
+			int from = pointers.lowerBound(position) - 1;
+			int to = pointers.upperBound(position) - 1;
+			if (indexes != null) {
+				if (intKeyMap) {
+					return IntKeyMap.of(indexes.toIntArray(from, to), Arrays.asList(elementReader.readAll(from, to, parallelThreshold)));
+				}
+				if (indexes.isSorted()) {
+					List<Object> keys = indexes.getData().subList(from, to);
+					if (eager) {
+						return new TreeMap<>(new SortedIndexByTableView(keys, Arrays.asList(elementReader.readAll(from, to, parallelThreshold))));
+					} else {
+						return new SortedIndexByTableView(keys, new ListView(elementReader, from, to));
+					}
+				}
+				if (eager) {
+					Map<Object,Object> result = new LinkedHashMap<>();
+					Object[] elements = elementReader.readAll(from, to, parallelThreshold);
+					for (int p = from; p < to; p++) {
+						result.put(indexes.get(p), elements[p - from]);
+					}
+					return result;
+				} else {
+					return new IndexByTableView(indexes, elementReader, from, to);
+				}
+			}
+			if (deletionsPointers != null) {
+				int deletionsFrom = deletionsPointers.lowerBound(position) - 1;
+				int deletionsTo = deletionsPointers.upperBound(position) - 1;
+				if (deletionsFrom < deletionsTo) {
+					SparseNestedTableView view = new SparseNestedTableView(deletions.getBitmap(pointers, deletionsPointers),
+							DeletionsBitmap.virtualStart(pointers, deletionsPointers, position), deletionsTo - deletionsFrom, elementReader, from, to);
+					return eager ? new LinkedHashMap<Integer,Object>(view) : view;
+				}
+			}
+			if (eager) {
+				return new ArrayList<>(Arrays.asList(elementReader.readAll(from, to, parallelThreshold)));
+			} else {
+				return new ListView(elementReader, from, to);
+			}
+		}
+
+	}
+
+	/**
+	 * Read-only view of varray or nested table without deleted elements.
+	 * @author Tomas Zalusky
+	 */
+	private static final class ListView extends AbstractList<Object> implements RandomAccess {
+
+		private final Reader elementReader;
+
+		private final int from;
+
+		private final int size;
+
+		ListView(Reader elementReader, int from, int to) {
+			this.elementReader = elementReader;
+			this.from = from;
+			this.size = to - from;
+		}
+
+		@Override
+		public Object get(int index) {
+			checkElementIndex(index, size);
+			return elementReader.read(from + index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+	}
+
+	/**
+	 * Read-only view of nested table with deleted elements, keys are 1-based indexes of existing elements.
+	 * Position of element in data columns is computed using rank in {@link DeletionsBitmap}.
+	 * @author Tomas Zalusky
+	 */
+	private static final class SparseNestedTableView extends AbstractMap<Integer,Object> {
+
+		private final DeletionsBitmap deletions;
+
+		private final int virtualStart;
+
+		private final int deletionsCount;
+
+		private final Reader elementReader;
+
+		private final int from;
+
+		private final int to;
+
+		SparseNestedTableView(DeletionsBitmap deletions, int virtualStart, int deletionsCount, Reader elementReader, int from, int to) {
+			this.deletions = deletions;
+			this.virtualStart = virtualStart;
+			this.deletionsCount = deletionsCount;
+			this.elementReader = elementReader;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * @param key
+		 * @return 0-based position of element with given index in columns, -1 if element does not exist
+		 */
+		private int position(Object key) {
+			if (!(key instanceof Integer)) {
+				return -1;
+			}
+			int index = (Integer)key;
+			if (index < 1 || index > to - from + deletionsCount) {
+				return -1;
+			}
+			int virtualPosition = virtualStart + index - 1;
+			return deletions.contains(virtualPosition) ? -1 : virtualPosition - deletions.rank(virtualPosition);
+		}
+
+		@Override
+		public Object get(Object key) {
+			int position = position(key);
+			return position == -1 ? null : elementReader.read(position);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return position(key) != -1;
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+
+		@Override
+		public Set<Map.Entry<Integer,Object>> entrySet() {
+			return new AbstractSet<Map.Entry<Integer,Object>>() {
+				@Override
+				public Iterator<Map.Entry<Integer,Object>> iterator() {
+					return new Iterator<Map.Entry<Integer,Object>>() {
+						private int position = from;
+						private int virtualPosition = virtualStart;
+						@Override
+						public boolean hasNext() {
+							return position < to;
+						}
+						@Override
+						public Map.Entry<Integer,Object> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							while (deletions.contains(virtualPosition)) {
+								virtualPosition++;
+							}
+							return Maps.immutableEntry(virtualPosition++ - virtualStart + 1, elementReader.read(position++));
+						}
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+				@Override
+				public int size() {
+					return to - from;
+				}
+			};
+		}
+
+	}
+
+	/**
+	 * Read-only view of index-by table whose indexes are not known to be sorted.
+	 * Keyed lookup uses hash index of keys built on first lookup (only keys are read, elements stay lazy).
+	 * @author Tomas Zalusky
+	 */
+	private static final class IndexByTableView extends AbstractMap<Object,Object> {
+
+		private final Indexes indexes;
+
+		private final Reader elementReader;
+
+		private final int from;
+
+		private final int to;
+
+		private volatile Map<Object,Integer> positions;
+
+		IndexByTableView(Indexes indexes, Reader elementReader, int from, int to) {
+			this.indexes = indexes;
+			this.elementReader = elementReader;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * @param key
+		 * @return 0-based position of element with given index in columns, -1 if element does not exist
+		 */
+		private int position(Object key) {
+			Map<Object,Integer> positions = this.positions;
+			if (positions == null) {
+				positions = Maps.newHashMapWithExpectedSize(to - from);
+				for (int p = from; p < to; p++) {
+					positions.put(indexes.get(p), p);
+				}
+				this.positions = positions;
+			}
+			Integer result = positions.get(key);
+			return result == null ? -1 : result;
+		}
+
+		@Override
+		public Object get(Object key) {
+			int position = position(key);
+			return position == -1 ? null : elementReader.read(position);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return position(key) != -1;
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+
+		@Override
+		public Set<Map.Entry<Object,Object>> entrySet() {
+			return new AbstractSet<Map.Entry<Object,Object>>() {
+				@Override
+				public Iterator<Map.Entry<Object,Object>> iterator() {
+					return new Iterator<Map.Entry<Object,Object>>() {
+						private int position = from;
+						@Override
+						public boolean hasNext() {
+							return position < to;
+						}
+						@Override
+						public Map.Entry<Object,Object> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							int p = position++;
+							return Maps.immutableEntry(indexes.get(p), elementReader.read(p));
+						}
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+				@Override
+				public int size() {
+					return to - from;
+				}
+			};
+		}
+
+	}
+
+	/**
+	 * Read-only sorted view of index-by table whose indexes are sorted in natural order,
+	 * backed by lists of keys and values. Lookup is binary search, submaps are views of sublists.
+	 * Also serves as source for building {@link TreeMap} in linear time.
+	 * @author Tomas Zalusky
+	 */
+	private static final class SortedIndexByTableView extends AbstractMap<Object,Object> implements SortedMap<Object,Object> {
+
+		private final List<Object> keys;
+
+		private final List<Object> values;
+
+		SortedIndexByTableView(List<Object> keys, List<Object> values) {
+			this.keys = keys;
+			this.values = values;
+		}
+
+		@SuppressWarnings({"unchecked","rawtypes"})
+		private int search(Object key) {
+			if (!(key instanceof Comparable)) {
+				return -1;
+			}
+			try {
+				return Collections.binarySearch((List)keys, key);
+			} catch (ClassCastException e) {
+				return -1;
+			}
+		}
+
+		/**
+		 * @param key
+		 * @return position of the first key not less than given key
+		 */
+		private int lowerBound(Object key) {
+			int i = search(key);
+			return i >= 0 ? i : -i - 1;
+		}
+
+		@Override
+		public Object get(Object key) {
+			int i = search(key);
+			return i >= 0 ? values.get(i) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return search(key) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return keys.size();
+		}
+
+		@Override
+		public Comparator<? super Object> comparator() {
+			return null;
+		}
+
+		@Override
+		public SortedMap<Object,Object> subMap(Object fromKey, Object toKey) {
+			int to = lowerBound(toKey);
+			int from = Math.min(lowerBound(fromKey), to);
+			return new SortedIndexByTableView(keys.subList(from, to), values.subList(from, to));
+		}
+
+		@Override
+		public SortedMap<Object,Object> headMap(Object toKey) {
+			int to = lowerBound(toKey);
+			return new SortedIndexByTableView(keys.subList(0, to), values.subList(0, to));
+		}
+
+		@Override
+		public SortedMap<Object,Object> tailMap(Object fromKey) {
+			int from = lowerBound(fromKey);
+			return new SortedIndexByTableView(keys.subList(from, keys.size()), values.subList(from, keys.size()));
+		}
+
+		@Override
+		public Object firstKey() {
+			if (keys.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return keys.get(0);
+		}
+
+		@Override
+		public Object lastKey() {
+			if (keys.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return keys.get(keys.size() - 1);
+		}
+
+		@Override
+		public Set<Map.Entry<Object,Object>> entrySet() {
+			return new AbstractSet<Map.Entry<Object,Object>>() {
+				@Override
+				public Iterator<Map.Entry<Object,Object>> iterator() {
+					return new Iterator<Map.Entry<Object,Object>>() {
+						private int position;
+						@Override
+						public boolean hasNext() {
+							return position < keys.size();
+						}
+						@Override
+						public Map.Entry<Object,Object> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							int p = position++;
+							return Maps.immutableEntry(keys.get(p), values.get(p));
+						}
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+				@Override
+				public int size() {
+					return keys.size();
+				}
+			};
+		}
+
+	}
+
+	/**
+	 * Read-only view of record represented by map.
+	 * @author Tomas Zalusky
+	 */
+	private static final class RecordView extends AbstractMap<String,Object> {
+
+		private final RecordReader reader;
+
+		private final int position;
+
+		RecordView(RecordReader reader, int position) {
+			this.reader = reader;
+			this.position = position;
+		}
+
+		@Override
+		public Object get(Object key) {
+			Integer index = reader.fieldIndexes.get(key);
+			return index == null ? null : reader.fieldReaders.get(index).read(position);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return reader.fieldIndexes.containsKey(key);
+		}
+
+		@Override
+		public Set<Map.Entry<String,Object>> entrySet() {
+			return new AbstractSet<Map.Entry<String,Object>>() {
+				@Override
+				public Iterator<Map.Entry<String,Object>> iterator() {
+					return new Iterator<Map.Entry<String,Object>>() {
+						private int index;
+						@Override
+						public boolean hasNext() {
+							return index < reader.fieldNames.size();
+						}
+						@Override
+						public Map.Entry<String,Object> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							int i = index++;
+							return Maps.immutableEntry(reader.fieldNames.get(i), reader.fieldReaders.get(i).read(position));
+						}
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+				@Override
+				public int size() {
+					return reader.fieldNames.size();
+				}
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,169 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import plsql.MarshallerTest.Record3;
+
+/**
+ * Tests {@link Unmarshaller} using loopback: values marshalled by {@link Marshaller}
+ * must be unmarshalled into equal values.
+ * @author Tomas Zalusky
+ */
+public class UnmarshallerTest extends AbstractTypeGraphTest {
+
+	static final Function<RecordType,Class<?>> RECORD_CLASSES = type -> "a_test_package.rec3".equals(type.getName()) ? Record3.class : null;
+
+	private static Map<String,Object> record(Object... namesAndValues) {
+		Map<String,Object> result = new LinkedHashMap<>();
+		for (int i = 0; i < namesAndValues.length; i += 2) {
+			result.put((String)namesAndValues[i], namesAndValues[i + 1]);
+		}
+		return result;
+	}
+
+	private static Map<String,Object> rec2(List<String> var5, Record3 first, Integer plsInteger, Record3 second) {
+		return record("f_var5", var5, "f1_rec3", first, "f_pls_integer", plsInteger, "f2_rec3", second);
+	}
+
+	static final Map<String,Object> ARGUMENTS = ImmutableMap.<String,Object>builder()
+			.put("pi_ibt1", ImmutableMap.of(
+					3, rec2(ImmutableList.of("a","b"), new Record3(true,1), 10, new Record3(false,2)),
+					-5, rec2(null, new Record3(false,3), null, new Record3(true,4))))
+			.put("pi_var1", Arrays.asList(
+					ImmutableList.of(new Record3(true,1), new Record3(false,2)),
+					null,
+					ImmutableList.of()))
+			.put("pi_nst2", ImmutableList.of(ImmutableList.of(new Record3(true,5))))
+			.put("pi_nst3", ImmutableMap.of(
+					2, ImmutableList.of(new Record3(true,6)),
+					5, ImmutableList.of(new Record3(false,7), new Record3(true,8))))
+			.put("pi_rec1", record(
+					"f_nst4", ImmutableList.of(new Record3(false,9)),
+					"f_ibt4", ImmutableMap.of("x", new BigDecimal("1.5"), "y", BigDecimal.TEN),
+					"f_binary_integer", 42,
+					"f_ibt5", ImmutableMap.of("k", ImmutableList.of("v1","v2"))))
+			.put("pi_var3", ImmutableList.of(ImmutableMap.of("a", ImmutableList.of("b")), ImmutableMap.of()))
+			.put("pi_ibt2", ImmutableMap.of(1, ImmutableMap.of("c", ImmutableList.of("d","e")), 2, ImmutableMap.of()))
+			.put("pi_nst1", Arrays.asList(null, ImmutableMap.of("f", ImmutableList.of())))
+			.put("pi_ibt3", ImmutableMap.of("x", ImmutableMap.of(1,"a",4,"b"), "y", ImmutableList.of("c")))
+			.put("pi_var2", Arrays.asList(ImmutableList.of("A","B"), null, ImmutableList.of("C"), ImmutableList.of(), ImmutableList.of("D","E","F")))
+			.put("pi_clob", "text")
+			.build();
+
+	@Test
+	public void testLoopbackLazy() throws IOException {
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", ARGUMENTS);
+		Unmarshaller unmarshaller = new Unmarshaller(tot, RECORD_CLASSES, false);
+		for (Map.Entry<String,Object> e : ARGUMENTS.entrySet()) {
+			assertEquals(e.getKey(), e.getValue(), unmarshaller.unmarshal(e.getKey()));
+		}
+	}
+
+	@Test
+	public void testLoopbackEager() throws IOException {
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", ARGUMENTS);
+		Unmarshaller unmarshaller = new Unmarshaller(tot, RECORD_CLASSES, true);
+		for (Map.Entry<String,Object> e : ARGUMENTS.entrySet()) {
+			assertEquals(e.getKey(), e.getValue(), unmarshaller.unmarshal(e.getKey()));
+		}
+	}
+
+	@Test
+	public void testViews() throws IOException {
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", ARGUMENTS);
+		Unmarshaller unmarshaller = new Unmarshaller(tot, t -> null, false);
+		List<?> var2 = (List<?>)unmarshaller.unmarshal("pi_var2");
+		assertTrue(var2 instanceof RandomAccess);
+		assertEquals(ImmutableList.of("D","E","F"), var2.get(4));
+		assertNull(var2.get(1));
+		Map<?,?> nst3 = (Map<?,?>)unmarshaller.unmarshal("pi_nst3");
+		assertEquals(ImmutableList.of(2,5), ImmutableList.copyOf(nst3.keySet()));
+		assertFalse(nst3.containsKey(1));
+		assertFalse(nst3.containsKey(3));
+		assertFalse(nst3.containsKey(6));
+		Map<?,?> record = (Map<?,?>)((List<?>)nst3.get(5)).get(1);
+		assertEquals(ImmutableMap.of("f_boolean", true, "f_integer", 8), record);
+		Map<?,?> ibt1 = (Map<?,?>)unmarshaller.unmarshal("pi_ibt1");
+		assertEquals(ImmutableList.of(3,-5), ImmutableList.copyOf(ibt1.keySet()));
+		assertEquals(10, ((Map<?,?>)ibt1.get(3)).get("f_pls_integer"));
+		assertTrue(ibt1.containsKey(-5));
+		assertFalse(ibt1.containsKey(5));
+		assertNull(ibt1.get(4));
+		assertEquals(2, ibt1.size());
+	}
+
+	@Test
+	public void testSortedIndexes() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		Map<String,Object> ibt3 = new TreeMap<>();
+		for (int i = 0; i < 100; i++) {
+			ibt3.put(String.format("k%03d", i), ImmutableList.of("v" + i));
+		}
+		TransferObjectTree tot = MarshallerTest.marshal(graph, "echo", ImmutableMap.of("pi_ibt3", ibt3, "pi_ibt1", ARGUMENTS.get("pi_ibt1")));
+		assertTrue(tot.getTransferObject(MarshallerTest.node(tot, "pi_ibt3"), Indexes.class).isSorted());
+		assertFalse(tot.getTransferObject(MarshallerTest.node(tot, "pi_ibt1"), Indexes.class).isSorted());
+		@SuppressWarnings("unchecked")
+		SortedMap<Object,Object> lazy = (SortedMap<Object,Object>)new Unmarshaller(tot, RECORD_CLASSES, false).unmarshal("pi_ibt3");
+		assertEquals(ibt3, lazy);
+		assertEquals("k000", lazy.firstKey());
+		assertEquals("k099", lazy.lastKey());
+		assertEquals(ImmutableList.of("v42"), lazy.get("k042"));
+		assertNull(lazy.get("k0425"));
+		assertFalse(lazy.containsKey(42));
+		assertEquals(ImmutableList.of("k010","k011"), ImmutableList.copyOf(lazy.subMap("k010", "k012").keySet()));
+		assertEquals(10, lazy.headMap("k010").size());
+		assertEquals(ImmutableList.of("k098","k099"), ImmutableList.copyOf(lazy.tailMap("k0975").keySet()));
+		assertTrue(lazy.subMap("k050", "k040").isEmpty());
+		Object eager = new Unmarshaller(tot, RECORD_CLASSES, true).unmarshal("pi_ibt3");
+		assertTrue(eager instanceof TreeMap);
+		assertEquals(ibt3, eager);
+		assertFalse(new Unmarshaller(tot, RECORD_CLASSES, true).unmarshal("pi_ibt1") instanceof SortedMap);
+	}
+
+	@Test
+	public void testReturnValue() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		TransferObjectTree tot = graph.toTypeNodeTree(graph.findType(FunctionSignature.class, "echo")).toTransferObjectTree();
+		tot.getTransferObject(MarshallerTest.node(tot, FunctionSignature.RETURN_LABEL), PrimitiveScalar.class).setData(7);
+		Unmarshaller unmarshaller = new Unmarshaller(tot, RECORD_CLASSES, false);
+		assertEquals(7, unmarshaller.unmarshal(FunctionSignature.RETURN_LABEL));
+	}
+
+	@Test
+	public void testParallel() throws IOException {
+		Map<String,Object> arguments = MarshallerTest.largeArguments(2000);
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", arguments);
+		Map<String,Object> expected = new Unmarshaller(tot, RECORD_CLASSES, true).unmarshalAll(arguments.keySet());
+		for (Map.Entry<String,Object> e : arguments.entrySet()) {
+			assertEquals(e.getKey(), e.getValue(), expected.get(e.getKey()));
+		}
+		assertEquals(expected, new Unmarshaller(tot, RECORD_CLASSES, true, 1).unmarshalAll(arguments.keySet()));
+		assertEquals(expected, new Unmarshaller(tot, RECORD_CLASSES, true, 100).unmarshalAll(arguments.keySet()));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnknownParameter() throws IOException {
+		TransferObjectTree tot = MarshallerTest.marshal(loadGraph("alltypes"), "echo", ARGUMENTS);
+		new Unmarshaller(tot, RECORD_CLASSES, false).unmarshal("unknown");
+	}
+
+}
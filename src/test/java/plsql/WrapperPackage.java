@@ -0,0 +1,401 @@
+package plsql;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import pleasejava.Utils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * <p>
+ * Server-side package wrapping group of procedures and functions, alternative to anonymous blocks
+ * generated by {@link BlockGenerator} on every call.
+ * For every wrapped signature, package contains procedure which accepts columns of {@link TransferObjectTree} as parameters,
+ * rebuilds arguments, calls wrapped procedure or function and decomposes OUT values back into OUT parameters
+ * (see {@link BlockGenerator#generateProcedure(TransferObjectTree, String)}).
+ * Package is installed once by {@link #getDeployScript() deploy script},
+ * runtime call is then just short block invoking wrapper procedure (see {@link #getCall(AbstractSignature)}).
+ * </p>
+ * <p>
+ * Package created with chunked transfer support additionally contains, for every wrapped signature,
+ * package variables holding columns of IN parameters, procedure <code>&lt;name&gt;_chunk</code> appending chunks of columns
+ * into package variables and procedure <code>&lt;name&gt;_finish</code> calling wrapped signature on columns in package variables,
+ * see {@link #getChunkSink(AbstractSignature, PlsqlRuntime.Executor)} and {@link ChunkedTransfer}.
+ * </p>
+ * <p>
+ * Since installed package must serve any data, columns are always bound plainly
+ * ({@link TransferObjectOptimizer}, {@link ColumnPacking} and {@link ColumnCodec} are not applicable).
+ * </p>
+ * <p>
+ * Package exposes {@link #getFingerprint() fingerprint} of wrapped signatures (including all types they depend on).
+ * Runtime is supposed to read installed fingerprint (see {@link #getVersionCall()}) and {@link #checkVersion(String) check it}
+ * (both done by {@link #checkVersion(PlsqlRuntime.Executor)}) before first call,
+ * so that calls through outdated wrapper are refused instead of failing unpredictably.
+ * </p>
+ * <p>
+ * All texts are {@link StatementFingerprints#canonical(String) canonical},
+ * fingerprints of runtime calls are recorded in {@link BlockGenerator#fingerprints() registry}.
+ * </p>
+ * @author Tomas Zalusky
+ */
+final class WrapperPackage {
+
+	private static final String INDENT = "  ";
+
+	private static final String FINGERPRINT_FUNCTION = "fingerprint";
+
+	private static final String CHUNK_SUFFIX = "_chunk";
+
+	private static final String FINISH_SUFFIX = "_finish";
+
+	private final String name;
+
+	private final String fingerprint;
+
+	/**
+	 * Generated procedures by name of wrapped signature.
+	 */
+	private final Map<String,BlockGenerator.Block> procedures = Maps.newLinkedHashMap();
+
+	/**
+	 * Runtime calls by name of wrapped signature.
+	 */
+	private final Map<String,BlockGenerator.Block> calls = Maps.newLinkedHashMap();
+
+	/**
+	 * Whether package supports chunked transfer.
+	 */
+	private final boolean chunked;
+
+	/**
+	 * Declarations of package variables holding columns of IN parameters (chunked transfer only).
+	 */
+	private final List<String> stateDeclarations = Lists.newArrayList();
+
+	/**
+	 * Generated procedures of chunked transfer (appending chunks and finishing call) by name of wrapped signature.
+	 */
+	private final Map<String,BlockGenerator.Block> chunkProcedures = Maps.newLinkedHashMap(), finishProcedures = Maps.newLinkedHashMap();
+
+	/**
+	 * Runtime calls of chunked transfer by name of wrapped signature.
+	 */
+	private final Map<String,BlockGenerator.Block> chunkCalls = Maps.newLinkedHashMap(), finishCalls = Maps.newLinkedHashMap();
+
+	/**
+	 * Trees of wrapped signatures (without data) by name of wrapped signature.
+	 */
+	private final Map<String,TransferObjectTree> trees = Maps.newHashMap();
+
+	private WrapperPackage(String name, TypeGraph graph, Collection<? extends AbstractSignature> signatures, boolean chunked) {
+		this.name = name;
+		this.fingerprint = fingerprint(signatures, chunked);
+		this.chunked = chunked;
+		for (AbstractSignature signature : signatures) {
+			String procedureName = simpleName(signature.getName());
+			checkArgument(!procedureName.equals(FINGERPRINT_FUNCTION), "Signature %s clashes with function %s.%s.", signature.getName(), name, FINGERPRINT_FUNCTION);
+			for (String wrapped : procedures.keySet()) {
+				String wrappedName = simpleName(wrapped);
+				checkArgument(!wrappedName.equals(procedureName), "Signatures %s and %s cannot be wrapped in same package %s.", wrapped, signature.getName(), name);
+				checkArgument(!chunked || !(procedureName.startsWith(wrappedName + "_") || wrappedName.startsWith(procedureName + "_")),
+						"Signatures %s and %s cannot be wrapped in same package %s with chunked transfer.", wrapped, signature.getName(), name);
+			}
+			TransferObjectTree tree = graph.toTypeNodeTree(signature).toTransferObjectTree();
+			trees.put(signature.getName(), tree);
+			BlockGenerator.Block procedure = BlockGenerator.generateProcedure(tree, procedureName);
+			procedures.put(signature.getName(), procedure);
+			calls.put(signature.getName(), call(signature, procedureName, procedure, "wrapper " + name));
+			if (chunked) {
+				String statePrefix = procedureName + "_";
+				stateDeclarations.addAll(BlockGenerator.generateStateDeclarations(tree, statePrefix));
+				BlockGenerator.Block chunkProcedure = BlockGenerator.generateChunkProcedure(tree, procedureName + CHUNK_SUFFIX, statePrefix);
+				chunkProcedures.put(signature.getName(), chunkProcedure);
+				chunkCalls.put(signature.getName(), call(signature, procedureName + CHUNK_SUFFIX, chunkProcedure, "wrapper chunk " + name));
+				BlockGenerator.Block finishProcedure = BlockGenerator.generateStatefulProcedure(tree, procedureName + FINISH_SUFFIX, statePrefix);
+				finishProcedures.put(signature.getName(), finishProcedure);
+				finishCalls.put(signature.getName(), call(signature, procedureName + FINISH_SUFFIX, finishProcedure, "wrapper finish " + name));
+			}
+		}
+	}
+
+	/**
+	 * @return runtime call of given procedure of package, its fingerprint is recorded
+	 */
+	private BlockGenerator.Block call(AbstractSignature signature, String procedureName, BlockGenerator.Block procedure, String fingerprintShape) {
+		List<String> placeholders = Collections.nCopies(procedure.getBinds().size(), "?");
+		String callText = String.format("begin %s.%s%s; end;", name, procedureName,
+				placeholders.isEmpty() ? "" : "(" + String.join(", ", placeholders) + ")");
+		BlockGenerator.Block result = new BlockGenerator.Block(callText, procedure.getBinds());
+		BlockGenerator.fingerprints().record(StatementFingerprints.key(signature, fingerprintShape), result.getText());
+		return result;
+	}
+
+	/**
+	 * @param name name of wrapper package
+	 * @param graph
+	 * @param signatures wrapped signatures, their simple names (without package) must be unique
+	 * @return new instance
+	 */
+	static WrapperPackage create(String name, TypeGraph graph, Collection<? extends AbstractSignature> signatures) {
+		return new WrapperPackage(name, graph, signatures, false);
+	}
+
+	/**
+	 * @param name name of wrapper package
+	 * @param graph
+	 * @param signatures wrapped signatures, their simple names (without package) must be unique
+	 * and must not be prefix of each other followed by underscore
+	 * @return new instance supporting chunked transfer
+	 */
+	static WrapperPackage createChunked(String name, TypeGraph graph, Collection<? extends AbstractSignature> signatures) {
+		return new WrapperPackage(name, graph, signatures, true);
+	}
+
+	/**
+	 * Creates one wrapper package per PLSQL package of signatures in graph.
+	 * Top-level signatures are wrapped in one common package.
+	 * @param graph
+	 * @param prefix prefix of names of wrapper packages, followed by name of PLSQL package or <code>toplevel</code>
+	 * @return wrapper packages in order of names
+	 */
+	static List<WrapperPackage> createForPackages(TypeGraph graph, String prefix) {
+		Map<String,List<AbstractSignature>> groups = new TreeMap<>();
+		for (AbstractType type : graph.getTopologicalOrdering()) {
+			if (type instanceof AbstractSignature) {
+				int dot = type.getName().lastIndexOf('.');
+				String group = prefix + (dot == -1 ? "toplevel" : type.getName().substring(0, dot));
+				if (!groups.containsKey(group)) {
+					groups.put(group, Lists.<AbstractSignature>newArrayList());
+				}
+				groups.get(group).add((AbstractSignature)type);
+			}
+		}
+		List<WrapperPackage> result = Lists.newArrayList();
+		for (Map.Entry<String,List<AbstractSignature>> e : groups.entrySet()) {
+			result.add(create(e.getKey(), graph, e.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * Computes fingerprint of signatures. Fingerprint covers structure of signatures and all types they depend on,
+	 * it does not depend on order of signatures.
+	 * @param signatures
+	 * @param chunked whether package supports chunked transfer
+	 * @return SHA-256 hash in hexadecimal form
+	 */
+	static String fingerprint(Collection<? extends AbstractSignature> signatures, boolean chunked) {
+		List<String> descriptions = Lists.newArrayList();
+		for (AbstractSignature signature : signatures) {
+			descriptions.add(signature.toString());
+		}
+		Collections.sort(descriptions);
+		Hasher hasher = Hashing.sha256().newHasher().putBoolean(chunked);
+		for (String description : descriptions) {
+			hasher.putString(description, StandardCharsets.UTF_8).putChar('\0');
+		}
+		return hasher.hash().toString();
+	}
+
+	private static String simpleName(String signatureName) {
+		return signatureName.substring(signatureName.lastIndexOf('.') + 1);
+	}
+
+	String getName() {
+		return name;
+	}
+
+	String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return names of wrapped signatures
+	 */
+	List<String> getSignatureNames() {
+		return ImmutableList.copyOf(procedures.keySet());
+	}
+
+	/**
+	 * @param signature
+	 * @return call of wrapper procedure, binds correspond to transfer objects of signature and have mode of respective parameter
+	 */
+	BlockGenerator.Block getCall(AbstractSignature signature) {
+		return getCall(signature, calls);
+	}
+
+	private BlockGenerator.Block getCall(AbstractSignature signature, Map<String,BlockGenerator.Block> calls) {
+		BlockGenerator.Block result = calls.get(signature.getName());
+		checkArgument(result != null, "Signature %s is not wrapped in package %s.", signature.getName(), name);
+		return result;
+	}
+
+	/**
+	 * @param signature
+	 * @return call of procedure appending chunks of columns of signature into package variables,
+	 * binds are offset and chunk of every transfer object of IN parameters, see {@link BlockGenerator#chunkValues(TransferObjectTree, List)}
+	 */
+	BlockGenerator.Block getChunkCall(AbstractSignature signature) {
+		checkState(chunked, "Package %s does not support chunked transfer.", name);
+		return getCall(signature, chunkCalls);
+	}
+
+	/**
+	 * @param signature
+	 * @return call of procedure calling wrapped signature on columns in package variables,
+	 * binds are OUT binds of {@link #getCall(AbstractSignature) call}
+	 */
+	BlockGenerator.Block getFinishCall(AbstractSignature signature) {
+		checkState(chunked, "Package %s does not support chunked transfer.", name);
+		return getCall(signature, finishCalls);
+	}
+
+	/**
+	 * @param signature
+	 * @param executor executor of calls in database session holding package state
+	 * @return sink sending chunks into package variables, values of OUT binds are returned by {@link ChunkedTransfer.ChunkSink#execute()}
+	 */
+	ChunkedTransfer.ChunkSink getChunkSink(AbstractSignature signature, PlsqlRuntime.Executor executor) {
+		final BlockGenerator.Block chunkCall = getChunkCall(signature);
+		final BlockGenerator.Block finishCall = getFinishCall(signature);
+		final TransferObjectTree tree = trees.get(signature.getName());
+		return new ChunkedTransfer.ChunkSink() {
+			@Override
+			public void send(List<ChunkedTransfer.Chunk> chunks) {
+				executor.execute(chunkCall, BlockGenerator.chunkValues(tree, chunks));
+			}
+			@Override
+			public Map<String,Object> execute() {
+				List<Object> outValues = executor.execute(finishCall, Collections.emptyList());
+				checkState(outValues.size() == finishCall.getBinds().size(), "Executor returned %s OUT values, block has %s OUT binds.", outValues.size(), finishCall.getBinds().size());
+				Map<String,Object> result = Maps.newLinkedHashMap();
+				for (int i = 0; i < outValues.size(); i++) {
+					result.put(finishCall.getBinds().get(i).getName(), outValues.get(i));
+				}
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * @return block with single OUT bind which receives fingerprint of installed package
+	 */
+	String getVersionCall() {
+		return String.format("begin ? := %s.%s; end;", name, FINGERPRINT_FUNCTION);
+	}
+
+	/**
+	 * @param installedFingerprint fingerprint read from database
+	 * @throws IllegalStateException if installed package does not match current type graph
+	 */
+	void checkVersion(String installedFingerprint) {
+		if (!fingerprint.equals(installedFingerprint)) {
+			throw new IllegalStateException(String.format("Installed wrapper package %s has fingerprint %s, expected %s. Deploy script must be run again.",
+					name, installedFingerprint, fingerprint));
+		}
+	}
+
+	/**
+	 * Reads fingerprint of installed package by {@link #getVersionCall() version call} and {@link #checkVersion(String) checks it}.
+	 * @param executor
+	 * @throws IllegalStateException if installed package does not match current type graph
+	 */
+	void checkVersion(PlsqlRuntime.Executor executor) {
+		BlockGenerator.Block versionCall = new BlockGenerator.Block(getVersionCall(),
+				ImmutableList.of(new BlockGenerator.Bind(FINGERPRINT_FUNCTION, ColumnKind.VARCHAR2.getScalarType(), ParameterMode.OUT)));
+		List<Object> outValues = executor.execute(versionCall, Collections.emptyList());
+		checkState(outValues.size() == 1, "Executor returned %s OUT values, block has 1 OUT bind.", outValues.size());
+		checkVersion((String)outValues.get(0));
+	}
+
+	String getSpecification() {
+		StringBuilder buf = new StringBuilder();
+		Utils.appendf(buf, "create or replace package %s as%n", name);
+		Utils.appendf(buf, "%sfunction %s return varchar2;%n", INDENT, FINGERPRINT_FUNCTION);
+		for (BlockGenerator.Block procedure : allProcedures()) {
+			String text = procedure.getText();
+			appendIndented(buf, text.substring(0, text.indexOf(" is\n")) + ";");
+		}
+		Utils.appendf(buf, "end %s;%n", name);
+		return StatementFingerprints.canonical(buf.toString());
+	}
+
+	String getBody() {
+		StringBuilder buf = new StringBuilder();
+		Utils.appendf(buf, "create or replace package body %s as%n", name);
+		for (String declaration : stateDeclarations) {
+			appendIndented(buf, declaration);
+		}
+		Utils.appendf(buf, "%sfunction %s return varchar2 is%n", INDENT, FINGERPRINT_FUNCTION);
+		Utils.appendf(buf, "%sbegin%n", INDENT);
+		Utils.appendf(buf, "%s%sreturn '%s';%n", INDENT, INDENT, fingerprint);
+		Utils.appendf(buf, "%send %s;%n", INDENT, FINGERPRINT_FUNCTION);
+		for (BlockGenerator.Block procedure : allProcedures()) {
+			appendIndented(buf, procedure.getText() + ";");
+		}
+		Utils.appendf(buf, "end %s;%n", name);
+		return StatementFingerprints.canonical(buf.toString());
+	}
+
+	/**
+	 * @return DDL script (for SQL*Plus or similar tool) installing specification and body of package
+	 * (SQL collection types of parameters must be installed before, see {@link ColumnKind#getDeployScript()})
+	 */
+	String getDeployScript() {
+		StringBuilder buf = new StringBuilder();
+		Utils.appendf(buf, "%s/%n", getSpecification());
+		Utils.appendf(buf, "%s/%n", getBody());
+		return StatementFingerprints.canonical(buf.toString());
+	}
+
+	/**
+	 * @param wrappers
+	 * @return DDL script installing SQL collection types of columns and all given packages
+	 */
+	static String getDeployScript(List<WrapperPackage> wrappers) {
+		StringBuilder buf = new StringBuilder(ColumnKind.getDeployScript());
+		for (WrapperPackage wrapper : wrappers) {
+			buf.append(wrapper.getDeployScript());
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * @return generated procedures, procedures of chunked transfer follow procedure of wrapped signature
+	 */
+	private List<BlockGenerator.Block> allProcedures() {
+		List<BlockGenerator.Block> result = Lists.newArrayList();
+		for (String signatureName : procedures.keySet()) {
+			result.add(procedures.get(signatureName));
+			if (chunked) {
+				result.add(chunkProcedures.get(signatureName));
+				result.add(finishProcedures.get(signatureName));
+			}
+		}
+		return result;
+	}
+
+	private static void appendIndented(StringBuilder buf, String text) {
+		for (String line : text.split("\\r?\\n")) {
+			Utils.appendf(buf, "%s%s%n", INDENT, line);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + procedures.keySet();
+	}
+
+}
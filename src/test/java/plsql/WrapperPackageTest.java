@@ -0,0 +1,143 @@
+package plsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests {@link WrapperPackage}. Generated wrapper procedures are executed by {@link BlockInterpreter}.
+ * @author Tomas Zalusky
+ */
+public class WrapperPackageTest extends AbstractTypeGraphTest {
+
+	/**
+	 * Marshals arguments, executes wrapper procedure and returns tree filled with OUT values.
+	 */
+	private static TransferObjectTree callWrapper(TypeGraph graph, WrapperPackage wrapper, AbstractSignature signature,
+			Map<String,?> arguments, BlockInterpreter.Executable executable) {
+		TransferObjectTree tot = MarshallerTest.marshal(graph, signature.getName(), arguments);
+		BlockGenerator.Block call = wrapper.getCall(signature);
+		Map<String,Object> bindValues = BlockGenerator.bindValues(call, tot, new ColumnPacking.Plan(), Collections.<PrimitiveCollection,ColumnCodec.Encoded>emptyMap(),
+				Collections.<Pointers,PointersCodec.Encoded>emptyMap(), Collections.<Deletions,DeletionsBitmap>emptyMap());
+		List<Object> parameterValues = Lists.newArrayList();
+		for (BlockGenerator.Bind bind : call.getBinds()) {
+			parameterValues.add(bind.isIn() ? bindValues.get(bind.getName()) : null);
+		}
+		String procedureName = signature.getName().substring(signature.getName().lastIndexOf('.') + 1);
+		List<Object> outValues = BlockInterpreter.executeProcedure(wrapper.getBody(), procedureName, parameterValues, executable);
+		Map<String,Object> outValuesByName = Maps.newHashMap();
+		for (BlockGenerator.Bind bind : call.getBinds()) {
+			if (bind.isOut()) {
+				outValuesByName.put(bind.getName(), outValues.get(outValuesByName.size()));
+			}
+		}
+		assertEquals(outValues.size(), outValuesByName.size());
+		TransferObjectTree received = graph.toTypeNodeTree(signature).toTransferObjectTree();
+		BlockGenerator.readOutValues(received, outValuesByName);
+		return received;
+	}
+
+	@Test
+	public void testLoopback() throws IOException {
+		TypeGraph graph = loadGraph("alltypes");
+		List<WrapperPackage> wrappers = WrapperPackage.createForPackages(graph, "pw_");
+		assertEquals(1, wrappers.size());
+		WrapperPackage wrapper = wrappers.get(0);
+		assertEquals("pw_toplevel", wrapper.getName());
+		FunctionSignature echo = graph.findType(FunctionSignature.class, "echo");
+		BlockGenerator.Block call = wrapper.getCall(echo);
+		assertTrue(call.getText(), call.getText().startsWith("begin pw_toplevel.echo(?, ?, "));
+		assertTrue(call.getText(), call.getText().length() < 600);
+		TransferObjectTree received = callWrapper(graph, wrapper, echo, BlockGeneratorTest.ARGUMENTS, BlockGeneratorTest.ECHO);
+		Unmarshaller unmarshaller = new Unmarshaller(received, UnmarshallerTest.RECORD_CLASSES, true);
+		for (Map.Entry<String,Object> e : BlockGeneratorTest.ARGUMENTS.entrySet()) {
+			String outName = "po_" + e.getKey().substring(3);
+			assertEquals(outName, e.getValue(), unmarshaller.unmarshal(outName));
+		}
+		assertEquals(BlockGeneratorTest.RETURN_VALUE, unmarshaller.unmarshal(FunctionSignature.RETURN_LABEL));
+	}
+
+	@Test
+	public void testInOut() throws IOException {
+		TypeGraph graph = loadGraph("inout");
+		WrapperPackage wrapper = WrapperPackage.createForPackages(graph, "pw_").get(0);
+		assertEquals("pw_a_test_package", wrapper.getName());
+		ProcedureSignature modify = graph.findType(ProcedureSignature.class, "a_test_package.modify");
+		String specification = wrapper.getSpecification();
+		assertTrue(specification, specification.contains("procedure modify(\n    c1q in out pleasejava_number_table,"));
+		assertTrue(specification, specification.contains("    c2 in number,\n    c3 in out number\n  );"));
+		BlockInterpreter.Executable executable = (name, arguments) -> {
+			assertEquals("a_test_package.modify", name);
+			@SuppressWarnings("unchecked")
+			TreeMap<Object,Object> nst = (TreeMap<Object,Object>)arguments.get("pio_nst");
+			nst.put(nst.size() + 1, "added");
+			if ((Boolean)arguments.get("pi_flag")) {
+				arguments.put("pio_num", ((BigDecimal)arguments.get("pio_num")).negate());
+			}
+			return null;
+		};
+		Map<String,Object> arguments = ImmutableMap.<String,Object>of("pio_nst", ImmutableList.of("a","b"), "pi_flag", true, "pio_num", new BigDecimal("25"));
+		TransferObjectTree received = callWrapper(graph, wrapper, modify, arguments, executable);
+		Unmarshaller unmarshaller = new Unmarshaller(received, t -> null, false);
+		assertEquals(ImmutableList.of("a","b","added"), unmarshaller.unmarshal("pio_nst"));
+		assertEquals(new BigDecimal("-25"), unmarshaller.unmarshal("pio_num"));
+	}
+
+	@Test
+	public void testDeployScript() throws IOException {
+		TypeGraph graph = loadGraph("toplevel");
+		List<WrapperPackage> wrappers = WrapperPackage.createForPackages(graph, "pw_");
+		assertEquals(1, wrappers.size());
+		WrapperPackage wrapper = wrappers.get(0);
+		assertEquals(10, wrapper.getSignatureNames().size());
+		String script = WrapperPackage.getDeployScript(wrappers);
+		assertTrue(script, script.startsWith("create or replace type pleasejava_varchar2_table as table of varchar2(4000);\n/\n"));
+		assertTrue(script, script.contains("/\ncreate or replace package pw_toplevel as\n  function fingerprint return varchar2;\n"));
+		assertTrue(script, script.contains("end pw_toplevel;\n/\ncreate or replace package body pw_toplevel as\n"));
+		assertTrue(script, script.endsWith("end pw_toplevel;\n/\n"));
+		assertTrue(script, script.contains(String.format("    return '%s';\n", wrapper.getFingerprint())));
+		for (String signatureName : wrapper.getSignatureNames()) {
+			assertTrue(signatureName, script.contains(String.format("  end %s;\n", signatureName)));
+			assertTrue(signatureName, script.contains(String.format("\n    %s(", signatureName)));
+		}
+	}
+
+	@Test
+	public void testVersion() throws IOException {
+		WrapperPackage wrapper = WrapperPackage.createForPackages(loadGraph("alltypes"), "pw_").get(0);
+		WrapperPackage same = WrapperPackage.createForPackages(loadGraph("alltypes"), "pw_").get(0);
+		WrapperPackage other = WrapperPackage.createForPackages(loadGraph("toplevel"), "pw_").get(0);
+		assertEquals(wrapper.getFingerprint(), same.getFingerprint());
+		assertNotEquals(wrapper.getFingerprint(), other.getFingerprint());
+		assertEquals("begin ? := pw_toplevel.fingerprint; end;", wrapper.getVersionCall());
+		wrapper.checkVersion(same.getFingerprint());
+		try {
+			wrapper.checkVersion(other.getFingerprint());
+			throw new AssertionError("outdated wrapper accepted");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(wrapper.getFingerprint()));
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNotWrapped() throws IOException {
+		TypeGraph graph = loadGraph("toplevel");
+		WrapperPackage wrapper = WrapperPackage.create("pw", graph, ImmutableList.of(graph.findType(ProcedureSignature.class, "tr")));
+		wrapper.getCall(graph.findType(ProcedureSignature.class, "pr_tr"));
+	}
+
+}